@@ -0,0 +1,23 @@
+#
+# 调度日志表按天分区，执行之后再开启 xxl.job.log.partition.enabled=true
+# 开启之后调度中心会提前创建之后几天的分区，过期日志按整个分区删除
+#
+# 1、分区键必须包含在主键中，所以主键改成(id, trigger_time)，trigger_time也不能为空
+# 2、p_history存放执行这个脚本之前的日志，请把日期改成执行脚本的当天，调度中心会从这一天开始按天创建分区，
+#    p_history中的日志全部过期之后，这个分区也会被删除
+# 3、转换已有的表会重建整张表，日志很多的时候请先清理日志，或者在业务低峰期执行
+# 4、按id查询日志的时候，数据库要在每个分区的主键中各查找一次，调度中心知道触发时间的地方都会带上触发时间，只查找相关的分区
+#    删除任务的时候要按job_id删除它的所有日志，所以加上job_id开头的索引，不然要扫描所有分区
+
+use `xxl_job`;
+
+ALTER TABLE `xxl_job_log` MODIFY `trigger_time` datetime NOT NULL COMMENT '调度-时间';
+
+ALTER TABLE `xxl_job_log` DROP PRIMARY KEY, ADD PRIMARY KEY (`id`, `trigger_time`);
+
+ALTER TABLE `xxl_job_log` ADD KEY `I_job_id` (`job_id`, `trigger_time`);
+
+ALTER TABLE `xxl_job_log` PARTITION BY RANGE COLUMNS(`trigger_time`) (
+  PARTITION p_history VALUES LESS THAN ('2026-10-19 00:00:00'),
+  PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
@@ -6,6 +6,7 @@ import com.ytrue.job.core.biz.AdminBiz;
 import com.ytrue.job.core.biz.model.HandleCallbackParam;
 import com.ytrue.job.core.biz.model.RegistryParam;
 import com.ytrue.job.core.biz.model.ReturnT;
+import com.ytrue.job.core.biz.model.ShardPullParam;
 import com.ytrue.job.core.util.GsonTool;
 import com.ytrue.job.core.util.XxlJobRemotingUtil;
 import org.springframework.stereotype.Controller;
@@ -34,7 +35,7 @@ public class JobApiController {
     @RequestMapping("/{uri}")
     @ResponseBody
     @PermissionLimit(limit = false)
-    public ReturnT<String> api(HttpServletRequest request, @PathVariable("uri") String uri, @RequestBody(required = false) String data) {
+    public ReturnT<?> api(HttpServletRequest request, @PathVariable("uri") String uri, @RequestBody(required = false) String data) {
         //判断是不是post请求
         if (!"POST".equalsIgnoreCase(request.getMethod())) {
             return new ReturnT<>(ReturnT.FAIL_CODE, "invalid request, HttpMethod not support.");
@@ -65,6 +66,10 @@ public class JobApiController {
             RegistryParam registryParam = GsonTool.fromJson(data, RegistryParam.class);
             //执行移除任务
             return adminBiz.registryRemove(registryParam);
+            //判断是不是动态分片的任务领取工作单元
+        } else if ("shardPull".equals(uri)) {
+            ShardPullParam shardPullParam = GsonTool.fromJson(data, ShardPullParam.class);
+            return adminBiz.shardPull(shardPullParam);
         } else {
             //都不匹配则返回失败
             return new ReturnT<>(ReturnT.FAIL_CODE, "invalid request, uri-mapping(" + uri + ") not found.");
@@ -1,12 +1,18 @@
 package com.ytrue.job.admin.controller;
 
+import com.ytrue.job.admin.core.model.XxlJobGroup;
 import com.ytrue.job.admin.core.model.XxlJobInfo;
 import com.ytrue.job.admin.core.model.XxlJobLogGlue;
+import com.ytrue.job.admin.core.scheduler.XxlJobScheduler;
+import com.ytrue.job.admin.core.trigger.JobMetaCache;
 import com.ytrue.job.admin.core.util.I18nUtil;
 import com.ytrue.job.admin.dao.XxlJobInfoDao;
 import com.ytrue.job.admin.dao.XxlJobLogGlueDao;
+import com.ytrue.job.core.biz.model.GlueParam;
 import com.ytrue.job.core.biz.model.ReturnT;
 import com.ytrue.job.core.glue.GlueTypeEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.ResponseBody;
@@ -26,6 +32,8 @@ import java.util.List;
 @RequestMapping("/jobcode")
 public class JobCodeController {
 
+    private static final Logger logger = LoggerFactory.getLogger(JobCodeController.class);
+
     @Resource
     private XxlJobInfoDao xxlJobInfoDao;
     @Resource
@@ -65,9 +73,12 @@ public class JobCodeController {
         }
         exists_jobInfo.setGlueSource(glueSource);
         exists_jobInfo.setGlueRemark(glueRemark);
-        exists_jobInfo.setGlueUpdatetime(new Date());
+        //数据库中的glue更新时间只精确到秒，这里也去掉毫秒，执行器预先编译时使用的更新时间才能和触发时的一样
+        exists_jobInfo.setGlueUpdatetime(new Date(System.currentTimeMillis() / 1000 * 1000));
         exists_jobInfo.setUpdateTime(new Date());
         xxlJobInfoDao.update(exists_jobInfo);
+        //glue代码修改了，让触发任务时使用的缓存失效
+        JobMetaCache.invalidateJobInfo(exists_jobInfo.getId());
 
         XxlJobLogGlue xxlJobLogGlue = new XxlJobLogGlue();
         xxlJobLogGlue.setJobId(exists_jobInfo.getId());
@@ -78,7 +89,37 @@ public class JobCodeController {
         xxlJobLogGlue.setUpdateTime(new Date());
         xxlJobLogGlueDao.save(xxlJobLogGlue);
         xxlJobLogGlueDao.removeOld(exists_jobInfo.getId(), 30);
+        precompile(exists_jobInfo);
         return ReturnT.SUCCESS;
     }
 
+
+    /**
+     * 通知执行器预先编译新的glue代码，这样新版本的代码第一次被调度的时候就不用等待编译了
+     * 只是一个优化，异步发送，失败了只记录日志，执行器执行任务的时候还是会自己编译
+     *
+     * @param jobInfo
+     */
+    private void precompile(XxlJobInfo jobInfo) {
+        if (GlueTypeEnum.GLUE_GROOVY != GlueTypeEnum.match(jobInfo.getGlueType())) {
+            return;
+        }
+        XxlJobGroup group = JobMetaCache.loadJobGroup(jobInfo.getJobGroup());
+        if (group == null || group.getRegistryList() == null) {
+            return;
+        }
+        GlueParam glueParam = new GlueParam(jobInfo.getId(), jobInfo.getGlueType(), jobInfo.getGlueSource(), jobInfo.getGlueUpdatetime().getTime());
+        for (String address : group.getRegistryList()) {
+            try {
+                XxlJobScheduler.getExecutorBiz(address).glueCompileAsync(glueParam).whenComplete((result, e) -> {
+                    if (e != null || result == null || result.getCode() != ReturnT.SUCCESS_CODE) {
+                        logger.warn(">>>>>>>>>>> xxl-job glue precompile fail, jobId:{}, address:{}, result:{}", jobInfo.getId(), address, e != null ? e.getMessage() : result);
+                    }
+                });
+            } catch (Exception e) {
+                logger.error(">>>>>>>>>>> xxl-job glue precompile error:{}", e);
+            }
+        }
+    }
+
 }
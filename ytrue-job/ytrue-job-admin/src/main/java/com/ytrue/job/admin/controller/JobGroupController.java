@@ -1,13 +1,12 @@
 package com.ytrue.job.admin.controller;
 
 import com.ytrue.job.admin.core.model.XxlJobGroup;
-import com.ytrue.job.admin.core.model.XxlJobRegistry;
+import com.ytrue.job.admin.core.thread.JobRegistryHelper;
+import com.ytrue.job.admin.core.trigger.JobMetaCache;
 import com.ytrue.job.admin.core.util.I18nUtil;
 import com.ytrue.job.admin.dao.XxlJobGroupDao;
 import com.ytrue.job.admin.dao.XxlJobInfoDao;
-import com.ytrue.job.admin.dao.XxlJobRegistryDao;
 import com.ytrue.job.core.biz.model.ReturnT;
-import com.ytrue.job.core.enums.RegistryConfig;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -32,8 +31,6 @@ public class JobGroupController {
     public XxlJobInfoDao xxlJobInfoDao;
     @Resource
     public XxlJobGroupDao xxlJobGroupDao;
-    @Resource
-    private XxlJobRegistryDao xxlJobRegistryDao;
 
     @RequestMapping
     public String index(Model model) {
@@ -151,6 +148,8 @@ public class JobGroupController {
         }
         xxlJobGroup.setUpdateTime(new Date());
         int ret = xxlJobGroupDao.update(xxlJobGroup);
+        //执行器组修改了，让触发任务时使用的缓存失效
+        JobMetaCache.invalidateJobGroup(xxlJobGroup.getId());
         return (ret > 0) ? ReturnT.SUCCESS : ReturnT.FAIL;
     }
 
@@ -173,6 +172,7 @@ public class JobGroupController {
             return new ReturnT<String>(500, I18nUtil.getString("jobgroup_del_limit_1"));
         }
         int ret = xxlJobGroupDao.remove(id);
+        JobMetaCache.invalidateJobGroup(id);
         return (ret > 0) ? ReturnT.SUCCESS : ReturnT.FAIL;
     }
 
@@ -198,25 +198,7 @@ public class JobGroupController {
      * @return
      */
     private List<String> findRegistryByAppName(String appnameParam) {
-        HashMap<String, List<String>> appAddressMap = new HashMap<String, List<String>>();
-        //这里查询出的执行器是没有超时的，超时的就不会被查到了
-        List<XxlJobRegistry> list = xxlJobRegistryDao.findAll(RegistryConfig.DEAD_TIMEOUT, new Date());
-        if (list != null) {
-            for (XxlJobRegistry item : list) {
-                //这里查找的是自动注册的执行器
-                if (RegistryConfig.RegistryType.EXECUTOR.name().equals(item.getRegistryGroup())) {
-                    String appname = item.getRegistryKey();
-                    List<String> registryList = appAddressMap.get(appname);
-                    if (registryList == null) {
-                        registryList = new ArrayList<String>();
-                    }
-                    if (!registryList.contains(item.getRegistryValue())) {
-                        registryList.add(item.getRegistryValue());
-                    }
-                    appAddressMap.put(appname, registryList);
-                }
-            }
-        }
-        return appAddressMap.get(appnameParam);
+        //直接从注册中心组件的内存注册表中获取，这里得到的执行器都是没有超时的
+        return JobRegistryHelper.getInstance().getAddressList(appnameParam);
     }
 }
@@ -161,14 +161,9 @@ public class JobInfoController {
         paramXxlJobInfo.setScheduleConf(scheduleConf);
         List<String> result = new ArrayList<>();
         try {
-            Date lastTime = new Date();
-            for (int i = 0; i < 5; i++) {
-                lastTime = JobScheduleHelper.generateNextValidTime(paramXxlJobInfo, lastTime);
-                if (lastTime != null) {
-                    result.add(DateUtil.formatDateTime(lastTime));
-                } else {
-                    break;
-                }
+            List<Date> nextTimes = JobScheduleHelper.generateNextValidTimes(paramXxlJobInfo, new Date(), 5);
+            for (Date nextTime : nextTimes) {
+                result.add(DateUtil.formatDateTime(nextTime));
             }
         } catch (Exception e) {
             logger.error(e.getMessage(), e);
@@ -79,12 +79,28 @@ public class JobLogController {
     }
 
 
+    /**
+     * 分页查询调度日志，翻到下一页的时候，页面会带上当前页最后一条日志的触发时间和id，这个时候就从这条日志往后查询，不再用offset跳过前面的日志
+     *
+     * @param request
+     * @param start
+     * @param length
+     * @param jobGroup
+     * @param jobId
+     * @param logStatus
+     * @param filterTime
+     * @param lastTriggerTime 上一页最后一条日志的触发时间，毫秒值
+     * @param lastId          上一页最后一条日志的id
+     * @return
+     */
     @RequestMapping("/pageList")
     @ResponseBody
     public Map<String, Object> pageList(HttpServletRequest request,
                                         @RequestParam(required = false, defaultValue = "0") int start,
                                         @RequestParam(required = false, defaultValue = "10") int length,
-                                        int jobGroup, int jobId, int logStatus, String filterTime) {
+                                        int jobGroup, int jobId, int logStatus, String filterTime,
+                                        @RequestParam(required = false, defaultValue = "0") long lastTriggerTime,
+                                        @RequestParam(required = false, defaultValue = "0") long lastId) {
         JobInfoController.validPermission(request, jobGroup);
         Date triggerTimeStart = null;
         Date triggerTimeEnd = null;
@@ -95,11 +111,19 @@ public class JobLogController {
                 triggerTimeEnd = DateUtil.parseDateTime(temp[1]);
             }
         }
-        List<XxlJobLog> list = xxlJobLogDao.pageList(start, length, jobGroup, jobId, triggerTimeStart, triggerTimeEnd, logStatus);
+        List<XxlJobLog> list;
+        if (lastTriggerTime > 0 && lastId > 0) {
+            list = xxlJobLogDao.pageListAfter(length, jobGroup, jobId, triggerTimeStart, triggerTimeEnd, logStatus, new Date(lastTriggerTime), lastId);
+        } else {
+            list = xxlJobLogDao.pageList(start, length, jobGroup, jobId, triggerTimeStart, triggerTimeEnd, logStatus);
+        }
+        //总数最多只数到当前页之后10页，页面上能直接跳转的页数有限，翻到后面的时候会继续往后数
         int list_count = xxlJobLogDao.pageListCount(start, length, jobGroup, jobId, triggerTimeStart, triggerTimeEnd, logStatus);
         Map<String, Object> maps = new HashMap<String, Object>();
         maps.put("recordsTotal", list_count);
         maps.put("recordsFiltered", list_count);
+        //数到了上限，后面还有更多的日志，页面上显示成"N+"，不能当作真正的总数
+        maps.put("recordsTotalCapped", XxlJobLogDao.isCountCapped(list_count, start, length));
         maps.put("data", list);
         return maps;
     }
@@ -3,7 +3,12 @@ package com.ytrue.job.admin.core.complete;
 import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
 import com.ytrue.job.admin.core.model.XxlJobInfo;
 import com.ytrue.job.admin.core.model.XxlJobLog;
+import com.ytrue.job.admin.core.thread.JobLogReportHelper;
+import com.ytrue.job.admin.core.thread.JobRunningTracker;
+import com.ytrue.job.admin.core.thread.JobShardDispatcher;
 import com.ytrue.job.admin.core.thread.JobTriggerPoolHelper;
+import com.ytrue.job.admin.core.thread.JobWorkflowHelper;
+import com.ytrue.job.admin.core.trigger.JobMetaCache;
 import com.ytrue.job.admin.core.trigger.TriggerTypeEnum;
 import com.ytrue.job.admin.core.util.I18nUtil;
 import com.ytrue.job.core.biz.model.ReturnT;
@@ -12,6 +17,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author ytrue
@@ -23,9 +30,15 @@ public class XxlJobCompleter {
     private static Logger logger = LoggerFactory.getLogger(XxlJobCompleter.class);
 
 
+    /**
+     * 一次最多更新的日志条数，执行结果的信息可能比较长，所以一批的数量不要太多
+     */
+    private static final int UPDATE_BATCH_SIZE = 100;
+
+
     public static int updateHandleInfoAndFinish(XxlJobLog xxlJobLog) {
-        //触发子任务的方法，这个版本用不上，就注释掉了
-        finishJob(xxlJobLog);
+        //先把子任务的调度信息拼接到执行结果中
+        List<Integer> childJobIdList = finishJob(xxlJobLog);
 
         //判断字符串长度
         if (xxlJobLog.getHandleMsg().length() > 15000) {
@@ -33,21 +46,90 @@ public class XxlJobCompleter {
             xxlJobLog.setHandleMsg(xxlJobLog.getHandleMsg().substring(0, 15000));
         }
         //更新数据库
-        return XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().updateHandleInfo(xxlJobLog);
+        int ret = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().updateHandleInfo(xxlJobLog);
+        afterHandled(xxlJobLog);
+        //在这里调度子任务
+        triggerChildJobs(childJobIdList);
+        return ret;
+    }
+
+
+    /**
+     * 批量更新定时任务的执行结果，执行结果用多行更新的sql语句批量写入数据库，所有的子任务在最后一起提交给触发器线程池
+     * 批量更新失败的话，就退化成一条一条更新
+     *
+     * @param logList
+     */
+    public static void updateHandleInfoAndFinishBatch(List<XxlJobLog> logList) {
+        List<Integer> childJobIdList = new ArrayList<>();
+        for (XxlJobLog xxlJobLog : logList) {
+            childJobIdList.addAll(finishJob(xxlJobLog));
+            if (xxlJobLog.getHandleMsg().length() > 15000) {
+                xxlJobLog.setHandleMsg(xxlJobLog.getHandleMsg().substring(0, 15000));
+            }
+        }
+        for (int from = 0; from < logList.size(); from += UPDATE_BATCH_SIZE) {
+            List<XxlJobLog> batch = logList.subList(from, Math.min(from + UPDATE_BATCH_SIZE, logList.size()));
+            try {
+                XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().updateHandleInfoBatch(batch);
+                for (XxlJobLog xxlJobLog : batch) {
+                    afterHandled(xxlJobLog);
+                }
+            } catch (Exception e) {
+                logger.error(">>>>>>>>>>> xxl-job, batch update handle info error, fallback to single update:{}", e);
+                for (XxlJobLog xxlJobLog : batch) {
+                    try {
+                        XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().updateHandleInfo(xxlJobLog);
+                        afterHandled(xxlJobLog);
+                    } catch (Exception e2) {
+                        logger.error(">>>>>>>>>>> xxl-job, update handle info error, logId:{}", xxlJobLog.getId(), e2);
+                    }
+                }
+            }
+        }
+        triggerChildJobs(childJobIdList);
     }
 
 
     /**
-     * 触发子任务的方法
+     * 执行结果写入数据库之后，更新日志报告的计数器，不再跟踪这个任务，这里的日志必须是从数据库中查出来的，要用到触发时间和触发结果
+     * 只有还没有执行结果的日志才会走到这里，所以原来的执行结果码就是0
      *
      * @param xxlJobLog
      */
-    private static void finishJob(XxlJobLog xxlJobLog) {
+    private static void afterHandled(XxlJobLog xxlJobLog) {
+        JobLogReportHelper.getInstance().logStatusChanged(xxlJobLog.getTriggerTime(),
+                xxlJobLog.getTriggerCode(), 0, xxlJobLog.getTriggerCode(), xxlJobLog.getHandleCode());
+        JobRunningTracker.getInstance().untrack(xxlJobLog.getId());
+        JobShardDispatcher.getInstance().logFinished(xxlJobLog.getId());
+    }
+
+
+    /**
+     * 调度子任务，触发器任务只是放进线程池，不会等待
+     *
+     * @param childJobIdList
+     */
+    private static void triggerChildJobs(List<Integer> childJobIdList) {
+        for (int childJobId : childJobIdList) {
+            JobTriggerPoolHelper.trigger(childJobId, TriggerTypeEnum.PARENT, -1, null, null, null);
+        }
+    }
+
+
+    /**
+     * 处理子任务的方法，把子任务的调度信息拼接到执行结果中，返回需要调度的子任务id
+     *
+     * @param xxlJobLog
+     * @return
+     */
+    private static List<Integer> finishJob(XxlJobLog xxlJobLog) {
+        List<Integer> childJobIdList = new ArrayList<>();
         String triggerChildMsg = null;
         //先判断定时任务是不是执行成功的状态
         if (XxlJobContext.HANDLE_CODE_SUCCESS == xxlJobLog.getHandleCode()) {
-            //如果成功了，就先得到该定时任务的具体信息
-            XxlJobInfo xxlJobInfo = XxlJobAdminConfig.getAdminConfig().getXxlJobInfoDao().loadById(xxlJobLog.getJobId());
+            //如果成功了，就先得到该定时任务的具体信息，这里优先从本地缓存中获取
+            XxlJobInfo xxlJobInfo = JobMetaCache.loadJobInfo(xxlJobLog.getJobId());
             //判断子任务id不为null
             if (xxlJobInfo != null && xxlJobInfo.getChildJobId() != null && xxlJobInfo.getChildJobId().trim().length() > 0) {
                 triggerChildMsg = "<br><br><span style=\"color:#00c0ef;\" > >>>>>>>>>>>" + I18nUtil.getString("jobconf_trigger_child_run") + "<<<<<<<<<<< </span><br>";
@@ -58,8 +140,8 @@ public class XxlJobCompleter {
                     //得到子任务id
                     int childJobId = (childJobIds[i] != null && childJobIds[i].trim().length() > 0 && isNumeric(childJobIds[i])) ? Integer.valueOf(childJobIds[i]) : -1;
                     if (childJobId > 0) {
-                        //在这里直接调度子任务
-                        JobTriggerPoolHelper.trigger(childJobId, TriggerTypeEnum.PARENT, -1, null, null, null);
+                        //子任务在日志更新之后再统一调度
+                        childJobIdList.add(childJobId);
                         //设置调度成功的结果
                         ReturnT<String> triggerChildResult = ReturnT.SUCCESS;
                         // {0}/{1} [任务ID={2}], 触发{3}, 触发备注: {4} <br>
@@ -78,10 +160,29 @@ public class XxlJobCompleter {
                     }
                 }
             }
+            //再看看工作流中有没有因为这个任务执行成功而可以触发的下游任务，和子任务一样，在日志更新之后并行调度
+            List<Integer> downstreamJobIdList = JobWorkflowHelper.getInstance().parentSucceeded(xxlJobLog.getJobId(), xxlJobLog.getId());
+            if (!downstreamJobIdList.isEmpty()) {
+                String triggerDownstreamMsg = "<br><br><span style=\"color:#00c0ef;\" > >>>>>>>>>>>" + I18nUtil.getString("jobconf_trigger_downstream_run") + "<<<<<<<<<<< </span><br>";
+                for (int i = 0; i < downstreamJobIdList.size(); i++) {
+                    Integer downstreamJobId = downstreamJobIdList.get(i);
+                    //同时也是子任务的话已经在待调度的列表中了，不再重复调度
+                    if (!childJobIdList.contains(downstreamJobId)) {
+                        childJobIdList.add(downstreamJobId);
+                    }
+                    // {0}/{1} [任务ID={2}], 上游任务全部执行成功, 触发成功 <br>
+                    triggerDownstreamMsg += MessageFormat.format(I18nUtil.getString("jobconf_callback_downstream_msg"),
+                            (i + 1),
+                            downstreamJobIdList.size(),
+                            String.valueOf(downstreamJobId));
+                }
+                triggerChildMsg = triggerChildMsg != null ? triggerChildMsg + triggerDownstreamMsg : triggerDownstreamMsg;
+            }
         }
         if (triggerChildMsg != null) {
             xxlJobLog.setHandleMsg(xxlJobLog.getHandleMsg() + triggerChildMsg);
         }
+        return childJobIdList;
     }
 
 
@@ -3,6 +3,8 @@ package com.ytrue.job.admin.core.conf;
 import com.ytrue.job.admin.core.alarm.JobAlarmer;
 import com.ytrue.job.admin.core.scheduler.XxlJobScheduler;
 import com.ytrue.job.admin.dao.*;
+import com.ytrue.job.core.util.IpUtil;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Getter;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
@@ -56,19 +58,107 @@ public class XxlJobAdminConfig implements InitializingBean, DisposableBean {
     private int logretentiondays;
 
     /**
-     * 快线程池的最大线程数
+     * 所有执行器组的快线程池同时执行的触发器任务的上限，原来是唯一的快线程池的最大线程数
      */
     @Value("${xxl.job.triggerpool.fast.max}")
     private int triggerPoolFastMax;
 
 
     /**
-     * 慢线程池的最大线程数
+     * 所有执行器组的慢线程池同时执行的触发器任务的上限，原来是唯一的慢线程池的最大线程数
      */
     @Value("${xxl.job.triggerpool.slow.max}")
     private int triggerPoolSlowMax;
 
 
+    /**
+     * 分片广播的时候，同时向多少个执行器发起调用
+     */
+    @Value("${xxl.job.triggerpool.broadcast.parallelism:32}")
+    private int broadcastParallelism;
+
+
+    /**
+     * 每个执行器组的快线程池的最大线程数
+     */
+    @Value("${xxl.job.triggerpool.group.fast.max:50}")
+    private int triggerPoolGroupFastMax;
+
+
+    /**
+     * 每个执行器组的慢线程池的最大线程数
+     */
+    @Value("${xxl.job.triggerpool.group.slow.max:20}")
+    private int triggerPoolGroupSlowMax;
+
+
+    /**
+     * 每个执行器组的快慢线程池的队列容量，队列满了之后的触发会被记录为调度失败
+     */
+    @Value("${xxl.job.triggerpool.group.queue.size:1000}")
+    private int triggerPoolGroupQueueSize;
+
+
+    /**
+     * 是否开启分区调度，开启之后多个调度中心按照任务id分区调度，不再抢同一把数据库锁
+     */
+    @Value("${xxl.job.schedule.partition.enabled:false}")
+    @Getter
+    private boolean schedulePartitionEnabled;
+
+
+    /**
+     * 调度日志表是否按天分区，开启之前要先执行doc/tables_xxl_job_log_partition.sql，把xxl_job_log改成分区表
+     * 开启之后过期日志是按整个分区删除的，不再一条一条地删除
+     */
+    @Value("${xxl.job.log.partition.enabled:false}")
+    @Getter
+    private boolean logPartitionEnabled;
+
+
+    /**
+     * 调用执行器的时候是否使用二进制协议，执行器不支持的话还是使用http
+     */
+    @Value("${xxl.job.executor.binary.enabled:false}")
+    @Getter
+    private boolean executorBinaryEnabled;
+
+
+    /**
+     * 调度中心的端口，分区调度的时候用来生成节点的地址
+     */
+    @Value("${server.port:8080}")
+    @Getter
+    private int serverPort;
+
+
+    /**
+     * 调度中心的项目路径，生成调度中心的地址的时候用到
+     */
+    @Value("${server.servlet.context-path:}")
+    private String contextPath;
+
+
+    /**
+     * 执行器直接访问这个调度中心的地址，动态分片的任务要向触发调度的调度中心领取工作单元
+     * 没有配置的话就用本机的ip、端口和项目路径生成
+     */
+    @Value("${xxl.job.admin.address:}")
+    private String adminAddress;
+
+
+    public String getAdminAddress() {
+        if (adminAddress != null && adminAddress.trim().length() > 0) {
+            return adminAddress.trim();
+        }
+        String path = contextPath == null ? "" : contextPath.trim();
+        if (path.length() > 0 && !path.startsWith("/")) {
+            path = "/" + path;
+        }
+        return "http://" + IpUtil.getIpPort(serverPort) + path + "/";
+    }
+
+
     public String getI18n() {
         if (!Arrays.asList("zh_CN", "zh_TC", "en").contains(i18n)) {
             return "zh_CN";
@@ -102,6 +192,12 @@ public class XxlJobAdminConfig implements InitializingBean, DisposableBean {
     private XxlJobLogReportDao xxlJobLogReportDao;
     @Resource
     @Getter
+    private XxlJobAdminNodeDao xxlJobAdminNodeDao;
+    @Resource
+    @Getter
+    private XxlJobDependencyDao xxlJobDependencyDao;
+    @Resource
+    @Getter
     private JavaMailSender mailSender;
     @Resource
     @Getter
@@ -111,6 +207,13 @@ public class XxlJobAdminConfig implements InitializingBean, DisposableBean {
     @Getter
     private JobAlarmer jobAlarmer;
 
+    /**
+     * actuator自动配置的指标注册中心，调度中心的监控指标都记录在这里
+     */
+    @Resource
+    @Getter
+    private MeterRegistry meterRegistry;
+
     public int getTriggerPoolFastMax() {
         if (triggerPoolFastMax < 200) {
             return 200;
@@ -126,6 +229,38 @@ public class XxlJobAdminConfig implements InitializingBean, DisposableBean {
         return triggerPoolSlowMax;
     }
 
+
+    public int getBroadcastParallelism() {
+        if (broadcastParallelism < 1) {
+            return 1;
+        }
+        return broadcastParallelism;
+    }
+
+
+    public int getTriggerPoolGroupFastMax() {
+        if (triggerPoolGroupFastMax < 10) {
+            return 10;
+        }
+        return triggerPoolGroupFastMax;
+    }
+
+
+    public int getTriggerPoolGroupSlowMax() {
+        if (triggerPoolGroupSlowMax < 5) {
+            return 5;
+        }
+        return triggerPoolGroupSlowMax;
+    }
+
+
+    public int getTriggerPoolGroupQueueSize() {
+        if (triggerPoolGroupQueueSize < 100) {
+            return 100;
+        }
+        return triggerPoolGroupQueueSize;
+    }
+
     @Override
     public void destroy() throws Exception {
         //调用调度器的销毁方法，该方法实际上就是注销之前初始化的一些组件
@@ -0,0 +1,331 @@
+package com.ytrue.job.admin.core.cron;
+
+import java.text.ParseException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 10:12
+ * @description 编译之后的cron表达式。CronExpression每次计算下一次执行时间都要在Calendar和TreeSet之间来回倒腾，
+ * 而调度线程每调度一次定时任务都要计算一次，所以这里把解析好的TreeSet压缩成位图，秒、分、时、日、月、周各用一个long或int表示，
+ * 计算的时候直接用位运算找下一个合法的值，再配合java.time做日期的进位
+ * 注意，带有L、W、#这些特殊字符的表达式规则比较复杂，这种表达式不走位图，直接交给CronExpression去计算，保证结果和原来完全一致
+ */
+public final class CronSchedule {
+
+    /**
+     * CronExpression计算时间的上限，超过这一年就不再计算了，这里保持一致
+     */
+    private static final int MAX_SEARCH_YEAR = 2999;
+
+    /**
+     * 原始的cron表达式字符串
+     */
+    private final String expression;
+
+    /**
+     * 解析好的CronExpression，带有特殊字符的表达式会用它来计算
+     */
+    private final CronExpression cronExpression;
+
+    /**
+     * 是否可以走位图计算
+     */
+    private final boolean bitmapSupported;
+
+    /**
+     * 下面就是每个字段对应的位图了，第n位为1，就说明n这个值是合法的
+     * 秒和分都是0-59，所以用long
+     */
+    private final long secondBits;
+    private final long minuteBits;
+    /**
+     * 小时是0-23
+     */
+    private final int hourBits;
+    /**
+     * 日是1-31
+     */
+    private final long dayOfMonthBits;
+    /**
+     * 月是1-12
+     */
+    private final int monthBits;
+    /**
+     * 周是1-7，这里沿用quartz的规则，1是周日，7是周六
+     */
+    private final int dayOfWeekBits;
+    /**
+     * 年的范围比较大，就用BitSet了，下标直接就是年份
+     */
+    private final BitSet yearBits;
+
+    /**
+     * 日和周这两个字段只能有一个生效，这里记录是不是按日来计算
+     */
+    private final boolean dayOfMonthSpec;
+
+    /**
+     * 计算时间使用的时区，和CronExpression一样，默认使用系统时区
+     */
+    private final ZoneId zoneId;
+
+
+    private CronSchedule(String expression, CronExpression cronExpression) {
+        this.expression = expression;
+        this.cronExpression = cronExpression;
+        this.zoneId = cronExpression.getTimeZone().toZoneId();
+        //L、W、#这几种情况都交给CronExpression处理
+        this.bitmapSupported = !cronExpression.lastdayOfMonth
+                               && !cronExpression.nearestWeekday
+                               && !cronExpression.lastdayOfWeek
+                               && cronExpression.nthdayOfWeek == 0
+                               && cronExpression.lastdayOffset == 0;
+        this.secondBits = toBits(cronExpression.seconds, 0, 59);
+        this.minuteBits = toBits(cronExpression.minutes, 0, 59);
+        this.hourBits = (int) toBits(cronExpression.hours, 0, 23);
+        this.dayOfMonthBits = toBits(cronExpression.daysOfMonth, 1, 31);
+        this.monthBits = (int) toBits(cronExpression.months, 1, 12);
+        this.dayOfWeekBits = (int) toBits(cronExpression.daysOfWeek, 1, 7);
+        this.dayOfMonthSpec = !cronExpression.daysOfMonth.contains(CronExpression.NO_SPEC);
+        this.yearBits = new BitSet();
+        for (Integer year : cronExpression.years) {
+            //ALL_SPEC和NO_SPEC只是标记，真正的值已经填充到集合中了
+            if (year >= 1970) {
+                yearBits.set(year);
+            }
+        }
+    }
+
+
+    /**
+     * 解析cron表达式，得到编译好的对象
+     *
+     * @param expression
+     * @return
+     * @throws ParseException
+     */
+    public static CronSchedule compile(String expression) throws ParseException {
+        return new CronSchedule(expression, new CronExpression(expression));
+    }
+
+
+    /**
+     * 把TreeSet中的值转换成位图
+     *
+     * @param values
+     * @param min
+     * @param max
+     * @return
+     */
+    private static long toBits(Set<Integer> values, int min, int max) {
+        long bits = 0L;
+        for (Integer value : values) {
+            //这里会跳过ALL_SPEC和NO_SPEC这两个标记值
+            if (value >= min && value <= max) {
+                bits |= 1L << value;
+            }
+        }
+        return bits;
+    }
+
+
+    /**
+     * 从from位开始，找到下一个为1的位，找不到返回-1
+     *
+     * @param bits
+     * @param from
+     * @return
+     */
+    private static int nextBit(long bits, int from) {
+        if (from > 63) {
+            return -1;
+        }
+        long masked = bits & (-1L << from);
+        return masked == 0 ? -1 : Long.numberOfTrailingZeros(masked);
+    }
+
+
+    public String getExpression() {
+        return expression;
+    }
+
+
+    /**
+     * 得到给定时间之后的下一次执行时间，和CronExpression的同名方法语义一致
+     *
+     * @param date
+     * @return
+     */
+    public Date getNextValidTimeAfter(Date date) {
+        long next = nextFireTime(date.getTime());
+        return next < 0 ? null : new Date(next);
+    }
+
+
+    /**
+     * 一次计算出给定时间之后的count个执行时间，如果中途已经没有合法的时间了，返回的集合长度会小于count
+     *
+     * @param date
+     * @param count
+     * @return
+     */
+    public List<Date> getNextValidTimesAfter(Date date, int count) {
+        List<Date> result = new ArrayList<>(Math.max(count, 0));
+        long after = date.getTime();
+        for (int i = 0; i < count; i++) {
+            long next = nextFireTime(after);
+            if (next < 0) {
+                break;
+            }
+            result.add(new Date(next));
+            after = next;
+        }
+        return result;
+    }
+
+
+    /**
+     * 计算下一次执行时间的毫秒值，没有下一次执行时间就返回-1
+     *
+     * @param afterTime
+     * @return
+     */
+    public long nextFireTime(long afterTime) {
+        if (!bitmapSupported) {
+            Date next = cronExpression.getNextValidTimeAfter(new Date(afterTime));
+            return next == null ? -1 : next.getTime();
+        }
+        //和CronExpression一样，先向后移动一秒，并且忽略毫秒
+        long startSecond = Math.floorDiv(afterTime + 1000, 1000);
+        LocalDateTime candidate = LocalDateTime.ofInstant(Instant.ofEpochSecond(startSecond), zoneId);
+        while (candidate != null) {
+            candidate = nextLocalTime(candidate);
+            if (candidate == null) {
+                return -1;
+            }
+            //本地时间转换成真正的时间点，夏令时切换时跳过的那段本地时间是不存在的，和CronExpression一样直接跳过
+            //重复出现的那段本地时间，Calendar取的是切换之后的时间，这里也保持一致
+            if (!zoneId.getRules().getValidOffsets(candidate).isEmpty()) {
+                long fireTime = ZonedDateTime.of(candidate, zoneId).withLaterOffsetAtOverlap().toInstant().toEpochMilli();
+                if (fireTime > afterTime) {
+                    return fireTime;
+                }
+            }
+            candidate = candidate.plusSeconds(1);
+        }
+        return -1;
+    }
+
+
+    /**
+     * 从给定的本地时间开始(包含)，找到第一个满足表达式的本地时间
+     * 每一个字段不满足的时候，就把这个字段进位，并且把比它小的字段全部归零，然后重新开始判断
+     *
+     * @param time
+     * @return
+     */
+    private LocalDateTime nextLocalTime(LocalDateTime time) {
+        while (true) {
+            int year = time.getYear();
+            if (year > MAX_SEARCH_YEAR) {
+                return null;
+            }
+            //年
+            if (!yearBits.get(year)) {
+                int nextYear = yearBits.nextSetBit(year);
+                if (nextYear < 0) {
+                    return null;
+                }
+                time = LocalDateTime.of(nextYear, 1, 1, 0, 0, 0);
+                continue;
+            }
+            //月
+            int month = time.getMonthValue();
+            int nextMonth = nextBit(monthBits, month);
+            if (nextMonth < 0) {
+                time = LocalDateTime.of(year + 1, 1, 1, 0, 0, 0);
+                continue;
+            }
+            if (nextMonth != month) {
+                time = LocalDateTime.of(year, nextMonth, 1, 0, 0, 0);
+                continue;
+            }
+            //日
+            LocalDate date = time.toLocalDate();
+            int dayOffset = nextDayOffset(date);
+            if (dayOffset != 0) {
+                time = date.plusDays(dayOffset).atStartOfDay();
+                continue;
+            }
+            //时
+            int hour = time.getHour();
+            int nextHour = nextBit(hourBits, hour);
+            if (nextHour < 0) {
+                time = date.plusDays(1).atStartOfDay();
+                continue;
+            }
+            if (nextHour != hour) {
+                time = date.atTime(nextHour, 0, 0);
+                continue;
+            }
+            //分
+            int minute = time.getMinute();
+            int nextMinute = nextBit(minuteBits, minute);
+            if (nextMinute < 0) {
+                time = date.atTime(hour, 0, 0).plusHours(1);
+                continue;
+            }
+            if (nextMinute != minute) {
+                time = date.atTime(hour, nextMinute, 0);
+                continue;
+            }
+            //秒
+            int second = time.getSecond();
+            int nextSecond = nextBit(secondBits, second);
+            if (nextSecond < 0) {
+                time = date.atTime(hour, minute, 0).plusMinutes(1);
+                continue;
+            }
+            return time.withSecond(nextSecond);
+        }
+    }
+
+
+    /**
+     * 计算从给定日期开始，还要往后推几天才能满足日或周的规则，当天就满足的话返回0
+     * 如果当月已经没有满足的日期了，就返回到下个月1号的天数，交给上层重新判断月份
+     *
+     * @param date
+     * @return
+     */
+    private int nextDayOffset(LocalDate date) {
+        int day = date.getDayOfMonth();
+        if (dayOfMonthSpec) {
+            int nextDay = nextBit(dayOfMonthBits, day);
+            if (nextDay < 0 || nextDay > date.lengthOfMonth()) {
+                return date.lengthOfMonth() - day + 1;
+            }
+            return nextDay - day;
+        }
+        //java.time中周一是1，周日是7，这里转换成quartz的规则，周日是1，周六是7
+        int dayOfWeek = date.getDayOfWeek().getValue() % 7 + 1;
+        for (int i = 0; i < 7; i++) {
+            int candidate = (dayOfWeek - 1 + i) % 7 + 1;
+            if ((dayOfWeekBits & (1 << candidate)) != 0) {
+                return i;
+            }
+        }
+        //周字段不可能一个值都没有，走不到这里
+        return date.lengthOfMonth() - day + 1;
+    }
+}
@@ -0,0 +1,58 @@
+package com.ytrue.job.admin.core.cron;
+
+import java.text.ParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 10:40
+ * @description 编译好的cron表达式的缓存，key就是cron表达式字符串
+ * 调度线程每次计算任务的下一次执行时间都会用到cron表达式，如果每次都重新解析一遍，定时任务执行得越频繁，浪费的就越多
+ * 表达式字符串本身就是不可变的，所以用户修改了任务的cron表达式之后，自然就会对应到一个新的key，这里不需要额外的失效逻辑
+ */
+public class CronScheduleCache {
+
+    /**
+     * 缓存的最大容量，正常情况下不同的cron表达式不会有这么多，超过了就直接清空重新缓存，防止内存无限增长
+     */
+    private static final int MAX_CACHE_SIZE = 10000;
+
+    /**
+     * 缓存数据的容器
+     */
+    private static final ConcurrentMap<String, CronSchedule> cacheRepository = new ConcurrentHashMap<>();
+
+
+    /**
+     * 获取编译好的cron表达式，缓存中没有就解析一次再放进缓存
+     *
+     * @param expression
+     * @return
+     * @throws ParseException
+     */
+    public static CronSchedule get(String expression) throws ParseException {
+        if (expression == null) {
+            throw new IllegalArgumentException("cronExpression cannot be null");
+        }
+        CronSchedule cronSchedule = cacheRepository.get(expression);
+        if (cronSchedule != null) {
+            return cronSchedule;
+        }
+        //解析失败会直接抛出异常，错误的表达式不会进入缓存
+        cronSchedule = CronSchedule.compile(expression);
+        if (cacheRepository.size() >= MAX_CACHE_SIZE) {
+            cacheRepository.clear();
+        }
+        CronSchedule existed = cacheRepository.putIfAbsent(expression, cronSchedule);
+        return existed != null ? existed : cronSchedule;
+    }
+
+
+    /**
+     * 清空缓存
+     */
+    public static void clear() {
+        cacheRepository.clear();
+    }
+}
@@ -0,0 +1,306 @@
+package com.ytrue.job.admin.core.metrics;
+
+import com.ytrue.job.admin.core.thread.JobTriggerBulkhead;
+import io.micrometer.core.instrument.*;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 22:10
+ * @description 调度中心的监控指标，通过actuator的/actuator/metrics查看，接入了prometheus等监控系统的话也会一起上报
+ * 原来调度的延迟、误触发、线程池排队这些情况只能从日志中找，现在调度线程、触发器线程池、回调处理、注册中心都会在这里记录指标
+ * 各个组件不是spring的bean，所以指标都通过这个类的静态方法记录，调度器启动的时候用spring容器中的MeterRegistry初始化
+ * 初始化之前记录的指标会被直接丢弃
+ */
+public class JobMetrics {
+
+    /**
+     * 执行器地址最多记录的数量，执行器地址是作为标签记录的，地址太多的话不再记录新的地址
+     * 执行器下线之后它的指标会被删除，所以这里限制的是同时在线的执行器，执行器滚动发布换了地址也不会把名额用完
+     */
+    private static final int EXECUTOR_ADDRESS_LIMIT = 1000;
+
+    private static volatile MeterRegistry registry;
+
+    /**
+     * 计划触发时间和实际触发时间的差值
+     */
+    private static volatile Timer fireLatenessTimer;
+
+    /**
+     * 每次预读的任务数量
+     */
+    private static volatile DistributionSummary preReadSummary;
+
+    /**
+     * 执行器回调的结果从收到到写入数据库的时间
+     */
+    private static volatile Timer callbackLagTimer;
+
+    /**
+     * 误触发的次数，key为误触发策略
+     */
+    private static final ConcurrentMap<String, Counter> misfireCounterMap = new ConcurrentHashMap<>();
+
+    /**
+     * 各个后台线程每一轮的耗时，key为线程的名字
+     */
+    private static final ConcurrentMap<String, Timer> loopTimerMap = new ConcurrentHashMap<>();
+
+    /**
+     * 调用执行器的耗时，key为执行器地址，一个地址的成功和失败两个指标放在一起，这样数量的限制就是按地址计算的
+     */
+    private static final ConcurrentMap<String, ExecutorCallTimer> executorCallTimerMap = new ConcurrentHashMap<>();
+
+
+    /**
+     * 一个执行器地址的调用耗时，按调用结果分成两个指标
+     */
+    private static class ExecutorCallTimer {
+
+        private final Timer success;
+
+        private final Timer fail;
+
+        private ExecutorCallTimer(MeterRegistry meterRegistry, String address) {
+            this.success = executorCallTimer(meterRegistry, address, "success");
+            this.fail = executorCallTimer(meterRegistry, address, "fail");
+        }
+
+        private static Timer executorCallTimer(MeterRegistry meterRegistry, String address, String result) {
+            return Timer.builder("xxl.job.executor.call")
+                    .description("time spent calling executor run")
+                    .tag("address", address)
+                    .tag("result", result)
+                    .register(meterRegistry);
+        }
+    }
+
+
+    /**
+     * 调度器启动的时候调用
+     *
+     * @param meterRegistry 为null的时候不记录指标
+     */
+    public static void init(MeterRegistry meterRegistry) {
+        misfireCounterMap.clear();
+        loopTimerMap.clear();
+        executorCallTimerMap.clear();
+        if (meterRegistry == null) {
+            registry = null;
+            fireLatenessTimer = null;
+            preReadSummary = null;
+            callbackLagTimer = null;
+            return;
+        }
+        fireLatenessTimer = Timer.builder("xxl.job.schedule.lateness")
+                .description("actual trigger time minus planned trigger time")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        preReadSummary = DistributionSummary.builder("xxl.job.schedule.preread.size")
+                .description("jobs read by one schedule loop")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        callbackLagTimer = Timer.builder("xxl.job.callback.lag")
+                .description("time from callback received to handle result saved")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        registry = meterRegistry;
+    }
+
+
+    /**
+     * 记录一次触发相对于计划时间的延迟
+     *
+     * @param latenessMs
+     */
+    public static void recordFireLateness(long latenessMs) {
+        Timer timer = fireLatenessTimer;
+        if (timer != null) {
+            timer.record(Math.max(latenessMs, 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * 记录一次误触发
+     *
+     * @param misfireStrategy
+     */
+    public static void recordMisfire(String misfireStrategy) {
+        Counter counter = meter(misfireCounterMap, misfireStrategy, meterRegistry -> Counter.builder("xxl.job.schedule.misfire")
+                .description("jobs that missed their trigger time")
+                .tag("strategy", misfireStrategy)
+                .register(meterRegistry));
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+
+    /**
+     * 记录一次预读的任务数量
+     *
+     * @param size
+     */
+    public static void recordPreRead(int size) {
+        DistributionSummary summary = preReadSummary;
+        if (summary != null) {
+            summary.record(size);
+        }
+    }
+
+
+    /**
+     * 记录后台线程一轮的耗时，这些线程的工作主要是读写数据库
+     *
+     * @param loop   线程的名字，比如schedule、callback、registry
+     * @param costMs
+     */
+    public static void recordLoop(String loop, long costMs) {
+        Timer timer = meter(loopTimerMap, loop, meterRegistry -> Timer.builder("xxl.job.loop.duration")
+                .description("time spent by one round of a background loop, mostly database access")
+                .tag("loop", loop)
+                .register(meterRegistry));
+        if (timer != null) {
+            timer.record(costMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * 记录一次调用执行器的耗时
+     *
+     * @param address
+     * @param costMs
+     * @param success
+     */
+    public static void recordExecutorCall(String address, long costMs, boolean success) {
+        ExecutorCallTimer timer = executorCallTimerMap.get(address);
+        if (timer == null && executorCallTimerMap.size() < EXECUTOR_ADDRESS_LIMIT) {
+            timer = meter(executorCallTimerMap, address, meterRegistry -> new ExecutorCallTimer(meterRegistry, address));
+        }
+        if (timer != null) {
+            (success ? timer.success : timer.fail).record(costMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * 执行器下线之后删除它的调用耗时指标，腾出名额给新的地址，也不会一直上报已经不存在的地址
+     *
+     * @param address
+     */
+    public static void executorRemoved(String address) {
+        executorCallTimerMap.remove(address);
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry == null) {
+            return;
+        }
+        for (Meter meter : meterRegistry.find("xxl.job.executor.call").tag("address", address).meters()) {
+            meterRegistry.remove(meter);
+        }
+    }
+
+
+    /**
+     * 记录一条回调结果的延迟
+     *
+     * @param lagMs
+     */
+    public static void recordCallbackLag(long lagMs) {
+        Timer timer = callbackLagTimer;
+        if (timer != null) {
+            timer.record(Math.max(lagMs, 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * 监控一个执行器组的触发器线程池的排队数量、活跃线程数量和拒绝次数
+     *
+     * @param bulkhead
+     */
+    public static void bindTriggerBulkhead(JobTriggerBulkhead bulkhead) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("xxl.job.trigger.pool.queue", bulkhead, JobTriggerBulkhead::getQueueSize)
+                .description("triggers waiting in the trigger pools of an executor group")
+                .tag("appname", bulkhead.getAppname())
+                .register(meterRegistry);
+        Gauge.builder("xxl.job.trigger.pool.active", bulkhead, JobTriggerBulkhead::getActiveCount)
+                .description("active threads in the trigger pools of an executor group")
+                .tag("appname", bulkhead.getAppname())
+                .register(meterRegistry);
+        FunctionCounter.builder("xxl.job.trigger.pool.rejected", bulkhead, JobTriggerBulkhead::getRejectedCount)
+                .description("triggers rejected because the trigger pools of an executor group were full")
+                .tag("appname", bulkhead.getAppname())
+                .register(meterRegistry);
+    }
+
+
+    /**
+     * 执行器组被删除之后，它的触发器线程池也被回收了，对应的指标要一起删除，否则会一直保留最后的值
+     *
+     * @param appname
+     */
+    public static void unbindTriggerBulkhead(String appname) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry == null) {
+            return;
+        }
+        for (Meter meter : meterRegistry.find("xxl.job.trigger.pool.queue").tag("appname", appname).meters()) {
+            meterRegistry.remove(meter);
+        }
+        for (Meter meter : meterRegistry.find("xxl.job.trigger.pool.active").tag("appname", appname).meters()) {
+            meterRegistry.remove(meter);
+        }
+        for (Meter meter : meterRegistry.find("xxl.job.trigger.pool.rejected").tag("appname", appname).meters()) {
+            meterRegistry.remove(meter);
+        }
+    }
+
+
+    /**
+     * 监控一个队列的长度
+     *
+     * @param name
+     * @param description
+     * @param queue
+     */
+    public static void bindQueue(String name, String description, Collection<?> queue) {
+        MeterRegistry meterRegistry = registry;
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder(name, queue, Collection::size)
+                .description(description)
+                .register(meterRegistry);
+    }
+
+
+    /**
+     * 带标签的指标缓存在Map中，避免每次记录的时候都去MeterRegistry中查找
+     *
+     * @param meterMap
+     * @param key
+     * @param creator
+     * @param <T>
+     * @return 还没有初始化的时候返回null
+     */
+    private static <T> T meter(ConcurrentMap<String, T> meterMap, String key, Function<MeterRegistry, T> creator) {
+        T meter = meterMap.get(key);
+        MeterRegistry meterRegistry = registry;
+        if (meter != null || meterRegistry == null) {
+            return meter;
+        }
+        return meterMap.computeIfAbsent(key, k -> creator.apply(meterRegistry));
+    }
+}
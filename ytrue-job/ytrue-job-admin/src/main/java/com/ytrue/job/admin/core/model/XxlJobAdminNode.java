@@ -0,0 +1,34 @@
+package com.ytrue.job.admin.core.model;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 17:10
+ * @description 调度中心节点的实体类，每个调度中心实例启动之后都会在xxl_job_admin_node表中注册自己，并且定期续约
+ */
+@Data
+public class XxlJobAdminNode {
+    /**
+     * 主键id
+     */
+    private int id;
+    /**
+     * 节点的唯一标识，每次启动都会生成一个新的
+     */
+    private String nodeId;
+    /**
+     * 节点的地址，只是为了方便排查问题
+     */
+    private String address;
+    /**
+     * 租约的过期时间，按照数据库的时间计算的毫秒值，过了这个时间还没有续约的节点就认为已经下线了
+     */
+    private long leaseExpireTime;
+    /**
+     * 更新时间
+     */
+    private Date updateTime;
+}
@@ -0,0 +1,34 @@
+package com.ytrue.job.admin.core.model;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 03:40
+ * @description 定时任务之间的依赖关系，对应数据库中的xxl_job_dependency这张表，一条记录就是工作流中的一条边
+ */
+@Data
+public class XxlJobDependency {
+    /**
+     * 主键id
+     */
+    private int id;
+    /**
+     * 下游任务的id
+     */
+    private int jobId;
+    /**
+     * 上游任务的id
+     */
+    private int parentJobId;
+    /**
+     * 上游任务最近一次执行成功、还没有被下游任务消费的调度日志id，为0表示这个上游任务在本轮中还没有执行成功
+     */
+    private long parentLogId;
+    /**
+     * 更新时间
+     */
+    private Date updateTime;
+}
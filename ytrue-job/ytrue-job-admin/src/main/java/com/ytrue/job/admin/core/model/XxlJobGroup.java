@@ -1,9 +1,12 @@
 package com.ytrue.job.admin.core.model;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -47,14 +50,23 @@ public class XxlJobGroup {
      */
     private List<String> registryList;
 
+    /**
+     * registryList是从哪个addressList拆分出来的，addressList没有变化就不用再拆分一次
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String registryListSource;
+
     /**
      * 该方法会讲addressList属性中的所有地址转变成list集合
+     * 一次调度会多次调用这个方法，所以拆分的结果会缓存起来，返回的集合是不能修改的
      *
      * @return
      */
     public List<String> getRegistryList() {
-        if (addressList != null && addressList.trim().length() > 0) {
-            registryList = new ArrayList<>(Arrays.asList(addressList.split(",")));
+        if (addressList != null && addressList.trim().length() > 0 && addressList != registryListSource) {
+            registryList = Collections.unmodifiableList(Arrays.asList(addressList.split(",")));
+            registryListSource = addressList;
         }
         return registryList;
     }
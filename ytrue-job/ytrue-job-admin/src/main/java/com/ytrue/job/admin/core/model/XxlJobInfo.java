@@ -53,6 +53,8 @@ public class XxlJobInfo {
     private Date glueUpdatetime;
     //子任务id
     private String childJobId;
+    //上游任务id，多个用逗号分隔，存储在xxl_job_dependency表中，所有上游任务都执行成功之后才会触发这个任务
+    private String parentJobIds;
     //定时任务触发状态，0为停止，1为运行
     private int triggerStatus;
     //最近一次的触发时间
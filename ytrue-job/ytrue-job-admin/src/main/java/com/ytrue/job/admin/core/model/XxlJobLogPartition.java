@@ -0,0 +1,20 @@
+package com.ytrue.job.admin.core.model;
+
+import lombok.Data;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 20:10
+ * @description 调度日志表的一个分区，每个分区存放一天的调度日志
+ */
+@Data
+public class XxlJobLogPartition {
+    /**
+     * 分区的名称，格式为p加日期，比如p20261019，最后一个分区固定叫pmax
+     */
+    private String partitionName;
+    /**
+     * 分区的上界，也就是第二天的零点，格式为yyyy-MM-dd HH:mm:ss，从information_schema中查出来的值会带着引号，pmax的上界是MAXVALUE
+     */
+    private String lessThan;
+}
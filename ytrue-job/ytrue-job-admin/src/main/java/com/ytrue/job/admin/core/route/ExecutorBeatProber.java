@@ -0,0 +1,203 @@
+package com.ytrue.job.admin.core.route;
+
+import com.ytrue.job.admin.core.scheduler.XxlJobScheduler;
+import com.ytrue.job.admin.core.util.I18nUtil;
+import com.ytrue.job.core.biz.ExecutorBiz;
+import com.ytrue.job.core.biz.model.IdleBeatParam;
+import com.ytrue.job.core.biz.model.ReturnT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 21:40
+ * @description 忙碌转移和故障转移策略使用的执行器探测组件
+ * 原来这两个策略是按顺序一个一个地给执行器发送心跳检测请求，每个请求最多等待3秒，前面几个执行器出了问题的时候，一次调度就要等好几秒
+ * 现在所有执行器的探测请求是同时发出去的，最先返回成功的执行器就会被选中，整个探测过程最多等待PROBE_TIMEOUT_MS
+ * 最近的心跳检测结果会在内存中缓存一小段时间，前面的执行器刚刚都连不上的时候，刚刚心跳检测成功的执行器故障转移策略可以直接使用
+ * 刚刚连不上的执行器还是会再探测一次，执行器恢复之后马上就能用上，请求是同时发出的，只要有别的执行器成功了就不用等它
+ * 忙碌检测的结果只对一个定时任务有效，而且每次调度都可能变化，所以不缓存，也不会影响心跳检测的缓存
+ */
+public class ExecutorBeatProber {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorBeatProber.class);
+
+    /**
+     * 一次探测最多等待的时间
+     */
+    private static final long PROBE_TIMEOUT_MS = 1000;
+
+    /**
+     * 探测结果缓存的时间
+     */
+    private static final long BEAT_CACHE_TTL_MS = 5000;
+
+    /**
+     * 最多缓存的执行器数量，超过之后全部清空
+     */
+    private static final int BEAT_CACHE_SIZE = 4096;
+
+    /**
+     * 执行器最近的心跳检测结果，key为执行器地址，只缓存心跳检测的结果
+     */
+    private static final ConcurrentMap<String, BeatResult> beatCache = new ConcurrentHashMap<>();
+
+
+    /**
+     * 缓存的探测结果，alive表示执行器能不能连上，msg是探测时返回的信息
+     */
+    private static class BeatResult {
+
+        private final boolean alive;
+
+        private final String msg;
+
+        private final long expireTime;
+
+        private BeatResult(boolean alive, String msg, long expireTime) {
+            this.alive = alive;
+            this.msg = msg;
+            this.expireTime = expireTime;
+        }
+    }
+
+
+    /**
+     * 故障转移策略使用，选出一个心跳检测成功的执行器
+     *
+     * @param addressList
+     * @return 成功的时候content是选中的执行器地址
+     */
+    public static ReturnT<String> beat(List<String> addressList) {
+        return probe(addressList, "jobconf_beat", true, ExecutorBiz::beatAsync);
+    }
+
+
+    /**
+     * 忙碌转移策略使用，选出一个没有在执行这个定时任务的执行器
+     *
+     * @param addressList
+     * @param jobId
+     * @return 成功的时候content是选中的执行器地址
+     */
+    public static ReturnT<String> idleBeat(List<String> addressList, int jobId) {
+        IdleBeatParam idleBeatParam = new IdleBeatParam(jobId);
+        return probe(addressList, "jobconf_idleBeat", false, executorBiz -> executorBiz.idleBeatAsync(idleBeatParam));
+    }
+
+
+    /**
+     * 同时探测所有执行器，返回最先成功的那一个
+     *
+     * @param addressList
+     * @param titleKey    结果信息中使用的国际化key
+     * @param beat        为true的时候是心跳检测，会使用并更新缓存；忙碌检测不使用缓存
+     * @param probeCall   发送探测请求的方法
+     * @return
+     */
+    private static ReturnT<String> probe(List<String> addressList, String titleKey, boolean beat,
+                                         Function<ExecutorBiz, CompletableFuture<ReturnT<String>>> probeCall) {
+        long nowTime = System.currentTimeMillis();
+        int size = addressList.size();
+        AtomicReferenceArray<ReturnT<String>> results = new AtomicReferenceArray<>(size);
+        List<CompletableFuture<ReturnT<String>>> probeFutures = new ArrayList<>(size);
+        //最先成功的执行器在集合中的下标
+        AtomicInteger winner = new AtomicInteger(-1);
+        CompletableFuture<Void> successFuture = new CompletableFuture<>();
+        //前面是否有不是刚刚连不上的执行器，这些执行器可能会成功，所以后面缓存中能连上的执行器不能直接使用
+        boolean probingUnknown = false;
+
+        for (int i = 0; i < size; i++) {
+            String address = addressList.get(i);
+            BeatResult cached = beat ? beatCache.get(address) : null;
+            boolean cachedDead = false;
+            if (cached != null && cached.expireTime > nowTime) {
+                if (cached.alive && !probingUnknown) {
+                    //前面的执行器都是刚刚连不上的，刚刚心跳检测成功的执行器就直接使用，和原来按顺序选择的结果一致
+                    results.set(i, new ReturnT<>(ReturnT.SUCCESS_CODE, cached.msg));
+                    winner.compareAndSet(-1, i);
+                    successFuture.complete(null);
+                    break;
+                }
+                cachedDead = !cached.alive;
+            }
+            if (!cachedDead) {
+                probingUnknown = true;
+            }
+            CompletableFuture<ReturnT<String>> probeFuture;
+            try {
+                probeFuture = probeCall.apply(XxlJobScheduler.getExecutorBiz(address));
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+                probeFuture = CompletableFuture.completedFuture(new ReturnT<>(ReturnT.FAIL_CODE, "" + e));
+            }
+            int index = i;
+            probeFutures.add(probeFuture.whenComplete((result, e) -> {
+                if (result == null) {
+                    result = new ReturnT<>(ReturnT.FAIL_CODE, "" + e);
+                }
+                results.set(index, result);
+                if (beat) {
+                    //超过了等待时间才返回的结果也会记录到缓存中
+                    cacheResult(address, result.getCode() == ReturnT.SUCCESS_CODE, result.getMsg());
+                }
+                if (result.getCode() == ReturnT.SUCCESS_CODE && winner.compareAndSet(-1, index)) {
+                    successFuture.complete(null);
+                }
+            }));
+        }
+
+        if (winner.get() < 0 && !probeFutures.isEmpty()) {
+            CompletableFuture<Void> allFuture = CompletableFuture.allOf(probeFutures.toArray(new CompletableFuture[0]));
+            try {
+                CompletableFuture.anyOf(successFuture, allFuture).get(PROBE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                logger.warn(">>>>>>>>>>> xxl-job, executor probe timeout, addressList:{}", addressList);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                logger.error(">>>>>>>>>>> xxl-job, executor probe error:{}", e);
+            }
+        }
+
+        //按照执行器的顺序拼接探测结果
+        StringBuilder resultSB = new StringBuilder();
+        int winnerIndex = winner.get();
+        for (int i = 0; i < size; i++) {
+            ReturnT<String> result = results.get(i);
+            if (result == null) {
+                if (winnerIndex >= 0) {
+                    //已经选出了执行器，还没返回结果的就不用显示了
+                    continue;
+                }
+                result = new ReturnT<>(ReturnT.FAIL_CODE, "probe timeout.");
+            }
+            resultSB.append((resultSB.length() > 0) ? "<br><br>" : "")
+                    .append(I18nUtil.getString(titleKey) + "：")
+                    .append("<br>address：").append(addressList.get(i))
+                    .append("<br>code：").append(result.getCode())
+                    .append("<br>msg：").append(result.getMsg());
+        }
+        if (winnerIndex >= 0) {
+            ReturnT<String> probeResult = new ReturnT<>(ReturnT.SUCCESS_CODE, resultSB.toString());
+            probeResult.setContent(addressList.get(winnerIndex));
+            return probeResult;
+        }
+        return new ReturnT<>(ReturnT.FAIL_CODE, resultSB.toString());
+    }
+
+
+    private static void cacheResult(String address, boolean alive, String msg) {
+        if (beatCache.size() >= BEAT_CACHE_SIZE) {
+            beatCache.clear();
+        }
+        beatCache.put(address, new BeatResult(alive, msg, System.currentTimeMillis() + BEAT_CACHE_TTL_MS));
+    }
+}
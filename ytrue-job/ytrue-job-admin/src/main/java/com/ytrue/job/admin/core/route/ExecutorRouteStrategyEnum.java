@@ -33,11 +33,22 @@ public enum ExecutorRouteStrategyEnum {
     //忙碌转移
     BUSYOVER(I18nUtil.getString("jobconf_route_busyover"), new ExecutorRouteBusyover()),
     //分片广播
-    SHARDING_BROADCAST(I18nUtil.getString("jobconf_route_shard"), null);
+    SHARDING_BROADCAST(I18nUtil.getString("jobconf_route_shard"), null),
+    //动态分片，每个执行器都会触发，执行器处理完一个工作单元再向调度中心领取下一个
+    SHARDING_DYNAMIC(I18nUtil.getString("jobconf_route_shard_dynamic"), null);
 
     private final String title;
     private final ExecutorRouter router;
 
+    /**
+     * 是否在所有执行器上都触发一次，分片广播和动态分片都是
+     *
+     * @return
+     */
+    public boolean isSharding() {
+        return this == SHARDING_BROADCAST || this == SHARDING_DYNAMIC;
+    }
+
     public static ExecutorRouteStrategyEnum match(String name, ExecutorRouteStrategyEnum defaultItem) {
         if (name != null) {
             for (ExecutorRouteStrategyEnum item : ExecutorRouteStrategyEnum.values()) {
@@ -7,14 +7,19 @@ import com.ytrue.job.core.biz.model.TriggerParam;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * @author ytrue
  * @date 2023-08-31 9:34
  * @description 哈希一执行路由策略
+ * 原来每次路由都要给每个执行器地址计算100次md5，再放进TreeMap构建哈希环，执行器多、任务多的时候这里很耗cpu
+ * 现在哈希环按照执行器地址集合缓存起来，只有地址集合变化之后才重新构建，哈希环用排好序的数组保存，二分查找定位
+ * 哈希算法仍然是md5，并且和原来的TreeMap一样处理哈希冲突，所以同一个任务路由到的执行器和升级之前完全一样
+ * 多个调度中心滚动升级的时候，新旧版本的调度中心会把同一个任务路由到同一个执行器上，不会出现一次性的重新分配
  */
 public class ExecutorRouteConsistentHash extends ExecutorRouter {
 
@@ -23,13 +28,81 @@ public class ExecutorRouteConsistentHash extends ExecutorRouter {
      */
     private final static int VIRTUAL_NODE_NUM = 100;
 
+    /**
+     * 最多缓存的哈希环数量，执行器上下线之后旧的地址集合就用不到了，超过这个数量就全部清空重新构建
+     */
+    private final static int RING_CACHE_SIZE = 256;
+
+    /**
+     * 缓存的哈希环，key为执行器地址集合，地址集合一样的执行器组共用一个哈希环
+     */
+    private static final ConcurrentMap<List<String>, AddressRing> ringCache = new ConcurrentHashMap<>();
+
+
+    /**
+     * 构建好的哈希环，hashes是排好序的虚拟节点哈希值，addresses是对应位置上的执行器地址，构建之后不会再修改
+     */
+    private static class AddressRing {
+
+        private final long[] hashes;
+
+        private final String[] addresses;
+
+        private AddressRing(List<String> addressList) {
+            long[] nodeHashes = new long[addressList.size() * VIRTUAL_NODE_NUM];
+            int[] nodeIndexes = new int[nodeHashes.length];
+            int n = 0;
+            for (int index = 0; index < addressList.size(); index++) {
+                for (int i = 0; i < VIRTUAL_NODE_NUM; i++) {
+                    nodeHashes[n] = hash("SHARD-" + addressList.get(index) + "-NODE-" + i);
+                    nodeIndexes[n] = index;
+                    n++;
+                }
+            }
+            //按照哈希值排序，哈希值相同的时候和原来的TreeMap一样，保留后放进去的地址
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> nodeHashes[a] != nodeHashes[b] ? Long.compare(nodeHashes[a], nodeHashes[b]) : Integer.compare(b, a));
+            long[] sortedHashes = new long[n];
+            String[] sortedAddresses = new String[n];
+            int size = 0;
+            for (int i = 0; i < n; i++) {
+                long nodeHash = nodeHashes[order[i]];
+                if (size > 0 && sortedHashes[size - 1] == nodeHash) {
+                    continue;
+                }
+                sortedHashes[size] = nodeHash;
+                sortedAddresses[size] = addressList.get(nodeIndexes[order[i]]);
+                size++;
+            }
+            this.hashes = Arrays.copyOf(sortedHashes, size);
+            this.addresses = Arrays.copyOf(sortedAddresses, size);
+        }
+
+        /**
+         * 顺时针找到第一个大于等于jobHash的虚拟节点，没有的话就回到环的起点
+         *
+         * @param jobHash
+         * @return
+         */
+        private String locate(long jobHash) {
+            int index = Arrays.binarySearch(hashes, jobHash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return addresses[index < hashes.length ? index : 0];
+        }
+    }
+
     /**
      * md5散列的方式计算hash值。这个是源码中的注释，我复制过来了。如果大家感兴趣的话，可以看看下面这个方法
      *
      * @param key
      * @return
      */
-    private static long hash(String key) {
+    public static long hash(String key) {
         MessageDigest md5;
         try {
             md5 = MessageDigest.getInstance("MD5");
@@ -57,35 +130,28 @@ public class ExecutorRouteConsistentHash extends ExecutorRouter {
      * 这个方法的整体逻辑其实很简单，就是先计算每一个执行器地址的hash值，然后在计算定时任务id的hash值
      * 然后将定时任务的哈希值和执行器地址的哈希值做对比，获得距离定时任务id哈希值最近的那个执行器地址就行了，当然，这里要稍微形象一点
      * 定时任务的hash值构成了一个圆环，按照顺时针的方向，找到里定时任务id的哈希值最进的那个哈希值即可
-     * 这里用到了TreeMap这个数据结构
+     * 执行器地址的哈希环只在地址集合第一次出现的时候构建一次，之后每次路由只需要一次二分查找
      *
      * @param jobId
      * @param addressList
      * @return
      */
     public String hashJob(int jobId, List<String> addressList) {
-        TreeMap<Long, String> addressRing = new TreeMap<>();
-        for (String address : addressList) {
-            for (int i = 0; i < VIRTUAL_NODE_NUM; i++) {
-                //计算执行器地址的hash值
-                long addressHash = hash("SHARD-" + address + "-NODE-" + i);
-                //把地址hash值和地址放到TreeMap中
-                addressRing.put(addressHash, address);
+        AddressRing addressRing = ringCache.get(addressList);
+        if (addressRing == null) {
+            if (ringCache.size() >= RING_CACHE_SIZE) {
+                ringCache.clear();
+            }
+            //作为key的地址集合要拷贝一份，调用者之后修改了集合也不会影响缓存
+            List<String> key = List.copyOf(addressList);
+            addressRing = new AddressRing(key);
+            AddressRing exist = ringCache.putIfAbsent(key, addressRing);
+            if (exist != null) {
+                addressRing = exist;
             }
         }
-        //计算定时任务id的hahs值
-        long jobHash = hash(String.valueOf(jobId));
-        //TreeMap的tailMap方法在这里很重要，这个方法会让内部键值对的键跟jobHash做比较
-        //比jobHash的值大的键，对应的键值对都会返回给用户
-        //这里得到的lastRing就相当于圆环上所有比定时任务hash值大的hash值了
-        SortedMap<Long, String> lastRing = addressRing.tailMap(jobHash);
-        //如果不为空
-        if (!lastRing.isEmpty()) {
-            //取第一个就行，最接近定时任务hash值就行
-            return lastRing.get(lastRing.firstKey());
-        }
-        //如果为空，就从addressRing中获取第一个执行器地址即可
-        return addressRing.firstEntry().getValue();
+        //计算定时任务id的hahs值，然后在哈希环上查找
+        return addressRing.locate(hash(String.valueOf(jobId)));
     }
 
     @Override
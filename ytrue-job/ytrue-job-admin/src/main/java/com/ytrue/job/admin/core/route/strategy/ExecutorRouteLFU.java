@@ -7,88 +7,119 @@ import com.ytrue.job.core.biz.model.TriggerParam;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author ytrue
  * @date 2023-08-31 9:34
  * @description 最不经常使用的路由策略，频率/次数
+ * 原来每次路由都要遍历两遍地址集合检查执行器有没有变化，再把所有执行器按照使用次数排一次序，而且多个线程同时操作的是同一个HashMap
+ * 现在每个定时任务的使用次数用一个TreeSet按照次数排好序，只有执行器地址集合变化的时候才重新整理，平时只需要取出第一个、次数加1再放回去
+ * 不同的定时任务之间互不影响，同一个定时任务的路由用这个任务自己的锁保证线程安全
  */
 public class ExecutorRouteLFU extends ExecutorRouter {
 
 
     /**
-     * 这个Map缓存的key-value中的key就是定时任务的id，value是一个map，这个map中缓存的是执行器的地址和该地址被使用的次数
+     * 这个Map缓存的key-value中的key就是定时任务的id，value中缓存的是执行器的地址和该地址被使用的次数
      */
-    private static final ConcurrentMap<Integer, HashMap<String, Integer>> jobLfuMap = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Integer, JobLfu> jobLfuMap = new ConcurrentHashMap<>();
 
     /**
      * Map中数据的缓存时间
      */
-    private static long CACHE_VALID_TIME = 0;
+    private static volatile long CACHE_VALID_TIME = 0;
 
-    public String route(int jobId, List<String> addressList) {
-        //判断当前时间是否大于Map的缓存时间
-        if (System.currentTimeMillis() > CACHE_VALID_TIME) {
-            //如果大于，则意味着数据过期了，清除即可
-            jobLfuMap.clear();
-            //重新设置数据缓存有效期
-            CACHE_VALID_TIME = System.currentTimeMillis() + 1000 * 60 * 60 * 24;
-        }
 
-        //先通过定时任务的id从jobLfuMap中获得对应的value
-        HashMap<String, Integer> lfuItemMap = jobLfuMap.get(jobId);
-        if (lfuItemMap == null) {
-            //如果value为空，则创建一个Map
-            lfuItemMap = new HashMap<>();
-            //把Map添加到jobLfuMap中
-            jobLfuMap.putIfAbsent(jobId, lfuItemMap);   // 避免重复覆盖
-        }
+    /**
+     * 一个执行器地址的使用次数，在TreeSet中的时候不能修改次数，要先取出来再修改
+     */
+    private static class LfuItem {
 
-        //下面开始遍历执行器地址集合
-        for (String address : addressList) {
-            //首先是判断该执行器地址是不是第一次使用，如果是第一次使用，lfuItemMap里面肯定还没有数据
-            //所以就要为第一次使用的执行器初始化一个对应的使用次数
-            if (!lfuItemMap.containsKey(address) || lfuItemMap.get(address) > 1000000) {
-                //初始化操作在这里，因为这个路由策略说到底也是根据最不常用的次数来选择执行器的，所以，这里即便给执行器初始化了一个使用次数，最后还要判断一下哪个最不常用
-                //才选择哪个。这里做了一个随机数选择，从0到执行器集合的长度之间随机选一个数作为执行器对应的使用次数
-                //当然，当执行器使用次数大于1000000也会触发这个初始化操作
-                //这里之所以随机选择一次，是为了减轻执行器的压力，具体解释可以参考ExecutorRouteRound类中38-46行之间的解释
-                //因为我添加注释的时候，先添加的那个类，所以详细注释也先写在那里面了，这里就不重复了
-                lfuItemMap.put(address, new Random().nextInt(addressList.size()));
-            }
+        private final String address;
+
+        private int count;
+
+        private LfuItem(String address, int count) {
+            this.address = address;
+            this.count = count;
         }
+    }
+
+
+    /**
+     * 一个定时任务对应的所有执行器的使用次数
+     */
+    private static class JobLfu {
+
+        /**
+         * 上一次路由时的执行器地址集合，地址集合没有变化就不用整理下面的数据
+         */
+        private List<String> addressList = Collections.emptyList();
+
+        private final Map<String, LfuItem> itemMap = new HashMap<>();
 
-        //判断有没有过期的执行器
-        List<String> delKeys = new ArrayList<>();
-        for (String existKey : lfuItemMap.keySet()) {
-            if (!addressList.contains(existKey)) {
-                delKeys.add(existKey);
+        /**
+         * 按照使用次数排序，次数相同的按照地址排序，第一个就是使用次数最少的执行器
+         */
+        private final TreeSet<LfuItem> itemSet = new TreeSet<>(
+                Comparator.comparingInt((LfuItem item) -> item.count).thenComparing(item -> item.address));
+
+        /**
+         * 执行器地址集合变化之后，加入新的执行器，移除已经不在的执行器
+         *
+         * @param newAddressList
+         */
+        private void refresh(List<String> newAddressList) {
+            for (String address : newAddressList) {
+                if (!itemMap.containsKey(address)) {
+                    //第一次使用的执行器从0到执行器集合的长度之间随机选一个数作为使用次数，原因可以参考ExecutorRouteRound类中的解释
+                    LfuItem item = new LfuItem(address, ThreadLocalRandom.current().nextInt(newAddressList.size()));
+                    itemMap.put(address, item);
+                    itemSet.add(item);
+                }
+            }
+            Set<String> addressSet = new HashSet<>(newAddressList);
+            for (Iterator<LfuItem> it = itemMap.values().iterator(); it.hasNext(); ) {
+                LfuItem item = it.next();
+                if (!addressSet.contains(item.address)) {
+                    it.remove();
+                    itemSet.remove(item);
+                }
             }
+            addressList = List.copyOf(newAddressList);
         }
 
-        //如果有就把过期的执行器从lfuItemMap中移除
-        if (delKeys.size() > 0) {
-            for (String delKey : delKeys) {
-                lfuItemMap.remove(delKey);
+        private String route(List<String> newAddressList) {
+            if (!addressList.equals(newAddressList)) {
+                refresh(newAddressList);
             }
+            //取出使用次数最少的执行器，次数加1之后再放回去
+            LfuItem item = itemSet.pollFirst();
+            item.count++;
+            if (item.count > 1000000) {
+                //执行器使用次数大于1000000的时候也重新初始化一次
+                item.count = ThreadLocalRandom.current().nextInt(itemMap.size());
+            }
+            itemSet.add(item);
+            return item.address;
         }
+    }
 
-        //下面就开始选择具体的执行器来执行定时任务了，把lfuItemMap中的数据转移到lfuItemList中
-        List<Map.Entry<String, Integer>> lfuItemList = new ArrayList<>(lfuItemMap.entrySet());
-        //将lfuItemList中的数据按照执行器的使用次数做排序
-        Collections.sort(lfuItemList, new Comparator<Map.Entry<String, Integer>>() {
-            @Override
-            public int compare(Map.Entry<String, Integer> o1, Map.Entry<String, Integer> o2) {
-                return o1.getValue().compareTo(o2.getValue());
-            }
-        });
-        //获取到的第一个就是使用次数最少的执行器
-        Map.Entry<String, Integer> addressItem = lfuItemList.get(0);
-        String minAddress = addressItem.getKey();
-        //因为要是用它了，所以把执行器的使用次数加1
-        addressItem.setValue(addressItem.getValue() + 1);
-        //返回执行器地址
-        return addressItem.getKey();
+
+    public String route(int jobId, List<String> addressList) {
+        //判断当前时间是否大于Map的缓存时间
+        if (System.currentTimeMillis() > CACHE_VALID_TIME) {
+            //如果大于，则意味着数据过期了，清除即可
+            jobLfuMap.clear();
+            //重新设置数据缓存有效期
+            CACHE_VALID_TIME = System.currentTimeMillis() + 1000 * 60 * 60 * 24;
+        }
+        //先通过定时任务的id从jobLfuMap中获得对应的value，没有就创建一个
+        JobLfu jobLfu = jobLfuMap.computeIfAbsent(jobId, k -> new JobLfu());
+        synchronized (jobLfu) {
+            return jobLfu.route(addressList);
+        }
     }
 
 
@@ -4,9 +4,7 @@ import com.ytrue.job.admin.core.route.ExecutorRouter;
 import com.ytrue.job.core.biz.model.ReturnT;
 import com.ytrue.job.core.biz.model.TriggerParam;
 
-import java.util.ArrayList;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -14,6 +12,8 @@ import java.util.concurrent.ConcurrentMap;
  * @author ytrue
  * @date 2023-08-31 9:34
  * @description 最近最久未使用路由策略
+ * 原来每次路由都要遍历两遍地址集合检查执行器有没有变化，多个线程同时操作的还是同一个LinkedHashMap
+ * 现在只有执行器地址集合变化的时候才整理LinkedHashMap，平时只需要取出头节点，同一个定时任务的路由用这个任务自己的锁保证线程安全
  */
 public class ExecutorRouteLRU extends ExecutorRouter {
 
@@ -23,63 +23,67 @@ public class ExecutorRouteLRU extends ExecutorRouter {
      * 头部，从头节点取出的第一个数据就是最近最久未使用的数据
      * 这属于很基础的数据结构知识了，我就不再细说了
      */
-    private static final ConcurrentMap<Integer, LinkedHashMap<String, String>> jobLRUMap = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Integer, JobLru> jobLRUMap = new ConcurrentHashMap<>();
 
     /**
      * Map中数据的缓存时间
      */
-    private static long CACHE_VALID_TIME = 0;
+    private static volatile long CACHE_VALID_TIME = 0;
 
 
-    public String route(int jobId, List<String> addressList) {
-        //判断当前时间是否大于Map的缓存时间
-        if (System.currentTimeMillis() > CACHE_VALID_TIME) {
-            //如果大于，则意味着数据过期了，清除即可
-            jobLRUMap.clear();
-            //重新设置数据缓存有效期
-            CACHE_VALID_TIME = System.currentTimeMillis() + 1000 * 60 * 60 * 24;
-        }
+    /**
+     * 一个定时任务对应的所有执行器的访问顺序
+     */
+    private static class JobLru {
 
-        //根据定时任务id从jobLRUMap中获得对应的Map
-        LinkedHashMap<String, String> lruItem = jobLRUMap.get(jobId);
-        if (lruItem == null) {
-            //accessOrder为true就是让LinkedHashMap按访问顺序迭代的意思
-            //默认是使用插入顺序迭代
-            //如果为null说明该定时任务是第一次执行，所以要初始化一个Map
-            lruItem = new LinkedHashMap<String, String>(16, 0.75f, true);
-            //把Map放到jobLRUMap中
-            jobLRUMap.putIfAbsent(jobId, lruItem);
-        }
+        /**
+         * 上一次路由时的执行器地址集合，地址集合没有变化就不用整理下面的Map
+         */
+        private List<String> addressList = Collections.emptyList();
 
-        //判断有没有新添加的执行器
-        for (String address : addressList) {
-            //如果有就把它加入到lruItem中
-            if (!lruItem.containsKey(address)) {
-                lruItem.put(address, address);
-            }
-        }
+        /**
+         * accessOrder为true就是让LinkedHashMap按访问顺序迭代的意思，默认是使用插入顺序迭代
+         */
+        private final LinkedHashMap<String, String> lruItem = new LinkedHashMap<>(16, 0.75f, true);
 
-
-        //判断有没有过期的执行器
-        List<String> delKeys = new ArrayList<>();
-        for (String existKey : lruItem.keySet()) {
-            if (!addressList.contains(existKey)) {
-                delKeys.add(existKey);
+        /**
+         * 执行器地址集合变化之后，加入新的执行器，移除已经不在的执行器
+         *
+         * @param newAddressList
+         */
+        private void refresh(List<String> newAddressList) {
+            for (String address : newAddressList) {
+                //这里用putIfAbsent，不会改变已有执行器的访问顺序
+                lruItem.putIfAbsent(address, address);
             }
+            lruItem.keySet().retainAll(new HashSet<>(newAddressList));
+            addressList = List.copyOf(newAddressList);
         }
 
-        //有就把执行器删除
-        if (delKeys.size() > 0) {
-            for (String delKey : delKeys) {
-                lruItem.remove(delKey);
+        private String route(List<String> newAddressList) {
+            if (!addressList.equals(newAddressList)) {
+                refresh(newAddressList);
             }
+            //使用迭代器得到第一个数据，get之后它就被移到了链表尾部
+            String eldestKey = lruItem.keySet().iterator().next();
+            return lruItem.get(eldestKey);
         }
+    }
+
 
-        //使用迭代器得到第一个数据
-        String eldestKey = lruItem.entrySet().iterator().next().getKey();
-        //得到对应的执行器地址
-        //返回执行器地址
-        return lruItem.get(eldestKey);
+    public String route(int jobId, List<String> addressList) {
+        //判断当前时间是否大于Map的缓存时间
+        if (System.currentTimeMillis() > CACHE_VALID_TIME) {
+            //如果大于，则意味着数据过期了，清除即可
+            jobLRUMap.clear();
+            //重新设置数据缓存有效期
+            CACHE_VALID_TIME = System.currentTimeMillis() + 1000 * 60 * 60 * 24;
+        }
+        //根据定时任务id从jobLRUMap中获得对应的数据，如果为null说明该定时任务是第一次执行，要初始化一个
+        JobLru jobLru = jobLRUMap.computeIfAbsent(jobId, k -> new JobLru());
+        synchronized (jobLru) {
+            return jobLru.route(addressList);
+        }
     }
 
     @Override
@@ -1,11 +1,13 @@
 package com.ytrue.job.admin.core.scheduler;
 
 import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.metrics.JobMetrics;
 import com.ytrue.job.admin.core.thread.*;
 import com.ytrue.job.admin.core.util.I18nUtil;
 import com.ytrue.job.core.biz.ExecutorBiz;
 import com.ytrue.job.core.biz.client.ExecutorBizClient;
 import com.ytrue.job.core.enums.ExecutorBlockStrategyEnum;
+import com.ytrue.job.core.util.IpUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,20 +28,31 @@ public class XxlJobScheduler {
         //这里是初始化语言国际化的操作，其实内部就是把一些策略的中文初始化好
         initI18n();
 
+        //初始化监控指标，后面的组件启动之后就会开始记录指标了
+        JobMetrics.init(XxlJobAdminConfig.getAdminConfig().getMeterRegistry());
+
+        //初始化触发任务的流水线，调度日志的批量写入和异步的远程调用都是在这里面进行的
+        JobTriggerPipeline.getInstance().start();
+
         //初始化触发器线程池，这里面会创建两个线程池，一个快线程池，一个慢线程池
         //触发器任务的执行，就是由这两个线程池执行的
         JobTriggerPoolHelper.toStart();
 
-        //初始化注册中心组件，这里是个简易版本，后面会重构到和源码一致
-        //现在的版本并没有定时清理过期服务实例的功能
+        //初始化注册中心组件，执行器的心跳会定期批量写入数据库，过期的执行器也会定期清理，同时更新执行器组的地址
         JobRegistryHelper.getInstance().start();
 
         //该组件的功能就是当调度中心调度任务失败的时候，发送邮件警报的
         JobFailMonitorHelper.getInstance().start();
 
+        //加载定时任务之间的依赖关系，执行结果回调的时候要用它来判断哪些下游任务可以触发了
+        JobWorkflowHelper.getInstance().start();
+
         //启动调度中心接收执行器回调信息的工作组件
         JobCompleteHelper.getInstance().start();
 
+        //动态分片任务的清理线程，其他调度中心处理了回调的日志，要通过它从数据库中发现
+        JobShardDispatcher.getInstance().start();
+
         //该组件的功能也很简答，就是统计定时任务日志的信息，成功失败次数等等
         //同时也会清除过期日志，过期日志时间是用户写在配置文件中的，默认为30天
         JobLogReportHelper.getInstance().start();
@@ -50,6 +63,10 @@ public class XxlJobScheduler {
         //这里面会用到时间轮。这里我要再次强调一下，时间轮并不是线程，时间轮本身需要一个配合线程工作的容器
         //如果学过我的从零带你学Netty这门课，就会明白，时间轮的容器，可以用数组实现，也可以用Map实现
         //说得更准确点，容器加上工作线程组成了时间轮
+        //开启了分区调度的话，要先在集群中注册当前节点，拿到自己负责的槽位之后，调度线程才能开始工作
+        if (XxlJobAdminConfig.getAdminConfig().isSchedulePartitionEnabled()) {
+            JobPartitionHelper.getInstance().start(IpUtil.getIpPort(XxlJobAdminConfig.getAdminConfig().getServerPort()));
+        }
         JobScheduleHelper.getInstance().start();
     }
 
@@ -67,11 +84,18 @@ public class XxlJobScheduler {
      */
     public void destroy() throws Exception {
         JobScheduleHelper.getInstance().toStop();
+        if (XxlJobAdminConfig.getAdminConfig().isSchedulePartitionEnabled()) {
+            JobPartitionHelper.getInstance().toStop();
+        }
         JobLogReportHelper.getInstance().toStop();
+        JobShardDispatcher.getInstance().toStop();
         JobCompleteHelper.getInstance().toStop();
+        JobWorkflowHelper.getInstance().toStop();
         JobFailMonitorHelper.getInstance().toStop();
         JobRegistryHelper.getInstance().toStop();
         JobTriggerPoolHelper.toStop();
+        //触发器线程池关闭之后，再把流水线中剩下的调度日志写入数据库
+        JobTriggerPipeline.getInstance().toStop();
     }
 
 
@@ -109,7 +133,8 @@ public class XxlJobScheduler {
         //但是，在旧版本，也就是2.0.2版本之前的版本，在xxl-job客户端，也就是执行器实例中，是用jetty进行通信的
         //在2.0.2版本之后，将jetty改成了netty，这个大家了解一下即可
         //这时候，本来作为客户端的执行器，在使用Netty构建了服务端后，又拥有服务端的身份了
-        executorBiz = new ExecutorBizClient(address, XxlJobAdminConfig.getAdminConfig().getAccessToken());
+        //开启了二进制协议的话，和执行器之间使用长连接和二进制的请求，执行器不支持的时候还是使用http
+        executorBiz = new ExecutorBizClient(address, XxlJobAdminConfig.getAdminConfig().getAccessToken(), XxlJobAdminConfig.getAdminConfig().isExecutorBinaryEnabled());
         //把创建好的客户端放到Map中
         executorBizRepository.put(address, executorBiz);
         return executorBiz;
@@ -2,16 +2,15 @@ package com.ytrue.job.admin.core.thread;
 
 import com.ytrue.job.admin.core.complete.XxlJobCompleter;
 import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.metrics.JobMetrics;
 import com.ytrue.job.admin.core.model.XxlJobLog;
-import com.ytrue.job.admin.core.util.I18nUtil;
+import com.ytrue.job.admin.dao.XxlJobLogDao;
 import com.ytrue.job.core.biz.model.HandleCallbackParam;
 import com.ytrue.job.core.biz.model.ReturnT;
-import com.ytrue.job.core.util.DateUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.*;
 
 /**
@@ -42,6 +41,50 @@ public class JobCompleteHelper {
     private Thread monitorThread;
     private volatile boolean toStop = false;
 
+    /**
+     * 一批最多处理的回调信息条数
+     */
+    private static final int CALLBACK_BATCH_SIZE = 500;
+
+    /**
+     * 队列中最多积压的回调信息条数，队列满了就返回失败，执行器会把回调信息存储到本地，之后再重试
+     */
+    private static final int CALLBACK_QUEUE_CAPACITY = 20000;
+
+    /**
+     * 执行器回调过来的信息先放进这个队列，由下面的线程合并成一批，再交给回调线程池处理
+     * 原来每个回调请求都会提交一个任务给回调线程池，每条回调信息都要查询一次、更新一次数据库
+     * 整分钟大量任务一起执行完的时候，回调线程池很快就满了，只能让接收请求的线程自己去处理
+     * 回调信息放进队列就算回调成功了，所以队列是有界的，数据库跟不上的时候不会无限积压在内存中，调度中心宕机的时候丢失的也有限
+     */
+    private final LinkedBlockingQueue<PendingCallback> callbackQueue = new LinkedBlockingQueue<>(CALLBACK_QUEUE_CAPACITY);
+
+    /**
+     * 放入回调信息时使用的锁，一个请求中的回调信息要么全部放进队列，要么全部不放
+     */
+    private final Object enqueueLock = new Object();
+
+    /**
+     * 合并回调信息的线程
+     */
+    private Thread callbackThread;
+
+
+    /**
+     * 队列中的一条回调信息，记录了收到的时间，处理完之后用来计算回调的延迟
+     */
+    private static class PendingCallback {
+
+        private final HandleCallbackParam param;
+
+        private final long receiveTime;
+
+        private PendingCallback(HandleCallbackParam param, long receiveTime) {
+            this.param = param;
+            this.receiveTime = receiveTime;
+        }
+    }
+
 
     public void start() {
         //创建回调线程池
@@ -51,6 +94,33 @@ public class JobCompleteHelper {
         });
 
 
+        callbackThread = new Thread(() -> {
+            while (!toStop) {
+                try {
+                    PendingCallback first = callbackQueue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    List<PendingCallback> batch = new ArrayList<>(CALLBACK_BATCH_SIZE);
+                    batch.add(first);
+                    callbackQueue.drainTo(batch, CALLBACK_BATCH_SIZE - 1);
+                    callbackThreadPool.execute(() -> callbackPending(batch));
+                } catch (InterruptedException e) {
+                    if (!toStop) {
+                        logger.error(">>>>>>>>>>> xxl-job, JobCompleteHelper callback thread error:{}", e);
+                    }
+                } catch (Throwable e) {
+                    logger.error(">>>>>>>>>>> xxl-job, JobCompleteHelper callback thread error:{}", e);
+                }
+            }
+            logger.info(">>>>>>>>>>> xxl-job, JobCompleteHelper callback thread stop");
+        });
+        callbackThread.setDaemon(true);
+        callbackThread.setName("xxl-job, admin JobCompleteHelper-callbackThread");
+        callbackThread.start();
+        JobMetrics.bindQueue("xxl.job.callback.queue", "executor callbacks waiting to be handled", callbackQueue);
+
+
         //创建监控线程
         monitorThread = new Thread(() -> {
             //这里休息了一会，是因为需要等待JobTriggerPoolHelper组件初始化，因为不执行远程调度，也就没有
@@ -64,38 +134,17 @@ public class JobCompleteHelper {
             }
             while (!toStop) {
                 try {
-                    //这里得到了一个时间信息，就是当前时间向前10分钟的时间
-                    //这里传进去的参数-10，就是减10分钟的意思
-                    Date losedTime = DateUtil.addMinutes(new Date(), -10);
-                    //这里最后对应的就是这条sql语句
-                    //t.trigger_code = 200 AND t.handle_code = 0 AND t.trigger_time <![CDATA[ <= ]]> #{losedTime} AND t2.id IS NULL
-                    //其实就是判断了一下，现在在数据库中的xxljoblog的触发时间，其实就可以当作定时任务在调度中心开始执行的那个时间
-                    //这里其实就是把当前时间前十分钟内提交执行的定时任务，但是始终没有得到执行器回调的执行结果的定时任务全找出来了
-                    //因为t.handle_code = 0，并且注册表中也没有对应的数据了，说明心跳断了
-                    //具体的方法在XxlJobLogMapper中
-                    List<Long> losedJobIds = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().findLostJobIds(losedTime);
-                    if (losedJobIds != null && losedJobIds.size() > 0) {
-                        //开始遍历定时任务
-                        for (Long logId : losedJobIds) {
-                            XxlJobLog jobLog = new XxlJobLog();
-                            jobLog.setId(logId);
-                            //设置执行时间
-                            jobLog.setHandleTime(new Date());
-                            //设置失败状态
-                            jobLog.setHandleCode(ReturnT.FAIL_CODE);
-                            jobLog.setHandleMsg(I18nUtil.getString("joblog_lost_fail"));
-                            //更新失败的定时任务状态
-                            XxlJobCompleter.updateHandleInfoAndFinish(jobLog);
-                        }
-                    }
+                    //原来这里是用调度日志表关联注册表，查询触发超过10分钟、没有执行结果、执行器已经不在注册表中的日志
+                    //现在正在执行的任务都记录在内存中，只检查执行器已经下线的任务和到了截止时间的任务
+                    JobRunningTracker.getInstance().detectLost();
                 } catch (Exception e) {
                     if (!toStop) {
                         logger.error(">>>>>>>>>>> xxl-job, job fail monitor thread error:{}", e);
                     }
                 }
                 try {
-                    //每60秒工作一次
-                    TimeUnit.SECONDS.sleep(60);
+                    //只是检查内存中的索引，所以可以更频繁一些，执行器下线之后能更快地发现丢失的任务
+                    TimeUnit.SECONDS.sleep(10);
                 } catch (Exception e) {
                     if (!toStop) {
                         logger.error(e.getMessage(), e);
@@ -115,7 +164,25 @@ public class JobCompleteHelper {
      */
     public void toStop() {
         toStop = true;
-        callbackThreadPool.shutdownNow();
+        callbackThread.interrupt();
+        try {
+            callbackThread.join();
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
+        //队列中剩下的回调信息交给线程池处理完，执行器那边已经认为回调成功了，不处理的话这些结果就丢了
+        List<PendingCallback> remaining = new ArrayList<>();
+        callbackQueue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += CALLBACK_BATCH_SIZE) {
+            List<PendingCallback> batch = remaining.subList(from, Math.min(from + CALLBACK_BATCH_SIZE, remaining.size()));
+            callbackThreadPool.execute(() -> callbackPending(batch));
+        }
+        callbackThreadPool.shutdown();
+        try {
+            callbackThreadPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
         monitorThread.interrupt();
         try {
             monitorThread.join();
@@ -126,39 +193,117 @@ public class JobCompleteHelper {
 
 
     /**
-     * 处理回调信息的方法
+     * 处理回调信息的方法，回调信息只是放进队列，会和其他执行器的回调信息合并成一批处理
+     * 队列放不下这次的回调信息的话就返回失败，执行器会把回调信息存储到本地，过一会再回调
      *
      * @param callbackParamList
      * @return
      */
     public ReturnT<String> callback(List<HandleCallbackParam> callbackParamList) {
-        callbackThreadPool.execute(() -> {
+        if (toStop || callbackParamList.size() > CALLBACK_QUEUE_CAPACITY) {
+            //一次回调的信息比整个队列还多的话，放不进队列，就直接处理
+            callbackBatch(callbackParamList);
+            return ReturnT.SUCCESS;
+        }
+        long receiveTime = System.currentTimeMillis();
+        synchronized (enqueueLock) {
+            //取出回调信息的线程只会让队列变短，所以剩余的容量够的话，下面的offer一定都能成功
+            if (callbackQueue.remainingCapacity() < callbackParamList.size()) {
+                logger.warn(">>>>>>>>>>> xxl-job, callback queue is full, size:{}, rejected:{}", callbackQueue.size(), callbackParamList.size());
+                return new ReturnT<>(ReturnT.FAIL_CODE, "xxl-job callback queue is full.");
+            }
             for (HandleCallbackParam handleCallbackParam : callbackParamList) {
-                //在这里处理每一个回调的信息
-                ReturnT<String> callbackResult = callback(handleCallbackParam);
-                logger.debug(">>>>>>>>> JobApiController.callback {}, handleCallbackParam={}, callbackResult={}",
-                        (callbackResult.getCode() == ReturnT.SUCCESS_CODE ? "success" : "fail"), handleCallbackParam, callbackResult);
+                callbackQueue.offer(new PendingCallback(handleCallbackParam, receiveTime));
             }
-        });
+        }
+        //组件正好在放入的时候停止了，toStop中取出剩下的回调信息的时候可能已经错过了这些，这里自己处理掉
+        if (toStop) {
+            List<PendingCallback> remaining = new ArrayList<>();
+            callbackQueue.drainTo(remaining);
+            if (!remaining.isEmpty()) {
+                callbackPending(remaining);
+            }
+        }
         return ReturnT.SUCCESS;
     }
 
 
     /**
-     * 真正处理回调信息的方法
+     * 处理队列中取出的一批回调信息，处理完之后记录这一批的耗时和每条回调信息的延迟
+     *
+     * @param pendingList
+     */
+    private void callbackPending(List<PendingCallback> pendingList) {
+        long start = System.currentTimeMillis();
+        List<HandleCallbackParam> callbackParamList = new ArrayList<>(pendingList.size());
+        for (PendingCallback pending : pendingList) {
+            callbackParamList.add(pending.param);
+        }
+        callbackBatch(callbackParamList);
+        long nowTime = System.currentTimeMillis();
+        JobMetrics.recordLoop("callback", nowTime - start);
+        for (PendingCallback pending : pendingList) {
+            JobMetrics.recordCallbackLag(nowTime - pending.receiveTime);
+        }
+    }
+
+
+    /**
+     * 批量处理回调信息，先用一条sql语句把所有的日志查询出来，处理完之后再批量更新
+     *
+     * @param callbackParamList
+     */
+    private void callbackBatch(List<HandleCallbackParam> callbackParamList) {
+        //得到对应的xxljoblog对象
+        List<Long> logIdList = new ArrayList<>(callbackParamList.size());
+        for (HandleCallbackParam handleCallbackParam : callbackParamList) {
+            logIdList.add(handleCallbackParam.getLogId());
+        }
+        Map<Long, XxlJobLog> logMap = new HashMap<>();
+        for (int from = 0; from < logIdList.size(); from += CALLBACK_BATCH_SIZE) {
+            int to = Math.min(from + CALLBACK_BATCH_SIZE, logIdList.size());
+            //回调信息中带着日志的触发时间，用最早的那个限制查询范围，调度日志表分区之后只需要查找最近的几个分区
+            long minTriggerTime = Long.MAX_VALUE;
+            for (HandleCallbackParam handleCallbackParam : callbackParamList.subList(from, to)) {
+                minTriggerTime = Math.min(minTriggerTime, handleCallbackParam.getLogDateTim());
+            }
+            List<XxlJobLog> logList = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().loadByIdsFrom(logIdList.subList(from, to), XxlJobLogDao.triggerTimeFrom(minTriggerTime));
+            for (XxlJobLog log : logList) {
+                logMap.put(log.getId(), log);
+            }
+        }
+        List<XxlJobLog> finishLogList = new ArrayList<>(callbackParamList.size());
+        for (HandleCallbackParam handleCallbackParam : callbackParamList) {
+            //在这里处理每一个回调的信息
+            ReturnT<String> callbackResult = callback(handleCallbackParam, logMap.get(handleCallbackParam.getLogId()));
+            if (callbackResult.getCode() == ReturnT.SUCCESS_CODE) {
+                finishLogList.add(logMap.get(handleCallbackParam.getLogId()));
+            }
+            logger.debug(">>>>>>>>> JobApiController.callback {}, handleCallbackParam={}, callbackResult={}",
+                    (callbackResult.getCode() == ReturnT.SUCCESS_CODE ? "success" : "fail"), handleCallbackParam, callbackResult);
+        }
+        if (!finishLogList.isEmpty()) {
+            //更新数据库中的日志信息
+            XxlJobCompleter.updateHandleInfoAndFinishBatch(finishLogList);
+        }
+    }
+
+
+    /**
+     * 真正处理回调信息的方法，这里只修改日志对象，数据库由调用者批量更新
      *
      * @param handleCallbackParam
+     * @param log
      * @return
      */
-    private ReturnT<String> callback(HandleCallbackParam handleCallbackParam) {
-        //得到对应的xxljoblog对象
-        XxlJobLog log = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().load(handleCallbackParam.getLogId());
+    private ReturnT<String> callback(HandleCallbackParam handleCallbackParam, XxlJobLog log) {
         if (log == null) {
             return new ReturnT<>(ReturnT.FAIL_CODE, "log item not found.");
         }
         //判断日志对象的处理结果码
         //因为这个响应码无论是哪种情况都是大于0的，如果大于0了，说明已经回调一次了
         //如果等于0，说明还没得到回调信息，任务也可能还处于运行中状态
+        //同一批中同一条日志的重复回调也会在这里被过滤掉，因为前一条回调已经把结果码设置上了
         if (log.getHandleCode() > 0) {
             return new ReturnT<>(ReturnT.FAIL_CODE, "log repeate callback.");
         }
@@ -174,8 +319,6 @@ public class JobCompleteHelper {
         log.setHandleTime(new Date());
         log.setHandleCode(handleCallbackParam.getHandleCode());
         log.setHandleMsg(handleMsg.toString());
-        //更新数据库中的日志信息
-        XxlJobCompleter.updateHandleInfoAndFinish(log);
         return ReturnT.SUCCESS;
     }
 
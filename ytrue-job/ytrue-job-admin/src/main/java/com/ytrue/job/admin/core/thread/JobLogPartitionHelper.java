@@ -0,0 +1,127 @@
+package com.ytrue.job.admin.core.thread;
+
+import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.model.XxlJobLogPartition;
+import com.ytrue.job.core.util.DateUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 20:15
+ * @description 维护调度日志表分区的组件
+ * 原来清理过期日志是每次查出1000个日志id再按id删除，一直循环到删完为止，日志很多的时候会产生大量的undo日志，主从同步也会延迟
+ * 调度日志表按触发时间每天一个分区之后，清理过期日志只需要删除整个分区，不管这一天有多少日志，都只是一条DDL语句
+ * 分区要提前创建好，新的分区是从最后一个分区pmax中拆分出来的，pmax中没有数据的时候拆分几乎没有开销
+ * 这个组件本身没有线程，由JobLogReportHelper的工作线程定期调用
+ */
+public class JobLogPartitionHelper {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobLogPartitionHelper.class);
+
+    /**
+     * 最后一个分区的名称，存放还没有分区的日志
+     */
+    private static final String PARTITION_MAX = "pmax";
+
+    /**
+     * 提前创建多少天的分区，调度中心停机几天再启动，日志也不会都落到pmax中
+     */
+    private static final int PRE_CREATE_DAYS = 7;
+
+
+    /**
+     * 创建今天以及之后PRE_CREATE_DAYS天的分区，已经创建过的不会重复创建
+     *
+     * @return 调度日志表不是按天分区的话返回false
+     */
+    public static boolean ensurePartitions() {
+        List<XxlJobLogPartition> partitionList = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().findPartitions();
+        if (!isPartitioned(partitionList)) {
+            return false;
+        }
+        //找到已经创建的分区的最大上界，从这一天开始创建新的分区，中间停机错过的日期也会补上
+        Date maxLessThan = null;
+        for (XxlJobLogPartition partition : partitionList) {
+            Date lessThan = parseLessThan(partition);
+            if (lessThan != null && (maxLessThan == null || lessThan.after(maxLessThan))) {
+                maxLessThan = lessThan;
+            }
+        }
+        Date today = DateUtil.parseDate(DateUtil.formatDate(new Date()));
+        Date lastDay = DateUtil.addDays(today, PRE_CREATE_DAYS);
+        List<XxlJobLogPartition> newPartitionList = new ArrayList<>();
+        for (Date day = maxLessThan != null ? maxLessThan : today; !day.after(lastDay); day = DateUtil.addDays(day, 1)) {
+            XxlJobLogPartition partition = new XxlJobLogPartition();
+            partition.setPartitionName("p" + DateUtil.format(day, "yyyyMMdd"));
+            partition.setLessThan(DateUtil.formatDateTime(DateUtil.addDays(day, 1)));
+            newPartitionList.add(partition);
+        }
+        if (!newPartitionList.isEmpty()) {
+            XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().addPartitions(newPartitionList);
+            logger.info(">>>>>>>>>>> xxl-job, job log partition created, from:{}, to:{}",
+                    newPartitionList.get(0).getPartitionName(), newPartitionList.get(newPartitionList.size() - 1).getPartitionName());
+        }
+        return true;
+    }
+
+
+    /**
+     * 删除过期的分区，分区中所有日志的触发时间都早于clearBeforeTime，这个分区才会被删除
+     *
+     * @param clearBeforeTime
+     * @return 调度日志表不是按天分区的话返回false，这个时候调用者还是要一条一条地删除
+     */
+    public static boolean dropExpiredPartitions(Date clearBeforeTime) {
+        List<XxlJobLogPartition> partitionList = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().findPartitions();
+        if (!isPartitioned(partitionList)) {
+            return false;
+        }
+        List<String> expiredNames = new ArrayList<>();
+        for (XxlJobLogPartition partition : partitionList) {
+            Date lessThan = parseLessThan(partition);
+            if (lessThan != null && !lessThan.after(clearBeforeTime)) {
+                expiredNames.add(partition.getPartitionName());
+            }
+        }
+        if (!expiredNames.isEmpty()) {
+            XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().dropPartitions(expiredNames);
+            logger.info(">>>>>>>>>>> xxl-job, job log partition dropped:{}", expiredNames);
+        }
+        return true;
+    }
+
+
+    /**
+     * 判断调度日志表是不是按照doc/tables_xxl_job_log_partition.sql分区的，最后一个分区必须是pmax
+     *
+     * @param partitionList
+     * @return
+     */
+    private static boolean isPartitioned(List<XxlJobLogPartition> partitionList) {
+        if (partitionList == null || partitionList.isEmpty()
+                || !PARTITION_MAX.equals(partitionList.get(partitionList.size() - 1).getPartitionName())) {
+            logger.warn(">>>>>>>>>>> xxl-job, xxl.job.log.partition.enabled is true, but xxl_job_log is not partitioned by day, please run doc/tables_xxl_job_log_partition.sql");
+            return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * 解析分区的上界，pmax的上界是MAXVALUE，返回null
+     *
+     * @param partition
+     * @return
+     */
+    private static Date parseLessThan(XxlJobLogPartition partition) {
+        if (PARTITION_MAX.equals(partition.getPartitionName()) || partition.getLessThan() == null) {
+            return null;
+        }
+        return DateUtil.parseDateTime(partition.getLessThan().replace("'", "").trim());
+    }
+}
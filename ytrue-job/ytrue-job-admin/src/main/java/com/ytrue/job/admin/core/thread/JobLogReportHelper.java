@@ -1,26 +1,61 @@
 package com.ytrue.job.admin.core.thread;
 
 import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.model.XxlJobLog;
 import com.ytrue.job.admin.core.model.XxlJobLogReport;
+import com.ytrue.job.admin.dao.XxlJobLogReportDao;
+import com.ytrue.job.core.biz.model.ReturnT;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author ytrue
  * @date 2023-09-01 15:32
  * @description 该组件的功能也很简答，就是统计定时任务日志的信息，成功失败次数等等
  * 同时也会清除过期日志，过期日志时间是用户写在配置文件中的，默认为30天
+ * 原来每分钟都要对最近三天的调度日志做一次完整的聚合查询，日志多的时候这个查询非常慢
+ * 现在统计信息是增量维护的：调度日志插入、触发失败、执行结束的时候，只在内存中给对应那一天的计数器加减一，每分钟把增量写入数据库
+ * 增量是用加法写入的，多个调度中心各自写入自己的增量也不会冲突
+ * 另外每隔一段时间核对一次，只用索引统计一下每天的日志总数，和统计表中的总数不一致的时候，才重新做一次完整的聚合查询
+ * 日期变化之后，最近三天会完整地聚合一次，修正那些总数不变、只是状态统计有偏差的情况
+ * 聚合的结果不能直接覆盖统计表，别的调度中心手上可能还有没写入的增量，这些日志已经算在聚合结果里了，增量写入之后就会重复计算
+ * 所以聚合之后要等一段时间再聚合一次，两次结果一样，说明这段时间内这一天的日志没有变化，所有调度中心手上这一天的增量都已经写入了，这个时候才修正统计表
+ * 修正的时候带上读出来的统计数据做条件，期间有别的调度中心写入了增量，或者别的调度中心也在修正，都不会覆盖掉
+ * 一直有日志变化的那一天，会在之后的每次核对中重新聚合，直到它稳定下来为止
  */
 public class JobLogReportHelper {
 
 
     private static Logger logger = LoggerFactory.getLogger(JobLogReportHelper.class);
+
+    /**
+     * 核对统计信息的周期
+     */
+    private static final long RECONCILE_INTERVAL_MS = 10 * 60 * 1000;
+
+    /**
+     * 检查调度日志表分区的周期
+     */
+    private static final long PARTITION_INTERVAL_MS = 60 * 60 * 1000;
+
+    /**
+     * 两次聚合之间至少间隔的时间，要比写入增量的周期长，保证存活的调度中心都至少写入过一次增量
+     */
+    private static final long SETTLE_INTERVAL_MS = 3 * 60 * 1000;
+
+    /**
+     * 日志的三种统计状态，分别对应统计表中的运行中、成功、失败
+     */
+    private static final int STATUS_RUNNING = 0;
+    private static final int STATUS_SUC = 1;
+    private static final int STATUS_FAIL = 2;
+
     /**
      * 创建单例对象
      */
@@ -44,6 +79,57 @@ public class JobLogReportHelper {
      */
     private volatile boolean toStop = false;
 
+    /**
+     * 还没有写入数据库的增量，key为那一天零点的时间戳
+     */
+    private final ConcurrentMap<Long, ReportDelta> deltaMap = new ConcurrentHashMap<>();
+
+    /**
+     * 最近一次计算出来的一天的时间范围，第一个元素是零点的时间戳，第二个元素是第二天零点的时间戳
+     * 绝大多数日志都是当天的，缓存起来就不用每次都创建Calendar了
+     */
+    private volatile long[] dayRangeCache = new long[]{0, 0};
+
+    /**
+     * 已经聚合过一次、等着再次聚合确认的那些天，key为那一天零点的时间戳，只有工作线程会访问
+     */
+    private final Map<Long, PendingAggregate> pendingMap = new HashMap<>();
+
+    /**
+     * 上一次没有稳定下来的那些天，下一次核对的时候不管总数是否一致都要重新聚合，只有工作线程会访问
+     */
+    private final Set<Long> unsettledDays = new HashSet<>();
+
+
+    /**
+     * 一天的统计增量，数组的下标就是统计状态
+     */
+    private static class ReportDelta {
+
+        private final AtomicInteger[] counts = {new AtomicInteger(), new AtomicInteger(), new AtomicInteger()};
+
+        private void add(int status, int delta) {
+            counts[status].addAndGet(delta);
+        }
+    }
+
+
+    /**
+     * 第一次聚合的结果，以及聚合的时间
+     */
+    private static class PendingAggregate {
+
+        private final XxlJobLogReport report;
+
+        private final long aggregateTime;
+
+        private PendingAggregate(XxlJobLogReport report, long aggregateTime) {
+            this.report = report;
+            this.aggregateTime = aggregateTime;
+        }
+    }
+
+
     /**
      * 启动该组件的方法
      */
@@ -53,79 +139,52 @@ public class JobLogReportHelper {
             public void run() {
                 //定义一个变量，用来记录上一次清理日志的时间
                 long lastCleanLogTime = 0;
+                //上一次核对统计信息的时间
+                long lastReconcileTime = 0;
+                //上一次核对统计信息的时候是哪一天，刚启动的时候是0，所以启动之后会先完整地聚合一次
+                long lastReconcileDay = 0;
+                //上一次检查调度日志表分区的时间
+                long lastPartitionTime = 0;
                 while (!toStop) {
                     try {
-                        //根据时间开始遍历，这里遍历三次，实际上对应的是三天
-                        //分别为今天，昨天，前天，每次都遍历三天，收集这三天的日志信息
-                        for (int i = 0; i < 3; i++) {
-                            //得到当前时间日期
-                            Calendar itemDay = Calendar.getInstance();
-                            //这里就开始设置要获得具体时间了，如果是第一次循环，-i还是0，所以仍然是当前这一天
-                            //如果是第二次，第三次循环，就是-1，-2，得到的就是昨天和前天了
-                            itemDay.add(Calendar.DAY_OF_MONTH, -i);
-                            //设置小时
-                            itemDay.set(Calendar.HOUR_OF_DAY, 0);
-                            //设置分钟
-                            itemDay.set(Calendar.MINUTE, 0);
-                            //设置秒
-                            itemDay.set(Calendar.SECOND, 0);
-                            //设置毫秒
-                            itemDay.set(Calendar.MILLISECOND, 0);
-
-                            //得到今天的零点时间
-                            Date todayFrom = itemDay.getTime();
-                            //接下来设置的是今天的结束时间
-                            //设置23时
-                            itemDay.set(Calendar.HOUR_OF_DAY, 23);
-                            //设置分钟，到60分钟就是第二天的零时了，所以设置为59
-                            itemDay.set(Calendar.MINUTE, 59);
-                            //设置秒
-                            itemDay.set(Calendar.SECOND, 59);
-                            //设置毫秒
-                            itemDay.set(Calendar.MILLISECOND, 999);
-                            //得到这一天的截止日期，也就是24小时那个时刻
-                            Date todayTo = itemDay.getTime();
-
-                            //创建XxlJobLogReport对象，该对象就是用来封装收集到的日志信息的
-                            XxlJobLogReport xxlJobLogReport = new XxlJobLogReport();
-                            //先把该日志报告对应的哪一天设置进去，其他设置默认值0
-                            xxlJobLogReport.setTriggerDay(todayFrom);
-                            xxlJobLogReport.setRunningCount(0);
-                            xxlJobLogReport.setSucCount(0);
-                            xxlJobLogReport.setFailCount(0);
-
-                            //从数据库中查询具体信息，findLogReport方法就是查询数据库的方法，该方法会返回一个Map
-                            //有三组键值对，分别为triggerDayCount-value，triggerDayCountRunning-value，triggerDayCountSuc-value，
-                            //其中为triggerDayCount这一天触发的定时任务的个数，triggerDayCountRunning为正在运行的定时任务的个数
-                            //triggerDayCountSuc运行成功的定时任务个数
-                            //最后还有一个triggerDayCountFail，为运行失败的定时任务的个数，这个并不是从数据库中查到的，而是返回Map后，让总个数减去成功个数和正在运行个数计算出来的
-                            //对应的sql语句如下
-                            //    <select id="findLogReport" resultType="java.util.Map" >
-                            //		SELECT
-                            //			COUNT(handle_code) triggerDayCount,
-                            //			SUM(CASE WHEN (trigger_code in (0, 200) and handle_code = 0) then 1 else 0 end) as triggerDayCountRunning,
-                            //			SUM(CASE WHEN handle_code = 200 then 1 else 0 end) as triggerDayCountSuc
-                            //		FROM xxl_job_log
-                            //		WHERE trigger_time BETWEEN #{from} and #{to}
-                            //    </select>
-                            Map<String, Object> triggerCountMap = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().findLogReport(todayFrom, todayTo);
-
-                            if (triggerCountMap != null && triggerCountMap.size() > 0) {
-                                int triggerDayCount = triggerCountMap.containsKey("triggerDayCount") ? Integer.valueOf(String.valueOf(triggerCountMap.get("triggerDayCount"))) : 0;
-                                int triggerDayCountRunning = triggerCountMap.containsKey("triggerDayCountRunning") ? Integer.valueOf(String.valueOf(triggerCountMap.get("triggerDayCountRunning"))) : 0;
-                                int triggerDayCountSuc = triggerCountMap.containsKey("triggerDayCountSuc") ? Integer.valueOf(String.valueOf(triggerCountMap.get("triggerDayCountSuc"))) : 0;
-                                int triggerDayCountFail = triggerDayCount - triggerDayCountRunning - triggerDayCountSuc;
-                                //设置最新的信息
-                                xxlJobLogReport.setRunningCount(triggerDayCountRunning);
-                                xxlJobLogReport.setSucCount(triggerDayCountSuc);
-                                xxlJobLogReport.setFailCount(triggerDayCountFail);
-                            }
-                            //更新数据库信息
-                            int ret = XxlJobAdminConfig.getAdminConfig().getXxlJobLogReportDao().update(xxlJobLogReport);
-                            if (ret < 1) {
-                                //如果更新失败，则意味着数据库中还没有信息，是第一次收集这一天的信息，所以直接保存即可
-                                XxlJobAdminConfig.getAdminConfig().getXxlJobLogReportDao().save(xxlJobLogReport);
+                        //先把内存中的增量写入数据库，核对的时候数据库中的统计信息才是最新的
+                        flushDelta();
+                        long nowTime = System.currentTimeMillis();
+                        //已经等够时间的那些天，再聚合一次确认之后修正统计表
+                        settleReport(nowTime);
+                        if (nowTime - lastReconcileTime >= RECONCILE_INTERVAL_MS) {
+                            long today = dayOf(nowTime);
+                            boolean dayChanged = today != lastReconcileDay;
+                            //分别为今天，昨天，前天
+                            for (int i = 0; i < 3; i++) {
+                                Calendar itemDay = Calendar.getInstance();
+                                itemDay.setTimeInMillis(today);
+                                itemDay.add(Calendar.DAY_OF_MONTH, -i);
+                                //得到这一天的零点时间
+                                Date todayFrom = itemDay.getTime();
+                                //得到这一天的截止时间
+                                itemDay.set(Calendar.HOUR_OF_DAY, 23);
+                                itemDay.set(Calendar.MINUTE, 59);
+                                itemDay.set(Calendar.SECOND, 59);
+                                itemDay.set(Calendar.MILLISECOND, 999);
+                                Date todayTo = itemDay.getTime();
+                                if (dayChanged || unsettledDays.remove(todayFrom.getTime())) {
+                                    aggregateReport(todayFrom, todayTo);
+                                } else {
+                                    reconcileReport(todayFrom, todayTo);
+                                }
                             }
+                            lastReconcileTime = nowTime;
+                            lastReconcileDay = today;
+                            //三天之前的就不再管了
+                            long expireDay = today - TimeUnit.DAYS.toMillis(3);
+                            pendingMap.keySet().removeIf(day -> day <= expireDay);
+                            unsettledDays.removeIf(day -> day <= expireDay);
+                        }
+                        //调度日志表按天分区的话，每小时检查一次，提前把之后几天的分区创建好
+                        if (XxlJobAdminConfig.getAdminConfig().isLogPartitionEnabled() && nowTime - lastPartitionTime >= PARTITION_INTERVAL_MS) {
+                            lastPartitionTime = nowTime;
+                            JobLogPartitionHelper.ensurePartitions();
                         }
                     } catch (Exception e) {
                         if (!toStop) {
@@ -149,51 +208,64 @@ public class JobLogReportHelper {
                         expiredDay.set(Calendar.MILLISECOND, 0);
                         //得到10天前的具体时间，然后就以这个时间点为标尺，清除该时间之前的所有日志
                         Date clearBeforeTime = expiredDay.getTime();
-                        List<Long> logIds = null;
-                        do {
-                            //<select id="findClearLogIds" resultType="long" >
-                            //		SELECT id FROM xxl_job_log
-                            //		<trim prefix="WHERE" prefixOverrides="AND | OR" >
-                            //			<if test="jobGroup gt 0">
-                            //				AND job_group = #{jobGroup}
-                            //			</if>
-                            //			<if test="jobId gt 0">
-                            //				AND job_id = #{jobId}
-                            //			</if>
-                            //			<if test="clearBeforeTime != null">
-                            //				AND trigger_time <![CDATA[ <= ]]> #{clearBeforeTime}
-                            //			</if>
-                            //			<if test="clearBeforeNum gt 0">
-                            //				AND id NOT in(
-                            //				SELECT id FROM(
-                            //				SELECT id FROM xxl_job_log AS t
-                            //				<trim prefix="WHERE" prefixOverrides="AND | OR" >
-                            //					<if test="jobGroup gt 0">
-                            //						AND t.job_group = #{jobGroup}
-                            //					</if>
-                            //					<if test="jobId gt 0">
-                            //						AND t.job_id = #{jobId}
-                            //					</if>
-                            //				</trim>
-                            //				ORDER BY t.trigger_time desc
-                            //				LIMIT 0, #{clearBeforeNum}
-                            //				) t1
-                            //				)
-                            //			</if>
-                            //		</trim>
-                            //		order by id asc
-                            //		LIMIT #{pagesize}
-                            //	</select>
-                            //以上就是findClearLogIds方法对应的sql语句，可以看到在方法内传入的几个0，其实在sql语句中都会判断条件是否成立。如果是0条件就不会成立
-                            //所以最后查询的是小于这个时间的所有数据，也就是所有日志的id集合
-                            logIds = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().findClearLogIds(0, 0, clearBeforeTime, 0, 1000);
-                            //判断集合是否为空
-                            if (logIds != null && logIds.size() > 0) {
-                                //在这里根据id真正清除数据库中的信息
-                                XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().clearLog(logIds);
+                        //调度日志表按天分区的话，直接删除过期的分区
+                        boolean clearByPartition = false;
+                        if (XxlJobAdminConfig.getAdminConfig().isLogPartitionEnabled()) {
+                            try {
+                                clearByPartition = JobLogPartitionHelper.dropExpiredPartitions(clearBeforeTime);
+                            } catch (Exception e) {
+                                //删除分区失败了就等下一次再删除，不能退化成一条一条地删除
+                                clearByPartition = true;
+                                logger.error(">>>>>>>>>>> xxl-job, job log partition drop error:{}", e);
                             }
-                            //循环判断，直到集合中没有数据了。循环第一次就会把数据清空了，第二次循环的时候会查询一下数据库，查不到数据，就会直接退出循环了
-                        } while (logIds != null && logIds.size() > 0);
+                        }
+                        if (!clearByPartition) {
+                            List<Long> logIds = null;
+                            do {
+                                //<select id="findClearLogIds" resultType="long" >
+                                //		SELECT id FROM xxl_job_log
+                                //		<trim prefix="WHERE" prefixOverrides="AND | OR" >
+                                //			<if test="jobGroup gt 0">
+                                //				AND job_group = #{jobGroup}
+                                //			</if>
+                                //			<if test="jobId gt 0">
+                                //				AND job_id = #{jobId}
+                                //			</if>
+                                //			<if test="clearBeforeTime != null">
+                                //				AND trigger_time <![CDATA[ <= ]]> #{clearBeforeTime}
+                                //			</if>
+                                //			<if test="clearBeforeNum gt 0">
+                                //				AND id NOT in(
+                                //				SELECT id FROM(
+                                //				SELECT id FROM xxl_job_log AS t
+                                //				<trim prefix="WHERE" prefixOverrides="AND | OR" >
+                                //					<if test="jobGroup gt 0">
+                                //						AND t.job_group = #{jobGroup}
+                                //					</if>
+                                //					<if test="jobId gt 0">
+                                //						AND t.job_id = #{jobId}
+                                //					</if>
+                                //				</trim>
+                                //				ORDER BY t.trigger_time desc
+                                //				LIMIT 0, #{clearBeforeNum}
+                                //				) t1
+                                //				)
+                                //			</if>
+                                //		</trim>
+                                //		order by id asc
+                                //		LIMIT #{pagesize}
+                                //	</select>
+                                //以上就是findClearLogIds方法对应的sql语句，可以看到在方法内传入的几个0，其实在sql语句中都会判断条件是否成立。如果是0条件就不会成立
+                                //所以最后查询的是小于这个时间的所有数据，也就是所有日志的id集合
+                                logIds = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().findClearLogIds(0, 0, clearBeforeTime, 0, 1000);
+                                //判断集合是否为空
+                                if (logIds != null && logIds.size() > 0) {
+                                    //在这里根据id真正清除数据库中的信息
+                                    XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().clearLog(logIds);
+                                }
+                                //循环判断，直到集合中没有数据了。循环第一次就会把数据清空了，第二次循环的时候会查询一下数据库，查不到数据，就会直接退出循环了
+                            } while (logIds != null && logIds.size() > 0);
+                        }
                         //更新上一次清除日志信息的时间
                         lastCleanLogTime = System.currentTimeMillis();
                     }
@@ -205,6 +277,12 @@ public class JobLogReportHelper {
                         }
                     }
                 }
+                //线程停止之前，把剩下的增量写入数据库
+                try {
+                    flushDelta();
+                } catch (Exception e) {
+                    logger.error(">>>>>>>>>>> xxl-job, job log report flush error:{}", e);
+                }
                 logger.info(">>>>>>>>>>> xxl-job, job log report thread stop");
             }
         });
@@ -223,4 +301,274 @@ public class JobLogReportHelper {
             logger.error(e.getMessage(), e);
         }
     }
+
+
+    /**
+     * 一条调度日志插入数据库之后调用，给这条日志触发的那一天加一
+     *
+     * @param jobLog
+     */
+    public void logCreated(XxlJobLog jobLog) {
+        if (jobLog.getTriggerTime() == null) {
+            return;
+        }
+        deltaOf(jobLog.getTriggerTime().getTime()).add(statusOf(jobLog.getTriggerCode(), jobLog.getHandleCode()), 1);
+    }
+
+
+    /**
+     * 调度日志的触发结果或者执行结果发生变化之后调用，状态变了的话，原来的状态减一，新的状态加一
+     *
+     * @param triggerTime
+     * @param oldTriggerCode
+     * @param oldHandleCode
+     * @param newTriggerCode
+     * @param newHandleCode
+     */
+    public void logStatusChanged(Date triggerTime, int oldTriggerCode, int oldHandleCode, int newTriggerCode, int newHandleCode) {
+        if (triggerTime == null) {
+            return;
+        }
+        int oldStatus = statusOf(oldTriggerCode, oldHandleCode);
+        int newStatus = statusOf(newTriggerCode, newHandleCode);
+        if (oldStatus == newStatus) {
+            return;
+        }
+        ReportDelta delta = deltaOf(triggerTime.getTime());
+        delta.add(oldStatus, -1);
+        delta.add(newStatus, 1);
+    }
+
+
+    /**
+     * 计算日志的统计状态，和findLogReport的sql语句保持一致
+     *
+     * @param triggerCode
+     * @param handleCode
+     * @return
+     */
+    private static int statusOf(int triggerCode, int handleCode) {
+        if (handleCode == ReturnT.SUCCESS_CODE) {
+            return STATUS_SUC;
+        }
+        if ((triggerCode == 0 || triggerCode == ReturnT.SUCCESS_CODE) && handleCode == 0) {
+            return STATUS_RUNNING;
+        }
+        return STATUS_FAIL;
+    }
+
+
+    private ReportDelta deltaOf(long time) {
+        return deltaMap.computeIfAbsent(dayOf(time), k -> new ReportDelta());
+    }
+
+
+    /**
+     * 得到某个时刻所在那一天零点的时间戳
+     *
+     * @param time
+     * @return
+     */
+    private long dayOf(long time) {
+        long[] dayRange = dayRangeCache;
+        if (time >= dayRange[0] && time < dayRange[1]) {
+            return dayRange[0];
+        }
+        Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(time);
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+        long dayFrom = day.getTimeInMillis();
+        day.add(Calendar.DAY_OF_MONTH, 1);
+        dayRangeCache = new long[]{dayFrom, day.getTimeInMillis()};
+        return dayFrom;
+    }
+
+
+    /**
+     * 把内存中的增量写入数据库，写入失败的增量会加回去，下一次再写
+     */
+    private void flushDelta() {
+        //三天之前的计数器已经没有增量了，就从内存中移除
+        long expireDay = dayOf(System.currentTimeMillis()) - TimeUnit.DAYS.toMillis(3);
+        for (Map.Entry<Long, ReportDelta> entry : deltaMap.entrySet()) {
+            ReportDelta delta = entry.getValue();
+            int runningDelta = delta.counts[STATUS_RUNNING].getAndSet(0);
+            int sucDelta = delta.counts[STATUS_SUC].getAndSet(0);
+            int failDelta = delta.counts[STATUS_FAIL].getAndSet(0);
+            if (runningDelta == 0 && sucDelta == 0 && failDelta == 0) {
+                if (entry.getKey() < expireDay) {
+                    deltaMap.remove(entry.getKey(), delta);
+                }
+                continue;
+            }
+            try {
+                applyDelta(new Date(entry.getKey()), runningDelta, sucDelta, failDelta);
+            } catch (Exception e) {
+                delta.add(STATUS_RUNNING, runningDelta);
+                delta.add(STATUS_SUC, sucDelta);
+                delta.add(STATUS_FAIL, failDelta);
+                logger.error(">>>>>>>>>>> xxl-job, job log report flush error:{}", e);
+            }
+        }
+    }
+
+
+    private void applyDelta(Date triggerDay, int runningDelta, int sucDelta, int failDelta) {
+        XxlJobLogReportDao xxlJobLogReportDao = XxlJobAdminConfig.getAdminConfig().getXxlJobLogReportDao();
+        if (xxlJobLogReportDao.updateDelta(triggerDay, runningDelta, sucDelta, failDelta) > 0) {
+            return;
+        }
+        //数据库中还没有这一天的统计信息，就直接把增量插入进去，后面核对的时候发现不一致会重新聚合
+        XxlJobLogReport xxlJobLogReport = new XxlJobLogReport();
+        xxlJobLogReport.setTriggerDay(triggerDay);
+        xxlJobLogReport.setRunningCount(runningDelta);
+        xxlJobLogReport.setSucCount(sucDelta);
+        xxlJobLogReport.setFailCount(failDelta);
+        try {
+            xxlJobLogReportDao.save(xxlJobLogReport);
+        } catch (RuntimeException e) {
+            //别的调度中心可能刚好插入了这一天的统计信息，那就再更新一次
+            if (xxlJobLogReportDao.updateDelta(triggerDay, runningDelta, sucDelta, failDelta) < 1) {
+                throw e;
+            }
+        }
+    }
+
+
+    /**
+     * 核对一天的统计信息，这里只统计日志的总数，可以直接走trigger_time的索引，总数和统计表对不上的时候才完整地聚合一次
+     * 日志被手动清理、任务被删除、调度中心宕机丢失了增量，都会让总数对不上
+     *
+     * @param todayFrom
+     * @param todayTo
+     */
+    private void reconcileReport(Date todayFrom, Date todayTo) {
+        int logCount = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().findLogCount(todayFrom, todayTo);
+        XxlJobLogReport xxlJobLogReport = XxlJobAdminConfig.getAdminConfig().getXxlJobLogReportDao().load(todayFrom);
+        int reportCount = xxlJobLogReport != null
+                ? xxlJobLogReport.getRunningCount() + xxlJobLogReport.getSucCount() + xxlJobLogReport.getFailCount()
+                : 0;
+        if (xxlJobLogReport != null && reportCount == logCount) {
+            return;
+        }
+        logger.info(">>>>>>>>>>> xxl-job, job log report drift detected, triggerDay:{}, logCount:{}, reportCount:{}", todayFrom, logCount, reportCount);
+        aggregateReport(todayFrom, todayTo);
+    }
+
+
+    /**
+     * 完整地聚合一天的调度日志，这里还不能修正统计表，要等一段时间之后在settleReport中再聚合一次确认
+     *
+     * @param todayFrom
+     * @param todayTo
+     */
+    private void aggregateReport(Date todayFrom, Date todayTo) {
+        if (pendingMap.containsKey(todayFrom.getTime())) {
+            return;
+        }
+        pendingMap.put(todayFrom.getTime(), new PendingAggregate(findLogReport(todayFrom, todayTo), System.currentTimeMillis()));
+    }
+
+
+    /**
+     * 对等够时间的那些天再聚合一次，两次的结果一样才修正统计表，不一样说明这一天的日志还在变化，下一次核对的时候再重新聚合
+     *
+     * @param nowTime
+     */
+    private void settleReport(long nowTime) {
+        Iterator<Map.Entry<Long, PendingAggregate>> iterator = pendingMap.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, PendingAggregate> entry = iterator.next();
+            PendingAggregate pending = entry.getValue();
+            if (nowTime - pending.aggregateTime < SETTLE_INTERVAL_MS) {
+                continue;
+            }
+            iterator.remove();
+            Date todayFrom = new Date(entry.getKey());
+            Calendar itemDay = Calendar.getInstance();
+            itemDay.setTime(todayFrom);
+            itemDay.set(Calendar.HOUR_OF_DAY, 23);
+            itemDay.set(Calendar.MINUTE, 59);
+            itemDay.set(Calendar.SECOND, 59);
+            itemDay.set(Calendar.MILLISECOND, 999);
+            Date todayTo = itemDay.getTime();
+            //先读统计表再聚合，聚合的结果没有变化，说明读之前所有的增量都已经写入了
+            XxlJobLogReportDao xxlJobLogReportDao = XxlJobAdminConfig.getAdminConfig().getXxlJobLogReportDao();
+            XxlJobLogReport storedReport = xxlJobLogReportDao.load(todayFrom);
+            XxlJobLogReport xxlJobLogReport = findLogReport(todayFrom, todayTo);
+            if (!sameCount(pending.report, xxlJobLogReport)) {
+                unsettledDays.add(entry.getKey());
+                continue;
+            }
+            if (storedReport == null) {
+                try {
+                    xxlJobLogReportDao.save(xxlJobLogReport);
+                } catch (RuntimeException e) {
+                    //别的调度中心刚好插入了这一天的统计信息，下一次核对的时候再看
+                    unsettledDays.add(entry.getKey());
+                }
+                continue;
+            }
+            if (sameCount(storedReport, xxlJobLogReport)) {
+                continue;
+            }
+            logger.info(">>>>>>>>>>> xxl-job, job log report settle, triggerDay:{}, running:{}->{}, suc:{}->{}, fail:{}->{}", todayFrom,
+                    storedReport.getRunningCount(), xxlJobLogReport.getRunningCount(),
+                    storedReport.getSucCount(), xxlJobLogReport.getSucCount(),
+                    storedReport.getFailCount(), xxlJobLogReport.getFailCount());
+            if (xxlJobLogReportDao.updateIfUnchanged(xxlJobLogReport, storedReport) < 1) {
+                //读出来之后统计表又被别的调度中心更新了，下一次核对的时候再看
+                unsettledDays.add(entry.getKey());
+            }
+        }
+    }
+
+
+    private static boolean sameCount(XxlJobLogReport a, XxlJobLogReport b) {
+        return a.getRunningCount() == b.getRunningCount()
+                && a.getSucCount() == b.getSucCount()
+                && a.getFailCount() == b.getFailCount();
+    }
+
+
+    /**
+     * 完整地聚合一天的调度日志
+     * <select id="findLogReport" resultType="java.util.Map" >
+     * SELECT
+     * COUNT(handle_code) triggerDayCount,
+     * SUM(CASE WHEN (trigger_code in (0, 200) and handle_code = 0) then 1 else 0 end) as triggerDayCountRunning,
+     * SUM(CASE WHEN handle_code = 200 then 1 else 0 end) as triggerDayCountSuc
+     * FROM xxl_job_log
+     * WHERE trigger_time BETWEEN #{from} and #{to}
+     * </select>
+     *
+     * @param todayFrom
+     * @param todayTo
+     * @return
+     */
+    private XxlJobLogReport findLogReport(Date todayFrom, Date todayTo) {
+        //创建XxlJobLogReport对象，该对象就是用来封装收集到的日志信息的
+        XxlJobLogReport xxlJobLogReport = new XxlJobLogReport();
+        //先把该日志报告对应的哪一天设置进去，其他设置默认值0
+        xxlJobLogReport.setTriggerDay(todayFrom);
+        xxlJobLogReport.setRunningCount(0);
+        xxlJobLogReport.setSucCount(0);
+        xxlJobLogReport.setFailCount(0);
+        //失败的个数并不是从数据库中查到的，而是让总个数减去成功个数和正在运行个数计算出来的
+        Map<String, Object> triggerCountMap = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().findLogReport(todayFrom, todayTo);
+        if (triggerCountMap != null && triggerCountMap.size() > 0) {
+            int triggerDayCount = triggerCountMap.containsKey("triggerDayCount") ? Integer.valueOf(String.valueOf(triggerCountMap.get("triggerDayCount"))) : 0;
+            int triggerDayCountRunning = triggerCountMap.containsKey("triggerDayCountRunning") ? Integer.valueOf(String.valueOf(triggerCountMap.get("triggerDayCountRunning"))) : 0;
+            int triggerDayCountSuc = triggerCountMap.containsKey("triggerDayCountSuc") ? Integer.valueOf(String.valueOf(triggerCountMap.get("triggerDayCountSuc"))) : 0;
+            int triggerDayCountFail = triggerDayCount - triggerDayCountRunning - triggerDayCountSuc;
+            //设置最新的信息
+            xxlJobLogReport.setRunningCount(triggerDayCountRunning);
+            xxlJobLogReport.setSucCount(triggerDayCountSuc);
+            xxlJobLogReport.setFailCount(triggerDayCountFail);
+        }
+        return xxlJobLogReport;
+    }
 }
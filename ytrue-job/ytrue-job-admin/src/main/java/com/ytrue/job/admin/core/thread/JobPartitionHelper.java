@@ -0,0 +1,254 @@
+package com.ytrue.job.admin.core.thread;
+
+import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.model.XxlJobAdminNode;
+import com.ytrue.job.admin.core.route.strategy.ExecutorRouteConsistentHash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 17:20
+ * @description 调度中心集群的分区组件
+ * 原来所有的调度中心都要抢xxl_job_lock表中的同一行锁，同一时刻只有一个节点在调度任务，节点再多也没有用
+ * 现在每个调度中心启动之后都会在xxl_job_admin_node表中注册自己，并且定期续约，租约过期的节点就认为已经下线了
+ * 所有任务按照id对SLOT_COUNT取余分到固定的槽位中，槽位再用一致性哈希分配给存活的节点，每个节点只调度自己负责的槽位中的任务，不再需要全局锁
+ * 用一致性哈希的好处是节点上线或者下线的时候，只有一小部分槽位会换节点
+ * 节点变化之后，每个节点最多要等一个续约周期才能感知到，这段时间内新旧两个节点可能都认为自己负责同一个任务，
+ * 所以调度线程更新任务下次调度时间的时候要带上原来的调度时间做条件，更新成功的节点才能触发任务，这样任务就不会被重复触发
+ * 租约的过期时间是在sql中用数据库的当前时间计算的，判断别的节点是否下线也用数据库的时间，各个节点本地的时钟不一致也没有关系
+ * 当前节点判断自己的租约是否还有效，用的是本地单调递增的System.nanoTime，从发起续约之前开始计算，所以只会比数据库中的租约先过期
+ */
+public class JobPartitionHelper {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobPartitionHelper.class);
+
+    /**
+     * 槽位的数量，这个值决定了分区的粒度，所有节点必须一致，所以写死了
+     */
+    public static final int SLOT_COUNT = 1024;
+
+    /**
+     * 每个节点在哈希环上的虚拟节点数量
+     */
+    private static final int VIRTUAL_NODE_NUM = 100;
+
+    /**
+     * 续约的周期
+     */
+    private static final long LEASE_RENEW_MS = 3000;
+
+    /**
+     * 租约的有效时间，连续三次续约失败，节点就会被别的节点当作下线了
+     */
+    private static final long LEASE_TIMEOUT_MS = 10000;
+
+    private static JobPartitionHelper instance = new JobPartitionHelper();
+
+    public static JobPartitionHelper getInstance() {
+        return instance;
+    }
+
+
+    /**
+     * 当前节点的标识，每次启动都会重新生成，这样重启之后不会和上一次的租约混在一起
+     */
+    private String nodeId;
+
+    /**
+     * 当前节点的地址
+     */
+    private String address;
+
+    /**
+     * 当前存活的节点，按照节点标识排序，用来判断节点是否发生了变化
+     */
+    private volatile List<String> aliveNodeIds = Collections.emptyList();
+
+    /**
+     * 当前节点负责的槽位
+     */
+    private volatile List<Integer> ownedSlots = Collections.emptyList();
+
+    /**
+     * 当前节点负责的槽位，用来快速判断某个任务是否归当前节点调度
+     */
+    private volatile boolean[] ownedSlotFlags = new boolean[SLOT_COUNT];
+
+    /**
+     * 当前节点自己的租约过期时间，是System.nanoTime的值，过了这个时间还没有续约成功，别的节点就会接管这些槽位，当前节点也必须停止调度
+     */
+    private volatile long leaseExpireNanos = System.nanoTime();
+
+    private Thread leaseThread;
+
+    private volatile boolean toStop = false;
+
+
+    public void start(String address) {
+        toStop = false;
+        this.address = address;
+        this.nodeId = address + "-" + UUID.randomUUID().toString().replace("-", "").substring(0, 8);
+        //先同步续约一次，这样调度线程第一次工作的时候就知道自己负责哪些槽位了
+        renew();
+        leaseThread = new Thread(() -> {
+            while (!toStop) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(LEASE_RENEW_MS);
+                } catch (InterruptedException e) {
+                    if (!toStop) {
+                        logger.error(e.getMessage(), e);
+                    }
+                }
+                if (!toStop) {
+                    renew();
+                }
+            }
+            logger.info(">>>>>>>>>>> xxl-job, JobPartitionHelper lease thread stop");
+        });
+        leaseThread.setDaemon(true);
+        leaseThread.setName("xxl-job, admin JobPartitionHelper-leaseThread");
+        leaseThread.start();
+        logger.info(">>>>>>>>>>> xxl-job, JobPartitionHelper start, nodeId:{}", nodeId);
+    }
+
+
+    public void toStop() {
+        toStop = true;
+        leaseThread.interrupt();
+        try {
+            leaseThread.join();
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
+        leaseExpireNanos = System.nanoTime();
+        //主动删除自己的租约，别的节点下次续约的时候就会接管这些槽位，不用等租约过期
+        try {
+            XxlJobAdminConfig.getAdminConfig().getXxlJobAdminNodeDao().delete(nodeId);
+        } catch (Exception e) {
+            logger.error(">>>>>>>>>>> xxl-job, JobPartitionHelper remove node error:{}", e);
+        }
+        logger.info(">>>>>>>>>>> xxl-job, JobPartitionHelper stop");
+    }
+
+
+    /**
+     * 续约一次，同时清理下线的节点，如果存活的节点发生了变化，就重新分配槽位
+     */
+    void renew() {
+        try {
+            //在发起续约之前记下本地时间，数据库中的租约是在这之后才开始计算的
+            long renewNanos = System.nanoTime();
+            int ret = XxlJobAdminConfig.getAdminConfig().getXxlJobAdminNodeDao().renew(nodeId, LEASE_TIMEOUT_MS);
+            if (ret < 1) {
+                XxlJobAdminConfig.getAdminConfig().getXxlJobAdminNodeDao().save(nodeId, address, LEASE_TIMEOUT_MS);
+            }
+            XxlJobAdminConfig.getAdminConfig().getXxlJobAdminNodeDao().removeDead();
+            List<XxlJobAdminNode> aliveNodes = XxlJobAdminConfig.getAdminConfig().getXxlJobAdminNodeDao().findAlive();
+            List<String> nodeIds = new ArrayList<>();
+            for (XxlJobAdminNode node : aliveNodes) {
+                nodeIds.add(node.getNodeId());
+            }
+            if (!nodeIds.equals(aliveNodeIds)) {
+                List<Integer> slots = assignSlots(nodeIds, nodeId, SLOT_COUNT);
+                boolean[] slotFlags = new boolean[SLOT_COUNT];
+                for (int slot : slots) {
+                    slotFlags[slot] = true;
+                }
+                ownedSlotFlags = slotFlags;
+                ownedSlots = Collections.unmodifiableList(slots);
+                aliveNodeIds = nodeIds;
+                logger.info(">>>>>>>>>>> xxl-job, JobPartitionHelper rebalance, nodeId:{}, aliveNodes:{}, ownedSlots:{}", nodeId, nodeIds, slots.size());
+            }
+            //租约的有效期从续约之前的时间开始算，宁可短一点
+            leaseExpireNanos = renewNanos + TimeUnit.MILLISECONDS.toNanos(LEASE_TIMEOUT_MS);
+        } catch (Exception e) {
+            if (!toStop) {
+                logger.error(">>>>>>>>>>> xxl-job, JobPartitionHelper renew lease error:{}", e);
+            }
+        }
+    }
+
+
+    /**
+     * 得到当前节点负责的槽位，租约已经过期的话返回空集合，这个时候当前节点不能调度任何任务
+     *
+     * @return
+     */
+    public List<Integer> getOwnedSlots() {
+        if (!isLeaseValid()) {
+            return Collections.emptyList();
+        }
+        return ownedSlots;
+    }
+
+
+    /**
+     * 判断任务是否归当前节点调度
+     *
+     * @param jobId
+     * @return
+     */
+    public boolean isOwner(int jobId) {
+        if (!isLeaseValid()) {
+            return false;
+        }
+        return ownedSlotFlags[slotOf(jobId)];
+    }
+
+
+    private boolean isLeaseValid() {
+        return System.nanoTime() - leaseExpireNanos < 0;
+    }
+
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+
+    /**
+     * 计算任务所在的槽位，和sql语句中的MOD(id, slotCount)保持一致
+     *
+     * @param jobId
+     * @return
+     */
+    public static int slotOf(int jobId) {
+        return Math.floorMod(jobId, SLOT_COUNT);
+    }
+
+
+    /**
+     * 用一致性哈希把槽位分配给存活的节点，每个节点都用同样的节点列表计算，所以得到的结果是一致的
+     *
+     * @param nodeIds   所有存活的节点
+     * @param nodeId    当前节点
+     * @param slotCount 槽位数量
+     * @return 当前节点负责的槽位
+     */
+    public static List<Integer> assignSlots(List<String> nodeIds, String nodeId, int slotCount) {
+        List<Integer> slots = new ArrayList<>();
+        if (!nodeIds.contains(nodeId)) {
+            return slots;
+        }
+        TreeMap<Long, String> nodeRing = new TreeMap<>();
+        for (String item : nodeIds) {
+            for (int i = 0; i < VIRTUAL_NODE_NUM; i++) {
+                nodeRing.put(ExecutorRouteConsistentHash.hash("ADMIN-" + item + "-NODE-" + i), item);
+            }
+        }
+        for (int slot = 0; slot < slotCount; slot++) {
+            Map.Entry<Long, String> entry = nodeRing.ceilingEntry(ExecutorRouteConsistentHash.hash("SLOT-" + slot));
+            if (entry == null) {
+                entry = nodeRing.firstEntry();
+            }
+            if (nodeId.equals(entry.getValue())) {
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+}
@@ -1,8 +1,10 @@
 package com.ytrue.job.admin.core.thread;
 
 import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.metrics.JobMetrics;
 import com.ytrue.job.admin.core.model.XxlJobGroup;
 import com.ytrue.job.admin.core.model.XxlJobRegistry;
+import com.ytrue.job.admin.core.trigger.JobMetaCache;
 import com.ytrue.job.core.biz.model.RegistryParam;
 import com.ytrue.job.core.biz.model.ReturnT;
 import com.ytrue.job.core.enums.RegistryConfig;
@@ -12,9 +14,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 
 /**
  * @author ytrue
@@ -23,7 +23,7 @@ import java.util.concurrent.TimeUnit;
  * 的线程来工作。而当执行器注册成功之后，如果过了不久就掉线了，也就是心跳检测超时，结果服务器这边不知道，还持有者掉线的执行器的地址
  * 这样一来，远程调用肯定是无法成功的。所以定期检查并清理掉线执行器也需要专门的线程来处理
  * 这两个操作，就是本类的职责
- * 当前的版本我们只需要注册执行器的线程池就可以了，不需要监控执行器是否过期
+ * 自动注册的执行器的心跳先记录在内存中，由检测线程批量写入数据库，同时检测过期的执行器，更新执行器组的地址
  */
 public class JobRegistryHelper {
 
@@ -52,6 +52,67 @@ public class JobRegistryHelper {
     private Thread registryMonitorThread;
 
 
+    /**
+     * 执行器心跳批量写入数据库的周期，单位是秒，要比心跳周期短，这样别的调度中心看到的执行器更新时间不会落后太多
+     */
+    private static final int BEAT_FLUSH_INTERVAL = 10;
+
+    /**
+     * 一条sql语句最多更新的注册信息条数
+     */
+    private static final int BEAT_FLUSH_BATCH_SIZE = 500;
+
+    /**
+     * 内存中的注册表，key为执行器的appname，value为该appname下的所有执行器地址，地址是排好序的
+     * 原来执行器的每一次心跳都要更新一次数据库，检测线程每30秒还要把注册表全部查询出来，重新拼接每个执行器组的地址，不管有没有变化都要更新一遍执行器组
+     * 现在心跳只更新内存中的最后心跳时间，由检测线程合并之后批量写入数据库，执行器组的地址也只有真正发生变化的时候才会更新
+     * 调度中心可能部署了多个，执行器只会向其中一个发送心跳，所以数据库中的注册表仍然是所有调度中心共享的，检测线程会定期用数据库中的数据校正内存中的注册表
+     */
+    private final ConcurrentMap<String, ConcurrentSkipListMap<String, RegistryEntry>> appRegistryMap = new ConcurrentHashMap<>();
+
+    /**
+     * 收到心跳之后还没有写入数据库的注册信息，一个执行器在一个写入周期内发送多少次心跳，都只会写入一次
+     */
+    private final Set<RegistryEntry> pendingEntrySet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 执行器地址可能发生了变化的appname，下一个写入周期会重新计算这些执行器组的地址
+     */
+    private final Set<String> dirtyAppnameSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 内存中的注册表是否已经用数据库校正过
+     */
+    private volatile boolean registryReady = false;
+
+
+    /**
+     * 内存中的一条注册信息
+     */
+    private static class RegistryEntry {
+
+        private final String appname;
+
+        private final String address;
+
+        /**
+         * 数据库中对应的注册信息的id，还不知道id的时候是0
+         */
+        private volatile int id;
+
+        /**
+         * 最后一次心跳的时间
+         */
+        private volatile long lastBeatTime;
+
+        private RegistryEntry(String appname, String address, long lastBeatTime) {
+            this.appname = appname;
+            this.address = address;
+            this.lastBeatTime = lastBeatTime;
+        }
+    }
+
+
     /**
      * 创建并启动上面的线程池
      */
@@ -77,99 +138,19 @@ public class JobRegistryHelper {
                 });
 
 
-        // 该线程就是用来循环检测注册中心注册的执行器是否过期，如果过期就移除过期数据，说白了，就是起到一个
-        // 心跳检测的作用，该线程每次循环都会睡30秒，其实就是30秒检测一次过期的执行器
+        // 该线程每10秒把内存中的心跳批量写入数据库，并更新地址发生了变化或者有执行器过期的执行器组，每30秒用数据库中的注册表校正一次内存中的注册表，同时清理过期的执行器
         registryMonitorThread = new Thread(() -> {
+            long lastRefreshTime = 0;
             while (!toStop) {
+                long start = System.currentTimeMillis();
                 try {
-
-                    //这里查询的是所有自动注册的执行器组，手动录入的执行器不在次查询范围内，所谓自动注册，就是执行器启动时，通过http，把注册信息发送到
-                    //调度中心的注册方式，并不是用户在web界面手动录入的注册方式
-                    //注意，这里查询的是执行器组，还不是单个的执行器，也许现在大家还不明白是什么意思，往下看就会清楚了
-                    List<XxlJobGroup> groupList = XxlJobAdminConfig.getAdminConfig().getXxlJobGroupDao().findByAddressType(0);
-
-                    if (groupList != null && !groupList.isEmpty()) {
-                        //这里的逻辑其实还要去对应的Mapper中查看，这里我把Mapper中的sql语句截取关键部分贴出来
-                        //WHERE t.update_time <![CDATA[ < ]]> DATE_ADD(#{nowTime},INTERVAL -#{timeout} SECOND)
-                        //其实就是判断数据库中记录的所有执行器的最新一次的更新时间是否小于当前时间减去90秒，这就意味着执行器的超时时间
-                        //就是90秒，只要90秒内，执行器没有再更新自己的信息，就意味着它停机了
-                        //而在执行器那一端，是每30秒就重新注册一次到注册中心
-                        //注意，这里并没有区分是手动注册还是自动注册，只要是超时了的执行器都检测出来，然后从数据库中删除即可
-                        List<Integer> ids = XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().findDead(RegistryConfig.DEAD_TIMEOUT, new Date());
-
-                        if (ids != null && ids.size() > 0) {
-                            //上面的到了所有过期执行器的id集合，这里就直接删除过期的执行器
-                            XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().removeDead(ids);
-                        }
-
-                        //该Map是用来缓存appName和对应的执行器地址的
-                        HashMap<String, List<String>> appAddressMap = new HashMap<>();
-                        //这里查处的就是所有没有过期的执行器，同样不用考虑注册类型，是否自动注册或手动录入，对应的sql语句如下
-                        //WHERE t.update_time <![CDATA[ > ]]> DATE_ADD(#{nowTime},INTERVAL -#{timeout} SECOND)
-                        //就是把小于号改成了大于号而已
-                        List<XxlJobRegistry> list = XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().findAll(RegistryConfig.DEAD_TIMEOUT, new Date());
-
-                        if (list != null) {
-                            //走到这里说明数据库中存在没有超时的执行器数据
-                            for (XxlJobRegistry item: list) {
-                                //遍历这些执行器
-                                //先判断执行器是不是自动注册的，
-                                if (RegistryConfig.RegistryType.EXECUTOR.name().equals(item.getRegistryGroup())) {
-                                    //如果是自动注册，就先获得执行器的项目名称，就是那个appName
-                                    String appname = item.getRegistryKey();
-                                    //以appName为key，判断刚才的Map中是否缓存着该appName对应的执行器地址
-                                    List<String> registryList = appAddressMap.get(appname);
-                                    if (registryList == null) {
-                                        //如果没有则创建一个集合
-                                        //这里之所以是集合，还是考虑到定时任务很可能部署在多个执行器上，而相同定时任务
-                                        //的执行器名称是相同，正好可以用来当作key，value就是不同的执行器地址
-                                        registryList = new ArrayList<String>();
-                                    }
-                                    //如果创建的这个集合尚未包含当前循环的执行器的地址
-                                    if (!registryList.contains(item.getRegistryValue())) {
-                                        //就把该地址存放到集合中
-                                        registryList.add(item.getRegistryValue());
-                                    }
-                                    //把集合添加到Map中，至此，一个appName对应的执行器地址，这样的数据就通过键值对缓存成功了
-                                    appAddressMap.put(appname, registryList);
-                                }
-                            }
-                        }
-
-                        //到这里会遍历最开始查询出来的自动注册的所有执行器组，注意，这时候，在上面的那个循环中，已经把
-                        //所有未过期的执行器的信息用键值对的方式缓存在Map中了
-                        for (XxlJobGroup group: groupList) {
-                            //根据这个执行器注册到注册中心时记录的appName
-                            //从Map中查询到所有的执行器地址，是个集合
-                            List<String> registryList = appAddressMap.get(group.getAppname());
-                            String addressListStr = null;
-                            //判空操作
-                            if (registryList!=null && !registryList.isEmpty()) {
-                                //如果该执行器地址集合不为空，就把地址排一下序
-                                //这里排序有什么意义呢？我没想出来。。排不排都无所谓吧，反正会有路由策略帮我们选择执行器地址
-                                Collections.sort(registryList);
-                                //开始把这些地址拼接到一块
-                                StringBuilder addressListSB = new StringBuilder();
-                                for (String item:registryList) {
-                                    addressListSB.append(item).append(",");
-                                }
-                                addressListStr = addressListSB.toString();
-                                //去掉最后一个逗号
-                                addressListStr = addressListStr.substring(0, addressListStr.length()-1);
-                            }
-                            //然后把最新的执行器地址存放到执行器组中
-                            group.setAddressList(addressListStr);
-                            //更新执行器组的更新时间
-                            group.setUpdateTime(new Date());
-                            //在数据库中落实执行器组的更新
-                            //到这里，大家应该能意识到了，执行器把自己注册到调度中心，是通过XxlJobRegistry对象
-                            //来封装注册信息的，会被记录到数据库中
-                            //但是注册线程会在后台默默工作，把各个appName相同的执行器的地址整合到一起，用XxlJobGroup对象封装
-                            //等待调度定时任务的时候，其实就是从XxlJobGroup对象中获得appName的所有执行器地址，然后根据路由策略去
-                            //选择具体的执行器地址来远程调用，这就是和注册有关的所有逻辑了，到此，该类中的代码和源码也完全一致了
-                            XxlJobAdminConfig.getAdminConfig().getXxlJobGroupDao().update(group);
-                        }
-
+                    if (System.currentTimeMillis() - lastRefreshTime >= RegistryConfig.BEAT_TIMEOUT * 1000L) {
+                        lastRefreshTime = System.currentTimeMillis();
+                        refreshRegistry();
+                        JobMetrics.recordLoop("registry-refresh", System.currentTimeMillis() - start);
+                    } else {
+                        flushRegistry();
+                        JobMetrics.recordLoop("registry-flush", System.currentTimeMillis() - start);
                     }
                 } catch (Exception e) {
                     if (!toStop) {
@@ -177,8 +158,7 @@ public class JobRegistryHelper {
                     }
                 }
                 try {
-                    //线程在这里睡30秒，也就意味着检测周期为30秒
-                    TimeUnit.SECONDS.sleep(RegistryConfig.BEAT_TIMEOUT);
+                    TimeUnit.SECONDS.sleep(BEAT_FLUSH_INTERVAL);
                 } catch (InterruptedException e) {
                     if (!toStop) {
                         logger.error(">>>>>>>>>>> xxl-job, job registry monitor thread error:{}", e);
@@ -199,11 +179,277 @@ public class JobRegistryHelper {
     public void toStop() {
         toStop = true;
         registryOrRemoveThreadPool.shutdownNow();
+        registryMonitorThread.interrupt();
+        try {
+            registryMonitorThread.join();
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
+        //把还没有写入数据库的心跳写进去，不然别的调度中心可能会把这些执行器当作已经下线了
+        try {
+            flushBeat();
+        } catch (Exception e) {
+            logger.error(">>>>>>>>>>> xxl-job, job registry flush beat error:{}", e);
+        }
     }
 
 
     /**
-     * 注册执行器的方法,其实就是向数据库保存这条记录
+     * 把合并之后的心跳批量写入数据库，已经知道id的注册信息用一条sql语句批量更新，还不知道id的，也就是新注册的执行器，逐条更新或者新增
+     */
+    private void flushBeat() {
+        if (pendingEntrySet.isEmpty()) {
+            return;
+        }
+        List<XxlJobRegistry> updateList = new ArrayList<>();
+        List<RegistryEntry> newEntryList = new ArrayList<>();
+        for (Iterator<RegistryEntry> it = pendingEntrySet.iterator(); it.hasNext(); ) {
+            RegistryEntry entry = it.next();
+            it.remove();
+            if (entry.id > 0) {
+                XxlJobRegistry registry = new XxlJobRegistry();
+                registry.setId(entry.id);
+                registry.setUpdateTime(new Date(entry.lastBeatTime));
+                updateList.add(registry);
+            } else {
+                newEntryList.add(entry);
+            }
+        }
+        for (int from = 0; from < updateList.size(); from += BEAT_FLUSH_BATCH_SIZE) {
+            XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().registryUpdateBatch(updateList.subList(from, Math.min(from + BEAT_FLUSH_BATCH_SIZE, updateList.size())));
+        }
+        for (RegistryEntry entry : newEntryList) {
+            //这里的意思也很简单，就是先根据注册信息去数据库中更新相应的数据
+            //如果返回的是0，说明数据库中没有相应的信息，该执行器还没注册到注册中心呢，所以下面就可以直接新增这一条数据即可
+            //新增之后的id要等到下一次校正注册表的时候才会知道
+            int ret = XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().registryUpdate(
+                    RegistryConfig.RegistryType.EXECUTOR.name(),
+                    entry.appname,
+                    entry.address,
+                    new Date(entry.lastBeatTime)
+            );
+            if (ret < 1) {
+                XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().registrySave(
+                        RegistryConfig.RegistryType.EXECUTOR.name(),
+                        entry.appname,
+                        entry.address,
+                        new Date(entry.lastBeatTime)
+                );
+            }
+        }
+    }
+
+
+    /**
+     * 用数据库中的注册表校正内存中的注册表，然后更新地址发生了变化的执行器组
+     */
+    private void refreshRegistry() {
+        //先把内存中的心跳写入数据库，这样下面查询出来的数据就包含了当前调度中心收到的所有心跳
+        long refreshTime = System.currentTimeMillis();
+        flushBeat();
+        long nowTime = System.currentTimeMillis();
+
+        //这里的逻辑其实还要去对应的Mapper中查看，其实就是判断数据库中记录的所有执行器的最新一次的更新时间是否小于当前时间减去90秒，这就意味着执行器的超时时间
+        //就是90秒，只要90秒内，执行器没有再更新自己的信息，就意味着它停机了，而在执行器那一端，是每30秒就重新注册一次到注册中心
+        List<Integer> ids = XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().findDead(RegistryConfig.DEAD_TIMEOUT, new Date(nowTime));
+        if (ids != null && ids.size() > 0) {
+            XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().removeDead(ids);
+        }
+
+        //查询所有没有过期的执行器，这里面也包括向别的调度中心发送心跳的执行器
+        List<XxlJobRegistry> list = XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().findAll(RegistryConfig.DEAD_TIMEOUT, new Date(nowTime));
+        syncRegistry(list, null, refreshTime);
+
+        //校正的时候把所有自动注册的执行器组都检查一遍，防止执行器组的地址被手动改过
+        dirtyAppnameSet.clear();
+        refreshGroup(null);
+        registryReady = true;
+    }
+
+
+    /**
+     * 把心跳写入数据库，然后更新地址可能发生了变化的执行器组
+     * 内存中只有当前调度中心收到的心跳是最新的，向别的调度中心发送心跳的执行器要等下一次校正才会更新，所以这些执行器组的地址要用数据库中的注册信息计算
+     * 内存中已经过期的执行器所在的执行器组也要检查，这样执行器下线之后最多一个写入周期就会从执行器组中移除，不用等到下一次校正
+     */
+    private void flushRegistry() {
+        long refreshTime = System.currentTimeMillis();
+        flushBeat();
+        long deadTime = refreshTime - RegistryConfig.DEAD_TIMEOUT * 1000L;
+        for (Map.Entry<String, ConcurrentSkipListMap<String, RegistryEntry>> appEntry : appRegistryMap.entrySet()) {
+            for (RegistryEntry entry : appEntry.getValue().values()) {
+                if (entry.lastBeatTime <= deadTime) {
+                    dirtyAppnameSet.add(appEntry.getKey());
+                    break;
+                }
+            }
+        }
+        if (dirtyAppnameSet.isEmpty()) {
+            return;
+        }
+        Set<String> dirtyAppnames = new HashSet<>();
+        for (Iterator<String> it = dirtyAppnameSet.iterator(); it.hasNext(); ) {
+            dirtyAppnames.add(it.next());
+            it.remove();
+        }
+        List<XxlJobRegistry> list = XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().findByRegistryKeys(
+                RegistryConfig.DEAD_TIMEOUT,
+                new Date(),
+                RegistryConfig.RegistryType.EXECUTOR.name(),
+                new ArrayList<>(dirtyAppnames)
+        );
+        syncRegistry(list, dirtyAppnames, refreshTime);
+        refreshGroup(dirtyAppnames);
+    }
+
+
+    /**
+     * 用数据库中没有过期的注册信息校正内存中的注册表
+     *
+     * @param list        数据库中没有过期的注册信息
+     * @param appnames    要校正的执行器组，为null的时候校正所有的执行器组
+     * @param refreshTime 写入心跳之前的时间，在这之后收到的心跳可能还没有写入数据库
+     */
+    private void syncRegistry(List<XxlJobRegistry> list, Set<String> appnames, long refreshTime) {
+        Set<RegistryEntry> aliveEntrySet = new HashSet<>();
+        if (list != null) {
+            for (XxlJobRegistry item : list) {
+                //只有自动注册的执行器才需要维护执行器组的地址
+                if (!RegistryConfig.RegistryType.EXECUTOR.name().equals(item.getRegistryGroup())) {
+                    continue;
+                }
+                long updateTime = item.getUpdateTime() != null ? item.getUpdateTime().getTime() : refreshTime;
+                ConcurrentSkipListMap<String, RegistryEntry> addressMap = appRegistryMap.computeIfAbsent(item.getRegistryKey(), k -> new ConcurrentSkipListMap<>());
+                RegistryEntry entry = addressMap.get(item.getRegistryValue());
+                if (entry == null) {
+                    RegistryEntry newEntry = new RegistryEntry(item.getRegistryKey(), item.getRegistryValue(), updateTime);
+                    entry = addressMap.putIfAbsent(item.getRegistryValue(), newEntry);
+                    if (entry == null) {
+                        entry = newEntry;
+                    }
+                }
+                entry.id = item.getId();
+                if (updateTime > entry.lastBeatTime) {
+                    entry.lastBeatTime = updateTime;
+                }
+                aliveEntrySet.add(entry);
+            }
+        }
+
+        //内存中有，数据库中却没有的注册信息，如果心跳在写入数据库之前就收到了，说明已经过期或者被别的调度中心移除了，内存中也要移除
+        //如果是写入之后才收到的心跳，就保留下来，并且把id清空，下一次写入心跳的时候会重新新增到数据库中
+        //心跳时间和放进待写入集合之间有一点点间隔，所以这里留出1秒的余量
+        for (Map.Entry<String, ConcurrentSkipListMap<String, RegistryEntry>> appEntry : appRegistryMap.entrySet()) {
+            if (appnames != null && !appnames.contains(appEntry.getKey())) {
+                continue;
+            }
+            for (RegistryEntry entry : appEntry.getValue().values()) {
+                if (aliveEntrySet.contains(entry)) {
+                    continue;
+                }
+                if (entry.lastBeatTime < refreshTime - 1000 && !pendingEntrySet.contains(entry)) {
+                    appEntry.getValue().remove(entry.address, entry);
+                    pendingEntrySet.remove(entry);
+                    //执行器下线了，它上面正在执行的任务可能已经丢失了
+                    JobRunningTracker.getInstance().executorRemoved(entry.address);
+                    JobShardDispatcher.getInstance().executorRemoved(entry.address);
+                    JobMetrics.executorRemoved(entry.address);
+                } else {
+                    entry.id = 0;
+                    pendingEntrySet.add(entry);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 用刚校正过的内存中的注册表重新计算执行器组的地址，只有地址真正发生了变化的执行器组才会更新数据库
+     *
+     * @param appnames 要检查的执行器组，为null的时候检查所有自动注册的执行器组
+     */
+    private void refreshGroup(Set<String> appnames) {
+        //这里查询的是所有自动注册的执行器组，手动录入的执行器不在次查询范围内，所谓自动注册，就是执行器启动时，通过http，把注册信息发送到
+        //调度中心的注册方式，并不是用户在web界面手动录入的注册方式
+        List<XxlJobGroup> groupList = XxlJobAdminConfig.getAdminConfig().getXxlJobGroupDao().findByAddressType(0);
+        if (groupList == null) {
+            return;
+        }
+        for (XxlJobGroup group : groupList) {
+            if (appnames != null && !appnames.contains(group.getAppname())) {
+                continue;
+            }
+            List<String> registryList = getAddressList(group.getAppname());
+            //地址是排好序的，所以直接比较拼接之后的字符串就可以知道地址有没有变化
+            String addressListStr = registryList != null ? String.join(",", registryList) : null;
+            String oldAddressListStr = StringUtils.hasText(group.getAddressList()) ? group.getAddressList() : null;
+            if (Objects.equals(addressListStr, oldAddressListStr)) {
+                continue;
+            }
+            group.setAddressList(addressListStr);
+            group.setUpdateTime(new Date());
+            //等待调度定时任务的时候，其实就是从XxlJobGroup对象中获得appName的所有执行器地址，然后根据路由策略去
+            //选择具体的执行器地址来远程调用
+            XxlJobAdminConfig.getAdminConfig().getXxlJobGroupDao().update(group);
+            //执行器地址刷新了，让触发任务时使用的缓存失效
+            JobMetaCache.invalidateJobGroup(group.getId());
+            logger.debug(">>>>>>>>>>> xxl-job, job group address changed, appname:{}, addressList:{}", group.getAppname(), addressListStr);
+        }
+    }
+
+
+    /**
+     * 判断执行器地址是否还在注册表中，不区分执行器组
+     *
+     * @param address
+     * @return
+     */
+    public boolean isRegistered(String address) {
+        long deadTime = System.currentTimeMillis() - RegistryConfig.DEAD_TIMEOUT * 1000L;
+        for (ConcurrentSkipListMap<String, RegistryEntry> addressMap : appRegistryMap.values()) {
+            RegistryEntry entry = addressMap.get(address);
+            if (entry != null && entry.lastBeatTime > deadTime) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * 内存中的注册表是否已经用数据库校正过了，调度中心刚启动的时候内存中的注册表是空的，这个时候不能用来判断执行器是否下线
+     *
+     * @return
+     */
+    public boolean isRegistryReady() {
+        return registryReady;
+    }
+
+
+    /**
+     * 得到appname对应的所有存活的执行器地址，地址是排好序的
+     *
+     * @param appname
+     * @return 没有存活的执行器时返回null
+     */
+    public List<String> getAddressList(String appname) {
+        ConcurrentSkipListMap<String, RegistryEntry> addressMap = appRegistryMap.get(appname);
+        if (addressMap == null) {
+            return null;
+        }
+        long deadTime = System.currentTimeMillis() - RegistryConfig.DEAD_TIMEOUT * 1000L;
+        List<String> registryList = new ArrayList<>();
+        for (RegistryEntry entry : addressMap.values()) {
+            if (entry.lastBeatTime > deadTime) {
+                registryList.add(entry.address);
+            }
+        }
+        return registryList.isEmpty() ? null : registryList;
+    }
+
+
+    /**
+     * 注册执行器的方法，自动注册的执行器只更新内存中的注册表，由检测线程批量写入数据库
      *
      * @param registryParam
      * @return
@@ -215,16 +461,25 @@ public class JobRegistryHelper {
             || !StringUtils.hasText(registryParam.getRegistryValue())) {
             return new ReturnT<>(ReturnT.FAIL_CODE, "Illegal Argument.");
         }
+        if (RegistryConfig.RegistryType.EXECUTOR.name().equals(registryParam.getRegistryGroup())) {
+            long nowTime = System.currentTimeMillis();
+            ConcurrentSkipListMap<String, RegistryEntry> addressMap = appRegistryMap.computeIfAbsent(registryParam.getRegistryKey(), k -> new ConcurrentSkipListMap<>());
+            RegistryEntry entry = addressMap.get(registryParam.getRegistryValue());
+            if (entry == null) {
+                RegistryEntry newEntry = new RegistryEntry(registryParam.getRegistryKey(), registryParam.getRegistryValue(), nowTime);
+                entry = addressMap.putIfAbsent(registryParam.getRegistryValue(), newEntry);
+                if (entry == null) {
+                    entry = newEntry;
+                    //新注册的执行器，执行器组的地址发生了变化
+                    dirtyAppnameSet.add(registryParam.getRegistryKey());
+                }
+            }
+            entry.lastBeatTime = nowTime;
+            pendingEntrySet.add(entry);
+            return ReturnT.SUCCESS;
+        }
         //提交注册执行器的任务给线程池执行
         registryOrRemoveThreadPool.execute(() -> {
-            //这里的意思也很简单，就是先根据registryParam参数去数据库中更新相应的数据
-            //如果返回的是0，说明数据库中没有相应的信息，该执行器还没注册到注册中心呢，所以下面
-            //就可以直接新增这一条数据即可
-            //  UPDATE xxl_job_registry
-            //        SET `update_time` = #{updateTime}
-            //        WHERE `registry_group` = #{registryGroup}
-            //          AND `registry_key` = #{registryKey}
-            //          AND `registry_value` = #{registryValue}
             int ret = XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().registryUpdate(
                     registryParam.getRegistryGroup(),
                     registryParam.getRegistryKey(),
@@ -232,18 +487,12 @@ public class JobRegistryHelper {
                     new Date()
             );
             if (ret < 1) {
-                //这里就是数据库中没有相应数据，直接新增即可
-                //  INSERT INTO xxl_job_registry( `registry_group` , `registry_key` , `registry_value`, `update_time`)
-                //        VALUES( #{registryGroup}  , #{registryKey} , #{registryValue}, #{updateTime})
                 XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().registrySave(
                         registryParam.getRegistryGroup(),
                         registryParam.getRegistryKey(),
                         registryParam.getRegistryValue(),
                         new Date()
                 );
-                //该方法从名字上看是刷新注册表信息的意思
-                //但是作者还没有实现，源码中就是空的，所以这里我就照搬过来了
-                freshGroupRegistryInfo(registryParam);
             }
         });
         return ReturnT.SUCCESS;
@@ -263,35 +512,41 @@ public class JobRegistryHelper {
             || !StringUtils.hasText(registryParam.getRegistryValue())) {
             return new ReturnT<>(ReturnT.FAIL_CODE, "Illegal Argument.");
         }
+        //自动注册的执行器先从内存和数据库中移除，再标记执行器组，下一个写入周期是用数据库中的注册信息计算执行器组的地址的
+        //所以这里要同步删除，不能交给线程池，不然执行器组可能又用还没有删除的注册信息计算一遍
+        if (RegistryConfig.RegistryType.EXECUTOR.name().equals(registryParam.getRegistryGroup())) {
+            ConcurrentSkipListMap<String, RegistryEntry> addressMap = appRegistryMap.get(registryParam.getRegistryKey());
+            RegistryEntry entry = addressMap != null ? addressMap.remove(registryParam.getRegistryValue()) : null;
+            if (entry != null) {
+                pendingEntrySet.remove(entry);
+            }
+            XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().registryDelete(
+                    registryParam.getRegistryGroup(),
+                    registryParam.getRegistryKey(),
+                    registryParam.getRegistryValue()
+            );
+            dirtyAppnameSet.add(registryParam.getRegistryKey());
+            if (entry != null) {
+                JobRunningTracker.getInstance().executorRemoved(entry.address);
+                JobShardDispatcher.getInstance().executorRemoved(entry.address);
+                JobMetrics.executorRemoved(entry.address);
+            }
+            return ReturnT.SUCCESS;
+        }
         //将任务提交给线程池来处理
         registryOrRemoveThreadPool.execute(() -> {
             //在这里直接根据registryParam从数据库中删除对应的执行器地址
-            //这里的返回结果是删除了几条数据的意思
             // DELETE FROM xxl_job_registry
             //		WHERE registry_group = #{registryGroup}
             //			AND registry_key = #{registryKey}
             //			AND registry_value = #{registryValue}
-            int ret = XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().registryDelete(
+            XxlJobAdminConfig.getAdminConfig().getXxlJobRegistryDao().registryDelete(
                     registryParam.getRegistryGroup(),
                     registryParam.getRegistryKey(),
                     registryParam.getRegistryValue()
             );
-            if (ret > 0) {
-                //上个方法已经讲过了，这里就不再讲了
-                freshGroupRegistryInfo(registryParam);
-            }
         });
         return ReturnT.SUCCESS;
     }
 
-
-    /**
-     * 这个方法在源码中就是空的。。作者也没想好要怎么弄呢。
-     *
-     * @param registryParam
-     */
-    private void freshGroupRegistryInfo(RegistryParam registryParam) {
-    }
-
-
 }
@@ -0,0 +1,317 @@
+package com.ytrue.job.admin.core.thread;
+
+import com.ytrue.job.admin.core.complete.XxlJobCompleter;
+import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.model.XxlJobInfo;
+import com.ytrue.job.admin.core.model.XxlJobLog;
+import com.ytrue.job.admin.core.trigger.JobMetaCache;
+import com.ytrue.job.admin.core.util.I18nUtil;
+import com.ytrue.job.admin.dao.XxlJobLogDao;
+import com.ytrue.job.core.biz.model.ReturnT;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 20:50
+ * @description 跟踪正在执行的任务的组件
+ * 原来检测丢失的任务，是每60秒用调度日志表关联注册表查询一次，找出触发成功、没有执行结果、执行器已经不在注册表中的日志，日志表越大这个查询就越慢
+ * 现在触发成功的任务会记录在内存中，按照执行器地址和截止时间建立索引，截止时间是触发时间加上10分钟再加上任务的超时时间
+ * 执行器下线的时候，直接找出这个执行器上正在执行的任务；到了截止时间还没有执行结果的任务，也会拿出来检查一次
+ * 检查的时候先按id批量查询一次日志，已经有执行结果的就不再跟踪，执行器确实已经不在注册表中的，就批量标记为执行失败
+ * 执行器还在的任务就把截止时间往后推，等下次再检查
+ * 执行结果可能回调给了别的调度中心，调度中心也可能重启过，所以还会定期从数据库中同步一次正在执行的任务
+ */
+public class JobRunningTracker {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobRunningTracker.class);
+
+    /**
+     * 任务触发之后超过这个时间还没有执行结果，并且执行器已经不在注册表中了，就认为任务丢失了，和原来的10分钟保持一致
+     */
+    private static final long LOST_GRACE_MS = 10 * 60 * 1000;
+
+    /**
+     * 从数据库中同步正在执行的任务的周期
+     */
+    private static final long SYNC_INTERVAL_MS = 10 * 60 * 1000;
+
+    /**
+     * 定期同步的时候只查询最近一天触发的任务
+     */
+    private static final long SYNC_LOOKBACK_MS = 24 * 60 * 60 * 1000;
+
+    /**
+     * 启动之后第一次同步的时候查询最近7天触发的任务，调度日志表很大的时候也不会把所有没有执行结果的日志都查出来
+     * 比这更早触发、一直没有执行结果的任务不会再跟踪了
+     */
+    private static final long STARTUP_LOOKBACK_MS = 7L * 24 * 60 * 60 * 1000;
+
+    /**
+     * 一次最多查询的日志条数
+     */
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    private static JobRunningTracker instance = new JobRunningTracker();
+
+    public static JobRunningTracker getInstance() {
+        return instance;
+    }
+
+
+    /**
+     * 正在执行的任务，key为日志id
+     */
+    private final ConcurrentMap<Long, RunningJob> runningJobMap = new ConcurrentHashMap<>();
+
+    /**
+     * 执行器地址索引，key为执行器地址，value为这个执行器上正在执行的任务的日志id
+     */
+    private final ConcurrentMap<String, Set<Long>> addressIndex = new ConcurrentHashMap<>();
+
+    /**
+     * 截止时间索引，按照截止时间排序，检查的时候只需要从头部取出已经到期的任务
+     */
+    private final ConcurrentSkipListSet<RunningJob> deadlineIndex = new ConcurrentSkipListSet<>(
+            Comparator.comparingLong((RunningJob job) -> job.deadline).thenComparingLong(job -> job.logId));
+
+    /**
+     * 已经下线的执行器地址，由检查的线程处理
+     */
+    private final Set<String> removedAddressSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 上一次从数据库中同步的时间，只有检查的线程会访问
+     */
+    private long lastSyncTime = 0;
+
+
+    /**
+     * 一个正在执行的任务，截止时间是排序的依据，所以这个对象是不可变的，截止时间变了就换一个新的对象
+     */
+    private static class RunningJob {
+
+        private final long logId;
+
+        private final String executorAddress;
+
+        private final long triggerTime;
+
+        private final long timeoutMs;
+
+        private final long deadline;
+
+        private RunningJob(long logId, String executorAddress, long triggerTime, long timeoutMs, long deadline) {
+            this.logId = logId;
+            this.executorAddress = executorAddress;
+            this.triggerTime = triggerTime;
+            this.timeoutMs = timeoutMs;
+            this.deadline = deadline;
+        }
+    }
+
+
+    /**
+     * 任务触发成功之后开始跟踪
+     *
+     * @param jobLog
+     * @param executorTimeout 任务的超时时间，单位秒，小于等于0表示不超时
+     */
+    public void track(XxlJobLog jobLog, int executorTimeout) {
+        if (jobLog.getId() <= 0 || jobLog.getExecutorAddress() == null || jobLog.getTriggerTime() == null) {
+            return;
+        }
+        long timeoutMs = executorTimeout > 0 ? executorTimeout * 1000L : 0;
+        long triggerTime = jobLog.getTriggerTime().getTime();
+        add(new RunningJob(jobLog.getId(), jobLog.getExecutorAddress(), triggerTime, timeoutMs, triggerTime + LOST_GRACE_MS + timeoutMs));
+    }
+
+
+    /**
+     * 任务有了执行结果之后不再跟踪
+     *
+     * @param logId
+     */
+    public void untrack(long logId) {
+        RunningJob job = runningJobMap.remove(logId);
+        if (job == null) {
+            return;
+        }
+        deadlineIndex.remove(job);
+        Set<Long> logIds = addressIndex.get(job.executorAddress);
+        if (logIds != null) {
+            logIds.remove(logId);
+            addressIndex.computeIfPresent(job.executorAddress, (k, v) -> v.isEmpty() ? null : v);
+        }
+    }
+
+
+    /**
+     * 执行器从注册表中移除之后调用，这里只是记录下来，由检查的线程处理，不会占用注册表的线程
+     *
+     * @param address
+     */
+    public void executorRemoved(String address) {
+        if (addressIndex.containsKey(address)) {
+            removedAddressSet.add(address);
+        }
+    }
+
+
+    /**
+     * 正在跟踪的任务数量
+     *
+     * @return
+     */
+    public int getRunningCount() {
+        return runningJobMap.size();
+    }
+
+
+    private void add(RunningJob job) {
+        if (runningJobMap.putIfAbsent(job.logId, job) != null) {
+            return;
+        }
+        addressIndex.computeIfAbsent(job.executorAddress, k -> ConcurrentHashMap.newKeySet()).add(job.logId);
+        deadlineIndex.add(job);
+        //加入索引的过程中任务已经有了执行结果，索引中的数据要清理掉
+        if (runningJobMap.get(job.logId) != job) {
+            deadlineIndex.remove(job);
+            Set<Long> logIds = addressIndex.get(job.executorAddress);
+            if (logIds != null) {
+                logIds.remove(job.logId);
+            }
+        }
+    }
+
+
+    /**
+     * 把任务的截止时间往后推
+     *
+     * @param job
+     * @param deadline
+     */
+    private void postpone(RunningJob job, long deadline) {
+        deadlineIndex.remove(job);
+        RunningJob newJob = new RunningJob(job.logId, job.executorAddress, job.triggerTime, job.timeoutMs, deadline);
+        if (runningJobMap.replace(job.logId, job, newJob)) {
+            deadlineIndex.add(newJob);
+            if (runningJobMap.get(job.logId) != newJob) {
+                deadlineIndex.remove(newJob);
+            }
+        }
+    }
+
+
+    /**
+     * 检查丢失的任务，由JobCompleteHelper的监控线程定期调用
+     */
+    public void detectLost() {
+        long nowTime = System.currentTimeMillis();
+        if (nowTime - lastSyncTime >= SYNC_INTERVAL_MS) {
+            //启动之后第一次同步的时候查询最近7天的，之后只查询最近一天的
+            sync(new Date(nowTime - (lastSyncTime == 0 ? STARTUP_LOOKBACK_MS : SYNC_LOOKBACK_MS)));
+            lastSyncTime = nowTime;
+        }
+        //调度中心刚启动的时候内存中的注册表还是空的，这个时候所有执行器看起来都下线了
+        if (!JobRegistryHelper.getInstance().isRegistryReady()) {
+            return;
+        }
+
+        Map<Long, RunningJob> candidateMap = new LinkedHashMap<>();
+        //下线的执行器上触发超过10分钟的任务
+        for (Iterator<String> it = removedAddressSet.iterator(); it.hasNext(); ) {
+            String address = it.next();
+            it.remove();
+            Set<Long> logIds = addressIndex.get(address);
+            if (logIds == null) {
+                continue;
+            }
+            for (Long logId : logIds) {
+                RunningJob job = runningJobMap.get(logId);
+                if (job != null && nowTime - job.triggerTime >= LOST_GRACE_MS) {
+                    candidateMap.put(logId, job);
+                }
+            }
+        }
+        //已经到了截止时间的任务
+        for (RunningJob job : deadlineIndex) {
+            if (job.deadline > nowTime) {
+                break;
+            }
+            candidateMap.putIfAbsent(job.logId, job);
+        }
+        if (candidateMap.isEmpty()) {
+            return;
+        }
+
+        List<Long> candidateIds = new ArrayList<>(candidateMap.keySet());
+        int lostCount = 0;
+        for (int from = 0; from < candidateIds.size(); from += LOAD_BATCH_SIZE) {
+            List<Long> batchIds = candidateIds.subList(from, Math.min(from + LOAD_BATCH_SIZE, candidateIds.size()));
+            long minTriggerTime = Long.MAX_VALUE;
+            for (Long logId : batchIds) {
+                minTriggerTime = Math.min(minTriggerTime, candidateMap.get(logId).triggerTime);
+            }
+            Map<Long, XxlJobLog> logMap = new HashMap<>();
+            for (XxlJobLog jobLog : XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().loadByIdsFrom(batchIds, XxlJobLogDao.triggerTimeFrom(minTriggerTime))) {
+                logMap.put(jobLog.getId(), jobLog);
+            }
+            List<XxlJobLog> lostLogList = new ArrayList<>();
+            for (Long logId : batchIds) {
+                RunningJob job = candidateMap.get(logId);
+                XxlJobLog jobLog = logMap.get(logId);
+                if (jobLog == null || jobLog.getHandleCode() > 0 || jobLog.getTriggerCode() != ReturnT.SUCCESS_CODE) {
+                    //日志已经被删除了，或者执行结果回调给了别的调度中心
+                    untrack(logId);
+                } else if (nowTime - job.triggerTime >= LOST_GRACE_MS && !JobRegistryHelper.getInstance().isRegistered(job.executorAddress)) {
+                    jobLog.setHandleTime(new Date());
+                    jobLog.setHandleCode(ReturnT.FAIL_CODE);
+                    jobLog.setHandleMsg(I18nUtil.getString("joblog_lost_fail"));
+                    lostLogList.add(jobLog);
+                } else {
+                    //执行器还在，可能是任务执行得比较久，等下一个截止时间再检查
+                    postpone(job, nowTime + Math.max(LOST_GRACE_MS, job.timeoutMs));
+                }
+            }
+            if (!lostLogList.isEmpty()) {
+                //执行结果写入数据库之后，XxlJobCompleter会调用untrack
+                XxlJobCompleter.updateHandleInfoAndFinishBatch(lostLogList);
+                lostCount += lostLogList.size();
+            }
+        }
+        if (lostCount > 0) {
+            logger.info(">>>>>>>>>>> xxl-job, job lost detected, count:{}, running:{}", lostCount, runningJobMap.size());
+        }
+    }
+
+
+    /**
+     * 从数据库中同步正在执行的任务，别的调度中心触发的任务、调度中心重启之前触发的任务，都会在这里加入跟踪
+     * 按id分页查询，每次最多查询LOAD_BATCH_SIZE条
+     *
+     * @param triggerTimeFrom 只同步这个时间之后触发的任务
+     */
+    private void sync(Date triggerTimeFrom) {
+        long lastId = 0;
+        while (true) {
+            List<XxlJobLog> runningLogList = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().findRunningJobLogs(triggerTimeFrom, lastId, LOAD_BATCH_SIZE);
+            if (runningLogList == null || runningLogList.isEmpty()) {
+                return;
+            }
+            for (XxlJobLog jobLog : runningLogList) {
+                XxlJobInfo jobInfo = JobMetaCache.loadJobInfo(jobLog.getJobId());
+                track(jobLog, jobInfo != null ? jobInfo.getExecutorTimeout() : 0);
+                lastId = Math.max(lastId, jobLog.getId());
+            }
+            if (runningLogList.size() < LOAD_BATCH_SIZE) {
+                return;
+            }
+        }
+    }
+}
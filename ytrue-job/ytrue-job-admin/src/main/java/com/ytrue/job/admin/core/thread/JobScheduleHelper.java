@@ -1,7 +1,8 @@
 package com.ytrue.job.admin.core.thread;
 
 import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
-import com.ytrue.job.admin.core.cron.CronExpression;
+import com.ytrue.job.admin.core.cron.CronScheduleCache;
+import com.ytrue.job.admin.core.metrics.JobMetrics;
 import com.ytrue.job.admin.core.model.XxlJobInfo;
 import com.ytrue.job.admin.core.scheduler.MisfireStrategyEnum;
 import com.ytrue.job.admin.core.scheduler.ScheduleTypeEnum;
@@ -102,6 +103,8 @@ public class JobScheduleHelper {
             //数据库取出任务限制6000，也只是为了配合这个限制的数量
             // 100 + 200 * 20
             int preReadCount = (XxlJobAdminConfig.getAdminConfig().getTriggerPoolFastMax() + XxlJobAdminConfig.getAdminConfig().getTriggerPoolSlowMax()) * 20;
+            //是否开启了分区调度，开启之后不再使用数据库锁，每个节点只调度自己负责的槽位中的任务
+            boolean partitionEnabled = XxlJobAdminConfig.getAdminConfig().isSchedulePartitionEnabled();
             //开始进入循环了
             while (!scheduleThreadToStop) {
                 //得到调度任务的开始时间
@@ -118,16 +121,19 @@ public class JobScheduleHelper {
                 boolean preReadSuc = true;
 
                 try {
-                    //获得连接
-                    conn = XxlJobAdminConfig.getAdminConfig().getDataSource().getConnection();
-                    //是否自动提交
-                    connAutoCommit = conn.getAutoCommit();
-                    //这里就设置为不自动提交了
-                    conn.setAutoCommit(false);
-                    //设置sql语句，获得数据库锁，这知识就不讲了，数据库的基础知识
-                    preparedStatement = conn.prepareStatement("select * from xxl_job_lock where lock_name = 'schedule_lock' for update");
-                    //开始执行sql语句，得到数据库锁
-                    preparedStatement.execute();
+                    //分区调度的时候不需要数据库锁，任务不会被重复触发是靠下面带条件的更新保证的
+                    if (!partitionEnabled) {
+                        //获得连接
+                        conn = XxlJobAdminConfig.getAdminConfig().getDataSource().getConnection();
+                        //是否自动提交
+                        connAutoCommit = conn.getAutoCommit();
+                        //这里就设置为不自动提交了
+                        conn.setAutoCommit(false);
+                        //设置sql语句，获得数据库锁，这知识就不讲了，数据库的基础知识
+                        preparedStatement = conn.prepareStatement("select * from xxl_job_lock where lock_name = 'schedule_lock' for update");
+                        //开始执行sql语句，得到数据库锁
+                        preparedStatement.execute();
+                    }
                     //获得当前时间，这里要把这个时间和上面那个start做一下区分
                     //这两个时间变量的作用不同
                     //现在这个时间变量是用来得到要调度的任务的
@@ -145,11 +151,30 @@ public class JobScheduleHelper {
                     //		ORDER BY id ASC
                     //		LIMIT #{pagesize}
                     // 10   + 5 = 15 小于 15 秒的任务全部取出来
-                    List<XxlJobInfo> scheduleList = XxlJobAdminConfig.getAdminConfig().getXxlJobInfoDao().scheduleJobQuery(nowTime + PRE_READ_MS, preReadCount);
+                    List<XxlJobInfo> scheduleList;
+                    if (partitionEnabled) {
+                        //只查询当前节点负责的槽位中的任务，租约过期的时候槽位是空的，这一轮就什么也不做
+                        List<Integer> ownedSlots = JobPartitionHelper.getInstance().getOwnedSlots();
+                        scheduleList = ownedSlots.isEmpty() ? null : XxlJobAdminConfig.getAdminConfig().getXxlJobInfoDao().scheduleJobQueryBySlots(nowTime + PRE_READ_MS, preReadCount, JobPartitionHelper.SLOT_COUNT, ownedSlots);
+                    } else {
+                        scheduleList = XxlJobAdminConfig.getAdminConfig().getXxlJobInfoDao().scheduleJobQuery(nowTime + PRE_READ_MS, preReadCount);
+                    }
+                    //记录每一轮预读到的任务数量
+                    JobMetrics.recordPreRead(scheduleList != null ? scheduleList.size() : 0);
                     //判空操作
                     if (scheduleList != null && scheduleList.size() > 0) {
+                        //每个任务要做的触发动作先记下来，等任务的下次调度时间更新成功之后再执行
+                        //分区调度的时候，节点变化的那一小段时间内，同一个任务可能被两个节点同时查询出来，只有更新成功的那个节点才能触发任务
+                        List<List<Runnable>> scheduleActions = new ArrayList<>(scheduleList.size());
+                        //任务原来的下次调度时间，用来做更新的条件
+                        long[] expectTriggerNextTimes = new long[scheduleList.size()];
                         //循环处理每一个任务
-                        for (XxlJobInfo jobInfo : scheduleList) {
+                        for (int index = 0; index < scheduleList.size(); index++) {
+                            XxlJobInfo jobInfo = scheduleList.get(index);
+                            int jobId = jobInfo.getId();
+                            List<Runnable> actions = new ArrayList<>(2);
+                            scheduleActions.add(actions);
+                            expectTriggerNextTimes[index] = jobInfo.getTriggerNextTime();
                             //这里做了一个判断，刚才得到的当前时间，是不是大于任务的下一次执行时间加上5秒，为什么会出现这种情况呢？
                             //让我们仔细想一想，本来，一个任务被调度执行了，就会计算出它下一次的执行时机，然后更新数据库中的任务的下一次执行时间
                             //但请大家思考另外一种情况，如果服务器宕机了呢？本来上一次要执行的任务，却没有执行，比如这个任务要在第5秒执行，但是服务器在第4秒宕机了
@@ -160,12 +185,15 @@ public class JobScheduleHelper {
                                 logger.warn(">>>>>>>>>>> xxl-job, schedule misfire, jobId = " + jobInfo.getId());
                                 //既然有过期的任务，就要看看怎么处理，是直接不处理，还是其他的处理方式。这里程序默认的是什么也不做，既然过期了，就过期吧
                                 MisfireStrategyEnum misfireStrategyEnum = MisfireStrategyEnum.match(jobInfo.getMisfireStrategy(), MisfireStrategyEnum.DO_NOTHING);
+                                JobMetrics.recordMisfire(misfireStrategyEnum.name());
 
                                 //当然，这里也是再判断了一次，万一失败策略是立刻重试一次，那就立刻执行一次任务
                                 if (MisfireStrategyEnum.FIRE_ONCE_NOW == misfireStrategyEnum) {
                                     //在这里立刻执行一次任务,调度过期补偿
-                                    JobTriggerPoolHelper.trigger(jobInfo.getId(), TriggerTypeEnum.MISFIRE, -1, null, null, null);
-                                    logger.debug(">>>>>>>>>>> xxl-job, schedule push trigger : jobId = " + jobInfo.getId());
+                                    actions.add(() -> {
+                                        JobTriggerPoolHelper.trigger(jobId, TriggerTypeEnum.MISFIRE, -1, null, null, null);
+                                        logger.debug(">>>>>>>>>>> xxl-job, schedule push trigger : jobId = " + jobId);
+                                    });
                                 }
                                 //在这里把过期任务的下次执行时间刷新一下，放到下一次来执行
                                 refreshNextValidTime(jobInfo, new Date());
@@ -177,8 +205,13 @@ public class JobScheduleHelper {
                             //所以直接执行即可
                             else if (nowTime > jobInfo.getTriggerNextTime()) {
                                 //把任务交给触发器去远程调用,Cron触发
-                                JobTriggerPoolHelper.trigger(jobInfo.getId(), TriggerTypeEnum.CRON, -1, null, null, null);
-                                logger.debug(">>>>>>>>>>> xxl-job, schedule push trigger : jobId = " + jobInfo.getId());
+                                long planTriggerTime = jobInfo.getTriggerNextTime();
+                                actions.add(() -> {
+                                    //记录实际触发时间比计划时间晚了多久
+                                    JobMetrics.recordFireLateness(System.currentTimeMillis() - planTriggerTime);
+                                    JobTriggerPoolHelper.trigger(jobId, TriggerTypeEnum.CRON, -1, null, null, null);
+                                    logger.debug(">>>>>>>>>>> xxl-job, schedule push trigger : jobId = " + jobId);
+                                });
                                 //刷新该任务下一次的执行时间
                                 refreshNextValidTime(jobInfo, new Date());
                                 //下面这个分之中的任务就是比较正常的，但是又有些特殊的，
@@ -202,7 +235,7 @@ public class JobScheduleHelper {
                                     //时间轮才是真正按照时间增长的速度去处理定时任务的
                                     int ringSecond = (int) ((jobInfo.getTriggerNextTime() / 1000) % 60);
                                     //把定时任务的信息，就是它的id放进时间轮
-                                    pushTimeRing(ringSecond, jobInfo.getId());
+                                    actions.add(() -> pushTimeRing(ringSecond, jobId));
                                     //刷新定时任务的下一次的执行时间，注意，这里传进去的就不再是当前时间了，而是定时任务现在的下一次执行时间
                                     //因为放到时间轮中就意味着它要执行了，所以计算新的执行时间就行了
                                     refreshNextValidTime(jobInfo, new Date(jobInfo.getTriggerNextTime()));
@@ -216,21 +249,34 @@ public class JobScheduleHelper {
                                 //随着时间流逝，时间轮也是根据当前时间秒数来获取要执行的任务的，所以这样就可以对应上了
                                 int ringSecond = (int) ((jobInfo.getTriggerNextTime() / 1000) % 60);
                                 //放进时间轮中
-                                pushTimeRing(ringSecond, jobInfo.getId());
+                                actions.add(() -> pushTimeRing(ringSecond, jobId));
                                 //刷新定时任务下一次的执行时间
                                 refreshNextValidTime(jobInfo, new Date(jobInfo.getTriggerNextTime()));
 
                             }
                         }
-                        //最后再更新一下所有的任务
-                        for (XxlJobInfo jobInfo : scheduleList) {
+                        //最后再更新一下所有的任务，更新成功之后再执行记下来的触发动作
+                        for (int index = 0; index < scheduleList.size(); index++) {
+                            XxlJobInfo jobInfo = scheduleList.get(index);
                             // UPDATE xxl_job_info
                             //		SET
                             //			trigger_last_time = #{triggerLastTime},
                             //			trigger_next_time = #{triggerNextTime},
                             //			trigger_status = #{triggerStatus}
                             //		WHERE id = #{id}
-                            XxlJobAdminConfig.getAdminConfig().getXxlJobInfoDao().scheduleUpdate(jobInfo);
+                            if (partitionEnabled) {
+                                //数据库中的下次调度时间已经不是查询出来的值了，说明这个任务已经被别的节点调度过了，或者刚刚被用户修改过
+                                int ret = XxlJobAdminConfig.getAdminConfig().getXxlJobInfoDao().scheduleUpdateIfMatch(jobInfo, expectTriggerNextTimes[index]);
+                                if (ret < 1) {
+                                    logger.debug(">>>>>>>>>>> xxl-job, schedule skip, job already scheduled by other node : jobId = " + jobInfo.getId());
+                                    continue;
+                                }
+                            } else {
+                                XxlJobAdminConfig.getAdminConfig().getXxlJobInfoDao().scheduleUpdate(jobInfo);
+                            }
+                            for (Runnable action : scheduleActions.get(index)) {
+                                action.run();
+                            }
                         }
                     } else {
                         //走到这里，说明根本就没有从数据库中扫描到任何任务，把preReadSuc设置为false
@@ -281,6 +327,8 @@ public class JobScheduleHelper {
                 //再次得到当然时间，然后减去开始执行扫面数据库任务的开始时间
                 //就得到了执行扫面数据库，并且调度任务的总耗时
                 long cost = System.currentTimeMillis() - start;
+                //这一轮的耗时主要是加锁、查询和更新数据库，记录到监控指标中
+                JobMetrics.recordLoop("schedule", cost);
                 //这里有一个判断，1000毫秒就是1秒，如果总耗时小于1秒，就默认数据库中可能没多少数据
                 //线程就不必工作得那么繁忙，所以下面要让线程休息一会，然后再继续工作
                 if (cost < 1000) {
@@ -324,6 +372,7 @@ public class JobScheduleHelper {
                     List<Integer> ringItemData = new ArrayList<>();
                     //获取当前时间的秒数
                     int nowSecond = Calendar.getInstance().get(Calendar.SECOND);
+                    long nowTime = System.currentTimeMillis();
                     //下面这里很有意思，如果我们计算出来的是第3秒，时间轮线程会把第2秒，和第3秒的定时任务都取出来，一起执行
                     //这里肯定会让大家感到困惑，时间轮不是按照刻度走的吗？如果走到3秒的刻度，说明2秒的任务已经执行完了，为什么还要再拿出来？
                     //这是因为考虑到定时任务的调度情况了，如果时间轮某个刻度对应的定时任务太多，本来该最多1秒就调度完的，结果调度了2秒，直接把下一个刻度跳过了
@@ -333,6 +382,11 @@ public class JobScheduleHelper {
                         //注意，这里取出的时候，定时任务就从时间轮中被删除了
                         List<Integer> tmpData = ringData.remove((nowSecond + 60 - i) % 60);
                         if (tmpData != null) {
+                            //这个刻度上的任务计划在这一秒的开始触发，记录实际触发时间比计划时间晚了多久
+                            long planTriggerTime = nowTime - nowTime % 1000 - i * 1000L;
+                            for (int k = 0; k < tmpData.size(); k++) {
+                                JobMetrics.recordFireLateness(nowTime - planTriggerTime);
+                            }
                             //把定时任务的ID数据添加到上面定义的集合中
                             ringItemData.addAll(tmpData);
                         }
@@ -416,9 +470,9 @@ public class JobScheduleHelper {
         // 获取调度类型
         ScheduleTypeEnum scheduleTypeEnum = ScheduleTypeEnum.match(jobInfo.getScheduleType(), null);
 
-        // 如果是用cron表达式
+        // 如果是用cron表达式，这里从缓存中取编译好的cron表达式，不用每次都重新解析
         if (ScheduleTypeEnum.CRON == scheduleTypeEnum) {
-            return new CronExpression(jobInfo.getScheduleConf()).getNextValidTimeAfter(fromTime);
+            return CronScheduleCache.get(jobInfo.getScheduleConf()).getNextValidTimeAfter(fromTime);
         }
         // 如果是按照固定频率
         else if (ScheduleTypeEnum.FIX_RATE == scheduleTypeEnum) {
@@ -428,6 +482,33 @@ public class JobScheduleHelper {
     }
 
 
+    /**
+     * 一次计算出定时任务之后的count个执行时间，web界面预览任务执行时间的时候会用到
+     *
+     * @param jobInfo
+     * @param fromTime
+     * @param count
+     * @return
+     * @throws Exception
+     */
+    public static List<Date> generateNextValidTimes(XxlJobInfo jobInfo, Date fromTime, int count) throws Exception {
+        ScheduleTypeEnum scheduleTypeEnum = ScheduleTypeEnum.match(jobInfo.getScheduleType(), null);
+        if (ScheduleTypeEnum.CRON == scheduleTypeEnum) {
+            return CronScheduleCache.get(jobInfo.getScheduleConf()).getNextValidTimesAfter(fromTime, count);
+        }
+        List<Date> result = new ArrayList<>();
+        Date lastTime = fromTime;
+        for (int i = 0; i < count; i++) {
+            lastTime = generateNextValidTime(jobInfo, lastTime);
+            if (lastTime == null) {
+                break;
+            }
+            result.add(lastTime);
+        }
+        return result;
+    }
+
+
     /**
      * 停止任务调度器的方法，其实就是终止本类的两个线程
      */
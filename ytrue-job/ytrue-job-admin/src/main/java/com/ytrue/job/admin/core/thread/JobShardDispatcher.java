@@ -0,0 +1,437 @@
+package com.ytrue.job.admin.core.thread;
+
+import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.model.XxlJobLog;
+import com.ytrue.job.admin.dao.XxlJobLogDao;
+import com.ytrue.job.core.biz.model.ReturnT;
+import com.ytrue.job.core.biz.model.ShardPullParam;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 03:10
+ * @description 动态分片任务的工作单元分配组件
+ * 分片广播是按照执行器在地址列表中的位置静态分片的，执行得最慢的执行器决定了整个任务什么时候结束
+ * 动态分片的任务也会在每个执行器上触发一次，但是每个执行器不再处理固定的分片，而是处理完一个工作单元之后再来这里领取下一个
+ * 每次调度的工作单元的分配情况保存在内存中，哪些已经处理完了，哪些正在哪个执行器上处理，都记录在这里
+ * 一次调度在某个执行器上的执行结束了，或者执行器从注册表中移除了，它手上还没处理完的工作单元会重新分配给别的执行器
+ * 工作单元都分配出去了，但是还有没处理完的时候，领取的执行器会等待，直到所有工作单元都处理完，或者有工作单元重新分配出来
+ * 失败重试的调度会加入这个任务最近的一次调度，继续处理还没处理完的工作单元
+ * 注意，分配情况只保存在触发这次调度的调度中心上，触发的时候会把这个调度中心的地址发给执行器，执行器先向这个地址领取，
+ * 配置的调度中心地址是负载均衡的地址的时候，请求也不会落到别的调度中心上，这个地址访问不到的话，才会依次尝试配置的每个调度中心
+ * 分配情况没有持久化，调度中心重启之后，正在执行的动态分片的调度都找不到了，执行器领取失败，这些执行都会失败，
+ * 配置了失败重试的话，重试的时候会从第一个工作单元开始一次新的调度
+ * 但是执行结果的回调和丢失任务的检测可能发生在别的调度中心上，所以清理线程会定期从数据库中查询这里持有的日志，有了执行结果的日志就按执行结束处理
+ * 另外，一条日志超过租约时间没有来领取的话，它手上的工作单元也会重新分配，处理完的调度和长时间没有活动的调度会从内存中删除
+ */
+public class JobShardDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobShardDispatcher.class);
+
+    private static JobShardDispatcher instance = new JobShardDispatcher();
+
+    public static JobShardDispatcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * 一次调度最多的工作单元数量
+     */
+    private static final int MAX_UNIT_TOTAL = 10_000_000;
+
+    /**
+     * 清理线程的执行周期
+     */
+    private static final long SWEEP_INTERVAL_MS = 5_000;
+
+    /**
+     * 工作单元的租约，一条日志超过这个时间没有来领取，它手上的工作单元就重新分配
+     * 处理一个工作单元的时间超过租约的话，这个工作单元可能会被处理两次，所以工作单元的处理逻辑要能重复执行
+     */
+    static final long UNIT_LEASE_MS = 5 * 60 * 1000;
+
+    /**
+     * 一次调度超过这个时间没有任何活动，就从内存中删除，失败重试的调度不会再加入它
+     */
+    static final long RUN_IDLE_EXPIRE_MS = 60 * 60 * 1000;
+
+    /**
+     * 一次从数据库中查询的日志数量
+     */
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    /**
+     * 正在执行的调度，key为日志id
+     */
+    private final ConcurrentMap<Long, ShardRun> runByLogId = new ConcurrentHashMap<>();
+
+    /**
+     * 每个任务最近的一次调度，失败重试的时候使用
+     */
+    private final ConcurrentMap<Integer, ShardRun> latestRunByJobId = new ConcurrentHashMap<>();
+
+    private Thread sweepThread;
+
+    private volatile boolean toStop = false;
+
+
+    /**
+     * 一次动态分片的调度，所有字段都在这个对象的锁中访问
+     */
+    private static class ShardRun {
+
+        private final int jobId;
+
+        /**
+         * 工作单元的总数，第一个执行器领取的时候才知道，0表示还不知道
+         */
+        private int unitTotal = 0;
+
+        /**
+         * 下一个还没有分配过的工作单元
+         */
+        private int nextUnit = 0;
+
+        /**
+         * 需要重新分配的工作单元
+         */
+        private final ArrayDeque<Integer> reissueQueue = new ArrayDeque<>();
+
+        /**
+         * 已经处理完的工作单元
+         */
+        private final BitSet completed = new BitSet();
+
+        private int completedCount = 0;
+
+        /**
+         * 还在执行的日志，value为这个执行器正在处理的工作单元
+         */
+        private final Map<Long, Set<Integer>> inFlight = new HashMap<>();
+
+        /**
+         * 还在执行的日志，执行器下线的时候用来找到这个执行器上的日志
+         */
+        private final Map<Long, XxlJobLog> logs = new HashMap<>();
+
+        /**
+         * 每条日志最近一次领取的时间，加入调度的时候也算一次
+         */
+        private final Map<Long, Long> lastPullTime = new HashMap<>();
+
+        /**
+         * 这次调度最近一次活动的时间
+         */
+        private long lastActiveTime;
+
+        private ShardRun(int jobId, long now) {
+            this.jobId = jobId;
+            this.lastActiveTime = now;
+        }
+
+        private void addLog(XxlJobLog jobLog, long now) {
+            logs.put(jobLog.getId(), jobLog);
+            inFlight.put(jobLog.getId(), new HashSet<>());
+            lastPullTime.put(jobLog.getId(), now);
+            lastActiveTime = now;
+        }
+
+        /**
+         * 一个日志不再执行了，它手上的工作单元重新分配
+         */
+        private void removeLog(long logId) {
+            logs.remove(logId);
+            lastPullTime.remove(logId);
+            Set<Integer> units = inFlight.remove(logId);
+            if (units != null && !units.isEmpty()) {
+                reissueQueue.addAll(units);
+                logger.info(">>>>>>>>>>> xxl-job, dynamic sharding reissue units, jobId:{}, logId:{}, units:{}", jobId, logId, units.size());
+            }
+        }
+
+        private boolean isFinished() {
+            return unitTotal > 0 && completedCount >= unitTotal;
+        }
+    }
+
+
+    /**
+     * 一次动态分片的调度的日志都插入数据库之后调用，这次调度在每个执行器上都有一条日志
+     *
+     * @param jobId
+     * @param jobLogList
+     */
+    public void register(int jobId, List<XxlJobLog> jobLogList) {
+        long now = System.currentTimeMillis();
+        ShardRun run = new ShardRun(jobId, now);
+        synchronized (run) {
+            for (XxlJobLog jobLog : jobLogList) {
+                run.addLog(jobLog, now);
+                runByLogId.put(jobLog.getId(), run);
+            }
+        }
+        latestRunByJobId.put(jobId, run);
+    }
+
+
+    /**
+     * 失败重试的调度加入这个任务最近的一次调度，没有的话就开始一次新的调度
+     *
+     * @param jobLog
+     */
+    public void join(XxlJobLog jobLog) {
+        ShardRun run = latestRunByJobId.get(jobLog.getJobId());
+        if (run == null) {
+            register(jobLog.getJobId(), Collections.singletonList(jobLog));
+            return;
+        }
+        synchronized (run) {
+            run.addLog(jobLog, System.currentTimeMillis());
+            runByLogId.put(jobLog.getId(), run);
+        }
+    }
+
+
+    /**
+     * 执行器领取下一个工作单元，同时汇报上一个工作单元已经处理完了
+     * 一个执行器上的一次执行同时只处理一个工作单元，所以除了汇报的这个，它手上别的工作单元都是没能送到执行器的，直接重新分配
+     * 汇报的工作单元因为租约过期已经重新分配了的话，也算处理完了，重新分配出去的那一份不会再被分配
+     *
+     * @param shardPullParam
+     * @return
+     */
+    public ReturnT<Integer> pull(ShardPullParam shardPullParam) {
+        ShardRun run = runByLogId.get(shardPullParam.getLogId());
+        if (run == null) {
+            return new ReturnT<>(ReturnT.FAIL_CODE, "dynamic sharding run not found, logId:" + shardPullParam.getLogId());
+        }
+        synchronized (run) {
+            Set<Integer> units = run.inFlight.get(shardPullParam.getLogId());
+            if (units == null) {
+                return new ReturnT<>(ReturnT.FAIL_CODE, "dynamic sharding run not found, logId:" + shardPullParam.getLogId());
+            }
+            if (run.unitTotal == 0) {
+                if (shardPullParam.getUnitTotal() <= 0 || shardPullParam.getUnitTotal() > MAX_UNIT_TOTAL) {
+                    return new ReturnT<>(ReturnT.FAIL_CODE, "invalid unitTotal:" + shardPullParam.getUnitTotal());
+                }
+                run.unitTotal = shardPullParam.getUnitTotal();
+            }
+            long now = System.currentTimeMillis();
+            run.lastPullTime.put(shardPullParam.getLogId(), now);
+            run.lastActiveTime = now;
+            int finishedUnit = shardPullParam.getFinishedUnit();
+            if (finishedUnit >= 0 && finishedUnit < run.unitTotal) {
+                units.remove(finishedUnit);
+                if (!run.completed.get(finishedUnit)) {
+                    run.completed.set(finishedUnit);
+                    run.completedCount++;
+                }
+            }
+            if (!units.isEmpty()) {
+                run.reissueQueue.addAll(units);
+                units.clear();
+            }
+            if (run.isFinished()) {
+                return new ReturnT<>(ShardPullParam.UNIT_DONE);
+            }
+            //先分配重新分配出来的工作单元，已经被别的执行器处理完的直接跳过
+            Integer unit;
+            while ((unit = run.reissueQueue.poll()) != null) {
+                if (!run.completed.get(unit) && !isInFlight(run, unit)) {
+                    break;
+                }
+            }
+            if (unit == null && run.nextUnit < run.unitTotal) {
+                unit = run.nextUnit++;
+            }
+            if (unit == null) {
+                //都分配出去了，等待别的执行器处理完，或者它们挂掉之后工作单元重新分配出来
+                return new ReturnT<>(ShardPullParam.UNIT_WAIT);
+            }
+            units.add(unit);
+            return new ReturnT<>(unit);
+        }
+    }
+
+
+    /**
+     * 一条日志有了执行结果，或者触发失败了，它手上的工作单元重新分配给别的执行器
+     *
+     * @param logId
+     */
+    public void logFinished(long logId) {
+        ShardRun run = runByLogId.remove(logId);
+        if (run == null) {
+            return;
+        }
+        synchronized (run) {
+            run.removeLog(logId);
+            if (run.logs.isEmpty()) {
+                if (run.isFinished()) {
+                    //处理完了，失败重试也不需要再加入这次调度了
+                    latestRunByJobId.remove(run.jobId, run);
+                } else {
+                    logger.warn(">>>>>>>>>>> xxl-job, dynamic sharding run has no running executor, jobId:{}, completed:{}/{}",
+                            run.jobId, run.completedCount, run.unitTotal);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 执行器从注册表中移除之后调用，这个执行器上的日志手上的工作单元马上重新分配，不用等到丢失任务的检测
+     * 执行器只是暂时没有续约的话，之后领取的时候会发现日志已经不在这次调度中了，这条日志就会执行失败
+     *
+     * @param address
+     */
+    public void executorRemoved(String address) {
+        for (Map.Entry<Long, ShardRun> entry : runByLogId.entrySet()) {
+            ShardRun run = entry.getValue();
+            boolean removed;
+            synchronized (run) {
+                XxlJobLog jobLog = run.logs.get(entry.getKey());
+                removed = jobLog != null && address.equals(jobLog.getExecutorAddress());
+            }
+            if (removed) {
+                logFinished(entry.getKey());
+            }
+        }
+    }
+
+
+    public void start() {
+        sweepThread = new Thread(() -> {
+            while (!toStop) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(SWEEP_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    if (!toStop) {
+                        logger.error(e.getMessage(), e);
+                    }
+                }
+                if (toStop) {
+                    break;
+                }
+                try {
+                    releaseFinishedLogs();
+                    expire(System.currentTimeMillis());
+                } catch (Exception e) {
+                    logger.error(">>>>>>>>>>> xxl-job, dynamic sharding sweep error:{}", e);
+                }
+            }
+            logger.info(">>>>>>>>>>> xxl-job, dynamic sharding sweep thread stop");
+        });
+        sweepThread.setDaemon(true);
+        sweepThread.setName("xxl-job, admin JobShardDispatcher");
+        sweepThread.start();
+    }
+
+
+    public void toStop() {
+        toStop = true;
+        sweepThread.interrupt();
+        try {
+            sweepThread.join();
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * 从数据库中查询这里持有的日志，已经有了执行结果的按执行结束处理
+     * 执行结果的回调和丢失任务的检测可能是别的调度中心处理的，它们只会更新数据库中的日志，不会通知到这里
+     */
+    void releaseFinishedLogs() {
+        List<Long> logIds = new ArrayList<>(runByLogId.keySet());
+        for (int from = 0; from < logIds.size(); from += LOAD_BATCH_SIZE) {
+            List<Long> batch = logIds.subList(from, Math.min(from + LOAD_BATCH_SIZE, logIds.size()));
+            List<XxlJobLog> jobLogList = XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().loadByIdsFrom(batch, XxlJobLogDao.triggerTimeFrom(minTriggerTime(batch)));
+            Set<Long> found = new HashSet<>();
+            for (XxlJobLog jobLog : jobLogList) {
+                found.add(jobLog.getId());
+                if (jobLog.getHandleCode() > 0) {
+                    logFinished(jobLog.getId());
+                }
+            }
+            //日志已经被清理掉了，这次执行也就不用再管了
+            for (Long logId : batch) {
+                if (!found.contains(logId)) {
+                    logFinished(logId);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 一批日志中最早的触发时间，用来限制查询的分区，有一条日志不知道触发时间的话就返回0，不限制范围
+     */
+    private long minTriggerTime(List<Long> logIds) {
+        long minTriggerTime = Long.MAX_VALUE;
+        for (Long logId : logIds) {
+            ShardRun run = runByLogId.get(logId);
+            XxlJobLog jobLog = null;
+            if (run != null) {
+                synchronized (run) {
+                    jobLog = run.logs.get(logId);
+                }
+            }
+            if (jobLog == null || jobLog.getTriggerTime() == null) {
+                return 0;
+            }
+            minTriggerTime = Math.min(minTriggerTime, jobLog.getTriggerTime().getTime());
+        }
+        return minTriggerTime;
+    }
+
+
+    /**
+     * 租约过期的日志手上的工作单元重新分配，长时间没有活动的调度从内存中删除
+     *
+     * @param now
+     */
+    void expire(long now) {
+        Set<ShardRun> runs = Collections.newSetFromMap(new IdentityHashMap<>());
+        runs.addAll(runByLogId.values());
+        runs.addAll(latestRunByJobId.values());
+        for (ShardRun run : runs) {
+            List<Long> idleLogIds = new ArrayList<>();
+            synchronized (run) {
+                for (Map.Entry<Long, Set<Integer>> entry : run.inFlight.entrySet()) {
+                    Set<Integer> units = entry.getValue();
+                    if (!units.isEmpty() && now - run.lastPullTime.get(entry.getKey()) > UNIT_LEASE_MS) {
+                        run.reissueQueue.addAll(units);
+                        logger.info(">>>>>>>>>>> xxl-job, dynamic sharding unit lease expired, jobId:{}, logId:{}, units:{}", run.jobId, entry.getKey(), units.size());
+                        units.clear();
+                    }
+                }
+                if (now - run.lastActiveTime > RUN_IDLE_EXPIRE_MS) {
+                    idleLogIds.addAll(run.logs.keySet());
+                    latestRunByJobId.remove(run.jobId, run);
+                }
+            }
+            for (Long logId : idleLogIds) {
+                logger.warn(">>>>>>>>>>> xxl-job, dynamic sharding run expired, jobId:{}, logId:{}", run.jobId, logId);
+                logFinished(logId);
+            }
+        }
+    }
+
+
+    private static boolean isInFlight(ShardRun run, int unit) {
+        for (Set<Integer> units : run.inFlight.values()) {
+            if (units.contains(unit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
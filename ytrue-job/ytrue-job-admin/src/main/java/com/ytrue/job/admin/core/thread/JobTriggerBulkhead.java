@@ -0,0 +1,263 @@
+package com.ytrue.job.admin.core.thread;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 18:05
+ * @description 一个执行器组专用的触发器线程池，也就是舱壁
+ * 原来所有执行器组的任务共用快慢两个线程池，某个执行器组响应很慢的时候，它的任务会把线程和队列都占满，别的执行器组的任务也触发不了
+ * 现在每个执行器组都有自己的快慢两个线程池，队列都是有界的，队列满了就直接拒绝，由调用者记录一次触发失败，不会影响到别的执行器组
+ * 任务走快线程池还是慢线程池，由该任务触发耗时的指数加权移动平均值决定，不再是每分钟清空一次的慢执行次数
+ * 执行器组很多的时候，每个组的线程池加起来会很大，所以线程在执行触发器任务之前，还要先拿到所有执行器组共用的快慢许可，
+ * 许可的数量就是triggerpool.fast.max和triggerpool.slow.max，也就是说所有执行器组同时执行的触发器任务不会超过这两个值
+ * 远程调用是异步进行的，线程提交完请求就去执行下一个任务了，所以许可要等到触发器任务返回的future完成之后才释放，
+ * 否则执行器响应很慢的时候，正在进行的远程调用的数量就没有上限了
+ */
+public class JobTriggerBulkhead {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobTriggerBulkhead.class);
+
+    /**
+     * 指数加权移动平均的权重，新的耗时占0.2，历史的平均值占0.8
+     */
+    private static final double EWMA_ALPHA = 0.2;
+
+    /**
+     * 平均耗时超过这个值，任务就交给慢线程池执行
+     */
+    private static final double SLOW_THRESHOLD_MS = 500;
+
+    /**
+     * 平均耗时降到这个值以下，任务才回到快线程池，两个阈值不一样是为了防止任务在快慢线程池之间来回切换
+     */
+    private static final double FAST_THRESHOLD_MS = 250;
+
+    /**
+     * 执行器组的appname
+     */
+    private final String appname;
+
+    private final ThreadPoolExecutor fastTriggerPool;
+
+    private final ThreadPoolExecutor slowTriggerPool;
+
+    /**
+     * 所有执行器组共用的快慢许可
+     */
+    private final Semaphore fastPermits;
+
+    private final Semaphore slowPermits;
+
+    /**
+     * 最近一次提交任务的时间，长时间没有使用并且执行器组已经删除的话，这个线程池会被回收
+     */
+    private volatile long lastUsedTime = System.currentTimeMillis();
+
+    /**
+     * 每个任务触发耗时的统计，key为任务id
+     */
+    private final ConcurrentMap<Integer, LatencyStat> jobLatencyMap = new ConcurrentHashMap<>();
+
+    /**
+     * 整个执行器组触发耗时的统计
+     */
+    private final LatencyStat groupLatency = new LatencyStat();
+
+    /**
+     * 被拒绝的触发次数
+     */
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+
+    /**
+     * 触发耗时的统计，平均值是用double的二进制形式存在AtomicLong中的，这样更新的时候就不用加锁了
+     */
+    private static class LatencyStat {
+
+        private final AtomicLong ewmaBits = new AtomicLong(Double.doubleToLongBits(-1));
+
+        /**
+         * 当前是否被判定为慢任务
+         */
+        private volatile boolean slow = false;
+
+        private void record(long cost) {
+            long oldBits;
+            double newValue;
+            do {
+                oldBits = ewmaBits.get();
+                double oldValue = Double.longBitsToDouble(oldBits);
+                //第一次记录的时候直接用这次的耗时作为平均值
+                newValue = oldValue < 0 ? cost : oldValue + EWMA_ALPHA * (cost - oldValue);
+            } while (!ewmaBits.compareAndSet(oldBits, Double.doubleToLongBits(newValue)));
+            if (!slow && newValue > SLOW_THRESHOLD_MS) {
+                slow = true;
+            } else if (slow && newValue < FAST_THRESHOLD_MS) {
+                slow = false;
+            }
+        }
+
+        private double get() {
+            return Math.max(Double.longBitsToDouble(ewmaBits.get()), 0);
+        }
+    }
+
+
+    JobTriggerBulkhead(String appname, int fastMax, int slowMax, int queueCapacity, Semaphore fastPermits, Semaphore slowPermits) {
+        this.appname = appname;
+        this.fastPermits = fastPermits;
+        this.slowPermits = slowPermits;
+        //核心线程数和最大线程数相同，这样线程数没到上限之前任务不会在队列中排队，空闲的线程也会被回收，执行器组很多的时候也不会占用太多线程
+        fastTriggerPool = new ThreadPoolExecutor(
+                fastMax,
+                fastMax,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "xxl-job, admin JobTriggerPoolHelper-fastTriggerPool-" + appname + "-" + r.hashCode()));
+        fastTriggerPool.allowCoreThreadTimeOut(true);
+        slowTriggerPool = new ThreadPoolExecutor(
+                slowMax,
+                slowMax,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "xxl-job, admin JobTriggerPoolHelper-slowTriggerPool-" + appname + "-" + r.hashCode()));
+        slowTriggerPool.allowCoreThreadTimeOut(true);
+    }
+
+
+    /**
+     * 提交触发器任务，慢任务交给慢线程池，其他的交给快线程池
+     * 触发器任务返回的future完成之后才会释放许可，返回null的话执行完就释放
+     *
+     * @param jobId
+     * @param task
+     * @return 队列已满或者线程池已经关闭的时候返回false，任务不会被执行
+     */
+    boolean execute(int jobId, Supplier<? extends CompletableFuture<?>> task) {
+        boolean slow = isSlow(jobId);
+        ThreadPoolExecutor triggerPool = slow ? slowTriggerPool : fastTriggerPool;
+        Semaphore permits = slow ? slowPermits : fastPermits;
+        lastUsedTime = System.currentTimeMillis();
+        try {
+            triggerPool.execute(() -> {
+                //所有执行器组同时执行的触发器任务数量有上限，拿不到许可就等待，线程池关闭的时候会被中断
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    logger.warn(">>>>>>>>>>> xxl-job, trigger interrupted before run, appname:{}, jobId:{}", appname, jobId);
+                    return;
+                }
+                CompletableFuture<?> future;
+                try {
+                    future = task.get();
+                } catch (RuntimeException | Error e) {
+                    permits.release();
+                    throw e;
+                }
+                if (future == null) {
+                    permits.release();
+                    return;
+                }
+                future.whenComplete((result, e) -> permits.release());
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (triggerPool.isShutdown()) {
+                return false;
+            }
+            rejectedCount.incrementAndGet();
+            logger.warn(">>>>>>>>>>> xxl-job, trigger rejected, appname:{}, jobId:{}, activeCount:{}, queueSize:{}",
+                    appname, jobId, triggerPool.getActiveCount(), triggerPool.getQueue().size());
+            return false;
+        }
+    }
+
+
+    /**
+     * 记录一次触发的耗时
+     *
+     * @param jobId
+     * @param cost
+     */
+    void recordLatency(int jobId, long cost) {
+        jobLatencyMap.computeIfAbsent(jobId, k -> new LatencyStat()).record(cost);
+        groupLatency.record(cost);
+    }
+
+
+    /**
+     * 判断任务是不是慢任务
+     *
+     * @param jobId
+     * @return
+     */
+    boolean isSlow(int jobId) {
+        LatencyStat stat = jobLatencyMap.get(jobId);
+        return stat != null && stat.slow;
+    }
+
+
+    void shutdownNow() {
+        fastTriggerPool.shutdownNow();
+        slowTriggerPool.shutdownNow();
+    }
+
+
+    /**
+     * 回收这个线程池，已经提交的任务还会执行完
+     */
+    void shutdown() {
+        fastTriggerPool.shutdown();
+        slowTriggerPool.shutdown();
+    }
+
+
+    boolean isShutdown() {
+        return fastTriggerPool.isShutdown();
+    }
+
+
+    /**
+     * 是否已经空闲了一段时间，没有正在执行和排队的任务
+     *
+     * @param idleMs
+     * @return
+     */
+    boolean isIdle(long idleMs) {
+        return getActiveCount() == 0 && getQueueSize() == 0 && System.currentTimeMillis() - lastUsedTime > idleMs;
+    }
+
+
+    public String getAppname() {
+        return appname;
+    }
+
+    /**
+     * 得到执行器组触发耗时的平均值，单位毫秒
+     *
+     * @return
+     */
+    public double getLatencyEwma() {
+        return groupLatency.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public int getActiveCount() {
+        return fastTriggerPool.getActiveCount() + slowTriggerPool.getActiveCount();
+    }
+
+    public int getQueueSize() {
+        return fastTriggerPool.getQueue().size() + slowTriggerPool.getQueue().size();
+    }
+}
@@ -0,0 +1,462 @@
+package com.ytrue.job.admin.core.thread;
+
+import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.metrics.JobMetrics;
+import com.ytrue.job.admin.core.model.XxlJobLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 14:40
+ * @description 触发任务的流水线组件
+ * 原来每触发一次任务，都要先插入一条调度日志，远程调用执行器，然后再更新这条调度日志，两次数据库操作加一次网络调用，
+ * 全都是在触发器线程池的线程中同步执行的。整分钟大量任务一起触发的时候，数据库就成了瓶颈
+ * 这个组件把这几步拆开了：调度日志的插入和更新都先放进队列，由后台线程攒成一批，用一条多行的sql语句写入数据库；
+ * 远程调用执行器是异步进行的，触发器线程不用再等待执行器的响应，执行器响应之后的处理交给这里的线程池
+ * 注意，日志还在队列中的时候，等待日志插入的触发器线程最多等待SAVE_TIMEOUT_MS，超时之后从队列中拿出来，这次触发就失败了；
+ * 已经在写入数据库的那一批中的话，就一直等到写完，不会留下一条没有触发信息的日志。组件停止的时候队列中剩下的日志都会写入数据库，或者以失败通知等待的线程
+ * 远程调用结果的处理一定在这里的线程中进行，线程池满了就交给备用的线程池，不会在netty的IO线程中访问数据库
+ */
+public class JobTriggerPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobTriggerPipeline.class);
+
+    /**
+     * 一批最多插入的日志条数
+     */
+    private static final int SAVE_BATCH_SIZE = 200;
+
+    /**
+     * 一批最多更新的日志条数，更新的时候会带上调度备注，单条数据比较大，所以这一批的数量要少一些
+     */
+    private static final int UPDATE_BATCH_SIZE = 100;
+
+    /**
+     * 触发器线程等待日志插入的最长时间，超过这个时间日志还在队列中的话，这次触发就失败
+     */
+    private static final long SAVE_TIMEOUT_MS = 10_000;
+
+    /**
+     * 组件停止的时候等待后台线程写完当前这一批的最长时间
+     */
+    private static final long STOP_JOIN_MS = 5_000;
+
+    /**
+     * 单例对象
+     */
+    private static JobTriggerPipeline instance = new JobTriggerPipeline();
+
+    public static JobTriggerPipeline getInstance() {
+        return instance;
+    }
+
+
+    /**
+     * 等待插入的调度日志，日志插入之后才有日志id，所以每次提交的日志都对应一个future，插入完成之后通知触发器线程
+     * 分片广播会一次提交所有分片的日志，这些日志一定会在同一批中插入
+     */
+    private final LinkedBlockingQueue<PendingLog> saveQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * 等待更新触发信息的调度日志
+     */
+    private final LinkedBlockingQueue<XxlJobLog> updateQueue = new LinkedBlockingQueue<>();
+
+    /**
+     * 处理远程调用结果的线程池，拼接调度备注、提交日志更新都在这里进行，不占用netty的IO线程
+     */
+    private ThreadPoolExecutor executorCallPool = null;
+
+    /**
+     * executorCallPool满了之后使用的备用线程池，队列没有上限，不会拒绝任务
+     * 正在进行的远程调用的数量受触发器线程池的许可限制，所以这里堆积的任务也是有限的
+     */
+    private ThreadPoolExecutor executorCallFallbackPool = null;
+
+    /**
+     * 批量插入日志的线程
+     */
+    private Thread saveThread;
+
+    /**
+     * 批量更新日志的线程
+     */
+    private Thread updateThread;
+
+    private volatile boolean toStop = false;
+
+
+    private static class PendingLog {
+
+        private final List<XxlJobLog> jobLogList;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingLog(List<XxlJobLog> jobLogList) {
+            this.jobLogList = jobLogList;
+        }
+    }
+
+
+    public void start() {
+        toStop = false;
+        //处理远程调用结果的线程池，提交任务的是netty的IO线程，任务太多的时候不能让它来执行，交给备用的线程池
+        executorCallFallbackPool = new ThreadPoolExecutor(
+                2,
+                2,
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "xxl-job, admin JobTriggerPipeline-executorCallFallbackPool-" + r.hashCode()));
+        executorCallPool = new ThreadPoolExecutor(
+                10,
+                XxlJobAdminConfig.getAdminConfig().getTriggerPoolFastMax() + XxlJobAdminConfig.getAdminConfig().getTriggerPoolSlowMax(),
+                60L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(3000),
+                r -> new Thread(r, "xxl-job, admin JobTriggerPipeline-executorCallPool-" + r.hashCode()),
+                (r, executor) -> {
+                    logger.warn(">>>>>>>>>>> xxl-job, trigger result too fast, match threadpool rejected handler(fallback).");
+                    executeFallback(r);
+                });
+        JobMetrics.bindQueue("xxl.job.pipeline.save.queue", "job logs waiting to be inserted", saveQueue);
+        JobMetrics.bindQueue("xxl.job.pipeline.update.queue", "job logs waiting to be updated with trigger result", updateQueue);
+        JobMetrics.bindQueue("xxl.job.pipeline.executor.result.queue", "executor run results waiting to be handled", executorCallPool.getQueue());
+
+        saveThread = new Thread(() -> {
+            List<PendingLog> batch = new ArrayList<>(SAVE_BATCH_SIZE);
+            while (!toStop) {
+                try {
+                    //这里不需要刻意等待凑够一批，上一批写入数据库的时候，新的日志自然就在队列中堆积起来了
+                    PendingLog first = saveQueue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    saveQueue.drainTo(batch, SAVE_BATCH_SIZE - 1);
+                    flushSave(batch);
+                } catch (InterruptedException e) {
+                    if (!toStop) {
+                        logger.error(">>>>>>>>>>> xxl-job, JobTriggerPipeline save thread error:{}", e);
+                    }
+                } catch (Throwable e) {
+                    logger.error(">>>>>>>>>>> xxl-job, JobTriggerPipeline save thread error:{}", e);
+                } finally {
+                    batch.clear();
+                }
+            }
+            logger.info(">>>>>>>>>>> xxl-job, JobTriggerPipeline save thread stop");
+        });
+        saveThread.setDaemon(true);
+        saveThread.setName("xxl-job, admin JobTriggerPipeline-saveThread");
+        saveThread.start();
+
+        updateThread = new Thread(() -> {
+            List<XxlJobLog> batch = new ArrayList<>(UPDATE_BATCH_SIZE);
+            while (!toStop) {
+                try {
+                    XxlJobLog first = updateQueue.poll(1, TimeUnit.SECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    updateQueue.drainTo(batch, UPDATE_BATCH_SIZE - 1);
+                    flushUpdate(batch);
+                } catch (InterruptedException e) {
+                    if (!toStop) {
+                        logger.error(">>>>>>>>>>> xxl-job, JobTriggerPipeline update thread error:{}", e);
+                    }
+                } catch (Throwable e) {
+                    logger.error(">>>>>>>>>>> xxl-job, JobTriggerPipeline update thread error:{}", e);
+                } finally {
+                    batch.clear();
+                }
+            }
+            logger.info(">>>>>>>>>>> xxl-job, JobTriggerPipeline update thread stop");
+        });
+        updateThread.setDaemon(true);
+        updateThread.setName("xxl-job, admin JobTriggerPipeline-updateThread");
+        updateThread.start();
+    }
+
+
+    /**
+     * 终止组件工作的方法，要在触发器线程池关闭之后再调用，把队列中剩下的日志全部写入数据库
+     */
+    public void toStop() {
+        toStop = true;
+        //先等已经收到响应的远程调用处理完，它们处理完之后还要更新调度日志
+        executorCallPool.shutdown();
+        try {
+            executorCallPool.awaitTermination(5, TimeUnit.SECONDS);
+            executorCallFallbackPool.shutdown();
+            executorCallFallbackPool.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
+        //后台线程可能正在写入一批数据，最多等待一段时间，剩下的数据就在当前线程中写入，和后台线程不会写入同一条数据
+        saveThread.interrupt();
+        updateThread.interrupt();
+        try {
+            saveThread.join(STOP_JOIN_MS);
+            updateThread.join(STOP_JOIN_MS);
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
+        //flushSave会完成或者失败每一个future，等待的触发器线程都会被通知到
+        List<PendingLog> pendingSave = new ArrayList<>();
+        saveQueue.drainTo(pendingSave);
+        if (!pendingSave.isEmpty()) {
+            flushSave(pendingSave);
+        }
+        List<XxlJobLog> pendingUpdate = new ArrayList<>();
+        updateQueue.drainTo(pendingUpdate);
+        while (!pendingUpdate.isEmpty()) {
+            List<XxlJobLog> batch = pendingUpdate.subList(0, Math.min(UPDATE_BATCH_SIZE, pendingUpdate.size()));
+            flushUpdate(new ArrayList<>(batch));
+            batch.clear();
+        }
+        logger.info(">>>>>>>>> xxl-job, JobTriggerPipeline stop success.");
+    }
+
+
+    /**
+     * 保存调度日志，这个方法会阻塞到日志写入数据库，返回之后日志的id就有了，日志还在队列中的话最多等待SAVE_TIMEOUT_MS
+     * 多个触发器线程同时保存的日志会合并成一条sql语句插入
+     *
+     * @param jobLog
+     */
+    public void saveLog(XxlJobLog jobLog) {
+        saveLogs(Collections.singletonList(jobLog));
+    }
+
+
+    /**
+     * 一次保存多条调度日志，分片广播的时候用的就是这个方法，所有分片的日志会一起插入
+     *
+     * @param jobLogList
+     */
+    public void saveLogs(List<XxlJobLog> jobLogList) {
+        if (jobLogList.isEmpty()) {
+            return;
+        }
+        if (toStop) {
+            //组件已经停止了，就直接写入数据库
+            saveDirectly(jobLogList);
+            return;
+        }
+        PendingLog pendingLog = new PendingLog(jobLogList);
+        if (!offerSave(pendingLog)) {
+            saveDirectly(jobLogList);
+            return;
+        }
+        //如果数据库插入失败了，这里会抛出异常，和原来直接插入的效果是一样的
+        try {
+            pendingLog.future.get(SAVE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw new CompletionException(e.getCause());
+        } catch (InterruptedException | TimeoutException e) {
+            //还在队列中的话就拿出来，不再插入，这次触发就失败了
+            if (saveQueue.remove(pendingLog)) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                pendingLog.future.completeExceptionally(e);
+                throw new CompletionException("xxl-job, JobTriggerPipeline save job log timeout(" + SAVE_TIMEOUT_MS + "ms)", e);
+            }
+            //已经在写入数据库的这一批中了，日志一定会插入，这里就一直等到写完，让这次触发继续进行，之后会更新触发信息
+            awaitInFlight(pendingLog, e instanceof InterruptedException);
+        }
+    }
+
+
+    /**
+     * 等待已经在写入的这一批日志写完，等待的过程中不响应中断，等完之后再恢复中断标记
+     *
+     * @param pendingLog
+     * @param interrupted
+     */
+    private void awaitInFlight(PendingLog pendingLog, boolean interrupted) {
+        try {
+            while (true) {
+                try {
+                    pendingLog.future.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new CompletionException(e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * 保存调度日志，这个方法不会等待日志写入数据库，日志写入之后返回的future才会完成
+     *
+     * @param jobLog
+     * @return
+     */
+    public CompletableFuture<Void> saveLogAsync(XxlJobLog jobLog) {
+        PendingLog pendingLog = new PendingLog(Collections.singletonList(jobLog));
+        if (toStop || !offerSave(pendingLog)) {
+            try {
+                saveDirectly(pendingLog.jobLogList);
+                pendingLog.future.complete(null);
+            } catch (Exception e) {
+                pendingLog.future.completeExceptionally(e);
+            }
+        }
+        return pendingLog.future;
+    }
+
+
+    /**
+     * 把日志放进插入队列，放进去之后组件停止了，并且还没有被停止的时候取走的话，就拿出来返回false，由调用方直接写入数据库
+     * 这样在停止组件的同时提交的日志也不会一直留在队列中
+     *
+     * @param pendingLog
+     * @return
+     */
+    private boolean offerSave(PendingLog pendingLog) {
+        saveQueue.offer(pendingLog);
+        return !(toStop && saveQueue.remove(pendingLog));
+    }
+
+
+    private void saveDirectly(List<XxlJobLog> jobLogList) {
+        for (XxlJobLog jobLog : jobLogList) {
+            XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().save(jobLog);
+            JobLogReportHelper.getInstance().logCreated(jobLog);
+        }
+    }
+
+
+    /**
+     * 更新调度日志的触发信息，这个方法不会等待，日志放进队列之后就返回了
+     *
+     * @param jobLog
+     */
+    public void updateTriggerInfo(XxlJobLog jobLog) {
+        if (toStop) {
+            XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().updateTriggerInfo(jobLog);
+            return;
+        }
+        updateQueue.offer(jobLog);
+        //放进去之后组件停止了，并且队列已经清空过了的话，就直接更新
+        if (toStop && updateQueue.remove(jobLog)) {
+            XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().updateTriggerInfo(jobLog);
+        }
+    }
+
+
+    /**
+     * 得到处理远程调用结果的线程池
+     *
+     * @return
+     */
+    public Executor getExecutorCallPool() {
+        if (toStop || executorCallPool == null) {
+            //组件停止之后，交给备用的线程池，备用的线程池也停止了就单独创建一个线程，不能在netty的IO线程中处理
+            return this::executeFallback;
+        }
+        return executorCallPool;
+    }
+
+
+    /**
+     * 在备用的线程池中执行，这个方法不会拒绝任务
+     *
+     * @param task
+     */
+    private void executeFallback(Runnable task) {
+        ThreadPoolExecutor fallbackPool = executorCallFallbackPool;
+        if (fallbackPool != null) {
+            try {
+                fallbackPool.execute(task);
+                return;
+            } catch (RejectedExecutionException e) {
+                //备用的线程池已经停止了
+            }
+        }
+        Thread thread = new Thread(task, "xxl-job, admin JobTriggerPipeline-executorCallFallback");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * 把一批日志插入数据库，一条sql最多插入SAVE_BATCH_SIZE条，批量插入失败了就退化成一条一条插入，尽量不影响其他的任务
+     *
+     * @param batch
+     */
+    private void flushSave(List<PendingLog> batch) {
+        List<XxlJobLog> logList = new ArrayList<>();
+        for (PendingLog pendingLog : batch) {
+            logList.addAll(pendingLog.jobLogList);
+        }
+        try {
+            for (int from = 0; from < logList.size(); from += SAVE_BATCH_SIZE) {
+                List<XxlJobLog> subList = logList.subList(from, Math.min(from + SAVE_BATCH_SIZE, logList.size()));
+                XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().saveBatch(subList);
+                //插入成功之后更新日志报告的计数器，后面的批次失败了退化成单条插入的时候，这一批不会再插入，也就不会重复计数
+                for (XxlJobLog jobLog : subList) {
+                    JobLogReportHelper.getInstance().logCreated(jobLog);
+                }
+            }
+            for (PendingLog pendingLog : batch) {
+                pendingLog.future.complete(null);
+            }
+            return;
+        } catch (Exception e) {
+            logger.error(">>>>>>>>>>> xxl-job, JobTriggerPipeline batch save error, fallback to single save:{}", e);
+        }
+        for (PendingLog pendingLog : batch) {
+            try {
+                for (XxlJobLog jobLog : pendingLog.jobLogList) {
+                    //前面的批次可能已经插入成功了，有id的就不用再插入了
+                    if (jobLog.getId() == 0) {
+                        XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().save(jobLog);
+                        JobLogReportHelper.getInstance().logCreated(jobLog);
+                    }
+                }
+                pendingLog.future.complete(null);
+            } catch (Exception e) {
+                pendingLog.future.completeExceptionally(e);
+            }
+        }
+    }
+
+
+    /**
+     * 批量更新调度日志的触发信息，批量更新失败了也退化成一条一条更新
+     *
+     * @param batch
+     */
+    private void flushUpdate(List<XxlJobLog> batch) {
+        try {
+            XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().updateTriggerInfoBatch(batch);
+            return;
+        } catch (Exception e) {
+            logger.error(">>>>>>>>>>> xxl-job, JobTriggerPipeline batch update error, fallback to single update:{}", e);
+        }
+        for (XxlJobLog jobLog : batch) {
+            try {
+                XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().updateTriggerInfo(jobLog);
+            } catch (Exception e) {
+                logger.error(">>>>>>>>>>> xxl-job, JobTriggerPipeline update error, logId:{}", jobLog.getId(), e);
+            }
+        }
+    }
+}
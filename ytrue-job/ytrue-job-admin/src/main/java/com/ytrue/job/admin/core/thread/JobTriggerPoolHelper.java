@@ -1,19 +1,26 @@
 package com.ytrue.job.admin.core.thread;
 
 import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.metrics.JobMetrics;
+import com.ytrue.job.admin.core.model.XxlJobGroup;
+import com.ytrue.job.admin.core.model.XxlJobInfo;
+import com.ytrue.job.admin.core.trigger.JobMetaCache;
 import com.ytrue.job.admin.core.trigger.TriggerTypeEnum;
 import com.ytrue.job.admin.core.trigger.XxlJobTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * @author ytrue
  * @date 2023-08-29 9:48
- * @description xxl-job服务器的重点类，在这个类中初始化了两个线程池。一个快，一个慢，要被执行的任务会被包装成触发器
- * 任务，提交给这两个线程池中的一个，然后由线程池去执行者触发器任务，在任务中会进行远程调用。
+ * @description xxl-job服务器的重点类，要被执行的任务会被包装成触发器任务，提交给线程池，然后由线程池去执行触发器任务，在任务中会进行远程调用。
+ * 原来所有任务共用快慢两个线程池，现在每个执行器组都有自己的快慢线程池，具体可以看JobTriggerBulkhead
+ * triggerpool.fast.max和triggerpool.slow.max原来是两个线程池的最大线程数，现在是所有执行器组同时执行的快慢触发器任务的上限
+ * 执行器组删除之后，它的线程池空闲一段时间就会被回收
  */
 public class JobTriggerPoolHelper {
 
@@ -21,41 +28,57 @@ public class JobTriggerPoolHelper {
 
 
     /**
-     * 下面这两个快慢线程池没有什么本质的不同，都是线程池而已，只不过快线程池的最大线程数为200
-     * 慢线程池的最大线程数为100，任务队列也是如此
-     * 并且会根据任务执行的耗时，来决定下次任务执行的时候是要让快线程池来执行还是让慢线程池来执行
-     * 默认是选择使用快线程池来执行
-     * 到这里大家应该明白了，所谓的快慢线程池并不是说线程执行任务的快慢，而是任务的快慢决定了线程的快慢
-     * 直接来说，执行耗时较短的任务，我们可以称它为快速任务，而执行这些任务的线程池，就被成为了快线程池
-     * 如果任务耗时较长，就给慢线程池来执行
+     * 每个执行器组对应的触发器线程池，key为执行器组的appname，第一次触发该执行器组的任务时才会创建
+     * 所谓的快慢线程池并不是说线程执行任务的快慢，而是任务的快慢决定了线程的快慢
+     * 执行耗时较短的任务交给快线程池，耗时较长的任务交给慢线程池，这样慢任务就不会拖累快任务
+     * 再按照执行器组隔离开，某个执行器组响应慢，也只会占满它自己的线程池
      */
-    //快线程池
-    private ThreadPoolExecutor fastTriggerPool = null;
-    //慢线程池
-    private ThreadPoolExecutor slowTriggerPool = null;
+    private final ConcurrentMap<String, JobTriggerBulkhead> bulkheadMap = new ConcurrentHashMap<>();
 
+    /**
+     * 检查执行器组是否已经删除的周期
+     */
+    private static final long EVICT_INTERVAL_MS = 60_000;
+
+    /**
+     * 执行器组删除之后，它的线程池空闲了这么久才回收
+     */
+    private static final long EVICT_IDLE_MS = 5 * 60_000;
 
     /**
-     * 在这里创建了两个快慢线程池
+     * 所有执行器组共用的快慢许可，限制同时执行的触发器任务的总数
      */
+    private Semaphore fastPermits;
+
+    private Semaphore slowPermits;
+
+    private Thread evictThread;
+
+    private volatile boolean toStop = false;
+
+
     public void start() {
-        //快线程池，最大线程数为200
-        fastTriggerPool = new ThreadPoolExecutor(
-                10,
-                XxlJobAdminConfig.getAdminConfig().getTriggerPoolFastMax(),
-                60L,
-                TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(1000),
-                r -> new Thread(r, "xxl-job, admin JobTriggerPoolHelper-fastTriggerPool-" + r.hashCode()));
-
-        //慢线程池，最大线程数为100
-        slowTriggerPool = new ThreadPoolExecutor(
-                10,
-                XxlJobAdminConfig.getAdminConfig().getTriggerPoolSlowMax(),
-                60L,
-                TimeUnit.SECONDS,
-                new LinkedBlockingQueue<>(2000),
-                r -> new Thread(r, "xxl-job, admin JobTriggerPoolHelper-slowTriggerPool-" + r.hashCode()));
+        toStop = false;
+        fastPermits = new Semaphore(XxlJobAdminConfig.getAdminConfig().getTriggerPoolFastMax());
+        slowPermits = new Semaphore(XxlJobAdminConfig.getAdminConfig().getTriggerPoolSlowMax());
+        evictThread = new Thread(() -> {
+            while (!toStop) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(EVICT_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    if (!toStop) {
+                        logger.error(e.getMessage(), e);
+                    }
+                }
+                if (!toStop) {
+                    evictRemovedGroups();
+                }
+            }
+            logger.info(">>>>>>>>>>> xxl-job, trigger pool evict thread stop");
+        });
+        evictThread.setDaemon(true);
+        evictThread.setName("xxl-job, admin JobTriggerPoolHelper-evictThread");
+        evictThread.start();
     }
 
 
@@ -63,8 +86,17 @@ public class JobTriggerPoolHelper {
      * 关闭线程池
      */
     public void stop() {
-        fastTriggerPool.shutdownNow();
-        slowTriggerPool.shutdownNow();
+        toStop = true;
+        evictThread.interrupt();
+        try {
+            evictThread.join();
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
+        for (JobTriggerBulkhead bulkhead : bulkheadMap.values()) {
+            bulkhead.shutdownNow();
+        }
+        bulkheadMap.clear();
         logger.info(">>>>>>>>> xxl-job trigger thread pool shutdown success.");
     }
 
@@ -75,7 +107,6 @@ public class JobTriggerPoolHelper {
      * 属于是该方法的外层方法
      * 该方法的各个参数分别输任务Id，触发的枚举类型(其实就是手动触发的意思，手动调用该任务，执行一次)，
      * 失败重试次数，分片参数，执行器方法参数，执行器的地址列表
-     * 最后，还是想再解释一下，因为是第一个手写版本，所以很有些参数我们都用不到，但是后面会陆续重构完整
      *
      * @param jobId
      * @param triggerType
@@ -90,70 +121,114 @@ public class JobTriggerPoolHelper {
                            final String executorShardingParam,
                            final String executorParam,
                            final String addressList) {
+        if (toStop) {
+            logger.warn(">>>>>>>>>>> xxl-job, trigger pool stopped, jobId:{}", jobId);
+            return;
+        }
+        //先找到任务所属的执行器组，这里都是从本地缓存中获取的，任务或者执行器组不存在的时候，就交给一个公共的线程池，由触发器去打印告警信息
+        XxlJobInfo jobInfo = JobMetaCache.loadJobInfo(jobId);
+        XxlJobGroup group = jobInfo != null ? JobMetaCache.loadJobGroup(jobInfo.getJobGroup()) : null;
+        String appname = group != null ? group.getAppname() : "";
+        JobTriggerBulkhead bulkhead = getBulkhead(appname);
+        Supplier<CompletableFuture<Void>> task = newTriggerTask(bulkhead, jobId, triggerType, failRetryCount, executorShardingParam, executorParam, addressList);
+        boolean accepted = bulkhead.execute(jobId, task);
+        if (!accepted && bulkhead.isShutdown() && !toStop) {
+            //刚好赶上这个线程池被回收了，换一个新的线程池再提交一次
+            bulkhead = getBulkhead(appname);
+            accepted = bulkhead.execute(jobId, newTriggerTask(bulkhead, jobId, triggerType, failRetryCount, executorShardingParam, executorParam, addressList));
+        }
+        //线程池满了，不再阻塞调度线程，而是记录一次触发失败，失败的调度日志会由失败告警组件处理，配置了失败重试的还会重试
+        if (!accepted && jobInfo != null) {
+            XxlJobTrigger.recordTriggerRejected(jobInfo, triggerType, failRetryCount, executorParam);
+        }
+    }
 
 
-        //默认先选用快线程池
-        ThreadPoolExecutor triggerPool_ = fastTriggerPool;
-        //用任务Id从，慢执行的Map中得到该job对应的慢执行次数
-        AtomicInteger jobTimeoutCount = jobTimeoutCountMap.get(jobId);
-        //这里就是具体判断了，如果慢执行次数不为null，并且一分钟超过10了，就选用慢线程池来执行该任务
-        if (jobTimeoutCount != null && jobTimeoutCount.get() > 10) {
-            //选用慢线程池了
-            triggerPool_ = slowTriggerPool;
-        }
+    private JobTriggerBulkhead getBulkhead(String appname) {
+        return bulkheadMap.computeIfAbsent(appname, k -> {
+            JobTriggerBulkhead newBulkhead = new JobTriggerBulkhead(
+                    k,
+                    XxlJobAdminConfig.getAdminConfig().getTriggerPoolGroupFastMax(),
+                    XxlJobAdminConfig.getAdminConfig().getTriggerPoolGroupSlowMax(),
+                    XxlJobAdminConfig.getAdminConfig().getTriggerPoolGroupQueueSize(),
+                    fastPermits,
+                    slowPermits);
+            //线程池的排队数量和拒绝次数记录到监控指标中
+            JobMetrics.bindTriggerBulkhead(newBulkhead);
+            return newBulkhead;
+        });
+    }
+
+
+    private Supplier<CompletableFuture<Void>> newTriggerTask(final JobTriggerBulkhead bulkhead,
+                                    final int jobId,
+                                    final TriggerTypeEnum triggerType,
+                                    final int failRetryCount,
+                                    final String executorShardingParam,
+                                    final String executorParam,
+                                    final String addressList) {
         //在这里就把任务提交给线程池了，在这个任务执行一个触发器任务，把刚才传进来的job的各种信息整合到一起
         //在触发器任务中，会进行job的远程调用，这个调用链还是比较短的，执行流程也很清晰
-        triggerPool_.execute(() -> {
-            //再次获取当前时间，这个时间后面会用到
+        //返回的future在远程调用结束之后完成，在这之前触发器任务一直占着舱壁的许可
+        return () -> {
+            //获取当前时间，这个时间后面会用到
             long start = System.currentTimeMillis();
+            CompletableFuture<Void> triggerFuture = null;
             try {
                 //触发器任务开始执行了，在该方法内部，会进行远程调用
-                XxlJobTrigger.trigger(jobId, triggerType, failRetryCount, executorShardingParam, executorParam, addressList);
+                //远程调用是异步进行的，所以这里返回的是一个future
+                triggerFuture = XxlJobTrigger.trigger(jobId, triggerType, failRetryCount, executorShardingParam, executorParam, addressList);
             } catch (Exception e) {
                 logger.error(e.getMessage(), e);
-            } finally {
-                //这里再次获得当前的分钟数，这个分钟数会和刚才上面得到的那个分钟数做对比
-                long minTim_now = System.currentTimeMillis() / 60000;
-                //这里就用到了两个分钟数做对比，如果两个分钟数不等，说明过去了一分钟
-                //而慢执行Map中的数据是一分钟清理一次，所以这里就把慢执行Map清空
-                //注意，这个清空的动作是线程池中的线程来执行的，并且这个动作是在finally代码块中执行的
-                //也就意味着是在上面的触发器任务执行完毕后才进行清空操作
-                if (minTim != minTim_now) {
-                    minTim = minTim_now;
-                    jobTimeoutCountMap.clear();
-                }
-                //在这里用当前毫秒值减去之前得到的毫秒值
-                long cost = System.currentTimeMillis() - start;
-                //判断任务的执行时间是否超过500毫秒了
-                //这里仍然要结合上面的finally代码块来理解，因为触发器任务执行完了才会执行finally代码块中的
-                //代码，所以这时候也就能得到job的执行时间了
-                if (cost > 500) {
-                    //超过500毫秒了，就判断当前执行的任务为慢执行任务，所以将它在慢执行Map中记录一次
-                    //Map的key为jobid，value为慢执行的次数
-                    AtomicInteger timeoutCount = jobTimeoutCountMap.putIfAbsent(jobId, new AtomicInteger(1));
-                    if (timeoutCount != null) {
-                        //慢执行的次数加一
-                        timeoutCount.incrementAndGet();
-                    }
-                }
             }
-        });
+            if (triggerFuture == null) {
+                bulkhead.recordLatency(jobId, System.currentTimeMillis() - start);
+                return null;
+            }
+            //任务的耗时要等到远程调用结束之后才能计算出来，所以在future完成的时候再记录
+            return triggerFuture.whenComplete((result, e) -> {
+                if (e != null) {
+                    logger.error(e.getMessage(), e);
+                }
+                bulkhead.recordLatency(jobId, System.currentTimeMillis() - start);
+            });
+        };
     }
 
 
     /**
-     * 获取当前的系统时间，这里计算出来的其实是系统当前的分钟数，下面马上就会用到
+     * 回收已经删除的执行器组的线程池，执行器组是从数据库中查询的，别的调度中心删除的执行器组也能发现
+     * 任务或者执行器组不存在的时候使用的公共线程池，appname为空字符串，不会被回收
      */
-    private volatile long minTim = System.currentTimeMillis() / 60000;
+    private void evictRemovedGroups() {
+        try {
+            Set<String> appnames = new HashSet<>();
+            appnames.add("");
+            for (XxlJobGroup group : XxlJobAdminConfig.getAdminConfig().getXxlJobGroupDao().findAll()) {
+                appnames.add(group.getAppname());
+            }
+            for (JobTriggerBulkhead bulkhead : bulkheadMap.values()) {
+                if (!appnames.contains(bulkhead.getAppname()) && bulkhead.isIdle(EVICT_IDLE_MS)
+                        && bulkheadMap.remove(bulkhead.getAppname(), bulkhead)) {
+                    bulkhead.shutdown();
+                    JobMetrics.unbindTriggerBulkhead(bulkhead.getAppname());
+                    logger.info(">>>>>>>>>>> xxl-job, trigger pool of removed group evicted, appname:{}", bulkhead.getAppname());
+                }
+            }
+        } catch (Exception e) {
+            logger.error(">>>>>>>>>>> xxl-job, trigger pool evict error:{}", e);
+        }
+    }
 
 
     /**
-     * 如果有任务出现慢执行情况了，就会被记录在该Map中
-     * 所谓慢执行，就是执行的时间超过了500毫秒，该Map的key为job的id，value为慢执行的次数
-     * 如果一分钟慢执行的次数超过了10次，该任务就会被交给慢线程池的来执行
-     * 而该Map也会一分钟清空一次，来循环记录慢执行的情况
+     * 得到所有执行器组的触发器线程池，用来查看各个执行器组的触发情况
+     *
+     * @return
      */
-    private volatile ConcurrentMap<Integer, AtomicInteger> jobTimeoutCountMap = new ConcurrentHashMap<>();
+    public static Collection<JobTriggerBulkhead> getBulkheads() {
+        return Collections.unmodifiableCollection(helper.bulkheadMap.values());
+    }
 
 
     /**
@@ -0,0 +1,194 @@
+package com.ytrue.job.admin.core.thread;
+
+import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.model.XxlJobDependency;
+import com.ytrue.job.admin.dao.XxlJobDependencyDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 03:40
+ * @description 工作流组件，定时任务之间的依赖关系存储在xxl_job_dependency表中，一个任务可以有多个上游任务
+ * 上游任务执行成功之后，所有上游任务都已经执行成功的下游任务会被一起交给触发器线程池，也就是并行触发
+ * 依赖关系在内存中保存了一份，执行结果回调的时候直接用内存中的依赖图判断，不用每次都查询数据库，刷新线程每隔一段时间会重新加载一次
+ * 本轮中哪些上游任务已经执行成功了是记录在数据库中的，因为同一个下游任务的多个上游任务的回调可能发给不同的调度中心
+ * 最后一个上游任务执行成功的时候，用一条带条件的update语句把所有的边重置，重置成功的那个调度中心才会触发下游任务，所以下游任务在一轮中只会被触发一次
+ */
+public class JobWorkflowHelper {
+
+    private static Logger logger = LoggerFactory.getLogger(JobWorkflowHelper.class);
+
+    /**
+     * 重新加载依赖关系的周期，别的调度中心修改了依赖关系之后，最多过这么久这里才能知道
+     */
+    private static final long REFRESH_INTERVAL_SECONDS = 30;
+
+    private static JobWorkflowHelper instance = new JobWorkflowHelper();
+
+    public static JobWorkflowHelper getInstance() {
+        return instance;
+    }
+
+
+    /**
+     * 内存中的依赖图，每次刷新都会整个替换，所以读取的时候不需要加锁
+     */
+    private volatile WorkflowGraph graph = new WorkflowGraph(Collections.<XxlJobDependency>emptyList());
+
+    private Thread refreshThread;
+
+    private volatile boolean toStop = false;
+
+
+    /**
+     * 依赖图，key为上游任务的id，value为它的所有下游任务，另外记录了每个下游任务有几个上游任务
+     */
+    private static class WorkflowGraph {
+
+        private final Map<Integer, List<Integer>> childrenMap = new HashMap<>();
+
+        private final Map<Integer, List<Integer>> parentsMap = new HashMap<>();
+
+        private WorkflowGraph(List<XxlJobDependency> dependencyList) {
+            for (XxlJobDependency dependency : dependencyList) {
+                childrenMap.computeIfAbsent(dependency.getParentJobId(), k -> new ArrayList<>()).add(dependency.getJobId());
+                parentsMap.computeIfAbsent(dependency.getJobId(), k -> new ArrayList<>()).add(dependency.getParentJobId());
+            }
+        }
+    }
+
+
+    public void start() {
+        refresh();
+        refreshThread = new Thread(() -> {
+            while (!toStop) {
+                try {
+                    TimeUnit.SECONDS.sleep(REFRESH_INTERVAL_SECONDS);
+                } catch (InterruptedException e) {
+                    if (!toStop) {
+                        logger.error(e.getMessage(), e);
+                    }
+                }
+                if (!toStop) {
+                    refresh();
+                }
+            }
+            logger.info(">>>>>>>>>>> xxl-job, job workflow refresh thread stop");
+        });
+        refreshThread.setDaemon(true);
+        refreshThread.setName("xxl-job, admin JobWorkflowHelper");
+        refreshThread.start();
+    }
+
+
+    public void toStop() {
+        toStop = true;
+        refreshThread.interrupt();
+        try {
+            refreshThread.join();
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * 从数据库中重新加载依赖关系，修改了依赖关系之后也会调用这个方法，让当前调度中心马上生效
+     */
+    public void refresh() {
+        try {
+            List<XxlJobDependency> dependencyList = XxlJobAdminConfig.getAdminConfig().getXxlJobDependencyDao().findAll();
+            graph = new WorkflowGraph(dependencyList);
+        } catch (Exception e) {
+            logger.error(">>>>>>>>>>> xxl-job, job workflow refresh error:{}", e);
+        }
+    }
+
+
+    /**
+     * 得到任务的所有上游任务的id
+     *
+     * @param jobId
+     * @return
+     */
+    public List<Integer> getParentJobIds(int jobId) {
+        List<Integer> parentJobIds = graph.parentsMap.get(jobId);
+        return parentJobIds != null ? parentJobIds : Collections.<Integer>emptyList();
+    }
+
+
+    /**
+     * 上游任务执行成功了，返回因此可以触发的下游任务，还在等待别的上游任务的下游任务不会返回
+     *
+     * @param parentJobId
+     * @param parentLogId
+     * @return
+     */
+    public List<Integer> parentSucceeded(int parentJobId, long parentLogId) {
+        WorkflowGraph graph = this.graph;
+        List<Integer> childJobIds = graph.childrenMap.get(parentJobId);
+        if (childJobIds == null) {
+            return Collections.emptyList();
+        }
+        XxlJobDependencyDao dependencyDao = XxlJobAdminConfig.getAdminConfig().getXxlJobDependencyDao();
+        List<Integer> readyJobIds = new ArrayList<>();
+        for (Integer childJobId : childJobIds) {
+            //只有一个上游任务的下游任务不需要记录状态，直接触发就行了
+            if (graph.parentsMap.get(childJobId).size() <= 1) {
+                readyJobIds.add(childJobId);
+                continue;
+            }
+            try {
+                //先记录这个上游任务执行成功了，再尝试抢下游任务的触发权，最后一个执行成功的上游任务会抢到
+                dependencyDao.satisfy(childJobId, parentJobId, parentLogId);
+                if (dependencyDao.claim(childJobId) > 0) {
+                    readyJobIds.add(childJobId);
+                }
+            } catch (Exception e) {
+                logger.error(">>>>>>>>>>> xxl-job, job workflow evaluate error, jobId:{}, parentJobId:{}, error:{}", childJobId, parentJobId, e);
+            }
+        }
+        return readyJobIds;
+    }
+
+
+    /**
+     * 判断给任务设置这些上游任务之后，依赖关系中会不会出现环，依赖关系是直接从数据库中查询的，不使用内存中的依赖图
+     *
+     * @param jobId
+     * @param parentJobIds
+     * @return 形成环的上游任务id，不会形成环的时候返回-1
+     */
+    public int findCycle(int jobId, Collection<Integer> parentJobIds) {
+        Map<Integer, List<Integer>> childrenMap = new HashMap<>();
+        for (XxlJobDependency dependency : XxlJobAdminConfig.getAdminConfig().getXxlJobDependencyDao().findAll()) {
+            //这个任务原来的上游任务要被替换掉，不参与判断
+            if (dependency.getJobId() != jobId) {
+                childrenMap.computeIfAbsent(dependency.getParentJobId(), k -> new ArrayList<>()).add(dependency.getJobId());
+            }
+        }
+        //从这个任务出发，沿着下游方向能到达的任务都不能作为它的上游任务
+        Set<Integer> reachable = new HashSet<>();
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(jobId);
+        while (!stack.isEmpty()) {
+            Integer current = stack.pop();
+            if (reachable.add(current)) {
+                List<Integer> children = childrenMap.get(current);
+                if (children != null) {
+                    children.forEach(stack::push);
+                }
+            }
+        }
+        for (Integer parentJobId : parentJobIds) {
+            if (reachable.contains(parentJobId)) {
+                return parentJobId;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,152 @@
+package com.ytrue.job.admin.core.trigger;
+
+import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.model.XxlJobGroup;
+import com.ytrue.job.admin.core.model.XxlJobInfo;
+import org.springframework.beans.BeanUtils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 14:10
+ * @description 触发任务时使用的定时任务和执行器组的本地缓存
+ * 原来每触发一次任务，都要根据jobId查一次定时任务，再根据jobGroup查一次执行器组，到了整分钟成千上万个任务一起触发的时候，
+ * 这两次查询就全都压到了数据库上。实际上这两份数据很少变化，所以这里把它们缓存在内存中，数据发生变化的地方主动让缓存失效
+ * 调度中心可能是集群部署的，别的节点修改了数据，本节点是感知不到的，所以缓存的数据还有一个过期时间兜底
+ * 注意，缓存返回的都是拷贝出来的新对象，因为XxlJobTrigger会修改这两个对象的属性，不能把缓存中的数据改掉
+ */
+public class JobMetaCache {
+
+    /**
+     * 缓存的过期时间，30秒，和执行器组地址的刷新周期保持一致
+     */
+    private static final long CACHE_TIMEOUT = 30 * 1000;
+
+    /**
+     * 定时任务的缓存，key为jobId
+     */
+    private static final ConcurrentMap<Integer, CacheData<XxlJobInfo>> jobInfoRepository = new ConcurrentHashMap<>();
+
+    /**
+     * 执行器组的缓存，key为执行器组的id
+     */
+    private static final ConcurrentMap<Integer, CacheData<XxlJobGroup>> jobGroupRepository = new ConcurrentHashMap<>();
+
+    /**
+     * 失效的版本号，每让缓存失效一次，版本号就加一
+     * 从数据库查询数据之前先记下版本号，查询之后如果版本号变了，说明查询的过程中数据被修改了，查到的数据就不放进缓存了
+     * 否则旧数据就有可能在失效之后又被放回缓存中
+     */
+    private static final AtomicLong jobInfoVersion = new AtomicLong();
+    private static final AtomicLong jobGroupVersion = new AtomicLong();
+
+
+    private static class CacheData<T> {
+        /**
+         * 缓存的数据
+         */
+        private final T val;
+        /**
+         * 超时时间
+         */
+        private final long timeoutTime;
+
+        private CacheData(T val, long timeoutTime) {
+            this.val = val;
+            this.timeoutTime = timeoutTime;
+        }
+    }
+
+
+    /**
+     * 根据jobId得到定时任务，缓存中没有就从数据库中查询
+     *
+     * @param jobId
+     * @return
+     */
+    public static XxlJobInfo loadJobInfo(int jobId) {
+        XxlJobInfo jobInfo = null;
+        CacheData<XxlJobInfo> cacheData = jobInfoRepository.get(jobId);
+        if (cacheData != null && cacheData.timeoutTime > System.currentTimeMillis()) {
+            jobInfo = cacheData.val;
+        } else {
+            long version = jobInfoVersion.get();
+            jobInfo = XxlJobAdminConfig.getAdminConfig().getXxlJobInfoDao().loadById(jobId);
+            if (jobInfo == null) {
+                //任务已经被删除了，不缓存
+                jobInfoRepository.remove(jobId);
+                return null;
+            }
+            if (version == jobInfoVersion.get()) {
+                jobInfoRepository.put(jobId, new CacheData<>(jobInfo, System.currentTimeMillis() + CACHE_TIMEOUT));
+            }
+        }
+        XxlJobInfo copy = new XxlJobInfo();
+        BeanUtils.copyProperties(jobInfo, copy);
+        return copy;
+    }
+
+
+    /**
+     * 根据id得到执行器组，缓存中没有就从数据库中查询
+     *
+     * @param groupId
+     * @return
+     */
+    public static XxlJobGroup loadJobGroup(int groupId) {
+        XxlJobGroup group = null;
+        CacheData<XxlJobGroup> cacheData = jobGroupRepository.get(groupId);
+        if (cacheData != null && cacheData.timeoutTime > System.currentTimeMillis()) {
+            group = cacheData.val;
+        } else {
+            long version = jobGroupVersion.get();
+            group = XxlJobAdminConfig.getAdminConfig().getXxlJobGroupDao().load(groupId);
+            if (group == null) {
+                jobGroupRepository.remove(groupId);
+                return null;
+            }
+            if (version == jobGroupVersion.get()) {
+                jobGroupRepository.put(groupId, new CacheData<>(group, System.currentTimeMillis() + CACHE_TIMEOUT));
+            }
+        }
+        XxlJobGroup copy = new XxlJobGroup();
+        BeanUtils.copyProperties(group, copy);
+        return copy;
+    }
+
+
+    /**
+     * 定时任务被修改或者删除之后，让对应的缓存失效
+     *
+     * @param jobId
+     */
+    public static void invalidateJobInfo(int jobId) {
+        jobInfoVersion.incrementAndGet();
+        jobInfoRepository.remove(jobId);
+    }
+
+
+    /**
+     * 执行器组被修改或者删除之后，让对应的缓存失效
+     *
+     * @param groupId
+     */
+    public static void invalidateJobGroup(int groupId) {
+        jobGroupVersion.incrementAndGet();
+        jobGroupRepository.remove(groupId);
+    }
+
+
+    /**
+     * 清空所有缓存
+     */
+    public static void clear() {
+        jobInfoVersion.incrementAndGet();
+        jobGroupVersion.incrementAndGet();
+        jobInfoRepository.clear();
+        jobGroupRepository.clear();
+    }
+}
@@ -3,9 +3,14 @@ package com.ytrue.job.admin.core.trigger;
 import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
 import com.ytrue.job.admin.core.model.XxlJobGroup;
 import com.ytrue.job.admin.core.model.XxlJobInfo;
+import com.ytrue.job.admin.core.metrics.JobMetrics;
 import com.ytrue.job.admin.core.model.XxlJobLog;
 import com.ytrue.job.admin.core.route.ExecutorRouteStrategyEnum;
 import com.ytrue.job.admin.core.scheduler.XxlJobScheduler;
+import com.ytrue.job.admin.core.thread.JobLogReportHelper;
+import com.ytrue.job.admin.core.thread.JobRunningTracker;
+import com.ytrue.job.admin.core.thread.JobShardDispatcher;
+import com.ytrue.job.admin.core.thread.JobTriggerPipeline;
 import com.ytrue.job.admin.core.util.I18nUtil;
 import com.ytrue.job.core.biz.ExecutorBiz;
 import com.ytrue.job.core.biz.model.ReturnT;
@@ -16,8 +21,13 @@ import com.ytrue.job.core.util.ThrowableUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntFunction;
 
 /**
  * @author ytrue
@@ -40,21 +50,22 @@ public class XxlJobTrigger {
      * @param executorShardingParam
      * @param executorParam
      * @param addressList
+     * @return 远程调用是异步进行的，返回的future在所有分片的远程调用结束并且调度日志提交更新之后完成
      */
-    public static void trigger(int jobId,
+    public static CompletableFuture<Void> trigger(int jobId,
                                TriggerTypeEnum triggerType,
                                int failRetryCount,
                                String executorShardingParam,
                                String executorParam,
                                String addressList) {
 
-        //根据任务id，从数据库中查询到该任务的完整信息
-        XxlJobInfo jobInfo = XxlJobAdminConfig.getAdminConfig().getXxlJobInfoDao().loadById(jobId);
+        //根据任务id得到该任务的完整信息，这里优先从本地缓存中获取，缓存中没有才会查询数据库
+        XxlJobInfo jobInfo = JobMetaCache.loadJobInfo(jobId);
 
         //如果任务为null，则打印一条告警信息
         if (jobInfo == null) {
             logger.warn(">>>>>>>>>>>> trigger fail, jobId invalid，jobId={}", jobId);
-            return;
+            return CompletableFuture.completedFuture(null);
         }
         //如果用户在页面选择执行任务的时候，传递参数进来了，这时候就把任务参数设置到job中
         if (executorParam != null) {
@@ -65,11 +76,15 @@ public class XxlJobTrigger {
         //得到用户设定的该任务的失败重试次数
         int finalFailRetryCount = failRetryCount >= 0 ? failRetryCount : jobInfo.getExecutorFailRetryCount();
 
-        //同样是根据jobId获取所有的执行器组
+        //同样是根据jobId获取所有的执行器组，也是优先从本地缓存中获取
         // 	SELECT <include refid="Base_Column_List" />
         //		FROM xxl_job_group AS t
         //		WHERE t.id = #{id}
-        XxlJobGroup group = XxlJobAdminConfig.getAdminConfig().getXxlJobGroupDao().load(jobInfo.getJobGroup());
+        XxlJobGroup group = JobMetaCache.loadJobGroup(jobInfo.getJobGroup());
+        if (group == null) {
+            logger.warn(">>>>>>>>>>>> trigger fail, jobGroup invalid，jobId={}, jobGroup={}", jobId, jobInfo.getJobGroup());
+            return CompletableFuture.completedFuture(null);
+        }
 
         //这里也有一个小判断，如果用户在web界面输入了执行器的地址，这里会把执行器的地址设置到刚才查询到的执行器中
         //注意，这里我想强调两点，第一，这里以及上面那个设置执行器参数，都是在web界面对任务进行执行一次操作时，才会出现的调用流程
@@ -102,22 +117,18 @@ public class XxlJobTrigger {
             }
         }
 
-        //下面就是具体判定用户是否配置了分片广播的路由策略，并且校验执行器组不为空
-        if (ExecutorRouteStrategyEnum.SHARDING_BROADCAST == ExecutorRouteStrategyEnum.match(jobInfo.getExecutorRouteStrategy(), null)
+        //下面就是具体判定用户是否配置了分片广播的路由策略，并且校验执行器组不为空，动态分片也是在每个执行器上都触发一次
+        ExecutorRouteStrategyEnum routeStrategy = ExecutorRouteStrategyEnum.match(jobInfo.getExecutorRouteStrategy(), null);
+        if (routeStrategy != null && routeStrategy.isSharding()
             && group.getRegistryList() != null && !group.getRegistryList().isEmpty()
             && shardingParam == null) {
 
-            //如果配置了该策略，那就遍历执行器组，并且根据执行器组中的所有执行器地址集合的容量来遍历
-            //这不就意味着有几个执行器，就要遍历几次吗？
-            for (int i = 0; i < group.getRegistryList().size(); i++) {
-                //既然是有几个执行器就要遍历几次，那正好就根据这个i去定了执行器在分片数组中的序号，如果是第一个被遍历到的执行器，就是0号执行器，以此类推。。。
-                //而总的分片数不就是执行器组中存放执行器地址集合的长度吗？
-                //这里就会自动分片，然后告诉所有的执行器，让执行器去执行任务了，这里我想强调一点，让所有执行器都开始执行任务
-                //可能很多朋友都觉得让所有执行器都开始执行相同的定时任务，不会出现并发问题吗？理论上是会的，但是定时任务是程序员自己部署的
-                //定时任务的逻辑也是程序员自己实现的，这就需要程序员自己在定时任务的逻辑中把并发问题规避了，反正你能从定时任务中
-                //得到分片参数，能得到该定时任务具体是哪个分片序号，具体情况可以看本版本代码提供的测试类
-                processTrigger(group, jobInfo, finalFailRetryCount, triggerType, i, group.getRegistryList().size());
-            }
+            //如果配置了该策略，那就根据执行器组中的所有执行器地址集合的容量来分片，有几个执行器，就有几个分片
+            //这里我想强调一点，让所有执行器都开始执行任务
+            //可能很多朋友都觉得让所有执行器都开始执行相同的定时任务，不会出现并发问题吗？理论上是会的，但是定时任务是程序员自己部署的
+            //定时任务的逻辑也是程序员自己实现的，这就需要程序员自己在定时任务的逻辑中把并发问题规避了，反正你能从定时任务中
+            //得到分片参数，能得到该定时任务具体是哪个分片序号，具体情况可以看本版本代码提供的测试类
+            return processShardingBroadcast(group, jobInfo, finalFailRetryCount, triggerType);
         } else {
             //如果没有配置分片策略，并且executorShardingParam参数也为null，那就直接用默认的值，说明只有一个执行器要执行任务
             if (shardingParam == null) {
@@ -129,31 +140,126 @@ public class XxlJobTrigger {
             //分片序号代表的是执行器，如果有三个执行器，那分片序号就是0，1，2
             //分片总数就为3
             //在该方法内，会真正开始远程调用，这个方法，也是远程调用的核心方法
-            processTrigger(group, jobInfo, finalFailRetryCount, triggerType, shardingParam[0], shardingParam[1]);
+            return processTrigger(group, jobInfo, finalFailRetryCount, triggerType, shardingParam[0], shardingParam[1]);
         }
     }
 
 
     /**
-     * 在该方法中会进一步处理分片和路由策略
+     * 分片广播的触发方法
+     * 原来是一个分片一个分片地依次触发，每个分片都要插入一次日志，再调用一次执行器，执行器多的时候，最后一个分片要等很久才能开始执行
+     * 现在所有分片的日志一起插入数据库，然后同时向多个执行器发起调用，同时进行的调用数量由broadcastParallelism限制，
+     * 防止执行器特别多的时候一下子把连接和线程都占满了，所有分片都触发完之后，再汇总输出一下触发的结果
      *
      * @param group
      * @param jobInfo
      * @param finalFailRetryCount
      * @param triggerType
-     * @param index
-     * @param total
+     * @return
      */
-    private static void processTrigger(XxlJobGroup group, XxlJobInfo jobInfo, int finalFailRetryCount, TriggerTypeEnum triggerType, int index, int total) {
-        //获得定时任务的阻塞策略，默认是串行
-        ExecutorBlockStrategyEnum blockStrategy = ExecutorBlockStrategyEnum.match(jobInfo.getExecutorBlockStrategy(), ExecutorBlockStrategyEnum.SERIAL_EXECUTION);
-        //得到当前要调度的执行任务的路由策略，默认是没有
-        ExecutorRouteStrategyEnum executorRouteStrategyEnum = ExecutorRouteStrategyEnum.match(jobInfo.getExecutorRouteStrategy(), null);
+    private static CompletableFuture<Void> processShardingBroadcast(XxlJobGroup group, XxlJobInfo jobInfo, int finalFailRetryCount, TriggerTypeEnum triggerType) {
+        long start = System.currentTimeMillis();
+        //分片总数就是执行器的数量
+        int total = group.getRegistryList().size();
+        //先为每个分片创建好日志，一次性插入数据库
+        List<XxlJobLog> jobLogList = new ArrayList<>(total);
+        for (int i = 0; i < total; i++) {
+            jobLogList.add(newJobLog(jobInfo));
+        }
+        JobTriggerPipeline.getInstance().saveLogs(jobLogList);
+        //动态分片的任务要在执行器领取工作单元之前登记好这次调度
+        boolean dynamic = ExecutorRouteStrategyEnum.SHARDING_DYNAMIC == ExecutorRouteStrategyEnum.match(jobInfo.getExecutorRouteStrategy(), null);
+        if (dynamic) {
+            JobShardDispatcher.getInstance().register(jobInfo.getId(), jobLogList);
+        }
+        //然后同时触发各个分片，分片序号就是执行器在地址集合中的下标
+        int parallelism = XxlJobAdminConfig.getAdminConfig().getBroadcastParallelism();
+        return fanOut(total, parallelism, index -> doTrigger(group, jobInfo, finalFailRetryCount, triggerType, index, total, jobLogList.get(index)))
+                .thenAccept(resultList -> {
+                    //汇总所有分片的触发结果
+                    int successCount = 0;
+                    for (int i = 0; i < resultList.size(); i++) {
+                        ReturnT<String> result = resultList.get(i);
+                        if (result != null && result.getCode() == ReturnT.SUCCESS_CODE) {
+                            successCount++;
+                        } else if (dynamic) {
+                            //触发失败的执行器不会来领取工作单元
+                            JobShardDispatcher.getInstance().logFinished(jobLogList.get(i).getId());
+                        }
+                    }
+                    logger.info(">>>>>>>>>>> xxl-job sharding broadcast trigger finish, jobId:{}, total:{}, success:{}, fail:{}, cost:{}ms",
+                            jobInfo.getId(), total, successCount, total - successCount, System.currentTimeMillis() - start);
+                });
+    }
 
-        //判断路由策略是否等于分片广播，如果等于，就把分片参数拼接成字符串   1/10 , 2/10
-        String shardingParam = (ExecutorRouteStrategyEnum.SHARDING_BROADCAST == executorRouteStrategyEnum) ? String.valueOf(index).concat("/").concat(String.valueOf(total)) : null;
 
-        //这里就要开始执行和定时任务日志相关的操作了
+    /**
+     * 以有限的并发度执行count个异步任务，一个任务结束之后才会开始下一个任务，同时进行的任务最多parallelism个
+     * 返回的future在所有任务结束之后完成，结果的顺序和任务的序号一致，失败的任务对应的结果为null
+     *
+     * @param count
+     * @param parallelism
+     * @param task
+     * @return
+     */
+    private static CompletableFuture<List<ReturnT<String>>> fanOut(int count, int parallelism, IntFunction<CompletableFuture<ReturnT<String>>> task) {
+        CompletableFuture<List<ReturnT<String>>> allFuture = new CompletableFuture<>();
+        if (count <= 0) {
+            allFuture.complete(new ArrayList<>());
+            return allFuture;
+        }
+        AtomicReferenceArray<ReturnT<String>> results = new AtomicReferenceArray<>(count);
+        //下一个要开始的任务序号
+        AtomicInteger nextIndex = new AtomicInteger(0);
+        //还没有结束的任务数量
+        AtomicInteger remaining = new AtomicInteger(count);
+        Runnable launcher = new Runnable() {
+            @Override
+            public void run() {
+                int index = nextIndex.getAndIncrement();
+                if (index >= count) {
+                    return;
+                }
+                CompletableFuture<ReturnT<String>> future;
+                try {
+                    future = task.apply(index);
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                    future = CompletableFuture.completedFuture(null);
+                }
+                future.whenComplete((result, e) -> {
+                    if (e != null) {
+                        logger.error(e.getMessage(), e);
+                    } else {
+                        results.set(index, result);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        List<ReturnT<String>> resultList = new ArrayList<>(count);
+                        for (int i = 0; i < count; i++) {
+                            resultList.add(results.get(i));
+                        }
+                        allFuture.complete(resultList);
+                    } else {
+                        //一个任务结束了，就开始下一个任务
+                        run();
+                    }
+                });
+            }
+        };
+        for (int i = 0; i < Math.min(parallelism, count); i++) {
+            launcher.run();
+        }
+        return allFuture;
+    }
+
+
+    /**
+     * 创建一条调度日志，这时候日志还没有插入数据库
+     *
+     * @param jobInfo
+     * @return
+     */
+    private static XxlJobLog newJobLog(XxlJobInfo jobInfo) {
         //先创建一个日志对象，用于记录该定时任务执行是的一些信息
         XxlJobLog jobLog = new XxlJobLog();
         //记录定时任务的执行器组id
@@ -162,8 +268,95 @@ public class XxlJobTrigger {
         jobLog.setJobId(jobInfo.getId());
         //设置定时任务的触发时间
         jobLog.setTriggerTime(new Date());
+        return jobLog;
+    }
+
+
+    /**
+     * 触发器线程池已满，任务没能提交的时候，记录一条触发失败的调度日志
+     * 这样失败告警组件就能发现这次失败，配置了失败重试次数的任务也会重新触发
+     * 这个方法是在调度线程中调用的，所以日志的插入和更新都不等待
+     *
+     * @param jobInfo
+     * @param triggerType
+     * @param failRetryCount
+     * @param executorParam
+     */
+    public static void recordTriggerRejected(XxlJobInfo jobInfo, TriggerTypeEnum triggerType, int failRetryCount, String executorParam) {
+        XxlJobLog jobLog = newJobLog(jobInfo);
+        jobLog.setExecutorHandler(jobInfo.getExecutorHandler());
+        jobLog.setExecutorParam(executorParam != null ? executorParam : jobInfo.getExecutorParam());
+        jobLog.setExecutorFailRetryCount(failRetryCount >= 0 ? failRetryCount : jobInfo.getExecutorFailRetryCount());
+        jobLog.setTriggerCode(ReturnT.FAIL_CODE);
+        StringBuilder triggerMsgSb = new StringBuilder();
+        triggerMsgSb.append(I18nUtil.getString("jobconf_trigger_type")).append("：").append(triggerType.getTitle());
+        triggerMsgSb.append("<br>").append(I18nUtil.getString("jobconf_trigger_admin_adress")).append("：").append(IpUtil.getIp());
+        triggerMsgSb.append("<br><br><span style=\"color:#00c0ef;\" > >>>>>>>>>>>" + I18nUtil.getString("jobconf_trigger_run") + "<<<<<<<<<<< </span><br>")
+                .append(I18nUtil.getString("jobconf_trigger_rejected"));
+        jobLog.setTriggerMsg(triggerMsgSb.toString());
+        //插入数据库的时候只会写入部分字段，插入完成之后再把调度备注等信息更新进去
+        JobTriggerPipeline.getInstance().saveLogAsync(jobLog).whenComplete((result, e) -> {
+            if (e != null) {
+                logger.error(">>>>>>>>>>> xxl-job, record trigger rejected error, jobId:{}", jobInfo.getId(), e);
+                return;
+            }
+            JobTriggerPipeline.getInstance().updateTriggerInfo(jobLog);
+        });
+    }
+
+
+    /**
+     * 在该方法中会进一步处理分片和路由策略
+     *
+     * @param group
+     * @param jobInfo
+     * @param finalFailRetryCount
+     * @param triggerType
+     * @param index
+     * @param total
+     * @return
+     */
+    private static CompletableFuture<Void> processTrigger(XxlJobGroup group, XxlJobInfo jobInfo, int finalFailRetryCount, TriggerTypeEnum triggerType, int index, int total) {
+        //这里就要开始执行和定时任务日志相关的操作了
+        XxlJobLog jobLog = newJobLog(jobInfo);
         //在这里把定时任务日志保存到数据库中，保存成功之后，定时任务日志的id也就有了
-        XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().save(jobLog);
+        //同一时刻触发的任务的日志会在流水线中合并成一条sql插入
+        JobTriggerPipeline.getInstance().saveLog(jobLog);
+        if (ExecutorRouteStrategyEnum.SHARDING_DYNAMIC != ExecutorRouteStrategyEnum.match(jobInfo.getExecutorRouteStrategy(), null)) {
+            return doTrigger(group, jobInfo, finalFailRetryCount, triggerType, index, total, jobLog).thenApply(triggerResult -> null);
+        }
+        //动态分片的任务单独触发一个分片，是失败重试的时候，加入这个任务最近的一次调度，继续处理还没处理完的工作单元
+        JobShardDispatcher.getInstance().join(jobLog);
+        return doTrigger(group, jobInfo, finalFailRetryCount, triggerType, index, total, jobLog).thenApply(triggerResult -> {
+            if (triggerResult.getCode() != ReturnT.SUCCESS_CODE) {
+                JobShardDispatcher.getInstance().logFinished(jobLog.getId());
+            }
+            return null;
+        });
+    }
+
+
+    /**
+     * 调度日志已经插入数据库之后，真正触发任务的方法，返回的future在远程调用结束并且日志提交更新之后完成，结果就是触发的结果
+     *
+     * @param group
+     * @param jobInfo
+     * @param finalFailRetryCount
+     * @param triggerType
+     * @param index
+     * @param total
+     * @param jobLog
+     * @return
+     */
+    private static CompletableFuture<ReturnT<String>> doTrigger(XxlJobGroup group, XxlJobInfo jobInfo, int finalFailRetryCount, TriggerTypeEnum triggerType, int index, int total, XxlJobLog jobLog) {
+        //获得定时任务的阻塞策略，默认是串行
+        ExecutorBlockStrategyEnum blockStrategy = ExecutorBlockStrategyEnum.match(jobInfo.getExecutorBlockStrategy(), ExecutorBlockStrategyEnum.SERIAL_EXECUTION);
+        //得到当前要调度的执行任务的路由策略，默认是没有
+        ExecutorRouteStrategyEnum executorRouteStrategyEnum = ExecutorRouteStrategyEnum.match(jobInfo.getExecutorRouteStrategy(), null);
+
+        //判断路由策略是否等于分片广播，如果等于，就把分片参数拼接成字符串   1/10 , 2/10
+        String shardingParam = (executorRouteStrategyEnum != null && executorRouteStrategyEnum.isSharding()) ? String.valueOf(index).concat("/").concat(String.valueOf(total)) : null;
+
         logger.debug(">>>>>>>>>>> xxl-job trigger start, jobId:{}", jobLog.getId());
         // -----------------------------------------
 
@@ -197,6 +390,10 @@ public class XxlJobTrigger {
         //设置分片参数
         triggerParam.setBroadcastIndex(index);
         triggerParam.setBroadcastTotal(total);
+        //动态分片的任务要向这个调度中心领取工作单元，这次调度的分配情况只保存在这里
+        if (executorRouteStrategyEnum == ExecutorRouteStrategyEnum.SHARDING_DYNAMIC) {
+            triggerParam.setShardAdminAddress(XxlJobAdminConfig.getAdminConfig().getAdminAddress());
+        }
 
 
         //接下来要再次设定远程调用的服务实例的地址
@@ -208,7 +405,7 @@ public class XxlJobTrigger {
         List<String> registryList = group.getRegistryList();
         if (registryList != null && !registryList.isEmpty()) {
             // 如果是分片
-            if (ExecutorRouteStrategyEnum.SHARDING_BROADCAST == executorRouteStrategyEnum) {
+            if (executorRouteStrategyEnum != null && executorRouteStrategyEnum.isSharding()) {
                 //如果是分片广播，就用分片数组中的参数选取对应的执行器地址
                 if (index < group.getRegistryList().size()) {
                     address = group.getRegistryList().get(index);
@@ -229,65 +426,77 @@ public class XxlJobTrigger {
         }
 
         //接下来就定义一个远程调用的结果变量
-        ReturnT<String> triggerResult;
+        CompletableFuture<ReturnT<String>> triggerFuture;
         //如果地址不为空
         if (address != null) {
             //在这里进行远程调用，这里就是最核心远程调用的方法，但是方法内部的逻辑很简单，就是用http发送调用
-            //消息而已
-            triggerResult = runExecutor(triggerParam, address);
-            //这里就输出一下状态码吧，根据返回的状态码判断任务是否执行成功
-            logger.info("返回的状态码" + triggerResult.getCode());
+            //消息而已。远程调用是异步进行的，当前线程不会等待执行器的响应
+            triggerFuture = runExecutorAsync(triggerParam, address);
         } else {
             logger.warn("执行器地址为空");
-            triggerResult = new ReturnT<>(ReturnT.FAIL_CODE, null);
-        }
-
-
-        //在这里拼接一下触发任务的信息，其实就是web界面的调度备注
-        StringBuffer triggerMsgSb = new StringBuffer();
-        // 任务触发类型
-        triggerMsgSb.append(I18nUtil.getString("jobconf_trigger_type")).append("：").append(triggerType.getTitle());
-        // 调度机器
-        triggerMsgSb.append("<br>").append(I18nUtil.getString("jobconf_trigger_admin_adress")).append("：").append(IpUtil.getIp());
-        // 执行器-注册方式
-        triggerMsgSb.append("<br>").append(I18nUtil.getString("jobconf_trigger_exe_regtype")).append("：")
-                // 自动注册 or 手动录入
-                .append((group.getAddressType() == 0) ? I18nUtil.getString("jobgroup_field_addressType_0") : I18nUtil.getString("jobgroup_field_addressType_1"));
-        // 执行器-地址列表
-        triggerMsgSb.append("<br>").append(I18nUtil.getString("jobconf_trigger_exe_regaddress")).append("：").append(group.getRegistryList());
-        // 路由策略
-        triggerMsgSb.append("<br>").append(I18nUtil.getString("jobinfo_field_executorRouteStrategy")).append("：").append(executorRouteStrategyEnum.getTitle());
-        // 分片
-        if (shardingParam != null) {
-            triggerMsgSb.append("(" + shardingParam + ")");
+            triggerFuture = CompletableFuture.completedFuture(new ReturnT<>(ReturnT.FAIL_CODE, null));
         }
-        triggerMsgSb.append("<br>").append(I18nUtil.getString("jobinfo_field_executorBlockStrategy")).append("：").append(blockStrategy.getTitle());
-        // 任务超时时间
-        triggerMsgSb.append("<br>").append(I18nUtil.getString("jobinfo_field_timeout")).append("：").append(jobInfo.getExecutorTimeout());
-        //失败重试次数
-        triggerMsgSb.append("<br>").append(I18nUtil.getString("jobinfo_field_executorFailRetryCount")).append("：").append(finalFailRetryCount);
-        // 触发调度
-        triggerMsgSb.append("<br><br><span style=\"color:#00c0ef;\" > >>>>>>>>>>>" + I18nUtil.getString("jobconf_trigger_run") + "<<<<<<<<<<< </span><br>")
-                .append((routeAddressResult != null && routeAddressResult.getMsg() != null) ? routeAddressResult.getMsg() + "<br><br>" : "").append(triggerResult.getMsg() != null ? triggerResult.getMsg() : "");
 
-
-        // 设置执行器地址
-        jobLog.setExecutorAddress(address);
-        //设置执行定时任务的方法名称
-        jobLog.setExecutorHandler(jobInfo.getExecutorHandler());
-        //设置执行参数
-        jobLog.setExecutorParam(jobInfo.getExecutorParam());
-        //设置分片参数
-        jobLog.setExecutorShardingParam(shardingParam);
-        //设置失败重试次数
-        jobLog.setExecutorFailRetryCount(finalFailRetryCount);
-        //设置触发结果码
-        jobLog.setTriggerCode(triggerResult.getCode());
-        //设置触发任务信息，也就是调度备注
-        jobLog.setTriggerMsg(triggerMsgSb.toString());
-        //更新数据库信息
-        XxlJobAdminConfig.getAdminConfig().getXxlJobLogDao().updateTriggerInfo(jobLog);
-        logger.debug(">>>>>>>>>>> xxl-job trigger end, jobId:{}", jobLog.getId());
+        final String finalAddress = address;
+        final ReturnT<String> finalRouteAddressResult = routeAddressResult;
+        //远程调用结束之后，再拼接调度备注，更新调度日志
+        return triggerFuture.thenApply(triggerResult -> {
+            //这里就输出一下状态码吧，根据返回的状态码判断任务是否执行成功
+            logger.debug("返回的状态码" + triggerResult.getCode());
+
+            //在这里拼接一下触发任务的信息，其实就是web界面的调度备注
+            StringBuffer triggerMsgSb = new StringBuffer();
+            // 任务触发类型
+            triggerMsgSb.append(I18nUtil.getString("jobconf_trigger_type")).append("：").append(triggerType.getTitle());
+            // 调度机器
+            triggerMsgSb.append("<br>").append(I18nUtil.getString("jobconf_trigger_admin_adress")).append("：").append(IpUtil.getIp());
+            // 执行器-注册方式
+            triggerMsgSb.append("<br>").append(I18nUtil.getString("jobconf_trigger_exe_regtype")).append("：")
+                    // 自动注册 or 手动录入
+                    .append((group.getAddressType() == 0) ? I18nUtil.getString("jobgroup_field_addressType_0") : I18nUtil.getString("jobgroup_field_addressType_1"));
+            // 执行器-地址列表
+            triggerMsgSb.append("<br>").append(I18nUtil.getString("jobconf_trigger_exe_regaddress")).append("：").append(group.getRegistryList());
+            // 路由策略
+            triggerMsgSb.append("<br>").append(I18nUtil.getString("jobinfo_field_executorRouteStrategy")).append("：").append(executorRouteStrategyEnum.getTitle());
+            // 分片
+            if (shardingParam != null) {
+                triggerMsgSb.append("(" + shardingParam + ")");
+            }
+            triggerMsgSb.append("<br>").append(I18nUtil.getString("jobinfo_field_executorBlockStrategy")).append("：").append(blockStrategy.getTitle());
+            // 任务超时时间
+            triggerMsgSb.append("<br>").append(I18nUtil.getString("jobinfo_field_timeout")).append("：").append(jobInfo.getExecutorTimeout());
+            //失败重试次数
+            triggerMsgSb.append("<br>").append(I18nUtil.getString("jobinfo_field_executorFailRetryCount")).append("：").append(finalFailRetryCount);
+            // 触发调度
+            triggerMsgSb.append("<br><br><span style=\"color:#00c0ef;\" > >>>>>>>>>>>" + I18nUtil.getString("jobconf_trigger_run") + "<<<<<<<<<<< </span><br>")
+                    .append((finalRouteAddressResult != null && finalRouteAddressResult.getMsg() != null) ? finalRouteAddressResult.getMsg() + "<br><br>" : "").append(triggerResult.getMsg() != null ? triggerResult.getMsg() : "");
+
+
+            // 设置执行器地址
+            jobLog.setExecutorAddress(finalAddress);
+            //设置执行定时任务的方法名称
+            jobLog.setExecutorHandler(jobInfo.getExecutorHandler());
+            //设置执行参数
+            jobLog.setExecutorParam(jobInfo.getExecutorParam());
+            //设置分片参数
+            jobLog.setExecutorShardingParam(shardingParam);
+            //设置失败重试次数
+            jobLog.setExecutorFailRetryCount(finalFailRetryCount);
+            //设置触发结果码
+            jobLog.setTriggerCode(triggerResult.getCode());
+            //触发失败的话，日志报告中这条日志就从运行中变成了失败
+            JobLogReportHelper.getInstance().logStatusChanged(jobLog.getTriggerTime(), 0, 0, triggerResult.getCode(), 0);
+            //触发成功的任务开始跟踪，执行器下线或者超过截止时间还没有执行结果，就会被当作丢失的任务
+            if (ReturnT.SUCCESS_CODE == triggerResult.getCode()) {
+                JobRunningTracker.getInstance().track(jobLog, jobInfo.getExecutorTimeout());
+            }
+            //设置触发任务信息，也就是调度备注
+            jobLog.setTriggerMsg(triggerMsgSb.toString());
+            //更新数据库信息，这里只是放进流水线的队列中，会和其他日志一起批量更新
+            JobTriggerPipeline.getInstance().updateTriggerInfo(jobLog);
+            logger.debug(">>>>>>>>>>> xxl-job trigger end, jobId:{}", jobLog.getId());
+            return triggerResult;
+        });
     }
 
 
@@ -300,6 +509,7 @@ public class XxlJobTrigger {
      */
     public static ReturnT<String> runExecutor(TriggerParam triggerParam, String address) {
         ReturnT<String> runResult;
+        long start = System.currentTimeMillis();
         try {
             //获取一个用于远程调用的客户端对象，一个地址就对应着一个客户端，为什么说是客户端，因为远程调用的时候，执行器
             //就成为了服务端，因为执行器要接收来自客户端的调用消息
@@ -310,7 +520,66 @@ public class XxlJobTrigger {
             logger.error(">>>>>>>>>>> xxl-job trigger error, please check if the executor[{}] is running.", address, e);
             runResult = new ReturnT<>(ReturnT.FAIL_CODE, ThrowableUtil.toString(e));
         }
-        //在这里拼接一下远程调用返回的状态码和消息
+        JobMetrics.recordExecutorCall(address, System.currentTimeMillis() - start, runResult.getCode() == ReturnT.SUCCESS_CODE);
+        return buildRunResult(resolveUnknown(runResult, address), address);
+    }
+
+
+    /**
+     * 异步进行远程调用，请求由NettyHttpClient发送，调用的线程不会阻塞
+     * 执行器响应之后，后续的处理会切换到流水线的线程池中进行，线程池满了会交给备用的线程池，不会占用netty的IO线程
+     *
+     * @param triggerParam
+     * @param address
+     * @return
+     */
+    public static CompletableFuture<ReturnT<String>> runExecutorAsync(TriggerParam triggerParam, String address) {
+        CompletableFuture<ReturnT<String>> runFuture;
+        long start = System.currentTimeMillis();
+        try {
+            ExecutorBiz executorBiz = XxlJobScheduler.getExecutorBiz(address);
+            runFuture = executorBiz.runAsync(triggerParam);
+        } catch (Exception e) {
+            runFuture = new CompletableFuture<>();
+            runFuture.completeExceptionally(e);
+        }
+        return runFuture.handleAsync((runResult, e) -> {
+            if (e != null) {
+                logger.error(">>>>>>>>>>> xxl-job trigger error, please check if the executor[{}] is running.", address, e);
+                runResult = new ReturnT<>(ReturnT.FAIL_CODE, ThrowableUtil.toString(e));
+            }
+            JobMetrics.recordExecutorCall(address, System.currentTimeMillis() - start, runResult.getCode() == ReturnT.SUCCESS_CODE);
+            return buildRunResult(resolveUnknown(runResult, address), address);
+        }, JobTriggerPipeline.getInstance().getExecutorCallPool());
+    }
+
+
+    /**
+     * 触发的请求已经发送出去了，但是没有收到响应，执行器可能已经开始执行这个任务了
+     * 这种情况不能当作触发失败，否则失败重试会让任务执行两次，所以当作触发成功来跟踪，执行器真的没有收到的话，
+     * JobRunningTracker会在执行器下线或者超过截止时间之后把它当作丢失的任务处理
+     *
+     * @param runResult
+     * @param address
+     * @return
+     */
+    private static ReturnT<String> resolveUnknown(ReturnT<String> runResult, String address) {
+        if (runResult.getCode() != ReturnT.UNKNOWN_CODE) {
+            return runResult;
+        }
+        logger.warn(">>>>>>>>>>> xxl-job trigger result unknown, executor[{}], msg:{}", address, runResult.getMsg());
+        return new ReturnT<>(ReturnT.SUCCESS_CODE, I18nUtil.getString("jobconf_trigger_result_unknown") + "<br>" + runResult.getMsg());
+    }
+
+
+    /**
+     * 在这里拼接一下远程调用返回的状态码和消息
+     *
+     * @param runResult
+     * @param address
+     * @return
+     */
+    private static ReturnT<String> buildRunResult(ReturnT<String> runResult, String address) {
         StringBuffer runResultSB = new StringBuffer(I18nUtil.getString("jobconf_trigger_run") + "：");
         runResultSB.append("<br>address：").append(address);
         runResultSB.append("<br>code：").append(runResult.getCode());
@@ -0,0 +1,60 @@
+package com.ytrue.job.admin.dao;
+
+import com.ytrue.job.admin.core.model.XxlJobAdminNode;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 17:12
+ * @description XxlJobAdminNodeDao
+ */
+@Mapper
+public interface XxlJobAdminNodeDao {
+
+    /**
+     * 续约，租约的过期时间是数据库的当前时间加上leaseTimeout，返回0说明这个节点还没有注册
+     *
+     * @param nodeId
+     * @param leaseTimeout 租约的有效时间，毫秒
+     * @return
+     */
+    int renew(@Param("nodeId") String nodeId,
+              @Param("leaseTimeout") long leaseTimeout);
+
+    /**
+     * 注册节点
+     *
+     * @param nodeId
+     * @param address
+     * @param leaseTimeout 租约的有效时间，毫秒
+     * @return
+     */
+    int save(@Param("nodeId") String nodeId,
+             @Param("address") String address,
+             @Param("leaseTimeout") long leaseTimeout);
+
+    /**
+     * 按照数据库的当前时间，查询租约还没有过期的节点
+     *
+     * @return
+     */
+    List<XxlJobAdminNode> findAlive();
+
+    /**
+     * 按照数据库的当前时间，删除租约已经过期的节点
+     *
+     * @return
+     */
+    int removeDead();
+
+    /**
+     * 删除节点，调度中心正常停止的时候调用
+     *
+     * @param nodeId
+     * @return
+     */
+    int delete(@Param("nodeId") String nodeId);
+}
@@ -0,0 +1,46 @@
+package com.ytrue.job.admin.dao;
+
+import com.ytrue.job.admin.core.model.XxlJobDependency;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 03:40
+ * @description XxlJobDependencyDao
+ */
+@Mapper
+public interface XxlJobDependencyDao {
+
+    List<XxlJobDependency> findAll();
+
+
+    List<XxlJobDependency> findByJobIds(@Param("jobIds") List<Integer> jobIds);
+
+
+    int save(XxlJobDependency xxlJobDependency);
+
+
+    int delete(@Param("jobId") int jobId, @Param("parentJobId") int parentJobId);
+
+
+    /**
+     * 删除和这个任务有关的所有边，不管它是上游还是下游
+     */
+    int deleteByJobId(@Param("jobId") int jobId);
+
+
+    /**
+     * 记录上游任务执行成功了
+     */
+    int satisfy(@Param("jobId") int jobId, @Param("parentJobId") int parentJobId, @Param("parentLogId") long parentLogId);
+
+
+    /**
+     * 所有上游任务都执行成功的时候，把这些边全部重置，返回重置的条数，大于0说明抢到了触发下游任务的权利
+     * 还有上游任务没有执行成功的时候什么也不做，返回0
+     */
+    int claim(@Param("jobId") int jobId);
+}
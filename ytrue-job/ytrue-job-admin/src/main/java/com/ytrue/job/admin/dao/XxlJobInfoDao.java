@@ -38,6 +38,32 @@ public interface XxlJobInfoDao {
 
     int scheduleUpdate(XxlJobInfo xxlJobInfo);
 
+
+    /**
+     * 分区调度的时候，只查询id落在当前节点负责的槽位中的任务
+     *
+     * @param maxNextTime
+     * @param pagesize
+     * @param slotCount
+     * @param slots
+     * @return
+     */
+    List<XxlJobInfo> scheduleJobQueryBySlots(@Param("maxNextTime") long maxNextTime,
+                                             @Param("pagesize") int pagesize,
+                                             @Param("slotCount") int slotCount,
+                                             @Param("slots") List<Integer> slots);
+
+
+    /**
+     * 只有数据库中任务的下次调度时间还是expectTriggerNextTime的时候才更新，返回0说明任务已经被别的节点调度过了
+     *
+     * @param jobInfo
+     * @param expectTriggerNextTime
+     * @return
+     */
+    int scheduleUpdateIfMatch(@Param("jobInfo") XxlJobInfo jobInfo,
+                              @Param("expectTriggerNextTime") long expectTriggerNextTime);
+
     XxlJobInfo loadById(@Param("id") int id);
 
     int save(XxlJobInfo info);
@@ -1,12 +1,14 @@
 package com.ytrue.job.admin.dao;
 
 import com.ytrue.job.admin.core.model.XxlJobLog;
+import com.ytrue.job.admin.core.model.XxlJobLogPartition;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * @author ytrue
@@ -24,6 +26,22 @@ public interface XxlJobLogDao {
                              @Param("triggerTimeEnd") Date triggerTimeEnd,
                              @Param("logStatus") int logStatus);
 
+    /**
+     * 从上一页的最后一条日志开始往后查询，不用跳过前面的记录，翻到很深的页数也不会变慢
+     */
+    List<XxlJobLog> pageListAfter(@Param("pagesize") int pagesize,
+                                  @Param("jobGroup") int jobGroup,
+                                  @Param("jobId") int jobId,
+                                  @Param("triggerTimeStart") Date triggerTimeStart,
+                                  @Param("triggerTimeEnd") Date triggerTimeEnd,
+                                  @Param("logStatus") int logStatus,
+                                  @Param("lastTriggerTime") Date lastTriggerTime,
+                                  @Param("lastId") long lastId);
+
+    /**
+     * 查询符合条件的日志数量，最多只数到当前页之后10页，日志很多的时候不用把所有符合条件的日志都数一遍
+     * 数到上限的时候返回的是offset + pagesize * 10 + 1，不是真正的总数，用isCountCapped判断
+     */
     int pageListCount(@Param("offset") int offset,
                       @Param("pagesize") int pagesize,
                       @Param("jobGroup") int jobGroup,
@@ -33,6 +51,19 @@ public interface XxlJobLogDao {
                       @Param("logStatus") int logStatus);
 
 
+    /**
+     * pageListCount返回的数量是不是数到了上限，是的话符合条件的日志比这个数量还要多
+     *
+     * @param count
+     * @param offset
+     * @param pagesize
+     * @return
+     */
+    static boolean isCountCapped(int count, int offset, int pagesize) {
+        return count > offset + pagesize * 10;
+    }
+
+
     int delete(@Param("jobId") int jobId);
 
 
@@ -46,17 +77,64 @@ public interface XxlJobLogDao {
 
     XxlJobLog load(@Param("id") long id);
 
+    /**
+     * 按id批量查询日志，不知道这些日志的触发时间，调度日志表按天分区之后要在每个分区中查找
+     */
+    default List<XxlJobLog> loadByIds(List<Long> ids) {
+        return loadByIdsFrom(ids, null);
+    }
+
+    /**
+     * 按id批量查询日志，triggerTimeFrom是这些日志中最早的触发时间，调度日志表按天分区之后，数据库只会在这一天之后的分区中查找
+     */
+    List<XxlJobLog> loadByIdsFrom(@Param("ids") List<Long> ids,
+                                  @Param("triggerTimeFrom") Date triggerTimeFrom);
+
     long save(XxlJobLog xxlJobLog);
 
+    int saveBatch(@Param("logList") List<XxlJobLog> logList);
+
     int updateTriggerInfo(XxlJobLog xxlJobLog);
 
-    List<Long> findLostJobIds(@Param("losedTime") Date losedTime);
+    /**
+     * 批量更新触发信息，sql语句中会带上这批日志的触发时间范围，调度日志表按天分区之后，数据库只会在这几个分区中查找
+     */
+    default int updateTriggerInfoBatch(List<XxlJobLog> logList) {
+        Date[] triggerTimeRange = triggerTimeRange(logList);
+        return updateTriggerInfoBatchInRange(logList, triggerTimeRange[0], triggerTimeRange[1]);
+    }
+
+    int updateTriggerInfoBatchInRange(@Param("logList") List<XxlJobLog> logList,
+                                      @Param("triggerTimeFrom") Date triggerTimeFrom,
+                                      @Param("triggerTimeTo") Date triggerTimeTo);
+
+    /**
+     * 按id从小到大分页查询正在执行的任务的日志，从lastId之后开始查询
+     */
+    List<XxlJobLog> findRunningJobLogs(@Param("triggerTimeFrom") Date triggerTimeFrom,
+                                       @Param("lastId") long lastId,
+                                       @Param("pagesize") int pagesize);
 
     int updateHandleInfo(XxlJobLog xxlJobLog);
 
+    /**
+     * 批量更新执行结果，和批量更新触发信息一样会带上触发时间范围
+     */
+    default int updateHandleInfoBatch(List<XxlJobLog> logList) {
+        Date[] triggerTimeRange = triggerTimeRange(logList);
+        return updateHandleInfoBatchInRange(logList, triggerTimeRange[0], triggerTimeRange[1]);
+    }
+
+    int updateHandleInfoBatchInRange(@Param("logList") List<XxlJobLog> logList,
+                                     @Param("triggerTimeFrom") Date triggerTimeFrom,
+                                     @Param("triggerTimeTo") Date triggerTimeTo);
+
     Map<String, Object> findLogReport(@Param("from") Date from,
                                       @Param("to") Date to);
 
+    int findLogCount(@Param("from") Date from,
+                     @Param("to") Date to);
+
 
     List<Long> findFailJobLogIds(@Param("pagesize") int pagesize);
 
@@ -64,4 +142,88 @@ public interface XxlJobLogDao {
     int updateAlarmStatus(@Param("logId") long logId,
                           @Param("oldAlarmStatus") int oldAlarmStatus,
                           @Param("newAlarmStatus") int newAlarmStatus);
+
+    List<XxlJobLogPartition> findPartitions();
+
+    /**
+     * 从pmax中拆分出新的分区，分区名称和上界是直接拼接到DDL语句中的，所以先检查格式，不符合格式的直接抛出异常
+     */
+    default int addPartitions(List<XxlJobLogPartition> partitionList) {
+        for (XxlJobLogPartition partition : partitionList) {
+            checkPartitionName(partition.getPartitionName());
+            if (partition.getLessThan() == null || !PARTITION_LESS_THAN_PATTERN.matcher(partition.getLessThan()).matches()) {
+                throw new IllegalArgumentException("invalid job log partition lessThan:" + partition.getLessThan());
+            }
+        }
+        return addCheckedPartitions(partitionList);
+    }
+
+    int addCheckedPartitions(@Param("partitionList") List<XxlJobLogPartition> partitionList);
+
+    /**
+     * 删除分区，和创建分区一样先检查名称的格式
+     */
+    default int dropPartitions(List<String> partitionNames) {
+        for (String partitionName : partitionNames) {
+            checkPartitionName(partitionName);
+        }
+        return dropCheckedPartitions(partitionNames);
+    }
+
+    int dropCheckedPartitions(@Param("partitionNames") List<String> partitionNames);
+
+
+    /**
+     * 分区名称只能是p开头的字母、数字和下划线，比如p20261020、p_history，pmax不能删除也不能重新创建
+     */
+    Pattern PARTITION_NAME_PATTERN = Pattern.compile("p[A-Za-z0-9_]{1,63}");
+
+    /**
+     * 分区的上界只能是yyyy-MM-dd HH:mm:ss格式的时间
+     */
+    Pattern PARTITION_LESS_THAN_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}");
+
+    static void checkPartitionName(String partitionName) {
+        if (partitionName == null || !PARTITION_NAME_PATTERN.matcher(partitionName).matches() || "pmax".equals(partitionName)) {
+            throw new IllegalArgumentException("invalid job log partition name:" + partitionName);
+        }
+    }
+
+
+    /**
+     * 根据一批日志中最早的触发时间计算查询的下界，和triggerTimeRange一样放宽一秒
+     *
+     * @param minTriggerTime 最早的触发时间，不知道的时候传0
+     * @return 不知道触发时间的时候返回null，不限制范围
+     */
+    static Date triggerTimeFrom(long minTriggerTime) {
+        if (minTriggerTime <= 0 || minTriggerTime == Long.MAX_VALUE) {
+            return null;
+        }
+        return new Date(minTriggerTime - 1000);
+    }
+
+
+    /**
+     * 计算一批日志的触发时间范围，数据库中的触发时间只精确到秒，写入的时候可能会进位，所以前后各放宽一秒
+     * 有日志没有触发时间的话，就不限制范围
+     *
+     * @param logList
+     * @return
+     */
+    static Date[] triggerTimeRange(List<XxlJobLog> logList) {
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        for (XxlJobLog xxlJobLog : logList) {
+            if (xxlJobLog.getTriggerTime() == null) {
+                return new Date[]{null, null};
+            }
+            minTime = Math.min(minTime, xxlJobLog.getTriggerTime().getTime());
+            maxTime = Math.max(maxTime, xxlJobLog.getTriggerTime().getTime());
+        }
+        if (logList.isEmpty()) {
+            return new Date[]{null, null};
+        }
+        return new Date[]{new Date(minTime - 1000), new Date(maxTime + 1000)};
+    }
 }
@@ -25,4 +25,21 @@ public interface XxlJobLogReportDao {
 
 
     int update(XxlJobLogReport xxlJobLogReport);
+
+    XxlJobLogReport load(@Param("triggerDay") Date triggerDay);
+
+    int updateDelta(@Param("triggerDay") Date triggerDay,
+                    @Param("runningDelta") int runningDelta,
+                    @Param("sucDelta") int sucDelta,
+                    @Param("failDelta") int failDelta);
+
+    /**
+     * 只有统计表中的数据还是expect的时候才覆盖成report，期间别的调度中心写入了增量的话就不会更新
+     *
+     * @param report
+     * @param expect
+     * @return
+     */
+    int updateIfUnchanged(@Param("report") XxlJobLogReport report,
+                          @Param("expect") XxlJobLogReport expect);
 }
@@ -43,6 +43,20 @@ public interface XxlJobRegistryDao {
     List<XxlJobRegistry> findAll(@Param("timeout") int timeout,
                                  @Param("nowTime") Date nowTime);
 
+    /**
+     * 查询这些执行器组下所有没有过期的注册信息
+     *
+     * @param timeout
+     * @param nowTime
+     * @param registryGroup
+     * @param registryKeys
+     * @return
+     */
+    List<XxlJobRegistry> findByRegistryKeys(@Param("timeout") int timeout,
+                                            @Param("nowTime") Date nowTime,
+                                            @Param("registryGroup") String registryGroup,
+                                            @Param("registryKeys") List<String> registryKeys);
+
     /**
      * 更新
      *
@@ -57,6 +71,14 @@ public interface XxlJobRegistryDao {
                        @Param("registryValue") String registryValue,
                        @Param("updateTime") Date updateTime);
 
+    /**
+     * 批量更新心跳时间，每条注册信息的更新时间都不一样
+     *
+     * @param registryList
+     * @return
+     */
+    int registryUpdateBatch(@Param("registryList") List<XxlJobRegistry> registryList);
+
     /**
      * 新增
      *
@@ -2,10 +2,12 @@ package com.ytrue.job.admin.service.impl;
 
 import com.ytrue.job.admin.core.thread.JobCompleteHelper;
 import com.ytrue.job.admin.core.thread.JobRegistryHelper;
+import com.ytrue.job.admin.core.thread.JobShardDispatcher;
 import com.ytrue.job.core.biz.AdminBiz;
 import com.ytrue.job.core.biz.model.HandleCallbackParam;
 import com.ytrue.job.core.biz.model.RegistryParam;
 import com.ytrue.job.core.biz.model.ReturnT;
+import com.ytrue.job.core.biz.model.ShardPullParam;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
@@ -50,4 +52,15 @@ public class AdminBizImpl implements AdminBiz {
     public ReturnT<String> callback(List<HandleCallbackParam> callbackParamList) {
         return JobCompleteHelper.getInstance().callback(callbackParamList);
     }
+
+    /**
+     * 动态分片的任务领取下一个工作单元
+     *
+     * @param shardPullParam
+     * @return
+     */
+    @Override
+    public ReturnT<Integer> shardPull(ShardPullParam shardPullParam) {
+        return JobShardDispatcher.getInstance().pull(shardPullParam);
+    }
 }
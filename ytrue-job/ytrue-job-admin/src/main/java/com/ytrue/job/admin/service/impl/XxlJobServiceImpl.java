@@ -1,6 +1,7 @@
 package com.ytrue.job.admin.service.impl;
 
 import com.ytrue.job.admin.core.cron.CronExpression;
+import com.ytrue.job.admin.core.model.XxlJobDependency;
 import com.ytrue.job.admin.core.model.XxlJobGroup;
 import com.ytrue.job.admin.core.model.XxlJobInfo;
 import com.ytrue.job.admin.core.model.XxlJobLogReport;
@@ -8,6 +9,8 @@ import com.ytrue.job.admin.core.route.ExecutorRouteStrategyEnum;
 import com.ytrue.job.admin.core.scheduler.MisfireStrategyEnum;
 import com.ytrue.job.admin.core.scheduler.ScheduleTypeEnum;
 import com.ytrue.job.admin.core.thread.JobScheduleHelper;
+import com.ytrue.job.admin.core.thread.JobWorkflowHelper;
+import com.ytrue.job.admin.core.trigger.JobMetaCache;
 import com.ytrue.job.admin.core.util.I18nUtil;
 import com.ytrue.job.admin.dao.*;
 import com.ytrue.job.admin.service.XxlJobService;
@@ -18,6 +21,9 @@ import com.ytrue.job.core.util.DateUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.text.MessageFormat;
@@ -43,6 +49,8 @@ public class XxlJobServiceImpl implements XxlJobService {
     private XxlJobLogGlueDao xxlJobLogGlueDao;
     @Resource
     private XxlJobLogReportDao xxlJobLogReportDao;
+    @Resource
+    private XxlJobDependencyDao xxlJobDependencyDao;
 
     /**
      * 分页查询，查询定时任务的信息
@@ -60,6 +68,8 @@ public class XxlJobServiceImpl implements XxlJobService {
     public Map<String, Object> pageList(int start, int length, int jobGroup, int triggerStatus, String jobDesc, String executorHandler, String author) {
         List<XxlJobInfo> list = xxlJobInfoDao.pageList(start, length, jobGroup, triggerStatus, jobDesc, executorHandler, author);
         int list_count = xxlJobInfoDao.pageListCount(start, length, jobGroup, triggerStatus, jobDesc, executorHandler, author);
+        //上游任务不是xxl_job_info表的字段，这里一次查询出这一页所有任务的上游任务
+        fillParentJobIds(list);
         Map<String, Object> maps = new HashMap<String, Object>();
         maps.put("recordsTotal", list_count);
         maps.put("recordsFiltered", list_count);
@@ -67,7 +77,14 @@ public class XxlJobServiceImpl implements XxlJobService {
         return maps;
     }
 
+    /**
+     * 任务信息和上游任务在一个事务中保存，保存上游任务失败的时候不会留下一个没有上游任务的任务
+     *
+     * @param jobInfo
+     * @return
+     */
     @Override
+    @Transactional(rollbackFor = Exception.class)
     public ReturnT<String> add(XxlJobInfo jobInfo) {
         //先查询到该定时任务对应的执行器
         XxlJobGroup group = xxlJobGroupDao.load(jobInfo.getJobGroup());
@@ -175,6 +192,13 @@ public class XxlJobServiceImpl implements XxlJobService {
             jobInfo.setChildJobId(temp.toString());
         }
 
+        //判断上游任务，新添加的任务还没有下游任务，所以不会形成环
+        List<Integer> parentJobIdList = new ArrayList<>();
+        ReturnT<String> parentValid = validParentJobIds(-1, jobInfo.getParentJobIds(), parentJobIdList);
+        if (parentValid != null) {
+            return parentValid;
+        }
+
         //下面就是定时任务的添加时间，更新时间和glue的更新时间
         jobInfo.setAddTime(new Date());
         jobInfo.setUpdateTime(new Date());
@@ -185,6 +209,8 @@ public class XxlJobServiceImpl implements XxlJobService {
             //走到这里意味保存失败
             return new ReturnT<>(ReturnT.FAIL_CODE, (I18nUtil.getString("jobinfo_field_add") + I18nUtil.getString("system_fail")));
         }
+        //保存上游任务
+        saveParentJobIds(jobInfo.getId(), parentJobIdList);
         //走到这里则保存成功
         return new ReturnT<>(String.valueOf(jobInfo.getId()));
     }
@@ -274,6 +300,16 @@ public class XxlJobServiceImpl implements XxlJobService {
             jobInfo.setChildJobId(temp.toString());
         }
 
+        //上游任务为null说明没有修改，保持原来的上游任务；空字符串才是清空上游任务
+        List<Integer> parentJobIdList = null;
+        if (jobInfo.getParentJobIds() != null) {
+            parentJobIdList = new ArrayList<>();
+            ReturnT<String> parentValid = validParentJobIds(jobInfo.getId(), jobInfo.getParentJobIds(), parentJobIdList);
+            if (parentValid != null) {
+                return parentValid;
+            }
+        }
+
         XxlJobGroup jobGroup = xxlJobGroupDao.load(jobInfo.getJobGroup());
         if (jobGroup == null) {
             return new ReturnT<>(ReturnT.FAIL_CODE, (I18nUtil.getString("jobinfo_field_jobgroup") + I18nUtil.getString("system_unvalid")));
@@ -329,9 +365,123 @@ public class XxlJobServiceImpl implements XxlJobService {
         exists_jobInfo.setUpdateTime(new Date());
         //跟新定时任务
         xxlJobInfoDao.update(exists_jobInfo);
+        //任务信息修改了，让触发任务时使用的缓存失效
+        JobMetaCache.invalidateJobInfo(exists_jobInfo.getId());
+        //更新上游任务
+        if (parentJobIdList != null) {
+            saveParentJobIds(exists_jobInfo.getId(), parentJobIdList);
+        }
         return ReturnT.SUCCESS;
     }
 
+
+    /**
+     * 校验上游任务id，校验通过的上游任务id放到parentJobIdList中
+     *
+     * @param jobId           任务id，新添加的任务为-1
+     * @param parentJobIds
+     * @param parentJobIdList
+     * @return 校验失败的结果，校验通过的时候返回null
+     */
+    private ReturnT<String> validParentJobIds(int jobId, String parentJobIds, List<Integer> parentJobIdList) {
+        if (parentJobIds == null || parentJobIds.trim().length() == 0) {
+            return null;
+        }
+        for (String parentJobIdItem : parentJobIds.split(",")) {
+            if (parentJobIdItem == null || parentJobIdItem.trim().length() == 0 || !isNumeric(parentJobIdItem.trim())) {
+                return new ReturnT<>(ReturnT.FAIL_CODE, MessageFormat.format((I18nUtil.getString("jobinfo_field_parentJobIds") + "({0})" + I18nUtil.getString("system_unvalid")), parentJobIdItem));
+            }
+            int parentJobId = Integer.parseInt(parentJobIdItem.trim());
+            if (xxlJobInfoDao.loadById(parentJobId) == null) {
+                return new ReturnT<>(ReturnT.FAIL_CODE, MessageFormat.format((I18nUtil.getString("jobinfo_field_parentJobIds") + "({0})" + I18nUtil.getString("system_not_found")), parentJobIdItem));
+            }
+            if (!parentJobIdList.contains(parentJobId)) {
+                parentJobIdList.add(parentJobId);
+            }
+        }
+        if (jobId > 0) {
+            //上游任务不能是自己，也不能是自己直接或者间接的下游任务
+            int cycleJobId = JobWorkflowHelper.getInstance().findCycle(jobId, parentJobIdList);
+            if (cycleJobId > 0) {
+                return new ReturnT<>(ReturnT.FAIL_CODE, MessageFormat.format(I18nUtil.getString("jobinfo_field_parentJobIds_cycle"), String.valueOf(cycleJobId)));
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * 保存任务的上游任务，只增删有变化的边，没有变化的边保留本轮已经执行成功的状态
+     *
+     * @param jobId
+     * @param parentJobIdList
+     */
+    private void saveParentJobIds(int jobId, List<Integer> parentJobIdList) {
+        List<Integer> existParentJobIdList = new ArrayList<>();
+        for (XxlJobDependency dependency : xxlJobDependencyDao.findByJobIds(Collections.singletonList(jobId))) {
+            existParentJobIdList.add(dependency.getParentJobId());
+        }
+        if (existParentJobIdList.equals(parentJobIdList)) {
+            return;
+        }
+        for (Integer parentJobId : existParentJobIdList) {
+            if (!parentJobIdList.contains(parentJobId)) {
+                xxlJobDependencyDao.delete(jobId, parentJobId);
+            }
+        }
+        for (Integer parentJobId : parentJobIdList) {
+            if (!existParentJobIdList.contains(parentJobId)) {
+                XxlJobDependency dependency = new XxlJobDependency();
+                dependency.setJobId(jobId);
+                dependency.setParentJobId(parentJobId);
+                dependency.setUpdateTime(new Date());
+                xxlJobDependencyDao.save(dependency);
+            }
+        }
+        //依赖关系修改了，让当前调度中心马上生效，别的调度中心要等下一次刷新
+        //在事务中的话要等提交之后再刷新，否则事务回滚之后内存中还是回滚掉的依赖关系
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    JobWorkflowHelper.getInstance().refresh();
+                }
+            });
+        } else {
+            JobWorkflowHelper.getInstance().refresh();
+        }
+    }
+
+
+    /**
+     * 给一页定时任务填充上游任务id
+     *
+     * @param list
+     */
+    private void fillParentJobIds(List<XxlJobInfo> list) {
+        if (list == null || list.isEmpty()) {
+            return;
+        }
+        List<Integer> jobIds = new ArrayList<>();
+        for (XxlJobInfo jobInfo : list) {
+            jobIds.add(jobInfo.getId());
+        }
+        Map<Integer, StringBuilder> parentJobIdsMap = new HashMap<>();
+        for (XxlJobDependency dependency : xxlJobDependencyDao.findByJobIds(jobIds)) {
+            StringBuilder parentJobIds = parentJobIdsMap.computeIfAbsent(dependency.getJobId(), k -> new StringBuilder());
+            if (parentJobIds.length() > 0) {
+                parentJobIds.append(",");
+            }
+            parentJobIds.append(dependency.getParentJobId());
+        }
+        for (XxlJobInfo jobInfo : list) {
+            StringBuilder parentJobIds = parentJobIdsMap.get(jobInfo.getId());
+            if (parentJobIds != null) {
+                jobInfo.setParentJobIds(parentJobIds.toString());
+            }
+        }
+    }
+
     @Override
     public ReturnT<String> remove(int id) {
         XxlJobInfo xxlJobInfo = xxlJobInfoDao.loadById(id);
@@ -341,6 +491,11 @@ public class XxlJobServiceImpl implements XxlJobService {
         xxlJobInfoDao.delete(id);
         xxlJobLogDao.delete(id);
         xxlJobLogGlueDao.deleteByJobId(id);
+        //任务删除之后，它作为上游和下游的依赖关系都要删除
+        if (xxlJobDependencyDao.deleteByJobId(id) > 0) {
+            JobWorkflowHelper.getInstance().refresh();
+        }
+        JobMetaCache.invalidateJobInfo(id);
         return ReturnT.SUCCESS;
     }
 
@@ -382,6 +537,7 @@ public class XxlJobServiceImpl implements XxlJobService {
         xxlJobInfo.setTriggerNextTime(nextTriggerTime);
         xxlJobInfo.setUpdateTime(new Date());
         xxlJobInfoDao.update(xxlJobInfo);
+        JobMetaCache.invalidateJobInfo(id);
         return ReturnT.SUCCESS;
     }
 
@@ -394,6 +550,7 @@ public class XxlJobServiceImpl implements XxlJobService {
         xxlJobInfo.setTriggerNextTime(0);
         xxlJobInfo.setUpdateTime(new Date());
         xxlJobInfoDao.update(xxlJobInfo);
+        JobMetaCache.invalidateJobInfo(id);
         return ReturnT.SUCCESS;
     }
 
@@ -572,6 +572,7 @@ $(function() {
 		// fill advanced
 		$('#updateModal .form select[name=executorRouteStrategy] option[value='+ row.executorRouteStrategy +']').prop('selected', true);
 		$("#updateModal .form input[name='childJobId']").val( row.childJobId );
+		$("#updateModal .form input[name='parentJobIds']").val( row.parentJobIds );
 		$('#updateModal .form select[name=misfireStrategy] option[value='+ row.misfireStrategy +']').prop('selected', true);
 		$('#updateModal .form select[name=executorBlockStrategy] option[value='+ row.executorBlockStrategy +']').prop('selected', true);
 		$("#updateModal .form input[name='executorTimeout']").val( row.executorTimeout );
@@ -727,6 +728,7 @@ $(function() {
 		// fill advanced
 		$('#addModal .form select[name=executorRouteStrategy] option[value='+ row.executorRouteStrategy +']').prop('selected', true);
 		$("#addModal .form input[name='childJobId']").val( row.childJobId );
+		$("#addModal .form input[name='parentJobIds']").val( row.parentJobIds );
 		$('#addModal .form select[name=misfireStrategy] option[value='+ row.misfireStrategy +']').prop('selected', true);
 		$('#addModal .form select[name=executorBlockStrategy] option[value='+ row.executorBlockStrategy +']').prop('selected', true);
 		$("#addModal .form input[name='executorTimeout']").val( row.executorTimeout );
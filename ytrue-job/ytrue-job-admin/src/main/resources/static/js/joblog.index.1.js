@@ -69,6 +69,9 @@ $(function() {
         endDate: rangesConf[I18n.daterangepicker_ranges_today][1]
 	});
 
+	// page cursor: last row of the current page, used to load the next page by keyset instead of offset
+	var pageCursor = null;
+
 	// init date tables
 	var logTable = $("#joblog_list").dataTable({
 		"deferRender": true,
@@ -85,11 +88,39 @@ $(function() {
 				obj.filterTime = $('#filterTime').val();
 	        	obj.start = d.start;
 	        	obj.length = d.length;
+				// next page with the same filter: continue after the last row of the current page
+				var filterKey = [obj.jobGroup, obj.jobId, obj.logStatus, obj.filterTime, obj.length].join('|');
+				if (pageCursor && pageCursor.lastId && pageCursor.filterKey == filterKey && pageCursor.start + obj.length == obj.start) {
+					obj.lastTriggerTime = pageCursor.lastTriggerTime;
+					obj.lastId = pageCursor.lastId;
+				}
+				pageCursor = {filterKey: filterKey, start: obj.start};
                 return obj;
-            }
+            },
+			dataSrc: function ( json ) {
+				if (pageCursor && json.data && json.data.length > 0) {
+					var lastRow = json.data[json.data.length - 1];
+					pageCursor.lastTriggerTime = moment(lastRow.triggerTime).valueOf();
+					pageCursor.lastId = lastRow.id;
+				} else {
+					pageCursor = null;
+				}
+				return json.data;
+			}
 	    },
 	    "searching": false,
 	    "ordering": false,
+		// the total is only counted up to 10 pages after the current one, show "N+" when there are more logs than that
+		"infoCallback": function ( settings, start, end, max, total, pre ) {
+			if (!settings.json || !settings.json.recordsTotalCapped) {
+				return pre;
+			}
+			var info = this.api().page.info();
+			return I18n.dataTable_sInfo
+				.replace('_PAGE_', info.page + 1)
+				.replace('_PAGES_', (info.pages - 1) + '+')
+				.replace('_TOTAL_', (total - 1) + '+');
+		},
 	    //"scrollX": false,
 	    "columns": [
 					{
@@ -232,6 +232,11 @@
                         <div class="col-sm-4"><input type="text" class="form-control" name="executorFailRetryCount" placeholder="${I18n.jobinfo_field_executorFailRetryCount_placeholder}" maxlength="4" onkeyup="this.value=this.value.replace(/\D/g,'')" onafterpaste="this.value=this.value.replace(/\D/g,'')" ></div>
                     </div>
 
+                    <div class="form-group">
+                        <label for="lastname" class="col-sm-2 control-label">${I18n.jobinfo_field_parentJobIds}<font color="black">*</font></label>
+                        <div class="col-sm-4"><input type="text" class="form-control" name="parentJobIds" placeholder="${I18n.jobinfo_field_parentJobIds_placeholder}" maxlength="100" ></div>
+                    </div>
+
                     <hr>
 					<div class="form-group">
 						<div class="col-sm-offset-3 col-sm-6">
@@ -477,6 +482,11 @@ exit 0
                         <div class="col-sm-4"><input type="text" class="form-control" name="executorFailRetryCount" placeholder="${I18n.jobinfo_field_executorFailRetryCount_placeholder}" maxlength="4" onkeyup="this.value=this.value.replace(/\D/g,'')" onafterpaste="this.value=this.value.replace(/\D/g,'')" ></div>
                     </div>
 
+                    <div class="form-group">
+                        <label for="lastname" class="col-sm-2 control-label">${I18n.jobinfo_field_parentJobIds}<font color="black">*</font></label>
+                        <div class="col-sm-4"><input type="text" class="form-control" name="parentJobIds" placeholder="${I18n.jobinfo_field_parentJobIds_placeholder}" maxlength="100" ></div>
+                    </div>
+
 					<hr>
 					<div class="form-group">
                         <div class="col-sm-offset-3 col-sm-6">
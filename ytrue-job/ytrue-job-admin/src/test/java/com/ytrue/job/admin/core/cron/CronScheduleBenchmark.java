@@ -0,0 +1,79 @@
+package com.ytrue.job.admin.core.cron;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 11:05
+ * @description 对比CronExpression和编译后的CronSchedule计算下一次执行时间的耗时
+ * 调度线程原来的做法是每次都new一个CronExpression再计算，对应的就是parseAndNext这个方法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CronScheduleBenchmark {
+
+    @Param({"0/5 * * * * ?", "0 0/3 9-17 * * ?", "15 10 2 ? * MON-FRI", "0 0 0 1 1 ?"})
+    private String expression;
+
+    private CronExpression cronExpression;
+
+    private CronSchedule cronSchedule;
+
+    private Date fromTime;
+
+    @Setup
+    public void setup() throws ParseException {
+        cronExpression = new CronExpression(expression);
+        cronSchedule = CronScheduleCache.get(expression);
+        fromTime = new Date();
+    }
+
+    @Benchmark
+    public Date parseAndNext() throws ParseException {
+        return new CronExpression(expression).getNextValidTimeAfter(fromTime);
+    }
+
+    @Benchmark
+    public Date cronExpressionNext() {
+        return cronExpression.getNextValidTimeAfter(fromTime);
+    }
+
+    @Benchmark
+    public Date cachedScheduleNext() throws ParseException {
+        return CronScheduleCache.get(expression).getNextValidTimeAfter(fromTime);
+    }
+
+    @Benchmark
+    public List<Date> cronScheduleNextTen() {
+        return cronSchedule.getNextValidTimesAfter(fromTime, 10);
+    }
+
+    @Benchmark
+    public Date cronExpressionNextTen() {
+        Date lastTime = fromTime;
+        for (int i = 0; i < 10; i++) {
+            lastTime = cronExpression.getNextValidTimeAfter(lastTime);
+        }
+        return lastTime;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CronScheduleBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
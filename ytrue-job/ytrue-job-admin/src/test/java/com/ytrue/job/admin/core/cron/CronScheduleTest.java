@@ -0,0 +1,115 @@
+package com.ytrue.job.admin.core.cron;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 04:40
+ * @description 编译后的CronSchedule和原来的CronExpression的等价性测试
+ * 用随机的起始时间分别计算下一次执行时间，两者的结果必须完全一样，包括L、W、#这些特殊字符，以及夏令时切换的时区
+ */
+public class CronScheduleTest {
+
+    private static final String[] EXPRESSIONS = {
+            "0/5 * * * * ?",
+            "* * * * * ?",
+            "0 0 12 * * ?",
+            "0 15 10 ? * MON-FRI",
+            "0 15 10 ? * 6L",
+            "0 0/3 9-17 * * ?",
+            "0 15 10 15W * ?",
+            "0 0 0 L * ?",
+            "0 0 0 29 2 ?",
+            "0 10,44 14 ? 3 WED",
+            "0 0 1 ? * SUN",
+            "0 0 22-2 * * ?",
+            "0 0 0 1 1 ? 2030",
+            "0 30 2 * * ?",
+            "59 59 23 31 12 ?",
+            "0 0 12 ? * 2#1",
+            "1-10/3 5 */2 ? NOV-FEB TUE,THU",
+            "0 0 0 31 * ?",
+            "0 0 0 ? * 1-7"
+    };
+
+    private static final String[] TIME_ZONES = {"Asia/Shanghai", "America/New_York", "Europe/London"};
+
+    /**
+     * 每个表达式随机取多少个起始时间
+     */
+    private static final int SAMPLES = 2000;
+
+    private TimeZone originalTimeZone;
+
+    @BeforeEach
+    public void setUp() {
+        originalTimeZone = TimeZone.getDefault();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        TimeZone.setDefault(originalTimeZone);
+    }
+
+
+    @Test
+    public void nextValidTimeMatchesCronExpression() throws ParseException {
+        //固定种子，出错的时候可以复现
+        Random random = new Random(20261020L);
+        for (String timeZone : TIME_ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(timeZone));
+            for (String expression : EXPRESSIONS) {
+                CronSchedule cronSchedule = CronSchedule.compile(expression);
+                CronExpression cronExpression = new CronExpression(expression);
+                for (int i = 0; i < SAMPLES; i++) {
+                    //2020年到2030年之间的随机时间
+                    Date fromTime = new Date(1600000000000L + (long) (random.nextDouble() * 3650L * 86400000L));
+                    assertEquals(cronExpression.getNextValidTimeAfter(fromTime), cronSchedule.getNextValidTimeAfter(fromTime),
+                            timeZone + " " + expression + " after " + fromTime.getTime());
+                }
+            }
+        }
+    }
+
+
+    @Test
+    public void nextValidTimesMatchCronExpression() throws ParseException {
+        for (String timeZone : TIME_ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(timeZone));
+            for (String expression : EXPRESSIONS) {
+                CronExpression cronExpression = new CronExpression(expression);
+                Date fromTime = new Date(1700000000000L);
+                List<Date> nextTimes = CronSchedule.compile(expression).getNextValidTimesAfter(fromTime, 10);
+                //用原来的CronExpression一次一次地算出后面10次执行时间，限定了年份的表达式可能不到10次
+                List<Date> expectedTimes = new ArrayList<>();
+                Date lastTime = cronExpression.getNextValidTimeAfter(fromTime);
+                while (lastTime != null && expectedTimes.size() < 10) {
+                    expectedTimes.add(lastTime);
+                    lastTime = cronExpression.getNextValidTimeAfter(lastTime);
+                }
+                //不到10次的时候，说明之后确实没有执行时间了
+                assertTrue(expectedTimes.size() == 10 || lastTime == null, timeZone + " " + expression);
+                assertEquals(expectedTimes.size(), nextTimes.size(), timeZone + " " + expression);
+                assertEquals(expectedTimes, nextTimes, timeZone + " " + expression);
+            }
+        }
+    }
+
+
+    @Test
+    public void invalidExpressionIsRejected() {
+        assertThrows(ParseException.class, () -> CronSchedule.compile("0 0 25 * * ?"));
+        assertThrows(ParseException.class, () -> CronSchedule.compile("0 0 0 * * *"));
+    }
+}
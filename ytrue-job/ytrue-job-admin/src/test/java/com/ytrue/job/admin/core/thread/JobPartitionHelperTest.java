@@ -0,0 +1,200 @@
+package com.ytrue.job.admin.core.thread;
+
+import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.model.XxlJobAdminNode;
+import com.ytrue.job.admin.dao.XxlJobAdminNodeDao;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 04:30
+ * @description 多个调度中心节点的分区测试，所有节点共用同一张节点表
+ * 节点表用内存中的实现代替，它有自己的时钟，和mapper中用数据库的当前时间计算租约是一样的，测试中可以让数据库的时间往前走
+ */
+public class JobPartitionHelperTest {
+
+    /**
+     * 内存中的xxl_job_admin_node表，租约用这张表自己的时钟计算
+     */
+    private static class MemoryAdminNodeDao implements XxlJobAdminNodeDao {
+
+        private final Map<String, XxlJobAdminNode> nodeMap = new TreeMap<>();
+
+        private long clockOffset = 0;
+
+        private long dbTime() {
+            return System.currentTimeMillis() + clockOffset;
+        }
+
+        @Override
+        public synchronized int renew(String nodeId, long leaseTimeout) {
+            XxlJobAdminNode node = nodeMap.get(nodeId);
+            if (node == null) {
+                return 0;
+            }
+            node.setLeaseExpireTime(dbTime() + leaseTimeout);
+            return 1;
+        }
+
+        @Override
+        public synchronized int save(String nodeId, String address, long leaseTimeout) {
+            XxlJobAdminNode node = new XxlJobAdminNode();
+            node.setNodeId(nodeId);
+            node.setAddress(address);
+            node.setLeaseExpireTime(dbTime() + leaseTimeout);
+            nodeMap.put(nodeId, node);
+            return 1;
+        }
+
+        @Override
+        public synchronized List<XxlJobAdminNode> findAlive() {
+            List<XxlJobAdminNode> aliveNodes = new ArrayList<>();
+            for (XxlJobAdminNode node : nodeMap.values()) {
+                if (node.getLeaseExpireTime() > dbTime()) {
+                    aliveNodes.add(node);
+                }
+            }
+            return aliveNodes;
+        }
+
+        @Override
+        public synchronized int removeDead() {
+            int before = nodeMap.size();
+            nodeMap.values().removeIf(node -> node.getLeaseExpireTime() <= dbTime());
+            return before - nodeMap.size();
+        }
+
+        @Override
+        public synchronized int delete(String nodeId) {
+            return nodeMap.remove(nodeId) != null ? 1 : 0;
+        }
+    }
+
+
+    private MemoryAdminNodeDao nodeDao;
+
+    private XxlJobAdminConfig originalConfig;
+
+    private final List<JobPartitionHelper> nodes = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        nodeDao = new MemoryAdminNodeDao();
+        XxlJobAdminConfig adminConfig = new XxlJobAdminConfig();
+        Field daoField = XxlJobAdminConfig.class.getDeclaredField("xxlJobAdminNodeDao");
+        daoField.setAccessible(true);
+        daoField.set(adminConfig, nodeDao);
+        originalConfig = XxlJobAdminConfig.getAdminConfig();
+        setAdminConfig(adminConfig);
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        for (JobPartitionHelper node : nodes) {
+            node.toStop();
+        }
+        setAdminConfig(originalConfig);
+    }
+
+    private static void setAdminConfig(XxlJobAdminConfig adminConfig) throws Exception {
+        Field configField = XxlJobAdminConfig.class.getDeclaredField("adminConfig");
+        configField.setAccessible(true);
+        configField.set(null, adminConfig);
+    }
+
+    private JobPartitionHelper startNode(String address) {
+        JobPartitionHelper node = new JobPartitionHelper();
+        node.start(address);
+        nodes.add(node);
+        return node;
+    }
+
+    /**
+     * 每个节点都续约一次，让它们都看到最新的节点列表
+     */
+    private void renewAll() {
+        for (JobPartitionHelper node : nodes) {
+            node.renew();
+        }
+    }
+
+    /**
+     * 每个槽位都恰好归一个节点
+     */
+    private static void assertSlotsCovered(List<JobPartitionHelper> aliveNodes) {
+        int[] owners = new int[JobPartitionHelper.SLOT_COUNT];
+        for (JobPartitionHelper node : aliveNodes) {
+            for (int slot : node.getOwnedSlots()) {
+                owners[slot]++;
+            }
+        }
+        for (int slot = 0; slot < owners.length; slot++) {
+            assertEquals(1, owners[slot], "slot " + slot);
+        }
+        for (int jobId = 1; jobId <= 5000; jobId++) {
+            int owner = 0;
+            for (JobPartitionHelper node : aliveNodes) {
+                if (node.isOwner(jobId)) {
+                    owner++;
+                }
+            }
+            assertEquals(1, owner, "jobId " + jobId);
+        }
+    }
+
+
+    @Test
+    public void slotsArePartitionedAcrossNodes() {
+        JobPartitionHelper a = startNode("127.0.0.1:8080");
+        JobPartitionHelper b = startNode("127.0.0.1:8081");
+        JobPartitionHelper c = startNode("127.0.0.1:8082");
+        renewAll();
+        assertSlotsCovered(Arrays.asList(a, b, c));
+        for (JobPartitionHelper node : nodes) {
+            assertTrue(node.getOwnedSlots().size() > JobPartitionHelper.SLOT_COUNT / 10, "unbalanced:" + node.getOwnedSlots().size());
+        }
+    }
+
+
+    @Test
+    public void stoppedNodeSlotsAreTakenOver() {
+        JobPartitionHelper a = startNode("127.0.0.1:8080");
+        JobPartitionHelper b = startNode("127.0.0.1:8081");
+        JobPartitionHelper c = startNode("127.0.0.1:8082");
+        renewAll();
+        List<Integer> slotsOfA = new ArrayList<>(a.getOwnedSlots());
+        List<Integer> slotsOfB = new ArrayList<>(b.getOwnedSlots());
+        c.toStop();
+        nodes.remove(c);
+        assertTrue(c.getOwnedSlots().isEmpty());
+        renewAll();
+        assertSlotsCovered(Arrays.asList(a, b));
+        //一致性哈希，存活的节点原来负责的槽位不会换节点
+        assertTrue(a.getOwnedSlots().containsAll(slotsOfA));
+        assertTrue(b.getOwnedSlots().containsAll(slotsOfB));
+    }
+
+
+    @Test
+    public void expiredLeaseIsJudgedByDatabaseTime() {
+        JobPartitionHelper a = startNode("127.0.0.1:8080");
+        JobPartitionHelper b = startNode("127.0.0.1:8081");
+        renewAll();
+        //a一直没有续约，数据库的时间已经过了它的租约，b续约的时候就会接管所有槽位
+        nodeDao.clockOffset = 60_000;
+        b.renew();
+        assertEquals(JobPartitionHelper.SLOT_COUNT, b.getOwnedSlots().size());
+        assertEquals(1, nodeDao.findAlive().size());
+        //a恢复之后重新注册，两个节点再次平分槽位
+        a.renew();
+        b.renew();
+        assertSlotsCovered(Arrays.asList(a, b));
+    }
+}
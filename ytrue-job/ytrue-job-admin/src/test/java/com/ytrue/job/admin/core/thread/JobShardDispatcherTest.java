@@ -0,0 +1,119 @@
+package com.ytrue.job.admin.core.thread;
+
+import com.ytrue.job.admin.core.model.XxlJobLog;
+import com.ytrue.job.core.biz.model.ReturnT;
+import com.ytrue.job.core.biz.model.ShardPullParam;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 04:20
+ * @description 动态分片工作单元分配的测试，不需要数据库，直接操作分配组件
+ */
+public class JobShardDispatcherTest {
+
+    private static XxlJobLog log(long id, String address) {
+        XxlJobLog jobLog = new XxlJobLog();
+        jobLog.setId(id);
+        jobLog.setJobId(1);
+        jobLog.setExecutorAddress(address);
+        return jobLog;
+    }
+
+    private static int pull(JobShardDispatcher dispatcher, long logId, int unitTotal, int finishedUnit) {
+        ReturnT<Integer> result = dispatcher.pull(new ShardPullParam(logId, unitTotal, finishedUnit));
+        assertEquals(ReturnT.SUCCESS_CODE, result.getCode(), result.getMsg());
+        return result.getContent();
+    }
+
+
+    @Test
+    public void allUnitsAreProcessedOnce() {
+        JobShardDispatcher dispatcher = new JobShardDispatcher();
+        dispatcher.register(1, Arrays.asList(log(1, "a"), log(2, "b")));
+        Set<Integer> processed = new HashSet<>();
+        int unitA = pull(dispatcher, 1, 10, -1);
+        int unitB = pull(dispatcher, 2, 10, -1);
+        //领取到等待的时候说明另一个执行器还有没处理完的工作单元，下一轮再来领取
+        while (unitA != ShardPullParam.UNIT_DONE || unitB != ShardPullParam.UNIT_DONE) {
+            if (unitA >= 0) {
+                assertTrue(processed.add(unitA));
+            }
+            if (unitA != ShardPullParam.UNIT_DONE) {
+                unitA = pull(dispatcher, 1, 10, unitA);
+            }
+            if (unitB >= 0) {
+                assertTrue(processed.add(unitB));
+            }
+            if (unitB != ShardPullParam.UNIT_DONE) {
+                unitB = pull(dispatcher, 2, 10, unitB);
+            }
+        }
+        assertEquals(10, processed.size());
+    }
+
+
+    @Test
+    public void finishedLogUnitsAreReissued() {
+        JobShardDispatcher dispatcher = new JobShardDispatcher();
+        dispatcher.register(1, Arrays.asList(log(1, "a"), log(2, "b")));
+        int unitA = pull(dispatcher, 1, 2, -1);
+        int unitB = pull(dispatcher, 2, 2, -1);
+        assertEquals(ShardPullParam.UNIT_WAIT, pull(dispatcher, 2, 2, unitB));
+        //执行器a上的执行结束了，它手上的工作单元交给b
+        dispatcher.logFinished(1);
+        assertEquals(unitA, pull(dispatcher, 2, 2, -1));
+        assertEquals(ShardPullParam.UNIT_DONE, pull(dispatcher, 2, 2, unitA));
+        assertEquals(ReturnT.FAIL_CODE, dispatcher.pull(new ShardPullParam(1, 2, -1)).getCode());
+    }
+
+
+    @Test
+    public void leaseExpiredUnitsAreReissued() {
+        JobShardDispatcher dispatcher = new JobShardDispatcher();
+        dispatcher.register(1, Arrays.asList(log(1, "a"), log(2, "b")));
+        int unitA = pull(dispatcher, 1, 2, -1);
+        int unitB = pull(dispatcher, 2, 2, -1);
+        assertEquals(ShardPullParam.UNIT_WAIT, pull(dispatcher, 2, 2, unitB));
+        //租约还没过期的时候不会重新分配
+        dispatcher.expire(System.currentTimeMillis());
+        assertEquals(ShardPullParam.UNIT_WAIT, pull(dispatcher, 2, 2, -1));
+        //执行器a一直没有来领取，回调也没有送到这个调度中心，租约过期之后交给b
+        dispatcher.expire(System.currentTimeMillis() + JobShardDispatcher.UNIT_LEASE_MS + 1);
+        assertEquals(unitA, pull(dispatcher, 2, 2, -1));
+        //a后来又汇报了这个工作单元，也算处理完了，不会再分配
+        assertEquals(ShardPullParam.UNIT_DONE, pull(dispatcher, 1, 2, unitA));
+        assertEquals(ShardPullParam.UNIT_DONE, pull(dispatcher, 2, 2, unitA));
+    }
+
+
+    @Test
+    public void idleRunIsDropped() {
+        JobShardDispatcher dispatcher = new JobShardDispatcher();
+        dispatcher.register(1, Arrays.asList(log(1, "a")));
+        pull(dispatcher, 1, 5, -1);
+        dispatcher.expire(System.currentTimeMillis() + JobShardDispatcher.RUN_IDLE_EXPIRE_MS + 1);
+        assertEquals(ReturnT.FAIL_CODE, dispatcher.pull(new ShardPullParam(1, 5, -1)).getCode());
+        //失败重试不会再加入已经删除的调度，而是开始一次新的调度
+        dispatcher.join(log(2, "a"));
+        assertEquals(0, pull(dispatcher, 2, 5, -1));
+    }
+
+
+    @Test
+    public void executorRemovedReissuesUnits() {
+        JobShardDispatcher dispatcher = new JobShardDispatcher();
+        dispatcher.register(1, Arrays.asList(log(1, "a"), log(2, "b")));
+        int unitA = pull(dispatcher, 1, 2, -1);
+        int unitB = pull(dispatcher, 2, 2, -1);
+        dispatcher.executorRemoved("a");
+        assertEquals(unitA, pull(dispatcher, 2, 2, unitB));
+        assertEquals(ShardPullParam.UNIT_DONE, pull(dispatcher, 2, 2, unitA));
+    }
+}
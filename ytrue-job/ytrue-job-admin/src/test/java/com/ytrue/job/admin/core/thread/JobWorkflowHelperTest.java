@@ -0,0 +1,208 @@
+package com.ytrue.job.admin.core.thread;
+
+import com.ytrue.job.admin.core.conf.XxlJobAdminConfig;
+import com.ytrue.job.admin.core.model.XxlJobDependency;
+import com.ytrue.job.admin.dao.XxlJobDependencyDao;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 04:40
+ * @description 工作流组件的测试，主要是多个上游任务的下游任务在一轮中只会被触发一次
+ * 依赖表用内存中的实现代替，satisfy和claim的语义和mapper中的sql一样，claim整个方法加锁，相当于数据库中的一条update语句
+ */
+public class JobWorkflowHelperTest {
+
+    /**
+     * 内存中的xxl_job_dependency表
+     */
+    private static class MemoryDependencyDao implements XxlJobDependencyDao {
+
+        private final List<XxlJobDependency> rows = new ArrayList<>();
+
+        @Override
+        public synchronized List<XxlJobDependency> findAll() {
+            List<XxlJobDependency> dependencyList = new ArrayList<>();
+            for (XxlJobDependency row : rows) {
+                dependencyList.add(edge(row.getJobId(), row.getParentJobId()));
+            }
+            return dependencyList;
+        }
+
+        @Override
+        public synchronized List<XxlJobDependency> findByJobIds(List<Integer> jobIds) {
+            List<XxlJobDependency> dependencyList = new ArrayList<>();
+            for (XxlJobDependency row : rows) {
+                if (jobIds.contains(row.getJobId())) {
+                    dependencyList.add(edge(row.getJobId(), row.getParentJobId()));
+                }
+            }
+            return dependencyList;
+        }
+
+        @Override
+        public synchronized int save(XxlJobDependency xxlJobDependency) {
+            rows.add(edge(xxlJobDependency.getJobId(), xxlJobDependency.getParentJobId()));
+            return 1;
+        }
+
+        @Override
+        public synchronized int delete(int jobId, int parentJobId) {
+            int before = rows.size();
+            rows.removeIf(row -> row.getJobId() == jobId && row.getParentJobId() == parentJobId);
+            return before - rows.size();
+        }
+
+        @Override
+        public synchronized int deleteByJobId(int jobId) {
+            int before = rows.size();
+            rows.removeIf(row -> row.getJobId() == jobId || row.getParentJobId() == jobId);
+            return before - rows.size();
+        }
+
+        @Override
+        public synchronized int satisfy(int jobId, int parentJobId, long parentLogId) {
+            int count = 0;
+            for (XxlJobDependency row : rows) {
+                if (row.getJobId() == jobId && row.getParentJobId() == parentJobId) {
+                    row.setParentLogId(parentLogId);
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public synchronized int claim(int jobId) {
+            for (XxlJobDependency row : rows) {
+                if (row.getJobId() == jobId && row.getParentLogId() == 0) {
+                    return 0;
+                }
+            }
+            int count = 0;
+            for (XxlJobDependency row : rows) {
+                if (row.getJobId() == jobId && row.getParentLogId() > 0) {
+                    row.setParentLogId(0);
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+
+    private static XxlJobDependency edge(int jobId, int parentJobId) {
+        XxlJobDependency dependency = new XxlJobDependency();
+        dependency.setJobId(jobId);
+        dependency.setParentJobId(parentJobId);
+        return dependency;
+    }
+
+
+    private MemoryDependencyDao dependencyDao;
+
+    private XxlJobAdminConfig originalConfig;
+
+    private JobWorkflowHelper helper;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        //1、2、3都执行成功之后触发10，1执行成功之后直接触发20，10执行成功之后触发30
+        dependencyDao = new MemoryDependencyDao();
+        dependencyDao.save(edge(10, 1));
+        dependencyDao.save(edge(10, 2));
+        dependencyDao.save(edge(10, 3));
+        dependencyDao.save(edge(20, 1));
+        dependencyDao.save(edge(30, 10));
+        XxlJobAdminConfig adminConfig = new XxlJobAdminConfig();
+        Field daoField = XxlJobAdminConfig.class.getDeclaredField("xxlJobDependencyDao");
+        daoField.setAccessible(true);
+        daoField.set(adminConfig, dependencyDao);
+        originalConfig = XxlJobAdminConfig.getAdminConfig();
+        setAdminConfig(adminConfig);
+        helper = new JobWorkflowHelper();
+        helper.refresh();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        setAdminConfig(originalConfig);
+    }
+
+    private static void setAdminConfig(XxlJobAdminConfig adminConfig) throws Exception {
+        Field configField = XxlJobAdminConfig.class.getDeclaredField("adminConfig");
+        configField.setAccessible(true);
+        configField.set(null, adminConfig);
+    }
+
+
+    @Test
+    public void childIsTriggeredAfterAllParentsSucceeded() {
+        assertEquals(Arrays.asList(1, 2, 3), helper.getParentJobIds(10));
+        //20只有一个上游任务，直接触发
+        assertEquals(Collections.singletonList(20), helper.parentSucceeded(1, 100));
+        assertEquals(Collections.emptyList(), helper.parentSucceeded(2, 101));
+        //同一个上游任务在本轮中又执行成功了一次，不会凑数
+        assertEquals(Collections.emptyList(), helper.parentSucceeded(2, 102));
+        assertEquals(Collections.singletonList(10), helper.parentSucceeded(3, 103));
+        //触发之后所有的边都重置了，新的一轮要重新等所有上游任务
+        assertEquals(Collections.emptyList(), helper.parentSucceeded(3, 104));
+        assertEquals(Collections.singletonList(30), helper.parentSucceeded(10, 105));
+    }
+
+
+    @Test
+    public void concurrentParentsTriggerChildOncePerRound() throws Exception {
+        int rounds = 1000;
+        AtomicInteger fireCount = new AtomicInteger();
+        AtomicLong logId = new AtomicLong();
+        CyclicBarrier startBarrier = new CyclicBarrier(3);
+        CyclicBarrier endBarrier = new CyclicBarrier(3);
+        ExecutorService executorService = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int parentJobId = 1; parentJobId <= 3; parentJobId++) {
+                int currentParentJobId = parentJobId;
+                futures.add(executorService.submit(() -> {
+                    for (int round = 0; round < rounds; round++) {
+                        //每一轮三个上游任务同时执行成功，回调可能发给不同的调度中心
+                        startBarrier.await();
+                        if (helper.parentSucceeded(currentParentJobId, logId.incrementAndGet()).contains(10)) {
+                            fireCount.incrementAndGet();
+                        }
+                        endBarrier.await();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(rounds, fireCount.get());
+    }
+
+
+    @Test
+    public void cycleIsDetected() {
+        //30是1的下游，不能再作为1的上游
+        assertEquals(30, helper.findCycle(1, Collections.singletonList(30)));
+        assertEquals(5, helper.findCycle(5, Collections.singletonList(5)));
+        assertEquals(-1, helper.findCycle(30, Collections.singletonList(1)));
+        //10原来的上游任务会被替换掉，所以2可以，30不行
+        assertEquals(30, helper.findCycle(10, Arrays.asList(2, 30)));
+        assertEquals(-1, helper.findCycle(10, Collections.singletonList(2)));
+    }
+}
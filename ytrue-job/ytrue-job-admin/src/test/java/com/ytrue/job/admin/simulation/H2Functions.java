@@ -0,0 +1,31 @@
+package com.ytrue.job.admin.simulation;
+
+import java.sql.Timestamp;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 22:40
+ * @description 调度压测时注册到h2中的函数，用来代替h2不支持的mysql函数
+ */
+public class H2Functions {
+
+    /**
+     * 代替DATE_ADD(time, INTERVAL -seconds SECOND)
+     *
+     * @param time
+     * @param seconds
+     * @return
+     */
+    public static Timestamp dateSubSecond(Timestamp time, int seconds) {
+        return new Timestamp(time.getTime() - seconds * 1000L);
+    }
+
+    /**
+     * 代替ROUND(UNIX_TIMESTAMP(NOW(3)) * 1000)，多个调度中心共用一个h2的时候，这个函数在h2所在的进程中执行，也就是数据库的时间
+     *
+     * @return
+     */
+    public static long nowMillis() {
+        return System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,478 @@
+package com.ytrue.job.admin.simulation;
+
+import com.ytrue.job.admin.XxlJobAdminApplication;
+import com.ytrue.job.admin.core.cron.CronExpression;
+import com.ytrue.job.admin.core.scheduler.XxlJobScheduler;
+import com.ytrue.job.admin.core.thread.JobRegistryHelper;
+import com.ytrue.job.core.biz.ExecutorBiz;
+import com.ytrue.job.core.biz.model.RegistryParam;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+import java.util.Date;
+import java.util.concurrent.*;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 22:40
+ * @description 调度中心的压测程序，在一个进程中启动调度中心和大量的假执行器，观察调度的延迟、吞吐量和数据库的压力
+ * 数据库使用内嵌的h2，执行器使用SimulatedExecutor，不需要部署mysql和执行器，调度中心的代码和mapper都是原样运行的
+ * 运行结束之后会打印触发延迟的分位数、调用执行器的耗时、回调的延迟、每个后台线程的耗时、每条sql语句的执行次数
+ * 通过系统属性调整压测的规模，比如：
+ * -Dsim.executors=1000 -Dsim.groups=10 -Dsim.jobs=5000 -Dsim.durationSeconds=300 -Dsim.runLatencyMs=20 -Dsim.runFailRate=0.01
+ * 压测会启动真实的调度线程，所以一次压测至少要运行几分钟，才能覆盖到整分钟触发的高峰和注册中心的刷新
+ * -Dsim.admins=3 会启动多个调度中心，并且开启分区调度，h2通过tcp对外提供服务，其余的调度中心是这个进程启动的子进程，
+ * 调度中心都是单例，所以一个进程中只能运行一个。-Dsim.killAdminSeconds=120 会在这个时间强制杀掉一个子进程，观察别的节点接管它的任务
+ * 压测结束之后会检查调度日志，同一个任务在一秒内被触发了两次就算重复触发，分区调度下重复触发的次数应该是0
+ */
+public class SchedulerSimulation {
+
+    private static final String JDBC_URL = "jdbc:h2:mem:xxl_job_sim;MODE=MySQL;DATABASE_TO_UPPER=FALSE;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+
+    /**
+     * 子进程中的调度中心通过tcp连接主进程中的h2
+     */
+    private static final String TCP_JDBC_URL = "jdbc:h2:tcp://localhost:%d/mem:xxl_job_sim;MODE=MySQL;DATABASE_TO_UPPER=FALSE;LOCK_TIMEOUT=10000";
+
+    /**
+     * 压测中所有任务的调度间隔都不小于30秒，同一个任务的两条调度日志的触发时间相差不到一秒，就是重复触发
+     */
+    private static final long DUPLICATE_WINDOW_MS = 1000;
+
+    /**
+     * 执行器重新注册的间隔，和执行器端的心跳间隔一致
+     */
+    private static final long REGISTRY_BEAT_SECONDS = 30;
+
+    public static void main(String[] args) throws Exception {
+        int executorCount = Integer.getInteger("sim.executors", 1000);
+        int groupCount = Integer.getInteger("sim.groups", 10);
+        int jobCount = Integer.getInteger("sim.jobs", 5000);
+        int durationSeconds = Integer.getInteger("sim.durationSeconds", 300);
+        int reportSeconds = Integer.getInteger("sim.reportSeconds", 30);
+        //整分钟触发的cron任务的比例，其余的cron任务随机分布在一分钟的每一秒
+        double alignedRate = Double.parseDouble(System.getProperty("sim.alignedRate", "0.2"));
+        //固定频率任务的比例和间隔
+        double fixRateShare = Double.parseDouble(System.getProperty("sim.fixRateShare", "0.5"));
+        int fixRateSeconds = Integer.getInteger("sim.fixRateSeconds", 30);
+        //调度中心的数量和当前进程是第几个，子进程的序号从1开始
+        int adminCount = Integer.getInteger("sim.admins", 1);
+        int adminIndex = Integer.getInteger("sim.adminIndex", 0);
+        int h2Port = Integer.getInteger("sim.h2Port", 9092);
+        int killAdminSeconds = Integer.getInteger("sim.killAdminSeconds", 0);
+        SimulatedExecutor.Profile profile = new SimulatedExecutor.Profile(
+                Long.getLong("sim.runLatencyMs", 20L),
+                Long.getLong("sim.runJitterMs", 10L),
+                Double.parseDouble(System.getProperty("sim.runFailRate", "0.01")),
+                Long.getLong("sim.handleMs", 200L),
+                Double.parseDouble(System.getProperty("sim.handleFailRate", "0.01")));
+
+        //在调度中心启动之前建好表，准备好执行器组和定时任务，调度线程启动之后马上就能读到任务
+        List<String> appnameList = new ArrayList<>(groupCount);
+        for (int i = 0; i < groupCount; i++) {
+            appnameList.add(String.format("sim-app-%02d", i));
+        }
+        //子进程不需要建表，直接连接主进程中的数据库
+        String jdbcUrl = adminIndex == 0 ? JDBC_URL : String.format(TCP_JDBC_URL, h2Port);
+        List<Process> adminProcessList = new ArrayList<>();
+        if (adminIndex == 0) {
+            try (Connection connection = DriverManager.getConnection(JDBC_URL, "sa", "")) {
+                createSchema(connection);
+                List<Integer> groupIdList = insertGroups(connection, appnameList);
+                insertJobs(connection, groupIdList, jobCount, alignedRate, fixRateShare, fixRateSeconds);
+            }
+            if (adminCount > 1) {
+                org.h2.tools.Server.createTcpServer("-tcpPort", String.valueOf(h2Port), "-ifNotExists").start();
+                for (int i = 1; i < adminCount; i++) {
+                    adminProcessList.add(startAdminProcess(i));
+                }
+            }
+        }
+
+        //假执行器要在调度中心启动之前放进远程调用客户端的缓存中，否则会创建真正的http客户端
+        ScheduledExecutorService timer = Executors.newScheduledThreadPool(Integer.getInteger("sim.timerThreads", 8), r -> {
+            Thread thread = new Thread(r, "sim-executor-timer-" + r.hashCode());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, List<String>> addressMap = new LinkedHashMap<>();
+        installExecutors(executorCount, appnameList, profile, timer, addressMap);
+
+        SqlCountInterceptor sqlCountInterceptor = new SqlCountInterceptor();
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(XxlJobAdminApplication.class)
+                .web(WebApplicationType.NONE)
+                .initializers(applicationContext -> applicationContext.getBeanFactory().registerSingleton("sqlCountInterceptor", sqlCountInterceptor))
+                .properties(
+                        "spring.datasource.url=" + jdbcUrl,
+                        "spring.datasource.driver-class-name=org.h2.Driver",
+                        "spring.datasource.username=sa",
+                        "spring.datasource.password=",
+                        "spring.datasource.hikari.connection-test-query=SELECT 1",
+                        "management.metrics.distribution.percentiles.xxl.job=0.5,0.9,0.99,0.999",
+                        "logging.level.root=WARN",
+                        "server.port=" + (8080 + adminIndex),
+                        "xxl.job.schedule.partition.enabled=" + (adminCount > 1))
+                .run(args);
+        MeterRegistry meterRegistry = context.getBean(MeterRegistry.class);
+
+        //执行器注册，之后按照心跳间隔重新注册，否则注册信息过期之后执行器组中就没有地址了
+        ScheduledExecutorService beatTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "sim-executor-registry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        beatTimer.scheduleAtFixedRate(() -> {
+            for (Map.Entry<String, List<String>> entry : addressMap.entrySet()) {
+                for (String address : entry.getValue()) {
+                    JobRegistryHelper.getInstance().registry(new RegistryParam("EXECUTOR", entry.getKey(), address));
+                }
+            }
+        }, 0, REGISTRY_BEAT_SECONDS, TimeUnit.SECONDS);
+
+        System.out.println(String.format("[admin-%d] simulation started, admins:%d, executors:%d, groups:%d, jobs:%d, duration:%ds",
+                adminIndex, adminCount, executorCount, groupCount, jobCount, durationSeconds));
+        Report report = new Report(meterRegistry, sqlCountInterceptor, "[admin-" + adminIndex + "] ");
+        long startTime = System.currentTimeMillis();
+        long endTime = startTime + durationSeconds * 1000L;
+        boolean killed = false;
+        while (System.currentTimeMillis() < endTime) {
+            TimeUnit.MILLISECONDS.sleep(Math.min(reportSeconds * 1000L, Math.max(endTime - System.currentTimeMillis(), 1)));
+            report.printInterval();
+            if (!killed && killAdminSeconds > 0 && !adminProcessList.isEmpty() && System.currentTimeMillis() - startTime >= killAdminSeconds * 1000L) {
+                //不会主动删除租约，别的节点要等租约过期之后才能接管
+                adminProcessList.get(0).destroyForcibly();
+                killed = true;
+                System.out.println("[admin-" + adminIndex + "] killed admin-1");
+            }
+        }
+
+        beatTimer.shutdownNow();
+        report.printFinal();
+        context.close();
+        timer.shutdownNow();
+        if (adminIndex == 0 && adminCount > 1) {
+            for (Process process : adminProcessList) {
+                if (!process.waitFor(60, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+            try (Connection connection = DriverManager.getConnection(JDBC_URL, "sa", "")) {
+                System.out.println("duplicate triggers: " + countDuplicateTriggers(connection));
+            }
+        }
+        System.exit(0);
+    }
+
+
+    /**
+     * 启动一个子进程运行另一个调度中心，压测的参数原样传过去
+     *
+     * @param adminIndex
+     * @return
+     * @throws Exception
+     */
+    private static Process startAdminProcess(int adminIndex) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("sim.") && !"sim.adminIndex".equals(name)) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-Dsim.adminIndex=" + adminIndex);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(SchedulerSimulation.class.getName());
+        return new ProcessBuilder(command).inheritIO().start();
+    }
+
+
+    /**
+     * 统计重复触发的次数，按照任务和触发时间排序之后，比较同一个任务相邻的两条调度日志
+     *
+     * @param connection
+     * @return
+     * @throws SQLException
+     */
+    private static long countDuplicateTriggers(Connection connection) throws SQLException {
+        long duplicateCount = 0;
+        int lastJobId = -1;
+        long lastTriggerTime = 0;
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT job_id, trigger_time FROM xxl_job_log ORDER BY job_id, trigger_time")) {
+            while (resultSet.next()) {
+                int jobId = resultSet.getInt(1);
+                long triggerTime = resultSet.getTimestamp(2).getTime();
+                if (jobId == lastJobId && triggerTime - lastTriggerTime < DUPLICATE_WINDOW_MS) {
+                    duplicateCount++;
+                }
+                lastJobId = jobId;
+                lastTriggerTime = triggerTime;
+            }
+        }
+        return duplicateCount;
+    }
+
+
+    /**
+     * 执行schema-h2.sql建表
+     *
+     * @param connection
+     * @throws Exception
+     */
+    private static void createSchema(Connection connection) throws Exception {
+        String schema;
+        try (InputStream inputStream = SchedulerSimulation.class.getResourceAsStream("/simulation/schema-h2.sql")) {
+            schema = new String(Objects.requireNonNull(inputStream, "simulation/schema-h2.sql not found").readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : schema.split(";")) {
+                StringBuilder sqlSB = new StringBuilder();
+                for (String line : sql.split("\n")) {
+                    if (!line.trim().startsWith("--")) {
+                        sqlSB.append(line).append("\n");
+                    }
+                }
+                if (sqlSB.toString().trim().length() > 0) {
+                    statement.execute(sqlSB.toString());
+                }
+            }
+        }
+    }
+
+
+    /**
+     * 创建执行器组，地址类型为自动注册
+     *
+     * @param connection
+     * @param appnameList
+     * @return 执行器组的id
+     * @throws SQLException
+     */
+    private static List<Integer> insertGroups(Connection connection, List<String> appnameList) throws SQLException {
+        List<Integer> groupIdList = new ArrayList<>(appnameList.size());
+        String sql = "INSERT INTO xxl_job_group(app_name, title, address_type, address_list, update_time) VALUES (?, ?, 0, NULL, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (String appname : appnameList) {
+                statement.setString(1, appname);
+                statement.setString(2, appname.substring(Math.max(appname.length() - 12, 0)));
+                statement.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+                statement.executeUpdate();
+                try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                    resultSet.next();
+                    groupIdList.add(resultSet.getInt(1));
+                }
+            }
+        }
+        return groupIdList;
+    }
+
+
+    /**
+     * 创建定时任务，cron任务和固定频率任务按比例混合，平均分配到每个执行器组
+     *
+     * @param connection
+     * @param groupIdList
+     * @param jobCount
+     * @param alignedRate
+     * @param fixRateShare
+     * @param fixRateSeconds
+     * @throws Exception
+     */
+    private static void insertJobs(Connection connection, List<Integer> groupIdList, int jobCount,
+                                   double alignedRate, double fixRateShare, int fixRateSeconds) throws Exception {
+        String sql = "INSERT INTO xxl_job_info(job_group, job_desc, add_time, update_time, author, alarm_email, schedule_type, schedule_conf, misfire_strategy, " +
+                "executor_route_strategy, executor_handler, executor_param, executor_block_strategy, executor_timeout, executor_fail_retry_count, " +
+                "glue_type, glue_source, glue_remark, glue_updatetime, child_jobid, trigger_status, trigger_last_time, trigger_next_time) " +
+                "VALUES (?, ?, ?, ?, 'sim', '', ?, ?, 'DO_NOTHING', 'ROUND', 'simHandler', '', 'SERIAL_EXECUTION', 0, 0, 'BEAN', '', '', ?, '', 1, 0, ?)";
+        Random random = new Random(42);
+        long nowTime = System.currentTimeMillis();
+        Timestamp now = new Timestamp(nowTime);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < jobCount; i++) {
+                String scheduleType;
+                String scheduleConf;
+                long nextTime;
+                if (random.nextDouble() < fixRateShare) {
+                    scheduleType = "FIX_RATE";
+                    scheduleConf = String.valueOf(fixRateSeconds);
+                    nextTime = nowTime + random.nextInt(fixRateSeconds * 1000);
+                } else {
+                    int second = random.nextDouble() < alignedRate ? 0 : random.nextInt(60);
+                    scheduleType = "CRON";
+                    scheduleConf = second + " * * * * ?";
+                    nextTime = new CronExpression(scheduleConf).getNextValidTimeAfter(new Date(nowTime)).getTime();
+                }
+                statement.setInt(1, groupIdList.get(i % groupIdList.size()));
+                statement.setString(2, "sim-job-" + i);
+                statement.setTimestamp(3, now);
+                statement.setTimestamp(4, now);
+                statement.setString(5, scheduleType);
+                statement.setString(6, scheduleConf);
+                statement.setTimestamp(7, now);
+                statement.setLong(8, nextTime);
+                statement.addBatch();
+                if ((i + 1) % 1000 == 0) {
+                    statement.executeBatch();
+                }
+            }
+            statement.executeBatch();
+        }
+    }
+
+
+    /**
+     * 创建假执行器，放进XxlJobScheduler的远程调用客户端缓存中，执行器平均分配到每个执行器组
+     *
+     * @param executorCount
+     * @param appnameList
+     * @param profile
+     * @param timer
+     * @param addressMap    执行器组的appname和组中执行器的地址
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    private static void installExecutors(int executorCount, List<String> appnameList, SimulatedExecutor.Profile profile,
+                                         ScheduledExecutorService timer, Map<String, List<String>> addressMap) throws Exception {
+        Field repositoryField = XxlJobScheduler.class.getDeclaredField("executorBizRepository");
+        repositoryField.setAccessible(true);
+        ConcurrentMap<String, ExecutorBiz> executorBizRepository = (ConcurrentMap<String, ExecutorBiz>) repositoryField.get(null);
+        for (int i = 0; i < executorCount; i++) {
+            String address = String.format("http://sim-executor-%04d:9999/", i);
+            String appname = appnameList.get(i % appnameList.size());
+            executorBizRepository.put(address, new SimulatedExecutor(address, profile, timer));
+            addressMap.computeIfAbsent(appname, k -> new ArrayList<>()).add(address);
+        }
+    }
+
+
+    /**
+     * 打印压测结果，指标都是从调度中心的MeterRegistry中读取的，和线上通过/actuator/metrics看到的一样
+     */
+    private static class Report {
+
+        private final MeterRegistry meterRegistry;
+
+        private final SqlCountInterceptor sqlCountInterceptor;
+
+        /**
+         * 多个调度中心的输出混在一起，每一行都带上调度中心的序号
+         */
+        private final String prefix;
+
+        private final long startTime = System.currentTimeMillis();
+
+        private long lastTime = startTime;
+
+        private long lastRunCount;
+
+        private long lastCallbackCount;
+
+        private long lastSqlCount;
+
+        private Report(MeterRegistry meterRegistry, SqlCountInterceptor sqlCountInterceptor, String prefix) {
+            this.meterRegistry = meterRegistry;
+            this.sqlCountInterceptor = sqlCountInterceptor;
+            this.prefix = prefix;
+        }
+
+        /**
+         * 打印这一段时间的吞吐量和当前的延迟分位数
+         */
+        private void printInterval() {
+            long nowTime = System.currentTimeMillis();
+            double seconds = Math.max(nowTime - lastTime, 1) / 1000.0;
+            long runCount = SimulatedExecutor.runCount.sum();
+            long callbackCount = SimulatedExecutor.callbackCount.sum();
+            long sqlCount = sqlCountInterceptor.getTotalCount();
+            System.out.println(prefix + String.format("[%4ds] trigger:%.1f/s, callback:%.1f/s, sql:%.1f/s, lateness:%s",
+                    (nowTime - startTime) / 1000,
+                    (runCount - lastRunCount) / seconds,
+                    (callbackCount - lastCallbackCount) / seconds,
+                    (sqlCount - lastSqlCount) / seconds,
+                    percentiles(meterRegistry.find("xxl.job.schedule.lateness").timer())));
+            lastTime = nowTime;
+            lastRunCount = runCount;
+            lastCallbackCount = callbackCount;
+            lastSqlCount = sqlCount;
+        }
+
+        /**
+         * 打印整个压测的结果
+         */
+        private void printFinal() {
+            double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+            long runCount = SimulatedExecutor.runCount.sum();
+            long callbackCount = SimulatedExecutor.callbackCount.sum();
+            System.out.println(prefix + "==================== simulation result ====================");
+            System.out.println(prefix + String.format("duration:%.0fs, trigger:%d (%.1f/s), callback:%d (%.1f/s)",
+                    seconds, runCount, runCount / seconds, callbackCount, callbackCount / seconds));
+            System.out.println(prefix + "schedule lateness: " + percentiles(meterRegistry.find("xxl.job.schedule.lateness").timer()));
+            System.out.println(prefix + "callback lag: " + percentiles(meterRegistry.find("xxl.job.callback.lag").timer()));
+
+            //调用执行器的耗时是按执行器地址分开记录的，这里只能汇总次数、平均值和最大值
+            long callCount = 0;
+            double callTotalMs = 0;
+            double callMaxMs = 0;
+            long callFailCount = 0;
+            for (Timer timer : meterRegistry.find("xxl.job.executor.call").timers()) {
+                callCount += timer.count();
+                callTotalMs += timer.totalTime(TimeUnit.MILLISECONDS);
+                callMaxMs = Math.max(callMaxMs, timer.max(TimeUnit.MILLISECONDS));
+                if ("fail".equals(timer.getId().getTag("result"))) {
+                    callFailCount += timer.count();
+                }
+            }
+            System.out.println(prefix + String.format("executor call: count=%d, fail=%d, mean=%.1fms, max=%.1fms",
+                    callCount, callFailCount, callCount == 0 ? 0 : callTotalMs / callCount, callMaxMs));
+
+            double misfireCount = 0;
+            for (Counter counter : meterRegistry.find("xxl.job.schedule.misfire").counters()) {
+                misfireCount += counter.count();
+            }
+            System.out.println(prefix + String.format("misfire: %.0f", misfireCount));
+
+            for (Timer timer : meterRegistry.find("xxl.job.loop.duration").timers()) {
+                System.out.println(prefix + String.format("loop %s: count=%d, mean=%.1fms, max=%.1fms",
+                        timer.getId().getTag("loop"), timer.count(), timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS)));
+            }
+
+            long sqlCount = sqlCountInterceptor.getTotalCount();
+            System.out.println(prefix + String.format("sql: %d (%.1f/s, %.2f per trigger)",
+                    sqlCount, sqlCount / seconds, runCount == 0 ? 0 : (double) sqlCount / runCount));
+            for (Map.Entry<String, Long> entry : sqlCountInterceptor.getCounts().entrySet()) {
+                System.out.println(prefix + String.format("  %-80s %d", entry.getKey(), entry.getValue()));
+            }
+        }
+
+        private static String percentiles(Timer timer) {
+            if (timer == null || timer.count() == 0) {
+                return "-";
+            }
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            StringBuilder percentileSB = new StringBuilder();
+            for (ValueAtPercentile valueAtPercentile : snapshot.percentileValues()) {
+                percentileSB.append(String.format("p%s=%.0fms ", trimPercentile(valueAtPercentile.percentile()), valueAtPercentile.value(TimeUnit.MILLISECONDS)));
+            }
+            percentileSB.append(String.format("max=%.0fms", snapshot.max(TimeUnit.MILLISECONDS)));
+            return percentileSB.toString();
+        }
+
+        private static String trimPercentile(double percentile) {
+            String value = String.valueOf(percentile * 100);
+            return value.endsWith(".0") ? value.substring(0, value.length() - 2) : value;
+        }
+    }
+}
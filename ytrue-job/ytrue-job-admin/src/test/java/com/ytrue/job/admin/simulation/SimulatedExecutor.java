@@ -0,0 +1,145 @@
+package com.ytrue.job.admin.simulation;
+
+import com.ytrue.job.admin.core.thread.JobCompleteHelper;
+import com.ytrue.job.core.biz.ExecutorBiz;
+import com.ytrue.job.core.biz.model.*;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 22:40
+ * @description 调度压测使用的假执行器，运行在调度中心的进程中，不走网络
+ * 收到调度请求之后，等待一段模拟的网络延迟再响应，然后等待一段模拟的执行时间，再把执行结果回调给JobCompleteHelper
+ * 调度请求和执行结果都可以按照配置的比例失败，所有假执行器共用一个定时线程池，不会为每个执行器创建线程
+ */
+public class SimulatedExecutor implements ExecutorBiz {
+
+    /**
+     * 模拟的参数，所有假执行器共用一份
+     */
+    public static class Profile {
+
+        /**
+         * 响应调度请求的平均延迟
+         */
+        private final long runLatencyMs;
+
+        /**
+         * 延迟的随机波动范围
+         */
+        private final long runJitterMs;
+
+        /**
+         * 调度请求失败的比例
+         */
+        private final double runFailRate;
+
+        /**
+         * 任务执行的时间
+         */
+        private final long handleMs;
+
+        /**
+         * 任务执行失败的比例
+         */
+        private final double handleFailRate;
+
+        public Profile(long runLatencyMs, long runJitterMs, double runFailRate, long handleMs, double handleFailRate) {
+            this.runLatencyMs = runLatencyMs;
+            this.runJitterMs = runJitterMs;
+            this.runFailRate = runFailRate;
+            this.handleMs = handleMs;
+            this.handleFailRate = handleFailRate;
+        }
+    }
+
+
+    /**
+     * 所有假执行器收到的调度请求数量
+     */
+    static final LongAdder runCount = new LongAdder();
+
+    /**
+     * 所有假执行器回调的执行结果数量
+     */
+    static final LongAdder callbackCount = new LongAdder();
+
+    private final String address;
+
+    private final Profile profile;
+
+    private final ScheduledExecutorService timer;
+
+    public SimulatedExecutor(String address, Profile profile, ScheduledExecutorService timer) {
+        this.address = address;
+        this.profile = profile;
+        this.timer = timer;
+    }
+
+
+    @Override
+    public ReturnT<String> run(TriggerParam triggerParam) {
+        return runAsync(triggerParam).join();
+    }
+
+    @Override
+    public CompletableFuture<ReturnT<String>> runAsync(TriggerParam triggerParam) {
+        runCount.increment();
+        CompletableFuture<ReturnT<String>> future = new CompletableFuture<>();
+        long latency = profile.runLatencyMs;
+        if (profile.runJitterMs > 0) {
+            latency += ThreadLocalRandom.current().nextLong(-profile.runJitterMs, profile.runJitterMs + 1);
+        }
+        timer.schedule(() -> {
+            if (ThreadLocalRandom.current().nextDouble() < profile.runFailRate) {
+                future.complete(new ReturnT<>(ReturnT.FAIL_CODE, "simulated run failure, address:" + address));
+                return;
+            }
+            future.complete(ReturnT.SUCCESS);
+            timer.schedule(() -> callback(triggerParam), profile.handleMs, TimeUnit.MILLISECONDS);
+        }, Math.max(latency, 0), TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    /**
+     * 把执行结果回调给调度中心，真实的执行器是通过http调用AdminBiz的callback方法，最终也是交给JobCompleteHelper处理
+     *
+     * @param triggerParam
+     */
+    private void callback(TriggerParam triggerParam) {
+        boolean fail = ThreadLocalRandom.current().nextDouble() < profile.handleFailRate;
+        HandleCallbackParam callbackParam = new HandleCallbackParam(
+                triggerParam.getLogId(),
+                triggerParam.getLogDateTime(),
+                fail ? ReturnT.FAIL_CODE : ReturnT.SUCCESS_CODE,
+                fail ? "simulated handle failure" : null);
+        JobCompleteHelper.getInstance().callback(Collections.singletonList(callbackParam));
+        callbackCount.increment();
+    }
+
+    @Override
+    public ReturnT<String> beat() {
+        return ReturnT.SUCCESS;
+    }
+
+    @Override
+    public ReturnT<String> idleBeat(IdleBeatParam idleBeatParam) {
+        return ReturnT.SUCCESS;
+    }
+
+    @Override
+    public ReturnT<LogResult> log(LogParam logParam) {
+        return new ReturnT<>(new LogResult(logParam.getFromLineNum(), logParam.getFromLineNum(), "", true));
+    }
+
+    @Override
+    public ReturnT<String> kill(KillParam killParam) {
+        return ReturnT.SUCCESS;
+    }
+}
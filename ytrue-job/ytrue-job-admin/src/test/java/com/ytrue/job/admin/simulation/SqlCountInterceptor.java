@@ -0,0 +1,86 @@
+package com.ytrue.job.admin.simulation;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+
+import java.sql.Connection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 22:40
+ * @description 调度压测使用的mybatis插件，统计每条sql语句的执行次数
+ * 压测用的是h2数据库，mapper中少量h2不支持的mysql语法也在这里改写，不需要为了压测修改mapper文件
+ * JobScheduleHelper中加锁的那条sql是直接用jdbc执行的，不会被统计到，它的次数和调度线程的轮数是一样的
+ */
+@Intercepts({@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class})})
+public class SqlCountInterceptor implements Interceptor {
+
+    /**
+     * DATE_ADD(?, INTERVAL -? SECOND)，参数的顺序不变，改写成调用schema-h2.sql中注册的函数
+     */
+    private static final Pattern DATE_SUB_SECOND_PATTERN = Pattern.compile("DATE_ADD\\(\\s*\\?\\s*,\\s*INTERVAL\\s*-\\s*\\?\\s*SECOND\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * ROUND(UNIX_TIMESTAMP(NOW(3)) * 1000)，调度中心节点的租约用它取数据库的当前毫秒值，改写成调用schema-h2.sql中注册的函数
+     */
+    private static final Pattern NOW_MILLIS_PATTERN = Pattern.compile("ROUND\\(\\s*UNIX_TIMESTAMP\\(\\s*NOW\\(\\s*3\\s*\\)\\s*\\)\\s*\\*\\s*1000\\s*\\)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 每条sql语句的执行次数，key为mapper中语句的id
+     */
+    private final ConcurrentMap<String, LongAdder> countMap = new ConcurrentHashMap<>();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MetaObject metaObject = SystemMetaObject.forObject(invocation.getTarget());
+        MappedStatement mappedStatement = (MappedStatement) metaObject.getValue("delegate.mappedStatement");
+        countMap.computeIfAbsent(mappedStatement.getId(), k -> new LongAdder()).increment();
+        String sql = (String) metaObject.getValue("delegate.boundSql.sql");
+        if (DATE_SUB_SECOND_PATTERN.matcher(sql).find()) {
+            sql = DATE_SUB_SECOND_PATTERN.matcher(sql).replaceAll("sim_date_sub_second(?, ?)");
+            metaObject.setValue("delegate.boundSql.sql", sql);
+        }
+        if (NOW_MILLIS_PATTERN.matcher(sql).find()) {
+            metaObject.setValue("delegate.boundSql.sql", NOW_MILLIS_PATTERN.matcher(sql).replaceAll("sim_now_millis()"));
+        }
+        return invocation.proceed();
+    }
+
+    /**
+     * 所有sql语句的执行次数
+     *
+     * @return
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for (LongAdder count : countMap.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    /**
+     * 每条sql语句的执行次数，按照语句的id排序
+     *
+     * @return
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : countMap.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().sum());
+        }
+        return counts;
+    }
+}
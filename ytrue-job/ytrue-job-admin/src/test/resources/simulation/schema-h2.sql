@@ -0,0 +1,135 @@
+-- 调度压测使用的h2表结构，和doc/tables_xxl_job.sql保持一致，去掉了h2不支持的mysql语法
+
+CREATE TABLE xxl_job_info (
+  id int NOT NULL AUTO_INCREMENT,
+  job_group int NOT NULL,
+  job_desc varchar(255) NOT NULL,
+  add_time datetime DEFAULT NULL,
+  update_time datetime DEFAULT NULL,
+  author varchar(64) DEFAULT NULL,
+  alarm_email varchar(255) DEFAULT NULL,
+  schedule_type varchar(50) NOT NULL DEFAULT 'NONE',
+  schedule_conf varchar(128) DEFAULT NULL,
+  misfire_strategy varchar(50) NOT NULL DEFAULT 'DO_NOTHING',
+  executor_route_strategy varchar(50) DEFAULT NULL,
+  executor_handler varchar(255) DEFAULT NULL,
+  executor_param varchar(512) DEFAULT NULL,
+  executor_block_strategy varchar(50) DEFAULT NULL,
+  executor_timeout int NOT NULL DEFAULT 0,
+  executor_fail_retry_count int NOT NULL DEFAULT 0,
+  glue_type varchar(50) NOT NULL,
+  glue_source varchar(65535) DEFAULT NULL,
+  glue_remark varchar(128) DEFAULT NULL,
+  glue_updatetime datetime DEFAULT NULL,
+  child_jobid varchar(255) DEFAULT NULL,
+  trigger_status tinyint NOT NULL DEFAULT 0,
+  trigger_last_time bigint NOT NULL DEFAULT 0,
+  trigger_next_time bigint NOT NULL DEFAULT 0,
+  PRIMARY KEY (id)
+);
+
+CREATE TABLE xxl_job_log (
+  id bigint NOT NULL AUTO_INCREMENT,
+  job_group int NOT NULL,
+  job_id int NOT NULL,
+  executor_address varchar(255) DEFAULT NULL,
+  executor_handler varchar(255) DEFAULT NULL,
+  executor_param varchar(512) DEFAULT NULL,
+  executor_sharding_param varchar(20) DEFAULT NULL,
+  executor_fail_retry_count int NOT NULL DEFAULT 0,
+  trigger_time datetime DEFAULT NULL,
+  trigger_code int NOT NULL,
+  trigger_msg varchar(65535) DEFAULT NULL,
+  handle_time datetime DEFAULT NULL,
+  handle_code int NOT NULL,
+  handle_msg varchar(65535) DEFAULT NULL,
+  alarm_status tinyint NOT NULL DEFAULT 0,
+  PRIMARY KEY (id)
+);
+CREATE INDEX i_trigger_time ON xxl_job_log (trigger_time);
+CREATE INDEX i_handle_code ON xxl_job_log (handle_code);
+
+CREATE TABLE xxl_job_log_report (
+  id int NOT NULL AUTO_INCREMENT,
+  trigger_day datetime DEFAULT NULL,
+  running_count int NOT NULL DEFAULT 0,
+  suc_count int NOT NULL DEFAULT 0,
+  fail_count int NOT NULL DEFAULT 0,
+  update_time datetime DEFAULT NULL,
+  PRIMARY KEY (id)
+);
+CREATE UNIQUE INDEX i_trigger_day ON xxl_job_log_report (trigger_day);
+
+CREATE TABLE xxl_job_logglue (
+  id int NOT NULL AUTO_INCREMENT,
+  job_id int NOT NULL,
+  glue_type varchar(50) DEFAULT NULL,
+  glue_source varchar(65535) DEFAULT NULL,
+  glue_remark varchar(128) NOT NULL,
+  add_time datetime DEFAULT NULL,
+  update_time datetime DEFAULT NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE TABLE xxl_job_registry (
+  id int NOT NULL AUTO_INCREMENT,
+  registry_group varchar(50) NOT NULL,
+  registry_key varchar(255) NOT NULL,
+  registry_value varchar(255) NOT NULL,
+  update_time datetime DEFAULT NULL,
+  PRIMARY KEY (id)
+);
+CREATE INDEX i_g_k_v ON xxl_job_registry (registry_group, registry_key, registry_value);
+
+CREATE TABLE xxl_job_group (
+  id int NOT NULL AUTO_INCREMENT,
+  app_name varchar(64) NOT NULL,
+  title varchar(12) NOT NULL,
+  address_type tinyint NOT NULL DEFAULT 0,
+  address_list varchar(1048576) DEFAULT NULL,
+  update_time datetime DEFAULT NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE TABLE xxl_job_user (
+  id int NOT NULL AUTO_INCREMENT,
+  username varchar(50) NOT NULL,
+  password varchar(50) NOT NULL,
+  role tinyint NOT NULL,
+  permission varchar(255) DEFAULT NULL,
+  PRIMARY KEY (id)
+);
+CREATE UNIQUE INDEX i_username ON xxl_job_user (username);
+
+CREATE TABLE xxl_job_lock (
+  lock_name varchar(50) NOT NULL,
+  PRIMARY KEY (lock_name)
+);
+
+CREATE TABLE xxl_job_admin_node (
+  id int NOT NULL AUTO_INCREMENT,
+  node_id varchar(128) NOT NULL,
+  address varchar(255) DEFAULT NULL,
+  lease_expire_time bigint NOT NULL DEFAULT 0,
+  update_time datetime DEFAULT NULL,
+  PRIMARY KEY (id)
+);
+CREATE UNIQUE INDEX i_node_id ON xxl_job_admin_node (node_id);
+
+CREATE TABLE xxl_job_dependency (
+  id int NOT NULL AUTO_INCREMENT,
+  job_id int NOT NULL,
+  parent_job_id int NOT NULL,
+  parent_log_id bigint NOT NULL DEFAULT 0,
+  update_time datetime DEFAULT NULL,
+  PRIMARY KEY (id)
+);
+CREATE UNIQUE INDEX i_job_parent ON xxl_job_dependency (job_id, parent_job_id);
+CREATE INDEX i_parent_job_id ON xxl_job_dependency (parent_job_id);
+
+-- XxlJobRegistryMapper中的DATE_ADD(?, INTERVAL -? SECOND)h2不支持，SqlCountInterceptor会把它改写成调用这个函数
+CREATE ALIAS sim_date_sub_second FOR "com.ytrue.job.admin.simulation.H2Functions.dateSubSecond";
+CREATE ALIAS sim_now_millis FOR "com.ytrue.job.admin.simulation.H2Functions.nowMillis";
+
+INSERT INTO xxl_job_user(id, username, password, role, permission) VALUES (1, 'admin', 'e10adc3949ba59abbe56e057f20f883e', 1, NULL);
+INSERT INTO xxl_job_lock(lock_name) VALUES ('schedule_lock');
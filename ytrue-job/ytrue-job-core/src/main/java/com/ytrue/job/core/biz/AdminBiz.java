@@ -3,8 +3,10 @@ package com.ytrue.job.core.biz;
 import com.ytrue.job.core.biz.model.HandleCallbackParam;
 import com.ytrue.job.core.biz.model.RegistryParam;
 import com.ytrue.job.core.biz.model.ReturnT;
+import com.ytrue.job.core.biz.model.ShardPullParam;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author ytrue
@@ -37,4 +39,35 @@ public interface AdminBiz {
      * @return
      */
     ReturnT<String> callback(List<HandleCallbackParam> callbackParamList);
+
+
+    /**
+     * 动态分片的任务领取下一个工作单元的方法，同时汇报上一个工作单元已经处理完了
+     *
+     * @param shardPullParam
+     * @return 工作单元的序号，或者ShardPullParam.UNIT_DONE、ShardPullParam.UNIT_WAIT
+     */
+    ReturnT<Integer> shardPull(ShardPullParam shardPullParam);
+
+
+    /**
+     * 异步注册执行器的方法，默认实现是直接同步调用
+     *
+     * @param registryParam
+     * @return
+     */
+    default CompletableFuture<ReturnT<String>> registryAsync(RegistryParam registryParam) {
+        return CompletableFuture.completedFuture(registry(registryParam));
+    }
+
+
+    /**
+     * 异步回调定时任务执行信息的方法，默认实现是直接同步调用
+     *
+     * @param callbackParamList
+     * @return
+     */
+    default CompletableFuture<ReturnT<String>> callbackAsync(List<HandleCallbackParam> callbackParamList) {
+        return CompletableFuture.completedFuture(callback(callbackParamList));
+    }
 }
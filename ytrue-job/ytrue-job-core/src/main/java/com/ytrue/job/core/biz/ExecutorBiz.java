@@ -2,6 +2,8 @@ package com.ytrue.job.core.biz;
 
 import com.ytrue.job.core.biz.model.*;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author ytrue
  * @date 2023-08-28 11:02
@@ -48,4 +50,59 @@ public interface ExecutorBiz {
      */
     ReturnT<String> kill(KillParam killParam);
 
+
+    /**
+     * 预先编译glue代码，执行器收到之后编译好放进缓存，第一次执行的时候就不用再编译了
+     * 默认不支持，只是一个优化，失败了也不影响任务的执行
+     *
+     * @param glueParam
+     * @return
+     */
+    default ReturnT<String> glueCompile(GlueParam glueParam) {
+        return new ReturnT<>(ReturnT.FAIL_CODE, "glue compile not support.");
+    }
+
+
+    /**
+     * 异步的远程调用方法，默认实现是直接同步调用，远程调用的客户端会重写这个方法，调用的线程不需要等待响应
+     *
+     * @param triggerParam
+     * @return
+     */
+    default CompletableFuture<ReturnT<String>> runAsync(TriggerParam triggerParam) {
+        return CompletableFuture.completedFuture(run(triggerParam));
+    }
+
+
+    /**
+     * 异步的心跳检测方法
+     *
+     * @return
+     */
+    default CompletableFuture<ReturnT<String>> beatAsync() {
+        return CompletableFuture.completedFuture(beat());
+    }
+
+
+    /**
+     * 异步的忙碌检测方法
+     *
+     * @param idleBeatParam
+     * @return
+     */
+    default CompletableFuture<ReturnT<String>> idleBeatAsync(IdleBeatParam idleBeatParam) {
+        return CompletableFuture.completedFuture(idleBeat(idleBeatParam));
+    }
+
+
+    /**
+     * 异步的预先编译glue代码的方法
+     *
+     * @param glueParam
+     * @return
+     */
+    default CompletableFuture<ReturnT<String>> glueCompileAsync(GlueParam glueParam) {
+        return CompletableFuture.completedFuture(glueCompile(glueParam));
+    }
+
 }
@@ -4,9 +4,11 @@ import com.ytrue.job.core.biz.AdminBiz;
 import com.ytrue.job.core.biz.model.HandleCallbackParam;
 import com.ytrue.job.core.biz.model.RegistryParam;
 import com.ytrue.job.core.biz.model.ReturnT;
+import com.ytrue.job.core.biz.model.ShardPullParam;
 import com.ytrue.job.core.util.XxlJobRemotingUtil;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author ytrue
@@ -27,7 +29,7 @@ public class AdminBizClient implements AdminBiz {
     private String accessToken;
 
     /**
-     * 访问超时时间
+     * 访问超时时间，单位是秒
      */
     private int timeout = 3;
 
@@ -39,6 +41,11 @@ public class AdminBizClient implements AdminBiz {
         }
     }
 
+    public AdminBizClient(String addressUrl, String accessToken, int timeout) {
+        this(addressUrl, accessToken);
+        this.timeout = timeout;
+    }
+
 
     /**
      * 调用工具类发送post请求，访问调度中心，这个方法时将执行器注册到调度中心的方法
@@ -73,4 +80,28 @@ public class AdminBizClient implements AdminBiz {
     public ReturnT<String> callback(List<HandleCallbackParam> callbackParamList) {
         return XxlJobRemotingUtil.postBody(addressUrl + "api/callback", accessToken, timeout, callbackParamList, String.class);
     }
+
+
+    /**
+     * 动态分片的任务领取下一个工作单元的方法
+     *
+     * @param shardPullParam
+     * @return
+     */
+    @Override
+    public ReturnT<Integer> shardPull(ShardPullParam shardPullParam) {
+        return XxlJobRemotingUtil.postBody(addressUrl + "api/shardPull", accessToken, timeout, shardPullParam, Integer.class);
+    }
+
+
+    @Override
+    public CompletableFuture<ReturnT<String>> registryAsync(RegistryParam registryParam) {
+        return XxlJobRemotingUtil.postBodyAsync(addressUrl + "api/registry", accessToken, timeout, registryParam, String.class);
+    }
+
+
+    @Override
+    public CompletableFuture<ReturnT<String>> callbackAsync(List<HandleCallbackParam> callbackParamList) {
+        return XxlJobRemotingUtil.postBodyAsync(addressUrl + "api/callback", accessToken, timeout, callbackParamList, String.class);
+    }
 }
@@ -2,7 +2,18 @@ package com.ytrue.job.core.biz.client;
 
 import com.ytrue.job.core.biz.ExecutorBiz;
 import com.ytrue.job.core.biz.model.*;
+import com.ytrue.job.core.remoting.BinaryProtocol;
+import com.ytrue.job.core.remoting.NettyBinaryClient;
+import com.ytrue.job.core.remoting.RemotingResultUnknownException;
 import com.ytrue.job.core.util.XxlJobRemotingUtil;
+import io.netty.buffer.ByteBuf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 /**
  * @author ytrue
@@ -11,6 +22,8 @@ import com.ytrue.job.core.util.XxlJobRemotingUtil;
  */
 public class ExecutorBizClient implements ExecutorBiz {
 
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorBizClient.class);
+
     /**
      * 这里的地址是调度中心的服务地址
      */
@@ -22,10 +35,21 @@ public class ExecutorBizClient implements ExecutorBiz {
     private String accessToken;
 
     /**
-     * 访问超时时间
+     * 访问超时时间，单位是秒
      */
     private int timeout = 3;
 
+    /**
+     * 是否使用二进制协议，只有http地址才能使用，执行器不支持的时候还是使用http
+     */
+    private boolean binaryProtocol = false;
+
+    /**
+     * 二进制协议连接的执行器地址
+     */
+    private String host;
+    private int port;
+
     public ExecutorBizClient(String addressUrl, String accessToken) {
         this.addressUrl = addressUrl;
         this.accessToken = accessToken;
@@ -34,6 +58,27 @@ public class ExecutorBizClient implements ExecutorBiz {
         }
     }
 
+    public ExecutorBizClient(String addressUrl, String accessToken, int timeout) {
+        this(addressUrl, accessToken);
+        this.timeout = timeout;
+    }
+
+    public ExecutorBizClient(String addressUrl, String accessToken, boolean binaryProtocol) {
+        this(addressUrl, accessToken);
+        if (binaryProtocol) {
+            try {
+                URI uri = new URI(this.addressUrl);
+                if ("http".equalsIgnoreCase(uri.getScheme()) && uri.getHost() != null) {
+                    this.host = uri.getHost();
+                    this.port = uri.getPort() > 0 ? uri.getPort() : 80;
+                    this.binaryProtocol = true;
+                }
+            } catch (Exception e) {
+                logger.warn(">>>>>>>>>>> xxl-job, executor address invalid for binary protocol, use http, address:{}", addressUrl);
+            }
+        }
+    }
+
 
     /**
      * 远程调用的方法
@@ -43,31 +88,99 @@ public class ExecutorBizClient implements ExecutorBiz {
      */
     @Override
     public ReturnT<String> run(TriggerParam triggerParam) {
-        //可以看到，在这里直接用一个工具类用post请求发送消息了
-        return XxlJobRemotingUtil.postBody(addressUrl + "run", accessToken, timeout, triggerParam, String.class);
+        //同步的方法只是等待异步方法的结果
+        return runAsync(triggerParam).join();
     }
 
 
     @Override
     public ReturnT<String> beat() {
-        return XxlJobRemotingUtil.postBody(addressUrl + "beat", accessToken, timeout, "", String.class);
+        return beatAsync().join();
     }
 
 
     @Override
     public ReturnT<String> idleBeat(IdleBeatParam idleBeatParam) {
-        return XxlJobRemotingUtil.postBody(addressUrl + "idleBeat", accessToken, timeout, idleBeatParam, String.class);
+        return idleBeatAsync(idleBeatParam).join();
     }
 
 
     @Override
     public ReturnT<LogResult> log(LogParam logParam) {
-        return XxlJobRemotingUtil.postBody(addressUrl + "log", accessToken, timeout, logParam, LogResult.class);
+        return call("log", logParam, LogResult.class, BinaryProtocol.OP_LOG, out -> BinaryProtocol.writeLogParam(out, logParam)).join();
     }
 
 
     @Override
     public ReturnT<String> kill(KillParam killParam) {
-        return XxlJobRemotingUtil.postBody(addressUrl + "kill", accessToken, timeout, killParam, String.class);
+        return call("kill", killParam, String.class, BinaryProtocol.OP_KILL, out -> out.writeInt(killParam.getJobId())).join();
+    }
+
+
+    @Override
+    public ReturnT<String> glueCompile(GlueParam glueParam) {
+        return glueCompileAsync(glueParam).join();
+    }
+
+
+    /**
+     * 异步的远程调用方法，调用的线程不会阻塞，执行器的响应通过future通知
+     *
+     * @param triggerParam
+     * @return
+     */
+    @Override
+    public CompletableFuture<ReturnT<String>> runAsync(TriggerParam triggerParam) {
+        return call("run", triggerParam, String.class, BinaryProtocol.OP_RUN, out -> BinaryProtocol.writeTriggerParam(out, triggerParam));
+    }
+
+
+    @Override
+    public CompletableFuture<ReturnT<String>> beatAsync() {
+        return call("beat", "", String.class, BinaryProtocol.OP_BEAT, null);
+    }
+
+
+    @Override
+    public CompletableFuture<ReturnT<String>> idleBeatAsync(IdleBeatParam idleBeatParam) {
+        return call("idleBeat", idleBeatParam, String.class, BinaryProtocol.OP_IDLE_BEAT, out -> out.writeInt(idleBeatParam.getJobId()));
+    }
+
+
+    @Override
+    public CompletableFuture<ReturnT<String>> glueCompileAsync(GlueParam glueParam) {
+        return call("glueCompile", glueParam, String.class, BinaryProtocol.OP_GLUE_COMPILE, out -> BinaryProtocol.writeGlueParam(out, glueParam));
+    }
+
+
+    /**
+     * 发送请求，开启了二进制协议并且执行器支持的时候使用二进制协议，否则使用http
+     * 和XxlJobRemotingUtil一样，返回的future不会异常结束，失败的信息也是以xxl-job remoting开头的，请求发送出去之后连接断开的话，结果的code是ReturnT.UNKNOWN_CODE
+     * 握手的时候才发现执行器不支持二进制协议的话，这个请求会马上用http再发送一次
+     *
+     * @param path       http请求的路径
+     * @param requestObj http请求体
+     * @param returnTargClassOfT
+     * @param op         二进制协议的操作类型
+     * @param bodyWriter 二进制协议的请求内容
+     * @param <T>
+     * @return
+     */
+    private <T> CompletableFuture<ReturnT<T>> call(String path, Object requestObj, Class<T> returnTargClassOfT, byte op, Consumer<ByteBuf> bodyWriter) {
+        NettyBinaryClient binaryClient = NettyBinaryClient.getInstance();
+        if (!binaryProtocol || !binaryClient.isSupported(host, port)) {
+            return XxlJobRemotingUtil.postBodyAsync(addressUrl + path, accessToken, timeout, requestObj, returnTargClassOfT);
+        }
+        return binaryClient.<T>call(host, port, accessToken, op, bodyWriter, timeout * 1000L).handle((result, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(result);
+            }
+            if (!binaryClient.isSupported(host, port)) {
+                return XxlJobRemotingUtil.postBodyAsync(addressUrl + path, accessToken, timeout, requestObj, returnTargClassOfT);
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            logger.error(cause.getMessage(), cause);
+            return CompletableFuture.completedFuture(new ReturnT<T>(cause instanceof RemotingResultUnknownException ? ReturnT.UNKNOWN_CODE : ReturnT.FAIL_CODE, "xxl-job remoting error(" + cause.getMessage() + "), for url : " + addressUrl + path));
+        }).thenCompose(future -> future);
     }
 }
@@ -10,7 +10,7 @@ import com.ytrue.job.core.handler.IJobHandler;
 import com.ytrue.job.core.handler.impl.GlueJobHandler;
 import com.ytrue.job.core.handler.impl.ScriptJobHandler;
 import com.ytrue.job.core.log.XxlJobFileAppender;
-import com.ytrue.job.core.thread.JobThread;
+import com.ytrue.job.core.thread.JobWorker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,7 +35,7 @@ public class ExecutorBizImpl implements ExecutorBiz {
     @Override
     public ReturnT<String> run(TriggerParam triggerParam) {
         //通过定时任务的ID从jobThreadRepository这个Map中获取一个具体的用来执行定时任务的线程
-        JobThread jobThread = XxlJobExecutor.loadJobThread(triggerParam.getJobId());
+        JobWorker jobThread = XxlJobExecutor.loadJobThread(triggerParam.getJobId());
 
         //判断该jobThread是否为空，不为空则说明该定时任务不是第一次执行了，也就意味着该线程已经分配了定时任务了，也就是这个jobHandler对象
         //如果为空，说明该定时任务是第一次执行，还没有分配jobThread
@@ -86,7 +86,7 @@ public class ExecutorBizImpl implements ExecutorBiz {
             }
             if (jobHandler == null) {
                 try {//下面就可以在创建新的handler了
-                    IJobHandler originJobHandler = GlueFactory.getInstance().loadNewInstance(triggerParam.getGlueSource());
+                    IJobHandler originJobHandler = GlueFactory.getInstance().loadNewInstance(triggerParam.getJobId(), triggerParam.getGlueUpdatetime(), triggerParam.getGlueSource());
                     jobHandler = new GlueJobHandler(originJobHandler, triggerParam.getGlueUpdatetime());
                 } catch (Exception e) {
                     logger.error(e.getMessage(), e);
@@ -175,7 +175,7 @@ public class ExecutorBizImpl implements ExecutorBiz {
     public ReturnT<String> idleBeat(IdleBeatParam idleBeatParam) {
         boolean isRunningOrHasQueue = false;
         //获取执行定时任务的线程
-        JobThread jobThread = XxlJobExecutor.loadJobThread(idleBeatParam.getJobId());
+        JobWorker jobThread = XxlJobExecutor.loadJobThread(idleBeatParam.getJobId());
         if (jobThread != null && jobThread.isRunningOrHasQueue()) {
             //如果线程不为null，并且正在工作，就把该变量置为true
             isRunningOrHasQueue = true;
@@ -215,7 +215,7 @@ public class ExecutorBizImpl implements ExecutorBiz {
     @Override
     public ReturnT<String> kill(KillParam killParam) {
         //根据任务ID获取到对应的执行任务的线程
-        JobThread jobThread = XxlJobExecutor.loadJobThread(killParam.getJobId());
+        JobWorker jobThread = XxlJobExecutor.loadJobThread(killParam.getJobId());
         if (jobThread != null) {
             //从Map中移除该线程，同时也终止该线程
             XxlJobExecutor.removeJobThread(killParam.getJobId(), "scheduling center kill job.");
@@ -224,4 +224,25 @@ public class ExecutorBizImpl implements ExecutorBiz {
         //返回成功结果
         return new ReturnT<>(ReturnT.SUCCESS_CODE, "job thread already killed.");
     }
+
+
+    /**
+     * 预先编译glue代码，目前只有groovy需要编译，脚本模式的任务执行的时候才会生成脚本文件
+     *
+     * @param glueParam
+     * @return
+     */
+    @Override
+    public ReturnT<String> glueCompile(GlueParam glueParam) {
+        if (GlueTypeEnum.GLUE_GROOVY != GlueTypeEnum.match(glueParam.getGlueType())) {
+            return new ReturnT<>(ReturnT.SUCCESS_CODE, "glueType[" + glueParam.getGlueType() + "] need not compile.");
+        }
+        try {
+            GlueFactory.getInstance().precompile(glueParam.getJobId(), glueParam.getGlueUpdatetime(), glueParam.getGlueSource());
+            return ReturnT.SUCCESS;
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return new ReturnT<>(ReturnT.FAIL_CODE, e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,30 @@
+package com.ytrue.job.core.biz.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 02:10
+ * @description 调度中心保存了glue代码之后，通知执行器预先编译时的参数
+ */
+@AllArgsConstructor
+@Data
+@NoArgsConstructor
+public class GlueParam implements Serializable {
+
+    private static final long serialVersionUID = 42L;
+
+    // 任务id
+    private int jobId;
+    // glue类型
+    private String glueType;
+    // glue源码
+    private String glueSource;
+    // glue的更新时间
+    private long glueUpdatetime;
+
+}
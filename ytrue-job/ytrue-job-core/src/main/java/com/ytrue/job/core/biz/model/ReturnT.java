@@ -15,6 +15,10 @@ public class ReturnT<T> implements Serializable {
 
     public static final int SUCCESS_CODE = 200;
     public static final int FAIL_CODE = 500;
+    /**
+     * 请求已经发送出去了，但是没有收到响应，对方可能已经处理了这个请求
+     */
+    public static final int UNKNOWN_CODE = 502;
 
     public static final ReturnT<String> SUCCESS = new ReturnT<>(null);
     public static final ReturnT<String> FAIL = new ReturnT<>(FAIL_CODE, null);
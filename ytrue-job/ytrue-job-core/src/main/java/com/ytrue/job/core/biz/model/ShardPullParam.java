@@ -0,0 +1,39 @@
+package com.ytrue.job.core.biz.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 03:10
+ * @description 动态分片的任务向调度中心领取下一个工作单元时的参数
+ */
+@AllArgsConstructor
+@Data
+@NoArgsConstructor
+public class ShardPullParam implements Serializable {
+
+    private static final long serialVersionUID = 42L;
+
+    /**
+     * 调度中心返回这个值，表示所有工作单元都已经处理完了
+     */
+    public static final int UNIT_DONE = -1;
+
+    /**
+     * 调度中心返回这个值，表示暂时没有可以领取的工作单元，但是别的执行器还有没处理完的，等一会再来领取
+     * 那些执行器挂掉的话，它们手上的工作单元会重新分配出来
+     */
+    public static final int UNIT_WAIT = -2;
+
+    // 日志id
+    private long logId;
+    // 工作单元的总数
+    private int unitTotal;
+    // 上一个已经处理完的工作单元，没有的时候是-1
+    private int finishedUnit;
+
+}
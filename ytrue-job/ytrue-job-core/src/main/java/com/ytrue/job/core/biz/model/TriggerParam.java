@@ -62,6 +62,10 @@ public class TriggerParam implements Serializable {
      * 分片总数
      */
     private int broadcastTotal;
+    /**
+     * 触发这次调度的调度中心的地址，只有动态分片的任务才有，执行器要向这个调度中心领取工作单元
+     */
+    private String shardAdminAddress;
 
 
 }
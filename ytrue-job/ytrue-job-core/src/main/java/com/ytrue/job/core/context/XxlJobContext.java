@@ -53,6 +53,28 @@ public class XxlJobContext {
      */
     private final int shardTotal;
 
+    /**
+     * 日志id，动态分片的任务用它向调度中心领取工作单元
+     */
+    private final long logId;
+
+    /**
+     * 触发这次调度的调度中心的地址，动态分片的任务优先向它领取工作单元，没有的时候是null
+     */
+    private final String shardAdminAddress;
+
+    /**
+     * 动态分片的任务当前正在处理的工作单元，没有的时候是-1
+     */
+    @Setter
+    private int shardUnit = -1;
+
+    /**
+     * 执行结果是否已经回调给调度中心了，执行超时的时候，时间轮在截止时间就回调了超时的结果，执行结束之后不再回调
+     */
+    @Setter
+    private volatile boolean resultReported = false;
+
 
     /**
      * 处理状态
@@ -68,11 +90,21 @@ public class XxlJobContext {
     private String handleMsg;
 
     public XxlJobContext(long jobId, String jobParam, String jobLogFileName, int shardIndex, int shardTotal) {
+        this(jobId, jobParam, jobLogFileName, shardIndex, shardTotal, -1);
+    }
+
+    public XxlJobContext(long jobId, String jobParam, String jobLogFileName, int shardIndex, int shardTotal, long logId) {
+        this(jobId, jobParam, jobLogFileName, shardIndex, shardTotal, logId, null);
+    }
+
+    public XxlJobContext(long jobId, String jobParam, String jobLogFileName, int shardIndex, int shardTotal, long logId, String shardAdminAddress) {
         this.jobId = jobId;
         this.jobParam = jobParam;
         this.jobLogFileName = jobLogFileName;
         this.shardIndex = shardIndex;
         this.shardTotal = shardTotal;
+        this.logId = logId;
+        this.shardAdminAddress = shardAdminAddress;
         //构造方法中唯一值得注意的就是这里，创建XxlJobContext对象的时候默认定时任务的执行结果就是成功
         //如果执行失败了，自由其他方法把这里设置成失败
         this.handleCode = HANDLE_CODE_SUCCESS;
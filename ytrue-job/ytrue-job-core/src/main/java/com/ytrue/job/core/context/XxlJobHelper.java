@@ -1,5 +1,9 @@
 package com.ytrue.job.core.context;
 
+import com.ytrue.job.core.biz.AdminBiz;
+import com.ytrue.job.core.biz.model.ReturnT;
+import com.ytrue.job.core.biz.model.ShardPullParam;
+import com.ytrue.job.core.executor.XxlJobExecutor;
 import com.ytrue.job.core.log.XxlJobFileAppender;
 import com.ytrue.job.core.util.DateUtil;
 import org.slf4j.Logger;
@@ -9,7 +13,10 @@ import org.slf4j.helpers.MessageFormatter;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author ytrue
@@ -93,6 +100,95 @@ public class XxlJobHelper {
     private static final Logger logger = LoggerFactory.getLogger("xxl-job logger");
 
 
+    /**
+     * 没有可以领取的工作单元的时候，等待多久再领取一次
+     */
+    private static final long SHARD_WAIT_MS = 1000;
+
+    /**
+     * 所有调度中心都访问失败的时候，最多再试几轮
+     */
+    private static final int SHARD_PULL_RETRY = 3;
+
+
+    /**
+     * 动态分片的任务领取下一个工作单元，调用这个方法也就表示上一个工作单元已经处理完了
+     * 分片广播是按照执行器的数量静态分片的，执行得最慢的执行器决定了整个任务什么时候结束
+     * 动态分片的任务把工作拆分成unitTotal个很小的工作单元，每个执行器处理完一个再向调度中心领取下一个，处理得快的执行器就多处理一些
+     * 执行器挂掉之后，它手上的工作单元会重新分配给别的执行器，所以同一个工作单元可能会被处理不止一次，处理的逻辑要能重复执行
+     * 注意，工作单元的分配情况只保存在触发这次调度的调度中心的内存中，这个调度中心重启之后，这次调度就找不到了，
+     * 这个方法会抛出IllegalStateException，这次执行就失败了，配置了失败重试的话，重试的时候会从头开始一次新的调度
+     * <pre>
+     * int unit;
+     * while ((unit = XxlJobHelper.nextShardUnit(1000)) >= 0) {
+     *     // 处理第unit个工作单元
+     * }
+     * </pre>
+     *
+     * @param unitTotal 工作单元的总数，同一次调度的所有执行器要一致，不一致的时候以第一个领取的执行器为准
+     * @return 工作单元的序号，所有工作单元都处理完了返回-1
+     * @throws InterruptedException 等待别的执行器处理的时候被中断，比如任务超时了
+     */
+    public static int nextShardUnit(int unitTotal) throws InterruptedException {
+        XxlJobContext xxlJobContext = XxlJobContext.getXxlJobContext();
+        if (xxlJobContext == null || xxlJobContext.getLogId() <= 0) {
+            throw new IllegalStateException("xxl-job nextShardUnit must be called in a job.");
+        }
+        ShardPullParam shardPullParam = new ShardPullParam(xxlJobContext.getLogId(), unitTotal, xxlJobContext.getShardUnit());
+        while (true) {
+            int unit = shardPull(shardPullParam);
+            //上一个工作单元已经汇报过了
+            xxlJobContext.setShardUnit(-1);
+            shardPullParam.setFinishedUnit(-1);
+            if (unit == ShardPullParam.UNIT_WAIT) {
+                TimeUnit.MILLISECONDS.sleep(SHARD_WAIT_MS);
+                continue;
+            }
+            if (unit < 0) {
+                return -1;
+            }
+            xxlJobContext.setShardUnit(unit);
+            return unit;
+        }
+    }
+
+
+    /**
+     * 领取工作单元，这次调度的工作单元只保存在触发它的调度中心中，别的调度中心会返回失败
+     * 所以先访问触发这次调度的调度中心，它访问不到的话再依次访问配置的调度中心
+     *
+     * @param shardPullParam
+     * @return
+     * @throws InterruptedException
+     */
+    private static int shardPull(ShardPullParam shardPullParam) throws InterruptedException {
+        String failMsg = "admin address not found.";
+        String shardAdminAddress = XxlJobContext.getXxlJobContext().getShardAdminAddress();
+        for (int i = 0; i < SHARD_PULL_RETRY; i++) {
+            List<AdminBiz> adminBizList = new ArrayList<>();
+            if (shardAdminAddress != null && shardAdminAddress.trim().length() > 0) {
+                adminBizList.add(XxlJobExecutor.getShardAdminBiz(shardAdminAddress.trim()));
+            }
+            if (XxlJobExecutor.getAdminBizList() != null) {
+                adminBizList.addAll(XxlJobExecutor.getAdminBizList());
+            }
+            for (AdminBiz adminBiz : adminBizList) {
+                try {
+                    ReturnT<Integer> result = adminBiz.shardPull(shardPullParam);
+                    if (result != null && result.getCode() == ReturnT.SUCCESS_CODE && result.getContent() != null) {
+                        return result.getContent();
+                    }
+                    failMsg = result != null ? result.getMsg() : null;
+                } catch (Exception e) {
+                    failMsg = e.getMessage();
+                }
+            }
+            TimeUnit.MILLISECONDS.sleep(SHARD_WAIT_MS);
+        }
+        throw new IllegalStateException("xxl-job shard pull fail, logId:" + shardPullParam.getLogId() + ", msg:" + failMsg);
+    }
+
+
     /**
      * 存储定时任务日志的入口方法
      *
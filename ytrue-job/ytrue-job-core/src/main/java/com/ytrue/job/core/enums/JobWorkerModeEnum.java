@@ -0,0 +1,42 @@
+package com.ytrue.job.core.enums;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 23:10
+ * @description 执行器端执行定时任务的方式
+ */
+public enum JobWorkerModeEnum {
+
+    /**
+     * 每个定时任务一个JobThread线程，原来的方式，也是默认的方式
+     */
+    THREAD,
+
+    /**
+     * 所有定时任务共用一个固定大小的线程池，每个定时任务的触发器参数在自己的队列中排队，同一个定时任务还是串行执行的
+     */
+    POOL,
+
+    /**
+     * 和POOL一样，但是每次执行定时任务都使用一个新的虚拟线程，需要JDK21以上，低版本的JDK会退回到POOL
+     */
+    VIRTUAL;
+
+    /**
+     * 根据配置的名字得到对应的枚举，不区分大小写
+     *
+     * @param name
+     * @param defaultItem
+     * @return
+     */
+    public static JobWorkerModeEnum match(String name, JobWorkerModeEnum defaultItem) {
+        if (name != null) {
+            for (JobWorkerModeEnum item : JobWorkerModeEnum.values()) {
+                if (item.name().equalsIgnoreCase(name.trim())) {
+                    return item;
+                }
+            }
+        }
+        return defaultItem;
+    }
+}
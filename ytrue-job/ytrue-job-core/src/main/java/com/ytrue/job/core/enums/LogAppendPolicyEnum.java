@@ -0,0 +1,42 @@
+package com.ytrue.job.core.enums;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 00:10
+ * @description 执行器端记录定时任务日志的方式
+ */
+public enum LogAppendPolicyEnum {
+
+    /**
+     * 原来的方式，每条日志都打开文件、写入、关闭，在调用XxlJobHelper.log的线程中完成
+     */
+    SYNC,
+
+    /**
+     * 日志先放进队列，由后台线程批量写入文件，队列满的时候记录日志的线程等待，默认的方式
+     */
+    BLOCK,
+
+    /**
+     * 和BLOCK一样，但是队列满的时候直接丢弃日志，定时任务不会因为记录日志变慢
+     */
+    DROP;
+
+    /**
+     * 根据配置的名字得到对应的枚举，不区分大小写
+     *
+     * @param name
+     * @param defaultItem
+     * @return
+     */
+    public static LogAppendPolicyEnum match(String name, LogAppendPolicyEnum defaultItem) {
+        if (name != null) {
+            for (LogAppendPolicyEnum item : LogAppendPolicyEnum.values()) {
+                if (item.name().equalsIgnoreCase(name.trim())) {
+                    return item;
+                }
+            }
+        }
+        return defaultItem;
+    }
+}
@@ -2,13 +2,19 @@ package com.ytrue.job.core.executor;
 
 import com.ytrue.job.core.biz.AdminBiz;
 import com.ytrue.job.core.biz.client.AdminBizClient;
+import com.ytrue.job.core.enums.JobWorkerModeEnum;
+import com.ytrue.job.core.enums.LogAppendPolicyEnum;
 import com.ytrue.job.core.handler.IJobHandler;
 import com.ytrue.job.core.handler.annotation.XxlJob;
 import com.ytrue.job.core.handler.impl.MethodJobHandler;
+import com.ytrue.job.core.log.JobLogAsyncAppender;
 import com.ytrue.job.core.log.XxlJobFileAppender;
 import com.ytrue.job.core.server.EmbedServer;
 import com.ytrue.job.core.thread.JobLogFileCleanThread;
-import com.ytrue.job.core.thread.JobThread;
+import com.ytrue.job.core.thread.JobTimeoutWheel;
+import com.ytrue.job.core.thread.JobWorker;
+import com.ytrue.job.core.thread.JobWorkerPool;
+import com.ytrue.job.core.thread.ScriptOutputPump;
 import com.ytrue.job.core.thread.TriggerCallbackThread;
 import com.ytrue.job.core.util.IpUtil;
 import com.ytrue.job.core.util.NetUtil;
@@ -19,6 +25,7 @@ import org.slf4j.LoggerFactory;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -77,6 +84,23 @@ public class XxlJobExecutor {
      */
     private int logRetentionDays;
 
+    /**
+     * 记录定时任务日志的方式，取值为block、drop、sync，默认为block，日志由后台线程批量写入文件，队列满的时候等待
+     * drop是队列满的时候丢弃日志，sync是原来的方式，每条日志都打开、写入、关闭一次文件
+     */
+    private String logAppendPolicy;
+
+    /**
+     * 执行定时任务的方式，取值为thread、pool、virtual，默认为thread，也就是每个定时任务一个线程
+     * 定时任务很多的执行器可以配置为pool，所有定时任务共用一个线程池，JDK21以上可以配置为virtual，使用虚拟线程执行定时任务
+     */
+    private String workerMode;
+
+    /**
+     * pool模式下线程池的大小，同时执行的定时任务最多就是这么多个
+     */
+    private int workerPoolSize;
+
 
     /**
      * 执行器的组件终于启动了，这里我删去了几个组件，后续再迭代完整
@@ -86,6 +110,8 @@ public class XxlJobExecutor {
     public void start() throws Exception {
         //初始化日记收集组件，并且把用户设置的存储日记的路径设置到该组件中
         XxlJobFileAppender.initLogPath(logPath);
+        //启动异步写日志的组件
+        JobLogAsyncAppender.getInstance().start(LogAppendPolicyEnum.match(logAppendPolicy, LogAppendPolicyEnum.BLOCK));
 
         //初始化admin链接路径存储集合
         //如果是在集群情况下，可能会有多个调度中心，所以，执行器要把自己分别注册到这些调度中心上
@@ -98,6 +124,9 @@ public class XxlJobExecutor {
         //启动回调执行结果信息给调度中心的组件
         TriggerCallbackThread.getInstance().start();
 
+        //启动创建定时任务工作者的组件，要在内嵌服务器之前启动，服务器启动之后就可能收到调度请求了
+        JobWorkerPool.getInstance().start(JobWorkerModeEnum.match(workerMode, JobWorkerModeEnum.THREAD), workerPoolSize);
+
         //启动执行器内部内嵌的服务器，该服务器是用Netty构建的，但构建的是http服务器，仍然是用http来传输消息的
         //在该方法中，会进一步把执行器注册到调度中心上
         initEmbedServer(address, ip, port, appname, accessToken);
@@ -110,6 +139,16 @@ public class XxlJobExecutor {
     @Getter
     private static List<AdminBiz> adminBizList;
 
+    /**
+     * 向调度中心发送消息时使用的token令牌，创建动态分片使用的客户端的时候要用到
+     */
+    private static String adminAccessToken;
+
+    /**
+     * 动态分片的任务领取工作单元时使用的客户端，key为触发这次调度的调度中心的地址
+     */
+    private static final ConcurrentMap<String, AdminBiz> shardAdminBizMap = new ConcurrentHashMap<>();
+
     /**
      * 初始化客户端的方法，初始化的客户端是用来向调度中心发送消息的
      *
@@ -118,6 +157,7 @@ public class XxlJobExecutor {
      * @throws Exception
      */
     private void initAdminBizList(String adminAddresses, String accessToken) throws Exception {
+        adminAccessToken = accessToken;
         if (adminAddresses != null && adminAddresses.trim().length() > 0) {
             //在这里判断可能有多个调度中心服务器，所以要展开遍历
             for (String address : adminAddresses.trim().split(",")) {
@@ -136,6 +176,18 @@ public class XxlJobExecutor {
     }
 
 
+    /**
+     * 得到访问指定调度中心的客户端，动态分片的任务要向触发这次调度的调度中心领取工作单元
+     * 配置的调度中心地址可能是负载均衡的地址，请求不一定会到达这个调度中心，所以单独为它创建一个客户端
+     *
+     * @param address
+     * @return
+     */
+    public static AdminBiz getShardAdminBiz(String address) {
+        return shardAdminBizMap.computeIfAbsent(address, key -> new AdminBizClient(key, adminAccessToken));
+    }
+
+
     /**
      * 内嵌的服务器对象
      */
@@ -194,8 +246,8 @@ public class XxlJobExecutor {
         stopEmbedServer();
         //停止真正执行定时任务的各个线程
         if (jobThreadRepository.size() > 0) {
-            for (Map.Entry<Integer, JobThread> item: jobThreadRepository.entrySet()) {
-                JobThread oldJobThread = removeJobThread(item.getKey(), "web container destroy and kill the job.");
+            for (Map.Entry<Integer, JobWorker> item: jobThreadRepository.entrySet()) {
+                JobWorker oldJobThread = removeJobThread(item.getKey(), "web container destroy and kill the job.");
                 if (oldJobThread != null) {
                     try {
                         oldJobThread.join();
@@ -206,10 +258,16 @@ public class XxlJobExecutor {
             }
             jobThreadRepository.clear();
         }
+        //工作者都停止之后再停止它们共用的线程池
+        JobWorkerPool.getInstance().toStop();
+        JobTimeoutWheel.getInstance().toStop();
+        ScriptOutputPump.getInstance().toStop();
         //清空缓存jobHandler的Map
         jobHandlerRepository.clear();
         JobLogFileCleanThread.getInstance().toStop();
         TriggerCallbackThread.getInstance().toStop();
+        //回调线程停止的时候可能还会记录日志，所以最后停止写日志的组件
+        JobLogAsyncAppender.getInstance().toStop();
     }
 
 
@@ -310,8 +368,9 @@ public class XxlJobExecutor {
     /**
      * 缓存JobThread的Map，而每一个定时任务对应着一个ID，也就对应着一个执行这个定时任务的线程
      * 这个Map中，key就是定时任务的ID，value就是执行它的线程
+     * 使用共享线程池的时候value是JobActor，不再占用单独的线程
      */
-    private static ConcurrentMap<Integer, JobThread> jobThreadRepository = new ConcurrentHashMap<>();
+    private static ConcurrentMap<Integer, JobWorker> jobThreadRepository = new ConcurrentHashMap<>();
 
 
     /**
@@ -322,14 +381,12 @@ public class XxlJobExecutor {
      * @param removeOldReason
      * @return
      */
-    public static JobThread registJobThread(int jobId, IJobHandler handler, String removeOldReason) {
-        //根据定时任务ID和封装定时任务方法的IJobHandler对象创建JobThread对象
-        JobThread newJobThread = new JobThread(jobId, handler);
-        //创建之后就启动线程
-        newJobThread.start();
+    public static JobWorker registJobThread(int jobId, IJobHandler handler, String removeOldReason) {
+        //根据定时任务ID和封装定时任务方法的IJobHandler对象创建工作者，JobThread创建之后就会启动线程
+        JobWorker newJobThread = JobWorkerPool.getInstance().newWorker(jobId, handler);
         logger.info(">>>>>>>>>>> xxl-job regist JobThread success, jobId:{}, handler:{}", new Object[]{jobId, handler});
         //将该线程缓存到Map中
-        JobThread oldJobThread = jobThreadRepository.put(jobId, newJobThread);
+        JobWorker oldJobThread = jobThreadRepository.put(jobId, newJobThread);
         if (oldJobThread != null) {
             //如果oldJobThread不为null，说明Map中已经缓存了相同的对象
             //这里的做法就是直接停止旧线程
@@ -347,9 +404,9 @@ public class XxlJobExecutor {
      * @param removeOldReason
      * @return
      */
-    public static JobThread removeJobThread(int jobId, String removeOldReason) {
+    public static JobWorker removeJobThread(int jobId, String removeOldReason) {
         //根据定时任务ID删除工作线程
-        JobThread oldJobThread = jobThreadRepository.remove(jobId);
+        JobWorker oldJobThread = jobThreadRepository.remove(jobId);
         if (oldJobThread != null) {
             //停止线程，在该方法内部，会讲线程的停止条件设为true，线程就会停下了
             oldJobThread.toStop(removeOldReason);
@@ -360,13 +417,45 @@ public class XxlJobExecutor {
     }
 
 
+    /**
+     * 移除空闲了太久的工作者，只有Map中缓存的还是这个工作者的时候才移除
+     * 移除之后刚好又有触发器参数放了进来的话，就把它放回去，不会让这次调度失败
+     *
+     * @param jobId
+     * @param idleJobThread
+     * @param removeOldReason
+     * @return 是否移除了
+     */
+    public static boolean removeIdleJobThread(int jobId, JobWorker idleJobThread, String removeOldReason) {
+        if (!jobThreadRepository.remove(jobId, idleJobThread)) {
+            return false;
+        }
+        if (idleJobThread.isRunningOrHasQueue() && jobThreadRepository.putIfAbsent(jobId, idleJobThread) == null) {
+            return false;
+        }
+        idleJobThread.toStop(removeOldReason);
+        idleJobThread.interrupt();
+        return true;
+    }
+
+
+    /**
+     * 得到所有缓存的工作者，只能读取
+     *
+     * @return
+     */
+    public static Map<Integer, JobWorker> getJobThreadRepository() {
+        return Collections.unmodifiableMap(jobThreadRepository);
+    }
+
+
     /**
      * 根据定时任务ID，获取对应的JobThread对象
      *
      * @param jobId
      * @return
      */
-    public static JobThread loadJobThread(int jobId) {
+    public static JobWorker loadJobThread(int jobId) {
         return jobThreadRepository.get(jobId);
     }
 }
@@ -3,11 +3,13 @@ package com.ytrue.job.core.glue;
 import com.ytrue.job.core.glue.impl.SpringGlueFactory;
 import com.ytrue.job.core.handler.IJobHandler;
 import groovy.lang.GroovyClassLoader;
+import org.codehaus.groovy.runtime.InvokerHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
 
 /**
  * @author ytrue
@@ -16,6 +18,8 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class GlueFactory {
 
+    private static final Logger logger = LoggerFactory.getLogger(GlueFactory.class);
+
     /**
      * 实例
      */
@@ -44,67 +48,308 @@ public class GlueFactory {
         }
     }
 
+    /**
+     * 最多缓存的glue类的数量
+     */
+    private static final int CLASS_CACHE_SIZE = 256;
+
     /**
      * 用 Groovy 的 GroovyClassLoader ，动态地加载一个脚本并执行它的行为。GroovyClassLoader是一个定制的类装载器，负责解释加载Java类中用到的Groovy类。
+     * 原来所有的glue类都是同一个GroovyClassLoader加载的，这个类加载器一直不会被回收，每修改一次glue代码就多一个类永远留在元空间中
+     * 现在每个glue类都有自己的类加载器，类被移出缓存之后，只要没有正在使用的对象，类和类加载器就可以一起被回收
+     * 这里记录的是创建类加载器时使用的父类加载器，和原来new GroovyClassLoader()的默认值一样，是线程上下文类加载器
+     */
+    private final ClassLoader parentClassLoader = Thread.currentThread().getContextClassLoader();
+
+    /**
+     * 缓存，key为任务id和glue的更新时间，按照访问顺序排列，超过CLASS_CACHE_SIZE的时候移除最久没有使用的
+     * 原来每次加载都要用MD5计算一遍源码，而且缓存是没有上限的
+     * 只在同步代码块中访问
      */
-    private GroovyClassLoader groovyClassLoader = new GroovyClassLoader();
+    private final LinkedHashMap<String, GlueClass> classCache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 每个任务缓存中最新的glue更新时间，同一个任务加载了新版本的glue代码之后，旧版本的类马上从缓存中移除
+     */
+    private final Map<Integer, Long> latestGlueUpdatetime = new HashMap<>();
+
+    /**
+     * 用glue类创建出来的对象，对象被回收之后它的弱引用会进入instanceQueue
+     * 移出缓存的类还有对象没有被回收的话，说明还有工作线程在使用它，这个时候不能关闭类加载器，否则之后第一次用到的内部类就加载不到了
+     * 只在同步代码块中访问
+     */
+    private final Set<InstanceReference> instanceReferences = new HashSet<>();
+
+    private final ReferenceQueue<Object> instanceQueue = new ReferenceQueue<>();
+
+
+    /**
+     * 缓存的glue类和加载它的类加载器
+     */
+    private static class GlueClass {
+
+        private final int jobId;
+
+        private final Class<?> clazz;
+
+        private final GroovyClassLoader classLoader;
+
+        /**
+         * 还没有被回收的对象的数量，包括正在创建的
+         */
+        private int liveInstances;
+
+        /**
+         * 是否已经移出缓存了
+         */
+        private boolean retired;
+
+        private GlueClass(int jobId, Class<?> clazz, GroovyClassLoader classLoader) {
+            this.jobId = jobId;
+            this.clazz = clazz;
+            this.classLoader = classLoader;
+        }
+    }
+
 
     /**
-     * 缓存
+     * glue类的对象的弱引用
      */
-    private ConcurrentMap<String, Class<?>> CLASS_CACHE = new ConcurrentHashMap<>();
+    private static class InstanceReference extends WeakReference<Object> {
+
+        private final GlueClass glueClass;
+
+        private InstanceReference(Object instance, ReferenceQueue<Object> queue, GlueClass glueClass) {
+            super(instance, queue);
+            this.glueClass = glueClass;
+        }
+    }
 
 
     /**
      * 在该方法中创建IJobHandler对象
      *
+     * @param jobId
+     * @param glueUpdatetime
      * @param codeSource
      * @return
      * @throws Exception
      */
-    public IJobHandler loadNewInstance(String codeSource) throws Exception {
+    public IJobHandler loadNewInstance(int jobId, long glueUpdatetime, String codeSource) throws Exception {
         //对用户在线编辑的源码做判空校验
         if (codeSource != null && codeSource.trim().length() > 0) {
-            //把源码转化为Class文件
-            Class<?> clazz = getCodeSourceClass(codeSource);
-            if (clazz != null) {
-                //创建对象
-                Object instance = clazz.newInstance();
-                if (instance != null) {
-                    //上面是我从xxl-job复制过来的默认例子，可以看到，在新编写的类都要继承IJobHandler抽象类的
-                    //所以这里要判断一下是否属于这个对象
-                    if (instance instanceof IJobHandler) {
-                        //这里其实做的就是属性注入的工作
-                        this.injectService(instance);
-                        return (IJobHandler) instance;
-                    } else {
-                        throw new IllegalArgumentException(">>>>>>>>>>> xxl-glue, loadNewInstance error, "
-                                                           + "cannot convert from instance[" + instance.getClass() + "] to IJobHandler");
+            //把源码转化为Class文件，得到的类已经记了一个对象，这样在创建对象的过程中类被移出缓存也不会释放
+            GlueClass glueClass = getCodeSourceClass(jobId, glueUpdatetime, codeSource, true);
+            IJobHandler instance = null;
+            try {
+                instance = newInstance(glueClass.clazz);
+                return instance;
+            } finally {
+                instanceCreated(glueClass, instance);
+            }
+        }
+        throw new IllegalArgumentException(">>>>>>>>>>> xxl-glue, loadNewInstance error, instance is null");
+    }
+
+
+    /**
+     * 在该方法中创建IJobHandler对象，不知道任务id和glue更新时间的时候使用，编译出来的类不会缓存
+     *
+     * @param codeSource
+     * @return
+     * @throws Exception
+     */
+    public IJobHandler loadNewInstance(String codeSource) throws Exception {
+        if (codeSource != null && codeSource.trim().length() > 0) {
+            return newInstance(new GroovyClassLoader(parentClassLoader).parseClass(codeSource));
+        }
+        throw new IllegalArgumentException(">>>>>>>>>>> xxl-glue, loadNewInstance error, instance is null");
+    }
+
+
+    /**
+     * 预先编译glue代码，调度中心保存了新版本的glue代码之后会通知执行器，第一次执行的时候就不用再编译了
+     *
+     * @param jobId
+     * @param glueUpdatetime
+     * @param codeSource
+     */
+    public void precompile(int jobId, long glueUpdatetime, String codeSource) {
+        getCodeSourceClass(jobId, glueUpdatetime, codeSource, false);
+    }
+
+
+    private IJobHandler newInstance(Class<?> clazz) throws Exception {
+        //创建对象
+        Object instance = clazz.newInstance();
+        //上面是我从xxl-job复制过来的默认例子，可以看到，在新编写的类都要继承IJobHandler抽象类的
+        //所以这里要判断一下是否属于这个对象
+        if (instance instanceof IJobHandler) {
+            //这里其实做的就是属性注入的工作
+            this.injectService(instance);
+            return (IJobHandler) instance;
+        }
+        throw new IllegalArgumentException(">>>>>>>>>>> xxl-glue, loadNewInstance error, "
+                                           + "cannot convert from instance[" + instance.getClass() + "] to IJobHandler");
+    }
+
+
+    /**
+     * 得到编译好的glue类
+     *
+     * @param jobId
+     * @param glueUpdatetime
+     * @param codeSource
+     * @param acquire        是否要用这个类创建对象，是的话先记一个对象，创建完之后要调用instanceCreated
+     * @return
+     */
+    private GlueClass getCodeSourceClass(int jobId, long glueUpdatetime, String codeSource, boolean acquire) {
+        String key = jobId + "_" + glueUpdatetime;
+        //先释放那些对象都已经被回收了的类
+        expungeInstances();
+        //从对应的缓存中查看是否已经缓存了，如果有就可以直接返回class文件
+        synchronized (classCache) {
+            GlueClass glueClass = classCache.get(key);
+            if (glueClass != null) {
+                if (acquire) {
+                    glueClass.liveInstances++;
+                }
+                return glueClass;
+            }
+        }
+        //如果没有就在这里把源码解析成class文件，编译比较慢，不在同步代码块中执行
+        GroovyClassLoader classLoader = new GroovyClassLoader(parentClassLoader);
+        Class<?> clazz;
+        try {
+            clazz = classLoader.parseClass(codeSource);
+        } catch (RuntimeException e) {
+            release(new GlueClass(jobId, null, classLoader));
+            throw e;
+        }
+        List<GlueClass> removedList = new ArrayList<>();
+        try {
+            synchronized (classCache) {
+                GlueClass glueClass = classCache.get(key);
+                if (glueClass != null) {
+                    //别的线程已经编译好了，自己编译的类没有对象，直接释放
+                    GlueClass duplicate = new GlueClass(jobId, clazz, classLoader);
+                    duplicate.retired = true;
+                    removedList.add(duplicate);
+                    if (acquire) {
+                        glueClass.liveInstances++;
+                    }
+                    return glueClass;
+                }
+                Long latest = latestGlueUpdatetime.get(jobId);
+                if (latest == null || latest < glueUpdatetime) {
+                    //旧版本的glue代码不会再使用了
+                    if (latest != null) {
+                        GlueClass oldClass = classCache.remove(jobId + "_" + latest);
+                        if (oldClass != null) {
+                            retire(oldClass, removedList);
+                        }
                     }
+                    latestGlueUpdatetime.put(jobId, glueUpdatetime);
                 }
+                GlueClass newClass = new GlueClass(jobId, clazz, classLoader);
+                if (acquire) {
+                    newClass.liveInstances++;
+                }
+                classCache.put(key, newClass);
+                //超过上限之后移除最久没有使用的类
+                Iterator<GlueClass> iterator = classCache.values().iterator();
+                while (classCache.size() > CLASS_CACHE_SIZE) {
+                    GlueClass eldest = iterator.next();
+                    iterator.remove();
+                    retire(eldest, removedList);
+                    if (!classCache.containsKey(eldest.jobId + "_" + latestGlueUpdatetime.get(eldest.jobId))) {
+                        latestGlueUpdatetime.remove(eldest.jobId);
+                    }
+                }
+                return newClass;
+            }
+        } finally {
+            for (GlueClass removed : removedList) {
+                release(removed);
             }
         }
-        throw new IllegalArgumentException(">>>>>>>>>>> xxl-glue, loadNewInstance error, instance is null");
     }
 
 
-    private Class<?> getCodeSourceClass(String codeSource) {
+    /**
+     * 对象创建完之后调用，创建成功的话用弱引用记下这个对象，创建失败的话把预先记的对象减掉
+     *
+     * @param glueClass
+     * @param instance
+     */
+    private void instanceCreated(GlueClass glueClass, Object instance) {
+        boolean releasable = false;
+        synchronized (classCache) {
+            if (instance != null) {
+                instanceReferences.add(new InstanceReference(instance, instanceQueue, glueClass));
+            } else {
+                glueClass.liveInstances--;
+                releasable = glueClass.retired && glueClass.liveInstances == 0;
+            }
+        }
+        if (releasable) {
+            release(glueClass);
+        }
+    }
+
+
+    /**
+     * 处理已经被回收的对象，移出缓存的类没有对象了就释放掉
+     */
+    private void expungeInstances() {
+        List<GlueClass> releasableList = new ArrayList<>();
+        synchronized (classCache) {
+            InstanceReference reference;
+            while ((reference = (InstanceReference) instanceQueue.poll()) != null) {
+                instanceReferences.remove(reference);
+                GlueClass glueClass = reference.glueClass;
+                glueClass.liveInstances--;
+                if (glueClass.retired && glueClass.liveInstances == 0) {
+                    releasableList.add(glueClass);
+                }
+            }
+        }
+        for (GlueClass glueClass : releasableList) {
+            release(glueClass);
+        }
+    }
+
+
+    /**
+     * 标记移出缓存的类，没有对象的话马上释放，否则等对象都被回收之后在expungeInstances中释放
+     * 在同步代码块中调用
+     *
+     * @param glueClass
+     * @param releasableList
+     */
+    private void retire(GlueClass glueClass, List<GlueClass> releasableList) {
+        glueClass.retired = true;
+        if (glueClass.liveInstances == 0) {
+            releasableList.add(glueClass);
+        }
+    }
+
+
+    /**
+     * 释放移出缓存并且没有对象的类
+     *
+     * @param glueClass
+     */
+    private void release(GlueClass glueClass) {
         try {
-            //可以看到，这里其实是用MD5把源码加密成字节
-            byte[] md5 = MessageDigest.getInstance("MD5").digest(codeSource.getBytes());
-            String md5Str = new BigInteger(1, md5).toString(16);
-            //从对应的缓存中查看是否已经缓存了该字节了，如果有就可以直接返回class文件
-            Class<?> clazz = CLASS_CACHE.get(md5Str);
-            if (clazz == null) {
-                //如果没有就在这里把源码解析成class文件
-                clazz = groovyClassLoader.parseClass(codeSource);
-                //键值对缓存到Map中
-                CLASS_CACHE.putIfAbsent(md5Str, clazz);
+            if (glueClass.clazz != null) {
+                //groovy会为每个类缓存元类，不清理的话类永远不会被回收
+                InvokerHelper.removeClass(glueClass.clazz);
             }
-            //返回class文件
-            return clazz;
+            glueClass.classLoader.clearCache();
+            glueClass.classLoader.close();
         } catch (Exception e) {
-            return groovyClassLoader.parseClass(codeSource);
+            logger.error(">>>>>>>>>>> xxl-glue, release glue class error:{}", e);
         }
     }
 
@@ -8,6 +8,12 @@ package com.ytrue.job.core.handler;
 public abstract class IJobHandler {
 
 
+    /**
+     * 执行定时任务，设置了超时时间的话，到了超时时间执行定时任务的线程会被中断，超时的结果马上回调给调度中心
+     * 所以定时任务要响应中断，不响应的话会一直执行下去，之后的执行结果不会再回调，这个任务后面的调度也要等它执行完才能开始
+     *
+     * @throws Exception
+     */
     public abstract void execute() throws Exception;
 
 
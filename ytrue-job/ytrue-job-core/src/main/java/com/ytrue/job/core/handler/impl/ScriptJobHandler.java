@@ -28,12 +28,15 @@ public class ScriptJobHandler extends IJobHandler {
         this.glueType = glueType;
 
         // clean old script file
+        // 只删除旧版本的脚本文件，工作线程空闲太久被回收、阻塞策略覆盖之后会重新创建handler，glue代码没有变的话继续使用已经写好的脚本文件
+        String scriptFileName = new File(makeScriptFileName()).getName();
         File glueSrcPath = new File(XxlJobFileAppender.getGlueSrcPath());
         if (glueSrcPath.exists()) {
             File[] glueSrcFileList = glueSrcPath.listFiles();
             if (glueSrcFileList!=null && glueSrcFileList.length>0) {
                 for (File glueSrcFileItem : glueSrcFileList) {
-                    if (glueSrcFileItem.getName().startsWith(String.valueOf(jobId)+"_")) {
+                    if (glueSrcFileItem.getName().startsWith(String.valueOf(jobId)+"_")
+                            && !glueSrcFileItem.getName().equals(scriptFileName)) {
                         glueSrcFileItem.delete();
                     }
                 }
@@ -46,6 +49,15 @@ public class ScriptJobHandler extends IJobHandler {
         return glueUpdatetime;
     }
 
+    private String makeScriptFileName() {
+        return XxlJobFileAppender.getGlueSrcPath()
+                .concat(File.separator)
+                .concat(String.valueOf(jobId))
+                .concat("_")
+                .concat(String.valueOf(glueUpdatetime))
+                .concat(glueType.getSuffix());
+    }
+
     @Override
     public void execute() throws Exception {
 
@@ -58,12 +70,7 @@ public class ScriptJobHandler extends IJobHandler {
         String cmd = glueType.getCmd();
 
         // make script file
-        String scriptFileName = XxlJobFileAppender.getGlueSrcPath()
-                .concat(File.separator)
-                .concat(String.valueOf(jobId))
-                .concat("_")
-                .concat(String.valueOf(glueUpdatetime))
-                .concat(glueType.getSuffix());
+        String scriptFileName = makeScriptFileName();
 
         File scriptFile = new File(scriptFileName);
         if (!scriptFile.exists()) {
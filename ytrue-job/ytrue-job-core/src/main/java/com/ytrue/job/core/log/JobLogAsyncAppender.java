@@ -0,0 +1,401 @@
+package com.ytrue.job.core.log;
+
+import com.ytrue.job.core.enums.LogAppendPolicyEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 00:10
+ * @description 异步写定时任务日志的组件
+ * 原来XxlJobHelper.log每记录一行日志，都要判断文件是否存在、打开文件、写入、刷盘、关闭，日志多的定时任务大部分时间都花在了打开文件上
+ * 现在日志先放进一个有界队列，由一个后台线程写入文件，每个正在写的日志文件保持一个打开的FileChannel和一块缓冲区，
+ * 缓冲区满了或者每隔FLUSH_INTERVAL_MS写入一次文件，定时任务执行完的时候关闭文件，长时间没有写入的文件也会被关闭
+ * 读取日志的时候最多只会晚FLUSH_INTERVAL_MS看到新写的内容
+ */
+public class JobLogAsyncAppender {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobLogAsyncAppender.class);
+
+    private static JobLogAsyncAppender instance = new JobLogAsyncAppender();
+
+    public static JobLogAsyncAppender getInstance() {
+        return instance;
+    }
+
+    /**
+     * 队列的容量，按日志的条数计算
+     */
+    private static final int QUEUE_CAPACITY = 16384;
+
+    /**
+     * 每个日志文件的缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * 缓冲区中的日志最多等待多长时间写入文件
+     */
+    private static final long FLUSH_INTERVAL_MS = 200;
+
+    /**
+     * 日志文件多长时间没有写入就关闭
+     */
+    private static final long IDLE_CLOSE_MS = 10000;
+
+    /**
+     * 最多同时打开的日志文件数量，超过之后关闭最久没有写入的文件
+     */
+    private static final int MAX_OPEN_FILES = 1024;
+
+    /**
+     * 关闭文件的事件中使用的日志内容，用引用比较，不会和真正的日志混淆
+     */
+    private static final String CLOSE = new String("close");
+
+
+    /**
+     * 队列中的一条日志，appendLog为CLOSE的时候表示关闭这个文件
+     * rawLog不为null的时候是脚本的输出，原样写入文件，不再加换行符
+     */
+    private static class LogEvent {
+
+        private final String logFileName;
+
+        private final String appendLog;
+
+        private final byte[] rawLog;
+
+        private LogEvent(String logFileName, String appendLog) {
+            this.logFileName = logFileName;
+            this.appendLog = appendLog;
+            this.rawLog = null;
+        }
+
+        private LogEvent(String logFileName, byte[] rawLog) {
+            this.logFileName = logFileName;
+            this.appendLog = null;
+            this.rawLog = rawLog;
+        }
+    }
+
+
+    /**
+     * 一个打开的日志文件，只在写日志的线程中访问
+     */
+    private static class LogFile {
+
+        private final FileChannel channel;
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private long lastWriteTime;
+
+        private LogFile(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            if (bytes.length > buffer.remaining()) {
+                flush();
+            }
+            if (bytes.length > buffer.capacity()) {
+                //一条日志比缓冲区还大，比如异常的堆栈，直接写入文件
+                ByteBuffer byteBuffer = ByteBuffer.wrap(bytes);
+                while (byteBuffer.hasRemaining()) {
+                    channel.write(byteBuffer);
+                }
+            } else {
+                buffer.put(bytes);
+            }
+            lastWriteTime = System.currentTimeMillis();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        private void close() throws IOException {
+            try {
+                flush();
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+
+    private final ArrayBlockingQueue<LogEvent> logQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * 打开的日志文件，按照最近写入的顺序排列，最前面的是最久没有写入的
+     */
+    private final LinkedHashMap<String, LogFile> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 队列满了丢弃的日志条数
+     */
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile LogAppendPolicyEnum policy = LogAppendPolicyEnum.SYNC;
+
+    /**
+     * 是否接收日志，启动之后为true，停止的时候先设为false，之后的日志同步写入文件
+     */
+    private volatile boolean accepting = false;
+
+    private volatile boolean toStop = false;
+
+    private Thread writerThread;
+
+
+    /**
+     * 启动组件
+     *
+     * @param appendPolicy 为SYNC的时候不启动写日志的线程，还是原来的方式
+     */
+    public void start(LogAppendPolicyEnum appendPolicy) {
+        policy = appendPolicy;
+        if (appendPolicy == LogAppendPolicyEnum.SYNC) {
+            return;
+        }
+        toStop = false;
+        writerThread = new Thread(() -> {
+            long lastFlushTime = System.currentTimeMillis();
+            while (!toStop || !logQueue.isEmpty()) {
+                try {
+                    LogEvent logEvent = logQueue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (logEvent != null) {
+                        handle(logEvent);
+                        //一次把队列中的日志都写进缓冲区
+                        while ((logEvent = logQueue.poll()) != null) {
+                            handle(logEvent);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    if (!toStop) {
+                        logger.error(e.getMessage(), e);
+                    }
+                } catch (Throwable e) {
+                    logger.error(">>>>>>>>>>> xxl-job, JobLogAsyncAppender error:{}", e);
+                }
+                long nowTime = System.currentTimeMillis();
+                if (nowTime - lastFlushTime >= FLUSH_INTERVAL_MS) {
+                    flushAll(nowTime);
+                    lastFlushTime = nowTime;
+                }
+            }
+            closeAll();
+            logger.info(">>>>>>>>>>> xxl-job, JobLogAsyncAppender thread stop");
+        });
+        writerThread.setDaemon(true);
+        writerThread.setName("xxl-job, executor JobLogAsyncAppender");
+        writerThread.start();
+        accepting = true;
+    }
+
+
+    /**
+     * 停止组件，队列中的日志都会写入文件
+     */
+    public void toStop() {
+        if (writerThread == null) {
+            return;
+        }
+        accepting = false;
+        //不能中断写日志的线程，FileChannel在写入的时候被中断会直接关闭，缓冲区中的日志就丢了，线程最多FLUSH_INTERVAL_MS之后就会发现停止的标记
+        toStop = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
+        writerThread = null;
+        //停止的过程中才放进队列的日志，同步写入文件
+        LogEvent logEvent;
+        while ((logEvent = logQueue.poll()) != null) {
+            if (logEvent.rawLog != null) {
+                XxlJobFileAppender.appendRawSync(logEvent.logFileName, logEvent.rawLog, 0, logEvent.rawLog.length);
+            } else if (logEvent.appendLog != CLOSE) {
+                XxlJobFileAppender.appendLogSync(logEvent.logFileName, logEvent.appendLog);
+            }
+        }
+    }
+
+
+    /**
+     * 异步写入一条日志
+     *
+     * @param logFileName
+     * @param appendLog
+     * @return 没有启动的时候返回false，由调用者同步写入
+     */
+    public boolean append(String logFileName, String appendLog) {
+        if (!accepting) {
+            return false;
+        }
+        return offer(new LogEvent(logFileName, appendLog != null ? appendLog : ""));
+    }
+
+
+    /**
+     * 异步写入一段原始的日志内容，比如脚本的输出，内容会被复制一份，调用者可以继续使用原来的数组
+     *
+     * @param logFileName
+     * @param bytes
+     * @param offset
+     * @param length
+     * @return 没有启动的时候返回false，由调用者同步写入
+     */
+    public boolean appendRaw(String logFileName, byte[] bytes, int offset, int length) {
+        if (!accepting) {
+            return false;
+        }
+        return offer(new LogEvent(logFileName, Arrays.copyOfRange(bytes, offset, offset + length)));
+    }
+
+
+    private boolean offer(LogEvent logEvent) {
+        if (policy == LogAppendPolicyEnum.DROP) {
+            if (!logQueue.offer(logEvent)) {
+                droppedCount.incrementAndGet();
+            }
+            return true;
+        }
+        if (logQueue.offer(logEvent)) {
+            return true;
+        }
+        //队列满了才等待，先offer是因为已经被中断的线程等待的时候会直接抛出异常
+        //定时任务被中断的时候也不能丢掉这条日志，比如超时被中断的定时任务，也不能同步写入，那样会写到队列中这个文件还没写的日志前面
+        //所以先清除中断状态，继续等待放进队列，放进去之后再恢复中断状态
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (logQueue.offer(logEvent, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                    if (!accepting) {
+                        //组件正在停止，写日志的线程可能已经退出了，由调用者同步写入
+                        return false;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    /**
+     * 定时任务执行完了，关闭它的日志文件
+     *
+     * @param logFileName
+     */
+    public void close(String logFileName) {
+        if (accepting && logFileName != null) {
+            //关闭的事件丢了也没关系，文件空闲一段时间之后也会关闭
+            logQueue.offer(new LogEvent(logFileName, CLOSE));
+        }
+    }
+
+
+    private void handle(LogEvent logEvent) {
+        if (logEvent.appendLog == CLOSE) {
+            LogFile logFile = openFiles.remove(logEvent.logFileName);
+            if (logFile != null) {
+                closeQuietly(logEvent.logFileName, logFile);
+            }
+            return;
+        }
+        LogFile logFile = openFiles.get(logEvent.logFileName);
+        try {
+            if (logFile == null) {
+                if (openFiles.size() >= MAX_OPEN_FILES) {
+                    Iterator<Map.Entry<String, LogFile>> iterator = openFiles.entrySet().iterator();
+                    Map.Entry<String, LogFile> eldest = iterator.next();
+                    iterator.remove();
+                    closeQuietly(eldest.getKey(), eldest.getValue());
+                }
+                logFile = new LogFile(FileChannel.open(Paths.get(logEvent.logFileName),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+                openFiles.put(logEvent.logFileName, logFile);
+            }
+            logFile.write(logEvent.rawLog != null ? logEvent.rawLog : (logEvent.appendLog + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            if (logFile != null) {
+                openFiles.remove(logEvent.logFileName);
+                closeQuietly(logEvent.logFileName, logFile);
+            }
+        }
+    }
+
+
+    /**
+     * 把所有缓冲区中的日志写入文件，关闭长时间没有写入的文件
+     *
+     * @param nowTime
+     */
+    private void flushAll(long nowTime) {
+        Iterator<Map.Entry<String, LogFile>> iterator = openFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, LogFile> entry = iterator.next();
+            LogFile logFile = entry.getValue();
+            if (nowTime - logFile.lastWriteTime >= IDLE_CLOSE_MS) {
+                iterator.remove();
+                closeQuietly(entry.getKey(), logFile);
+                continue;
+            }
+            if (logFile.buffer.position() > 0) {
+                try {
+                    logFile.flush();
+                } catch (IOException e) {
+                    logger.error(e.getMessage(), e);
+                    iterator.remove();
+                    closeQuietly(entry.getKey(), logFile);
+                }
+            }
+        }
+        long dropped = droppedCount.getAndSet(0);
+        if (dropped > 0) {
+            logger.warn(">>>>>>>>>>> xxl-job, job log queue is full, dropped {} log lines.", dropped);
+        }
+    }
+
+
+    private void closeAll() {
+        for (Map.Entry<String, LogFile> entry : openFiles.entrySet()) {
+            closeQuietly(entry.getKey(), entry.getValue());
+        }
+        openFiles.clear();
+    }
+
+
+    private static void closeQuietly(String logFileName, LogFile logFile) {
+        try {
+            logFile.close();
+        } catch (IOException e) {
+            logger.error(">>>>>>>>>>> xxl-job, close job log file error, logFileName:{}", logFileName, e);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.ytrue.job.core.log;
+
+import com.ytrue.job.core.biz.model.LogResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 00:40
+ * @description 按行号读取定时任务日志的工具，调度中心查看日志的时候使用
+ * 原来每次读取都要从文件的第一行读到最后一行，定时任务执行的时候调度中心会不停地读取新的日志，日志文件很大的时候执行器的cpu都耗在这里了
+ * 现在日志文件旁边有一个.idx索引文件，每CHECKPOINT_LINES行记录一次这一行开始的位置，读取的时候直接跳到离起始行最近的位置开始读
+ * 索引是读取日志的时候顺便建立的，已经建立的部分下次直接使用，所以不管是同步还是异步写的日志、升级之前的日志都可以使用
+ * 一次最多返回MAX_READ_BYTES字节的日志，剩下的下次再读
+ */
+public class JobLogReader {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobLogReader.class);
+
+    /**
+     * 每隔多少行记录一次位置
+     */
+    private static final int CHECKPOINT_LINES = 1000;
+
+    /**
+     * 一次最多返回的日志字节数
+     */
+    private static final int MAX_READ_BYTES = 1024 * 1024;
+
+    /**
+     * 索引文件的后缀
+     */
+    private static final String INDEX_SUFFIX = ".idx";
+
+
+    /**
+     * 从fromLineNum行开始读取日志，行号从1开始，换行符和LineNumberReader一样，\n、\r、\r\n都算一行的结束
+     * 还没写完的最后一行不会返回，等写完了下次再读
+     *
+     * @param logFile
+     * @param fromLineNum
+     * @return toLineNum是读到的最后一行的行号，没有新的日志的时候是文件中已经写完的行数
+     */
+    public static LogResult readLog(File logFile, int fromLineNum) {
+        File indexFile = new File(logFile.getPath() + INDEX_SUFFIX);
+        StringBuilder logContent = new StringBuilder();
+        int toLineNum = 0;
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            List<Long> checkpoints = loadCheckpoints(indexFile, fileSize);
+            int indexedCount = checkpoints.size();
+
+            //从离起始行最近的位置开始读，checkpoints中第k个位置是第k*CHECKPOINT_LINES+1行开始的位置
+            int checkpoint = Math.min(Math.max(fromLineNum - 1, 0) / CHECKPOINT_LINES, checkpoints.size() - 1);
+            int lineNum = checkpoint * CHECKPOINT_LINES;
+            long position = checkpoints.get(checkpoint);
+            toLineNum = lineNum;
+
+            ByteReader byteReader = new ByteReader(Channels.newInputStream(channel.position(position)));
+            ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+            int contentBytes = 0;
+            boolean truncated = false;
+            int b;
+            while ((b = byteReader.read()) != -1) {
+                position++;
+                boolean collect = lineNum + 1 >= fromLineNum;
+                if (b != '\n' && b != '\r') {
+                    if (collect) {
+                        if (contentBytes + lineBuffer.size() < MAX_READ_BYTES) {
+                            lineBuffer.write(b);
+                        } else {
+                            truncated = true;
+                        }
+                    }
+                    continue;
+                }
+                if (b == '\r') {
+                    int next = byteReader.peek();
+                    if (next == -1) {
+                        //\r后面还没有写入，不知道是不是\r\n，等下次再读
+                        break;
+                    }
+                    if (next == '\n') {
+                        byteReader.read();
+                        position++;
+                    }
+                }
+                lineNum++;
+                if (lineNum % CHECKPOINT_LINES == 0 && lineNum / CHECKPOINT_LINES == checkpoints.size()) {
+                    checkpoints.add(position);
+                }
+                if (collect) {
+                    if (contentBytes > 0 && contentBytes + lineBuffer.size() >= MAX_READ_BYTES) {
+                        //这一行放不下了，下次从这一行开始读
+                        break;
+                    }
+                    logContent.append(new String(lineBuffer.toByteArray(), StandardCharsets.UTF_8));
+                    if (truncated) {
+                        //一行就超过了MAX_READ_BYTES，只返回前面的部分
+                        logContent.append("...");
+                        truncated = false;
+                    }
+                    logContent.append("\n");
+                    contentBytes += lineBuffer.size() + 1;
+                    lineBuffer.reset();
+                }
+                toLineNum = lineNum;
+                if (contentBytes >= MAX_READ_BYTES) {
+                    break;
+                }
+            }
+            if (checkpoints.size() > indexedCount) {
+                saveCheckpoints(indexFile, checkpoints, indexedCount);
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+        return new LogResult(fromLineNum, toLineNum, logContent.toString(), false);
+    }
+
+
+    /**
+     * 按字节读取日志文件，BufferedInputStream的read方法是加了锁的，一个字节一个字节地读比较慢
+     */
+    private static class ByteReader {
+
+        private final InputStream inputStream;
+
+        private final byte[] buffer = new byte[64 * 1024];
+
+        private int offset = 0;
+
+        private int limit = 0;
+
+        private ByteReader(InputStream inputStream) {
+            this.inputStream = inputStream;
+        }
+
+        private int read() throws IOException {
+            int b = peek();
+            if (b != -1) {
+                offset++;
+            }
+            return b;
+        }
+
+        private int peek() throws IOException {
+            if (offset == limit) {
+                limit = inputStream.read(buffer);
+                offset = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[offset] & 0xff;
+        }
+    }
+
+
+    /**
+     * 读取索引文件，索引文件中按顺序存放第2个及以后的位置，第1个位置总是0
+     *
+     * @param indexFile
+     * @param fileSize  日志文件的大小，索引中的位置超过了这个大小说明日志文件被重新创建过，索引不能用了
+     * @return
+     */
+    private static List<Long> loadCheckpoints(File indexFile, long fileSize) {
+        List<Long> checkpoints = new ArrayList<>();
+        checkpoints.add(0L);
+        if (!indexFile.exists()) {
+            return checkpoints;
+        }
+        try {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+            while (byteBuffer.remaining() >= Long.BYTES) {
+                long position = byteBuffer.getLong();
+                if (position <= checkpoints.get(checkpoints.size() - 1) || position > fileSize) {
+                    logger.warn(">>>>>>>>>>> xxl-job, job log index invalid, rebuild it, indexFile:{}", indexFile.getPath());
+                    indexFile.delete();
+                    checkpoints.subList(1, checkpoints.size()).clear();
+                    return checkpoints;
+                }
+                checkpoints.add(position);
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+        return checkpoints;
+    }
+
+
+    /**
+     * 把新建立的位置写入索引文件，每个位置在文件中的偏移是固定的，同时读取同一个日志的两个请求写入的内容是一样的，不需要加锁
+     *
+     * @param indexFile
+     * @param checkpoints
+     * @param fromIndex   已经在索引文件中的位置数量，包括第1个位置
+     */
+    private static void saveCheckpoints(File indexFile, List<Long> checkpoints, int fromIndex) {
+        ByteBuffer byteBuffer = ByteBuffer.allocate((checkpoints.size() - fromIndex) * Long.BYTES);
+        for (int i = fromIndex; i < checkpoints.size(); i++) {
+            byteBuffer.putLong(checkpoints.get(i));
+        }
+        byteBuffer.flip();
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long position = (long) (fromIndex - 1) * Long.BYTES;
+            while (byteBuffer.hasRemaining()) {
+                position += channel.write(byteBuffer, position);
+            }
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+}
@@ -113,6 +113,50 @@ public class XxlJobFileAppender {
         if (logFileName == null || logFileName.trim().length() == 0) {
             return;
         }
+        //启动了异步写日志的组件的话，交给它批量写入文件
+        if (JobLogAsyncAppender.getInstance().append(logFileName, appendLog)) {
+            return;
+        }
+        appendLogSync(logFileName, appendLog);
+    }
+
+
+    /**
+     * 把一段原始的内容写入日志文件，不加换行符，脚本的输出使用这个方法
+     *
+     * @param logFileName
+     * @param bytes
+     * @param offset
+     * @param length
+     */
+    public static void appendRaw(String logFileName, byte[] bytes, int offset, int length) {
+        if (logFileName == null || logFileName.trim().length() == 0 || length <= 0) {
+            return;
+        }
+        if (JobLogAsyncAppender.getInstance().appendRaw(logFileName, bytes, offset, length)) {
+            return;
+        }
+        appendRawSync(logFileName, bytes, offset, length);
+    }
+
+
+    /**
+     * 定时任务执行完了，关闭它的日志文件，同步写日志的时候什么也不做
+     *
+     * @param logFileName
+     */
+    public static void closeLog(String logFileName) {
+        JobLogAsyncAppender.getInstance().close(logFileName);
+    }
+
+
+    /**
+     * 在当前线程中把日志写入文件，每次都打开、关闭文件
+     *
+     * @param logFileName
+     * @param appendLog
+     */
+    static void appendLogSync(String logFileName, String appendLog) {
         // 根据文件名字创建file
         File logFile = new File(logFileName);
 
@@ -156,7 +200,24 @@ public class XxlJobFileAppender {
 
 
     /**
-     * 读取本地的日志文件内容，这个方法虽然有点长，但都是常规逻辑，就是最基础的读取文件的操作
+     * 在当前线程中把一段原始的内容写入日志文件
+     *
+     * @param logFileName
+     * @param bytes
+     * @param offset
+     * @param length
+     */
+    static void appendRawSync(String logFileName, byte[] bytes, int offset, int length) {
+        try (FileOutputStream fos = new FileOutputStream(logFileName, true)) {
+            fos.write(bytes, offset, length);
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+
+    /**
+     * 读取本地的日志文件内容
      *
      * @param logFileName 文件名
      * @param fromLineNum 第几行开始
@@ -173,38 +234,8 @@ public class XxlJobFileAppender {
         if (!logFile.exists()) {
             return new LogResult(fromLineNum, 0, "readLog fail, logFile not exists", true);
         }
-        //  创建一个 StringBuffer ，用于存储读取到的日志内容。
-        StringBuffer logContentBuffer = new StringBuffer();
-        // 初始化 toLineNum 为0，用于记录读取到的行数。
-        int toLineNum = 0;
-        // 创建一个 LineNumberReader ，用于逐行读取日志文件。
-        LineNumberReader reader = null;
-
-
-        try {
-            //
-            reader = new LineNumberReader(new InputStreamReader(new FileInputStream(logFile), "utf-8"));
-            String line = null;
-            while ((line = reader.readLine()) != null) {
-                // 获取读取的行数
-                toLineNum = reader.getLineNumber();
-                // 在读取过程中，记录当前行数到 toLineNum 中，并检查是否达到从指定行数开始读取的条件。
-                if (toLineNum >= fromLineNum) {
-                    logContentBuffer.append(line).append("\n");
-                }
-            }
-        } catch (IOException e) {
-            logger.error(e.getMessage(), e);
-        } finally {
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException e) {
-                    logger.error(e.getMessage(), e);
-                }
-            }
-        }
-        return new LogResult(fromLineNum, toLineNum, logContentBuffer.toString(), false);
+        //原来是用LineNumberReader从第一行开始读，现在借助索引直接跳到起始行附近开始读
+        return JobLogReader.readLog(logFile, fromLineNum);
     }
 
 
@@ -0,0 +1,304 @@
+package com.ytrue.job.core.remoting;
+
+import com.ytrue.job.core.biz.model.ReturnT;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 01:40
+ * @description 调度中心到一个执行器的二进制协议长连接，同时也是这条连接上的入站处理器
+ * 连接建立之后先发送前导字节和握手帧，收到执行器回复的前导字节和握手成功的响应之后，才会发送排队的请求
+ * 请求和响应通过请求id对应，一条连接上可以同时有很多请求，先处理完的先返回，某个请求超时了也不用关闭连接
+ * 注意，等待响应的请求只会在这条连接的IO线程中访问，所以不需要加锁
+ */
+class BinaryConnection extends ByteToMessageDecoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryConnection.class);
+
+    private final String accessToken;
+
+    private final long handshakeTimeoutMillis;
+
+    /**
+     * 握手的结果，握手失败的原因是执行器不支持二进制协议的时候，异常是UnsupportedException
+     */
+    private final CompletableFuture<Channel> handshakeFuture = new CompletableFuture<>();
+
+    private volatile ChannelFuture connectFuture;
+
+    /**
+     * 是否已经收到了执行器回复的前导字节
+     */
+    private boolean preambleReceived = false;
+
+    /**
+     * 下一个请求id，0是握手使用的
+     */
+    private int nextRequestId = 1;
+
+    /**
+     * 已经发送出去，还没有收到响应的请求
+     */
+    private final Map<Integer, PendingCall> pendingCalls = new HashMap<>();
+
+    private volatile boolean closed = false;
+
+
+    /**
+     * 执行器不支持二进制协议
+     */
+    static class UnsupportedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedException(String message) {
+            super(message);
+        }
+    }
+
+
+    /**
+     * 执行器拒绝了握手，比如token不对，message是执行器返回的信息
+     */
+    static class RejectedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        RejectedException(String message) {
+            super(message);
+        }
+    }
+
+
+    private static class PendingCall {
+
+        private final CompletableFuture<ReturnT<?>> future;
+
+        private final ScheduledFuture<?> timeoutFuture;
+
+        private PendingCall(CompletableFuture<ReturnT<?>> future, ScheduledFuture<?> timeoutFuture) {
+            this.future = future;
+            this.timeoutFuture = timeoutFuture;
+        }
+    }
+
+
+    BinaryConnection(String accessToken, long handshakeTimeoutMillis) {
+        this.accessToken = accessToken;
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+    }
+
+
+    void setConnectFuture(ChannelFuture connectFuture) {
+        this.connectFuture = connectFuture;
+        connectFuture.addListener(f -> {
+            if (!f.isSuccess()) {
+                closed = true;
+                handshakeFuture.completeExceptionally(f.cause());
+            }
+        });
+    }
+
+
+    /**
+     * 发送请求，握手成功之后才会真正发送
+     *
+     * @param op
+     * @param bodyWriter    写入请求内容的方法，在IO线程中调用
+     * @param timeoutMillis
+     * @return
+     */
+    CompletableFuture<ReturnT<?>> send(byte op, Consumer<ByteBuf> bodyWriter, long timeoutMillis) {
+        CompletableFuture<ReturnT<?>> future = new CompletableFuture<>();
+        handshakeFuture.whenComplete((channel, e) -> {
+            if (e != null) {
+                future.completeExceptionally(e);
+                return;
+            }
+            channel.eventLoop().execute(() -> write(channel, op, bodyWriter, timeoutMillis, future));
+        });
+        return future;
+    }
+
+
+    private void write(Channel channel, byte op, Consumer<ByteBuf> bodyWriter, long timeoutMillis, CompletableFuture<ReturnT<?>> future) {
+        if (!channel.isActive()) {
+            future.completeExceptionally(new IOException("xxl-job binary connection closed, remote:" + channel.remoteAddress()));
+            return;
+        }
+        int requestId = nextRequestId++;
+        if (nextRequestId <= 0) {
+            nextRequestId = 1;
+        }
+        ByteBuf out = channel.alloc().buffer();
+        try {
+            int lengthIndex = BinaryProtocol.beginFrame(out, requestId, op);
+            if (bodyWriter != null) {
+                bodyWriter.accept(out);
+            }
+            BinaryProtocol.endFrame(out, lengthIndex);
+        } catch (Exception e) {
+            out.release();
+            future.completeExceptionally(e);
+            return;
+        }
+        //超时之后只是这个请求失败，别的请求不受影响，连接也不用关闭
+        ScheduledFuture<?> timeoutFuture = channel.eventLoop().schedule(() -> {
+            if (pendingCalls.remove(requestId) != null) {
+                future.completeExceptionally(new TimeoutException("xxl-job binary request timeout(" + timeoutMillis + "ms), remote:" + channel.remoteAddress()));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        pendingCalls.put(requestId, new PendingCall(future, timeoutFuture));
+        channel.writeAndFlush(out).addListener(f -> {
+            if (!f.isSuccess()) {
+                //写失败了连接也就不能用了，关闭之后channelInactive会把等待中的请求全部通知失败
+                channel.close();
+            }
+        });
+    }
+
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        //发送前导字节和握手帧
+        ByteBuf out = ctx.alloc().buffer();
+        out.writeInt(BinaryProtocol.MAGIC);
+        out.writeInt(BinaryProtocol.PREAMBLE_TAIL);
+        int lengthIndex = BinaryProtocol.beginFrame(out, 0, BinaryProtocol.OP_HANDSHAKE);
+        out.writeByte(BinaryProtocol.VERSION);
+        BinaryProtocol.writeString(out, accessToken);
+        BinaryProtocol.endFrame(out, lengthIndex);
+        ctx.writeAndFlush(out);
+        //旧版本的执行器一般会马上返回http的响应，但是也可能什么都不返回，所以握手也要有超时时间
+        ctx.executor().schedule(() -> {
+            if (handshakeFuture.completeExceptionally(new UnsupportedException("xxl-job binary handshake timeout(" + handshakeTimeoutMillis + "ms), remote:" + ctx.channel().remoteAddress()))) {
+                ctx.close();
+            }
+        }, handshakeTimeoutMillis, TimeUnit.MILLISECONDS);
+        super.channelActive(ctx);
+    }
+
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+        if (!preambleReceived) {
+            if (in.readableBytes() < 8) {
+                return;
+            }
+            if (in.getInt(in.readerIndex()) != BinaryProtocol.MAGIC || in.getInt(in.readerIndex() + 4) != BinaryProtocol.PREAMBLE_TAIL) {
+                //执行器返回的不是前导字节，说明执行器是旧版本的，只能使用http
+                in.skipBytes(in.readableBytes());
+                handshakeFuture.completeExceptionally(new UnsupportedException("xxl-job binary protocol not supported, remote:" + ctx.channel().remoteAddress()));
+                ctx.close();
+                return;
+            }
+            in.skipBytes(8);
+            preambleReceived = true;
+        }
+        while (in.readableBytes() >= 4) {
+            int frameLength = in.getInt(in.readerIndex());
+            if (frameLength < BinaryProtocol.FRAME_HEADER_LENGTH || frameLength > BinaryProtocol.MAX_FRAME_LENGTH) {
+                logger.warn(">>>>>>>>>>> xxl-job binary client receive invalid frame, length:{}, remote:{}", frameLength, ctx.channel().remoteAddress());
+                in.skipBytes(in.readableBytes());
+                ctx.close();
+                return;
+            }
+            if (in.readableBytes() < 4 + frameLength) {
+                return;
+            }
+            in.skipBytes(4);
+            ByteBuf frame = in.readSlice(frameLength);
+            int requestId = frame.readInt();
+            byte op = frame.readByte();
+            ReturnT<?> result = BinaryProtocol.readReturnT(frame);
+            if (op == BinaryProtocol.OP_HANDSHAKE) {
+                if (result.getCode() == ReturnT.SUCCESS_CODE) {
+                    handshakeFuture.complete(ctx.channel());
+                } else {
+                    //token不对，执行器会关闭连接
+                    handshakeFuture.completeExceptionally(new RejectedException(result.getMsg()));
+                }
+                continue;
+            }
+            PendingCall pendingCall = pendingCalls.remove(requestId);
+            if (pendingCall != null) {
+                pendingCall.timeoutFuture.cancel(false);
+                pendingCall.future.complete(result);
+            }
+        }
+    }
+
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        closed = true;
+        handshakeFuture.completeExceptionally(new IOException("xxl-job binary connection closed, remote:" + ctx.channel().remoteAddress()));
+        //已经发送出去的请求，执行器可能已经处理了，结果是未知的
+        RemotingResultUnknownException closedException = new RemotingResultUnknownException("xxl-job binary connection closed before response, remote:" + ctx.channel().remoteAddress());
+        for (PendingCall pendingCall : pendingCalls.values()) {
+            pendingCall.timeoutFuture.cancel(false);
+            pendingCall.future.completeExceptionally(closedException);
+        }
+        pendingCalls.clear();
+        super.channelInactive(ctx);
+    }
+
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.error(">>>>>>>>>>> xxl-job binary client caught exception, remote:{}", ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            //长时间没有请求的连接就关闭，还有请求在等待响应的时候不关闭，交给请求自己的超时处理
+            if (pendingCalls.isEmpty()) {
+                ctx.close();
+                logger.debug(">>>>>>>>>>> xxl-job binary client close an idle channel.");
+            }
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+
+    /**
+     * 连接是否还可以使用，连接建立中、握手中的也算可以使用
+     *
+     * @return
+     */
+    boolean isAvailable() {
+        if (closed || handshakeFuture.isCompletedExceptionally()) {
+            return false;
+        }
+        if (!connectFuture.isDone()) {
+            return true;
+        }
+        return connectFuture.isSuccess() && connectFuture.channel().isActive();
+    }
+
+
+    void close() {
+        connectFuture.channel().close();
+    }
+}
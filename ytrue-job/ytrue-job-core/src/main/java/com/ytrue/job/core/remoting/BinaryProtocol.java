@@ -0,0 +1,211 @@
+package com.ytrue.job.core.remoting;
+
+import com.ytrue.job.core.biz.model.*;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.util.CharsetUtil;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 01:40
+ * @description 调度中心和执行器之间的二进制协议，执行器的内嵌服务器在同一个端口上同时支持http和这个协议
+ * http的请求每次都要带上请求头，请求体和响应体都是json字符串，心跳检测这种很小的请求大部分开销都花在了编解码上
+ * 这个协议的连接建立之后，双方先发送8个字节的前导字节，也就是MAGIC和PREAMBLE_TAIL，然后客户端发送一个握手帧，带上协议版本和token，token只在握手的时候校验一次
+ * 之后的每一帧都是[4个字节的长度][4个字节的请求id][1个字节的操作类型][内容]，长度不包括自己，响应帧的请求id和请求帧一样
+ * 同一条连接上的请求可以并发处理，响应通过请求id对应，不需要按照请求的顺序返回
+ * 字符串的编码是[4个字节的长度][utf-8字节]，长度为-1的时候表示null
+ */
+public final class BinaryProtocol {
+
+    /**
+     * 前导字节的前4个字节，也就是"XJOB"，执行器的内嵌服务器根据它判断连接使用的是哪种协议
+     * 旧版本的执行器不认识这个协议，会返回http的响应，客户端收到的前4个字节不是MAGIC，就知道这个执行器只能使用http
+     */
+    public static final int MAGIC = 0x584A4F42;
+
+    /**
+     * 前导字节中跟在MAGIC后面的\r\n\r\n
+     * 旧版本的执行器会把前导字节当成一个不合法的http请求，马上返回http的响应，客户端不用等到超时就知道执行器不支持二进制协议
+     */
+    public static final int PREAMBLE_TAIL = 0x0D0A0D0A;
+
+    /**
+     * 协议的版本
+     */
+    public static final byte VERSION = 1;
+
+    /**
+     * 一帧的最大长度，和http的HttpObjectAggregator保持一致
+     */
+    public static final int MAX_FRAME_LENGTH = 5 * 1024 * 1024;
+
+    /**
+     * 长度字段之后的帧头，4个字节的请求id加上1个字节的操作类型
+     */
+    public static final int FRAME_HEADER_LENGTH = 5;
+
+    /**
+     * 操作类型，握手的请求id固定为0
+     */
+    public static final byte OP_HANDSHAKE = 0;
+    public static final byte OP_BEAT = 1;
+    public static final byte OP_IDLE_BEAT = 2;
+    public static final byte OP_RUN = 3;
+    public static final byte OP_KILL = 4;
+    public static final byte OP_LOG = 5;
+    public static final byte OP_GLUE_COMPILE = 6;
+
+
+    private BinaryProtocol() {
+    }
+
+
+    /**
+     * 写入一帧的帧头，长度字段先占位，内容写完之后再调用endFrame回填
+     *
+     * @param out
+     * @param requestId
+     * @param op
+     * @return 长度字段的位置
+     */
+    public static int beginFrame(ByteBuf out, int requestId, byte op) {
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        out.writeInt(requestId);
+        out.writeByte(op);
+        return lengthIndex;
+    }
+
+
+    public static void endFrame(ByteBuf out, int lengthIndex) {
+        out.setInt(lengthIndex, out.writerIndex() - lengthIndex - 4);
+    }
+
+
+    public static void writeString(ByteBuf out, String value) {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        int lengthIndex = out.writerIndex();
+        out.writeInt(0);
+        int length = ByteBufUtil.writeUtf8(out, value);
+        out.setInt(lengthIndex, length);
+    }
+
+
+    public static String readString(ByteBuf in) {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = in.toString(in.readerIndex(), length, CharsetUtil.UTF_8);
+        in.skipBytes(length);
+        return value;
+    }
+
+
+    public static void writeTriggerParam(ByteBuf out, TriggerParam triggerParam) {
+        out.writeInt(triggerParam.getJobId());
+        writeString(out, triggerParam.getExecutorHandler());
+        writeString(out, triggerParam.getExecutorParams());
+        writeString(out, triggerParam.getExecutorBlockStrategy());
+        out.writeInt(triggerParam.getExecutorTimeout());
+        out.writeLong(triggerParam.getLogId());
+        out.writeLong(triggerParam.getLogDateTime());
+        writeString(out, triggerParam.getGlueType());
+        writeString(out, triggerParam.getGlueSource());
+        out.writeLong(triggerParam.getGlueUpdatetime());
+        out.writeInt(triggerParam.getBroadcastIndex());
+        out.writeInt(triggerParam.getBroadcastTotal());
+        writeString(out, triggerParam.getShardAdminAddress());
+    }
+
+
+    public static TriggerParam readTriggerParam(ByteBuf in) {
+        TriggerParam triggerParam = new TriggerParam();
+        triggerParam.setJobId(in.readInt());
+        triggerParam.setExecutorHandler(readString(in));
+        triggerParam.setExecutorParams(readString(in));
+        triggerParam.setExecutorBlockStrategy(readString(in));
+        triggerParam.setExecutorTimeout(in.readInt());
+        triggerParam.setLogId(in.readLong());
+        triggerParam.setLogDateTime(in.readLong());
+        triggerParam.setGlueType(readString(in));
+        triggerParam.setGlueSource(readString(in));
+        triggerParam.setGlueUpdatetime(in.readLong());
+        triggerParam.setBroadcastIndex(in.readInt());
+        triggerParam.setBroadcastTotal(in.readInt());
+        //调度中心的地址是后来加在最后的，旧版本的调度中心发来的请求没有这个字段
+        if (in.isReadable()) {
+            triggerParam.setShardAdminAddress(readString(in));
+        }
+        return triggerParam;
+    }
+
+
+    public static void writeLogParam(ByteBuf out, LogParam logParam) {
+        out.writeLong(logParam.getLogDateTim());
+        out.writeLong(logParam.getLogId());
+        out.writeInt(logParam.getFromLineNum());
+    }
+
+
+    public static LogParam readLogParam(ByteBuf in) {
+        return new LogParam(in.readLong(), in.readLong(), in.readInt());
+    }
+
+
+    public static void writeGlueParam(ByteBuf out, GlueParam glueParam) {
+        out.writeInt(glueParam.getJobId());
+        writeString(out, glueParam.getGlueType());
+        writeString(out, glueParam.getGlueSource());
+        out.writeLong(glueParam.getGlueUpdatetime());
+    }
+
+
+    public static GlueParam readGlueParam(ByteBuf in) {
+        return new GlueParam(in.readInt(), readString(in), readString(in), in.readLong());
+    }
+
+
+    /**
+     * 写入ReturnT，content只支持String和LogResult，这也是执行器接口的全部返回类型
+     *
+     * @param out
+     * @param returnT
+     */
+    public static void writeReturnT(ByteBuf out, ReturnT<?> returnT) {
+        out.writeInt(returnT.getCode());
+        writeString(out, returnT.getMsg());
+        Object content = returnT.getContent();
+        if (content instanceof LogResult) {
+            LogResult logResult = (LogResult) content;
+            out.writeByte(2);
+            out.writeInt(logResult.getFromLineNum());
+            out.writeInt(logResult.getToLineNum());
+            writeString(out, logResult.getLogContent());
+            out.writeBoolean(logResult.isEnd());
+        } else if (content != null) {
+            out.writeByte(1);
+            writeString(out, content.toString());
+        } else {
+            out.writeByte(0);
+        }
+    }
+
+
+    @SuppressWarnings("unchecked")
+    public static <T> ReturnT<T> readReturnT(ByteBuf in) {
+        ReturnT<Object> returnT = new ReturnT<>();
+        returnT.setCode(in.readInt());
+        returnT.setMsg(readString(in));
+        byte contentType = in.readByte();
+        if (contentType == 1) {
+            returnT.setContent(readString(in));
+        } else if (contentType == 2) {
+            returnT.setContent(new LogResult(in.readInt(), in.readInt(), readString(in), in.readBoolean()));
+        }
+        return (ReturnT<T>) returnT;
+    }
+}
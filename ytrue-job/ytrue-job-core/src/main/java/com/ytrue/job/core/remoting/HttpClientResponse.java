@@ -0,0 +1,32 @@
+package com.ytrue.job.core.remoting;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 15:30
+ * @description http客户端收到的响应，响应体在IO线程中就已经转换成字符串了，不需要使用者再去释放ByteBuf
+ */
+public class HttpClientResponse {
+
+    /**
+     * 响应的状态码
+     */
+    private final int statusCode;
+
+    /**
+     * 响应体
+     */
+    private final String content;
+
+    public HttpClientResponse(int statusCode, String content) {
+        this.statusCode = statusCode;
+        this.content = content;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,329 @@
+package com.ytrue.job.core.remoting;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 15:35
+ * @description 连接池中的一条http长连接，同时也是这条连接上的入站处理器
+ * http/1.1规定同一条连接上的响应必须按照请求的顺序返回，所以这里不需要给请求编号，用一个队列记录已经发出去的请求，收到一个响应就从队头取出一个请求
+ * 但是旧版本的执行器是在业务线程池中并发处理请求的，谁先处理完谁先响应，并不保证顺序，所以默认一条连接上同时只有一个请求在等待响应，
+ * 后面的请求先在这条连接上排队，上一个响应回来之后再发送。只有客户端开启了流水线，并且执行器在响应头中声明了会按顺序响应，才会连续发送多个请求
+ * 请求超时之后只有这个请求失败，连接上的响应已经对不上了，所以连接要关闭：已经发出去的请求结果未知，还在排队的请求没有发送过，会换一条连接重新发送
+ * 注意，两个队列只会在这条连接的IO线程中访问，所以不需要加锁
+ */
+class HttpConnection extends SimpleChannelInboundHandler<FullHttpResponse> {
+
+    private static final Logger logger = LoggerFactory.getLogger(HttpConnection.class);
+
+    /**
+     * 这条连接所属的连接池，连接断开的时候，还没有发送的请求要交给连接池换一条连接发送
+     */
+    private final HttpConnectionPool pool;
+
+    /**
+     * 连接建立的结果，连接建立完成之前提交的请求会在连接建立之后再发送
+     * 处理器要先创建出来才能添加到pipeline中，所以这个属性是在发起连接之后再赋值的
+     */
+    private volatile ChannelFuture connectFuture;
+
+    /**
+     * 已经发送出去，还没有收到响应的请求
+     */
+    private final Deque<PendingRequest> inflightQueue = new ArrayDeque<>();
+
+    /**
+     * 还没有发送出去，在这条连接上排队的请求
+     */
+    private final Deque<PendingRequest> waitingQueue = new ArrayDeque<>();
+
+    /**
+     * 执行器是否声明了会按照请求的顺序返回响应，只在IO线程中访问
+     */
+    private boolean orderedResponses = false;
+
+    /**
+     * 这条连接上还没有完成的请求数量，包括还没有发送出去的，连接池根据这个数量来选择连接
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    /**
+     * 连接是否已经关闭了
+     */
+    private volatile boolean closed = false;
+
+
+    static class PendingRequest {
+
+        private final FullHttpRequest request;
+
+        private final CompletableFuture<HttpClientResponse> future;
+
+        /**
+         * 请求的截止时间，换一条连接发送的时候也不会重新计算
+         */
+        private final long deadline;
+
+        private final long timeoutMillis;
+
+        /**
+         * 是否已经换过一次连接了，只换一次，避免在连接不断失败的时候来回转移
+         */
+        private boolean rerouted = false;
+
+        /**
+         * 超时检测的定时任务，收到响应之后要取消
+         */
+        private ScheduledFuture<?> timeoutFuture;
+
+        private PendingRequest(FullHttpRequest request, long timeoutMillis) {
+            this.request = request;
+            this.future = new CompletableFuture<>();
+            this.timeoutMillis = timeoutMillis;
+            this.deadline = System.currentTimeMillis() + timeoutMillis;
+        }
+    }
+
+
+    HttpConnection(HttpConnectionPool pool) {
+        this.pool = pool;
+    }
+
+
+    void setConnectFuture(ChannelFuture connectFuture) {
+        this.connectFuture = connectFuture;
+    }
+
+
+    /**
+     * 发送请求，请求的结果通过future通知
+     *
+     * @param request
+     * @param timeoutMillis
+     * @return
+     */
+    CompletableFuture<HttpClientResponse> send(FullHttpRequest request, long timeoutMillis) {
+        PendingRequest pendingRequest = new PendingRequest(request, timeoutMillis);
+        enqueue(pendingRequest);
+        return pendingRequest.future;
+    }
+
+
+    /**
+     * 把请求交给这条连接发送，换连接发送的请求也是从这里进来的
+     *
+     * @param pendingRequest
+     */
+    void enqueue(PendingRequest pendingRequest) {
+        pendingCount.incrementAndGet();
+        pendingRequest.future.whenComplete((response, e) -> pendingCount.decrementAndGet());
+        //连接建立之后才能发送，ChannelFuture的监听器是按照添加的顺序在IO线程中回调的，所以请求的顺序不会乱
+        connectFuture.addListener(f -> {
+            if (!f.isSuccess()) {
+                pendingRequest.request.release();
+                pendingRequest.future.completeExceptionally(f.cause());
+                return;
+            }
+            Channel channel = connectFuture.channel();
+            channel.eventLoop().execute(() -> write(channel, pendingRequest));
+        });
+    }
+
+
+    /**
+     * 在IO线程中发送请求，前面还有请求在等待响应并且不能使用流水线的话，就先排队
+     *
+     * @param channel
+     * @param pendingRequest
+     */
+    private void write(Channel channel, PendingRequest pendingRequest) {
+        if (!channel.isActive()) {
+            closed = true;
+            reroute(pendingRequest);
+            return;
+        }
+        long remainingMillis = pendingRequest.deadline - System.currentTimeMillis();
+        if (remainingMillis <= 0) {
+            notSent(pendingRequest, "timeout(" + pendingRequest.timeoutMillis + "ms) before sent");
+            return;
+        }
+        pendingRequest.timeoutFuture = channel.eventLoop().schedule(() -> timeout(channel, pendingRequest), remainingMillis, TimeUnit.MILLISECONDS);
+        if (inflightQueue.isEmpty() || isPipelining()) {
+            doWrite(channel, pendingRequest);
+        } else {
+            waitingQueue.addLast(pendingRequest);
+        }
+    }
+
+
+    private void doWrite(Channel channel, PendingRequest pendingRequest) {
+        inflightQueue.addLast(pendingRequest);
+        channel.writeAndFlush(pendingRequest.request).addListener(f -> {
+            if (!f.isSuccess()) {
+                //写失败了连接也就不能用了，关闭之后channelInactive会处理两个队列中的请求
+                channel.close();
+            }
+        });
+    }
+
+
+    /**
+     * 请求超时了，只有这个请求失败
+     */
+    private void timeout(Channel channel, PendingRequest pendingRequest) {
+        if (waitingQueue.remove(pendingRequest)) {
+            //还在排队，说明前面的请求一直没有响应，这个请求还没有发送过
+            notSent(pendingRequest, "timeout(" + pendingRequest.timeoutMillis + "ms) before sent");
+            return;
+        }
+        if (inflightQueue.remove(pendingRequest)) {
+            pendingRequest.future.completeExceptionally(new TimeoutException("xxl-job http request timeout(" + pendingRequest.timeoutMillis + "ms), remote:" + channel.remoteAddress()));
+            //这个请求的响应以后可能还会回来，连接上的响应已经对不上了，只能关闭
+            channel.close();
+        }
+    }
+
+
+    /**
+     * 还没有发送过的请求换一条连接发送，已经换过一次或者已经超时的话就以没有发送的原因失败
+     */
+    private void reroute(PendingRequest pendingRequest) {
+        if (pendingRequest.timeoutFuture != null) {
+            pendingRequest.timeoutFuture.cancel(false);
+        }
+        if (pendingRequest.rerouted || pendingRequest.deadline <= System.currentTimeMillis()) {
+            notSent(pendingRequest, "connection closed before sent");
+            return;
+        }
+        pendingRequest.rerouted = true;
+        try {
+            pool.acquire().enqueue(pendingRequest);
+        } catch (Exception e) {
+            notSent(pendingRequest, e.getMessage());
+        }
+    }
+
+
+    private void notSent(PendingRequest pendingRequest, String reason) {
+        if (pendingRequest.timeoutFuture != null) {
+            pendingRequest.timeoutFuture.cancel(false);
+        }
+        pendingRequest.request.release();
+        pendingRequest.future.completeExceptionally(new RemotingNotSentException("xxl-job http request not sent, " + reason + ", remote:" + pool.getAddress()));
+    }
+
+
+    /**
+     * 能不能在上一个响应回来之前继续发送请求
+     */
+    private boolean isPipelining() {
+        return orderedResponses && pool.isPipelining();
+    }
+
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg) throws Exception {
+        PendingRequest pendingRequest = inflightQueue.pollFirst();
+        if (pendingRequest == null) {
+            //没有请求却收到了响应，说明连接的状态已经乱了，直接关闭
+            logger.warn(">>>>>>>>>>> xxl-job http client receive unexpected response, remote:{}", ctx.channel().remoteAddress());
+            ctx.close();
+            return;
+        }
+        pendingRequest.timeoutFuture.cancel(false);
+        pendingRequest.future.complete(new HttpClientResponse(msg.status().code(), msg.content().toString(CharsetUtil.UTF_8)));
+        orderedResponses = NettyHttpClient.PIPELINING_ORDERED.equals(msg.headers().get(NettyHttpClient.PIPELINING_HEADER));
+        if (!HttpUtil.isKeepAlive(msg)) {
+            //服务端不支持长连接，用完就关闭，排队的请求在channelInactive中换一条连接发送
+            ctx.close();
+            return;
+        }
+        //发送排队的请求
+        while (!waitingQueue.isEmpty() && (inflightQueue.isEmpty() || isPipelining())) {
+            doWrite(ctx.channel(), waitingQueue.pollFirst());
+        }
+    }
+
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        closed = true;
+        PendingRequest pendingRequest;
+        //已经发送出去的请求，执行器可能已经处理了，结果是未知的
+        while ((pendingRequest = inflightQueue.pollFirst()) != null) {
+            pendingRequest.timeoutFuture.cancel(false);
+            pendingRequest.future.completeExceptionally(new RemotingResultUnknownException("xxl-job http connection closed before response, remote:" + ctx.channel().remoteAddress()));
+        }
+        //还没有发送的请求换一条连接发送
+        while ((pendingRequest = waitingQueue.pollFirst()) != null) {
+            reroute(pendingRequest);
+        }
+        super.channelInactive(ctx);
+    }
+
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.error(">>>>>>>>>>> xxl-job http client caught exception, remote:{}", ctx.channel().remoteAddress(), cause);
+        ctx.close();
+    }
+
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            //长时间没有请求的连接就关闭，还有请求在等待响应的时候不关闭，交给请求自己的超时处理
+            if (inflightQueue.isEmpty() && waitingQueue.isEmpty()) {
+                ctx.close();
+                logger.debug(">>>>>>>>>>> xxl-job http client close an idle channel.");
+            }
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+
+    /**
+     * 连接是否还可以使用，连接建立中的也算可以使用
+     *
+     * @return
+     */
+    boolean isAvailable() {
+        if (closed) {
+            return false;
+        }
+        if (!connectFuture.isDone()) {
+            return true;
+        }
+        return connectFuture.isSuccess() && connectFuture.channel().isActive();
+    }
+
+
+    int getPendingCount() {
+        return pendingCount.get();
+    }
+
+
+    void close() {
+        connectFuture.channel().close();
+    }
+}
@@ -0,0 +1,80 @@
+package com.ytrue.job.core.remoting;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 15:45
+ * @description 一个地址对应的连接池
+ * 选择连接的规则很简单：有空闲的连接就用空闲的连接，没有空闲的连接并且连接数还没到上限就新建一条，
+ * 连接数到了上限，就选正在处理的请求最少的那条连接，请求会排在这条连接上已有的请求后面发送
+ * 连接断开的时候还没有发送的请求，也是通过这里换一条连接发送的
+ */
+class HttpConnectionPool {
+
+    private final NettyHttpClient client;
+
+    private final String host;
+
+    private final int port;
+
+    private final boolean ssl;
+
+    /**
+     * 连接池中的连接，只在同步代码块中访问
+     */
+    private final List<HttpConnection> connections = new ArrayList<>();
+
+
+    HttpConnectionPool(NettyHttpClient client, String host, int port, boolean ssl) {
+        this.client = client;
+        this.host = host;
+        this.port = port;
+        this.ssl = ssl;
+    }
+
+
+    /**
+     * 得到一条可以发送请求的连接
+     *
+     * @return
+     */
+    synchronized HttpConnection acquire() {
+        //先把已经关闭的连接移除
+        connections.removeIf(connection -> !connection.isAvailable());
+        HttpConnection best = null;
+        for (HttpConnection connection : connections) {
+            if (best == null || connection.getPendingCount() < best.getPendingCount()) {
+                best = connection;
+            }
+        }
+        if (best != null && (best.getPendingCount() == 0 || connections.size() >= client.getMaxConnectionsPerAddress())) {
+            return best;
+        }
+        HttpConnection connection = client.connect(this, host, port, ssl);
+        connections.add(connection);
+        return connection;
+    }
+
+
+    boolean isPipelining() {
+        return client.isPipelining();
+    }
+
+
+    String getAddress() {
+        return host + ":" + port;
+    }
+
+
+    /**
+     * 关闭连接池中所有的连接
+     */
+    synchronized void close() {
+        for (HttpConnection connection : connections) {
+            connection.close();
+        }
+        connections.clear();
+    }
+}
@@ -0,0 +1,169 @@
+package com.ytrue.job.core.remoting;
+
+import com.ytrue.job.core.biz.model.ReturnT;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.timeout.IdleStateHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 01:40
+ * @description 基于BinaryProtocol的客户端，调度中心开启了二进制协议之后，用它来调用执行器
+ * 每个执行器只有一条长连接，请求和响应通过请求id对应，所以不需要像http那样维护连接池
+ * 使用哪种协议是每条连接握手的时候协商的，执行器不支持二进制协议的话，在UNSUPPORTED_RETRY_MS之内这个执行器都使用http
+ * IO线程和NettyHttpClient共用
+ */
+public class NettyBinaryClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyBinaryClient.class);
+
+    private static final NettyBinaryClient instance = new NettyBinaryClient();
+
+    public static NettyBinaryClient getInstance() {
+        return instance;
+    }
+
+
+    /**
+     * 执行器不支持二进制协议的时候，过多久再尝试一次，执行器可能升级了
+     */
+    private static final long UNSUPPORTED_RETRY_MS = 10 * 60 * 1000;
+
+    /**
+     * 执行器的连接，key为host:port
+     */
+    private final ConcurrentMap<String, BinaryConnection> connectionRepository = new ConcurrentHashMap<>();
+
+    /**
+     * 不支持二进制协议的执行器，value是下次可以再尝试的时间
+     */
+    private final ConcurrentMap<String, Long> unsupportedRepository = new ConcurrentHashMap<>();
+
+
+    private NettyBinaryClient() {
+    }
+
+
+    /**
+     * 执行器是否支持二进制协议，还没有连接过的执行器也返回true
+     *
+     * @param host
+     * @param port
+     * @return
+     */
+    public boolean isSupported(String host, int port) {
+        String key = host + ":" + port;
+        Long retryTime = unsupportedRepository.get(key);
+        if (retryTime == null) {
+            return true;
+        }
+        if (System.currentTimeMillis() >= retryTime) {
+            unsupportedRepository.remove(key, retryTime);
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * 发送请求，请求失败、超时的时候future异常结束，执行器不支持二进制协议的时候，isSupported会返回false
+     * 执行器拒绝了握手的时候，和http一样返回一个失败的ReturnT
+     *
+     * @param host
+     * @param port
+     * @param accessToken
+     * @param op            BinaryProtocol中的操作类型
+     * @param bodyWriter    写入请求内容的方法，可以为null
+     * @param timeoutMillis
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<ReturnT<T>> call(String host, int port, String accessToken, byte op, Consumer<ByteBuf> bodyWriter, long timeoutMillis) {
+        String key = host + ":" + port;
+        BinaryConnection connection;
+        try {
+            connection = acquire(key, host, port, accessToken);
+        } catch (Exception e) {
+            CompletableFuture<ReturnT<T>> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+        return connection.send(op, bodyWriter, timeoutMillis).handle((result, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (cause instanceof BinaryConnection.RejectedException) {
+                    //和http一样，执行器拒绝的信息作为失败的结果返回
+                    return new ReturnT<T>(ReturnT.FAIL_CODE, cause.getMessage());
+                }
+                if (cause instanceof BinaryConnection.UnsupportedException) {
+                    if (unsupportedRepository.put(key, System.currentTimeMillis() + UNSUPPORTED_RETRY_MS) == null) {
+                        logger.info(">>>>>>>>>>> xxl-job binary client fallback to http, {}", cause.getMessage());
+                    }
+                }
+                throw new CompletionException(cause);
+            }
+            return (ReturnT<T>) result;
+        });
+    }
+
+
+    /**
+     * 得到执行器的连接，连接已经关闭了就重新建立一条
+     */
+    private BinaryConnection acquire(String key, String host, int port, String accessToken) {
+        BinaryConnection connection = connectionRepository.get(key);
+        if (connection != null && connection.isAvailable()) {
+            return connection;
+        }
+        synchronized (this) {
+            connection = connectionRepository.get(key);
+            if (connection != null && connection.isAvailable()) {
+                return connection;
+            }
+            connection = connect(host, port, accessToken);
+            connectionRepository.put(key, connection);
+            return connection;
+        }
+    }
+
+
+    private BinaryConnection connect(String host, int port, String accessToken) {
+        NettyHttpClient httpClient = NettyHttpClient.getInstance();
+        BinaryConnection connection = new BinaryConnection(accessToken, httpClient.getConnectTimeoutMillis());
+        Bootstrap connectBootstrap = httpClient.getBootstrap().clone().handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel channel) throws Exception {
+                channel.pipeline()
+                        .addLast(new IdleStateHandler(0, 0, httpClient.getIdleTimeoutSeconds(), TimeUnit.SECONDS))
+                        .addLast(connection);
+            }
+        });
+        connection.setConnectFuture(connectBootstrap.connect(host, port));
+        return connection;
+    }
+
+
+    /**
+     * 关闭所有的连接
+     */
+    public synchronized void stop() {
+        for (BinaryConnection connection : connectionRepository.values()) {
+            connection.close();
+        }
+        connectionRepository.clear();
+        unsupportedRepository.clear();
+        logger.info(">>>>>>>>>>> xxl-job NettyBinaryClient stop success.");
+    }
+}
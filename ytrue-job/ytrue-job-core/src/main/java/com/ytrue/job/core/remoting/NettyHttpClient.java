@@ -0,0 +1,269 @@
+package com.ytrue.job.core.remoting;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.CharsetUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 15:50
+ * @description 基于Netty的异步http/1.1客户端，调度中心调用执行器、执行器注册和回调调度中心用的都是它
+ * 原来每发送一次请求都要新建一个HttpURLConnection，建立连接的耗时比请求本身还要长，而且发送请求的线程要一直阻塞到响应回来
+ * 这里每个地址都有一个自己的连接池，连接是长连接，可以重复使用，请求的结果用CompletableFuture通知
+ * 同一条连接上连续发送多个请求，也就是流水线，默认是关闭的，开启之后也只对声明了会按顺序响应的执行器生效
+ * 该客户端是单例的，所有的连接共用一个EventLoopGroup，IO线程都是守护线程，不会阻止程序退出
+ */
+public class NettyHttpClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(NettyHttpClient.class);
+
+    private static final NettyHttpClient instance = new NettyHttpClient();
+
+    public static NettyHttpClient getInstance() {
+        return instance;
+    }
+
+
+    /**
+     * 执行器在响应头中用这个字段声明同一条连接上的响应是按照请求的顺序返回的，值为PIPELINING_ORDERED
+     */
+    public static final String PIPELINING_HEADER = "XXL-JOB-PIPELINING";
+    public static final String PIPELINING_ORDERED = "ordered";
+
+    /**
+     * 每个地址最多建立的连接数，连接都在忙的时候，新的请求会排在负载最小的连接上
+     */
+    private volatile int maxConnectionsPerAddress = 8;
+
+    /**
+     * 是否开启流水线，默认关闭，一条连接上同时只有一个请求在等待响应
+     */
+    private volatile boolean pipelining = false;
+
+    /**
+     * 建立连接的超时时间，和原来的HttpURLConnection保持一致，3秒
+     */
+    private volatile int connectTimeoutMillis = 3000;
+
+    /**
+     * 连接空闲多久之后关闭，执行器内嵌服务器的空闲时间是90秒，这里要比它短，尽量由客户端主动关闭连接
+     */
+    private volatile int idleTimeoutSeconds = 60;
+
+    /**
+     * 响应体的最大长度，和执行器内嵌服务器保持一致
+     */
+    private static final int MAX_CONTENT_LENGTH = 5 * 1024 * 1024;
+
+    /**
+     * 地址对应的连接池，key为scheme://host:port
+     */
+    private final ConcurrentMap<String, HttpConnectionPool> poolRepository = new ConcurrentHashMap<>();
+
+    private EventLoopGroup eventLoopGroup;
+
+    private Bootstrap bootstrap;
+
+    private SslContext sslContext;
+
+
+    private NettyHttpClient() {
+    }
+
+
+    /**
+     * 发送post请求
+     *
+     * @param url
+     * @param headers       额外的请求头，可以为null
+     * @param body          请求体，可以为null
+     * @param timeoutMillis 从请求发出到收到响应的超时时间
+     * @return
+     */
+    public CompletableFuture<HttpClientResponse> post(String url, Map<String, String> headers, String body, long timeoutMillis) {
+        try {
+            URI uri = new URI(url);
+            boolean ssl = "https".equalsIgnoreCase(uri.getScheme());
+            String host = uri.getHost();
+            if (host == null) {
+                throw new IllegalArgumentException("xxl-job http client url invalid:" + url);
+            }
+            int port = uri.getPort() > 0 ? uri.getPort() : (ssl ? 443 : 80);
+
+            //得到请求路径
+            String path = uri.getRawPath();
+            if (path == null || path.length() == 0) {
+                path = "/";
+            }
+            if (uri.getRawQuery() != null) {
+                path = path + "?" + uri.getRawQuery();
+            }
+            ByteBuf content = body != null ? Unpooled.wrappedBuffer(body.getBytes(CharsetUtil.UTF_8)) : Unpooled.EMPTY_BUFFER;
+            FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, path, content);
+            request.headers().set(HttpHeaderNames.HOST, uri.getPort() > 0 ? host + ":" + port : host);
+            request.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+            request.headers().set(HttpHeaderNames.CONTENT_TYPE, "application/json;charset=UTF-8");
+            request.headers().set(HttpHeaderNames.ACCEPT_CHARSET, "application/json;charset=UTF-8");
+            request.headers().set(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    request.headers().set(header.getKey(), header.getValue());
+                }
+            }
+
+            //找到这个地址对应的连接池，从连接池中得到一条连接发送请求
+            String poolKey = (ssl ? "https://" : "http://") + host + ":" + port;
+            HttpConnectionPool pool = poolRepository.computeIfAbsent(poolKey, k -> new HttpConnectionPool(this, host, port, ssl));
+            return pool.acquire().send(request, timeoutMillis);
+        } catch (Exception e) {
+            CompletableFuture<HttpClientResponse> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+
+    /**
+     * 建立一条新的连接，连接是异步建立的，这个方法不会阻塞
+     *
+     * @param pool
+     * @param host
+     * @param port
+     * @param ssl
+     * @return
+     */
+    HttpConnection connect(HttpConnectionPool pool, String host, int port, boolean ssl) {
+        HttpConnection connection = new HttpConnection(pool);
+        Bootstrap connectBootstrap = getBootstrap().clone().handler(new ChannelInitializer<SocketChannel>() {
+            @Override
+            protected void initChannel(SocketChannel channel) throws Exception {
+                if (ssl) {
+                    channel.pipeline().addLast(getSslContext().newHandler(channel.alloc(), host, port));
+                }
+                channel.pipeline()
+                        .addLast(new IdleStateHandler(0, 0, idleTimeoutSeconds, TimeUnit.SECONDS))
+                        .addLast(new HttpClientCodec())
+                        .addLast(new HttpObjectAggregator(MAX_CONTENT_LENGTH))
+                        .addLast(connection);
+            }
+        });
+        connection.setConnectFuture(connectBootstrap.connect(host, port));
+        return connection;
+    }
+
+
+    /**
+     * 第一次使用的时候才创建EventLoopGroup，执行器和调度中心不一定都会用到这个客户端
+     * NettyBinaryClient也使用这里的EventLoopGroup
+     *
+     * @return
+     */
+    synchronized Bootstrap getBootstrap() {
+        if (bootstrap == null) {
+            eventLoopGroup = new NioEventLoopGroup(0, new DefaultThreadFactory("xxl-job, NettyHttpClient", true));
+            bootstrap = new Bootstrap()
+                    .group(eventLoopGroup)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .option(ChannelOption.SO_KEEPALIVE, true);
+        }
+        return bootstrap;
+    }
+
+
+    /**
+     * https使用的SslContext，和原来的实现一样，信任所有的证书
+     *
+     * @return
+     * @throws Exception
+     */
+    private synchronized SslContext getSslContext() throws Exception {
+        if (sslContext == null) {
+            sslContext = SslContextBuilder.forClient().trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+        }
+        return sslContext;
+    }
+
+
+    /**
+     * 关闭所有的连接，释放IO线程，之后再发送请求的话会重新创建
+     */
+    public synchronized void stop() {
+        for (HttpConnectionPool pool : poolRepository.values()) {
+            pool.close();
+        }
+        poolRepository.clear();
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully();
+            eventLoopGroup = null;
+            bootstrap = null;
+        }
+        logger.info(">>>>>>>>>>> xxl-job NettyHttpClient stop success.");
+    }
+
+
+    public int getMaxConnectionsPerAddress() {
+        return maxConnectionsPerAddress;
+    }
+
+    public void setMaxConnectionsPerAddress(int maxConnectionsPerAddress) {
+        this.maxConnectionsPerAddress = Math.max(maxConnectionsPerAddress, 1);
+    }
+
+    public boolean isPipelining() {
+        return pipelining;
+    }
+
+    /**
+     * 开启流水线之后，执行器声明了会按顺序响应的连接上，可以不等上一个响应回来就继续发送请求
+     *
+     * @param pipelining
+     */
+    public void setPipelining(boolean pipelining) {
+        this.pipelining = pipelining;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * 修改建立连接的超时时间，要在第一次发送请求之前设置才会生效
+     *
+     * @param connectTimeoutMillis
+     */
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    public void setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+}
@@ -0,0 +1,18 @@
+package com.ytrue.job.core.remoting;
+
+import java.io.IOException;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 04:10
+ * @description 请求还没有发送出去就失败了，比如排队等待的时候连接断开了，又没能在超时时间内换一条连接发送
+ * 执行器肯定没有收到这个请求，所以重试是安全的
+ */
+public class RemotingNotSentException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RemotingNotSentException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+package com.ytrue.job.core.remoting;
+
+import java.io.IOException;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 04:10
+ * @description 请求已经发送出去了，但是在收到响应之前连接就断开了，执行器可能已经处理了这个请求，也可能没有
+ * 这种情况不能当作调用失败，比如触发任务的请求，当作失败重试的话，同一个任务可能会执行两次
+ */
+public class RemotingResultUnknownException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RemotingResultUnknownException(String message) {
+        super(message);
+    }
+}
@@ -3,24 +3,33 @@ package com.ytrue.job.core.server;
 import com.ytrue.job.core.biz.ExecutorBiz;
 import com.ytrue.job.core.biz.impl.ExecutorBizImpl;
 import com.ytrue.job.core.biz.model.*;
+import com.ytrue.job.core.remoting.BinaryProtocol;
+import com.ytrue.job.core.remoting.NettyHttpClient;
 import com.ytrue.job.core.thread.ExecutorRegistryThread;
 import com.ytrue.job.core.util.GsonTool;
 import com.ytrue.job.core.util.ThrowableUtil;
 import com.ytrue.job.core.util.XxlJobRemotingUtil;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.http.*;
 import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.util.CharsetUtil;
-import lombok.AllArgsConstructor;
+import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -29,6 +38,7 @@ import java.util.concurrent.TimeUnit;
  * @author ytrue
  * @date 2023-08-28 11:56
  * @description 执行器这一端内嵌的netty服务器
+ * 同一个端口上同时支持http和BinaryProtocol二进制协议，调度中心开启了二进制协议的时候使用长连接和二进制的请求，旧版本的调度中心还是使用http
  */
 public class EmbedServer {
 
@@ -71,14 +81,8 @@ public class EmbedServer {
                         channel.pipeline()
                                 //心跳检测
                                 .addLast(new IdleStateHandler(0, 0, 30 * 3, TimeUnit.SECONDS))
-                                //http的编解码器，该处理器既是出站处理器，也是入站处理器
-                                .addLast(new HttpServerCodec())
-                                //这个处理器从名字上就能看出来，是聚合消息的，当传递的http消息过大时，会被拆分开，这里添加这个处理器
-                                //就是把拆分的消息再次聚合起来，形成一个整体再向后传递
-                                //该处理器是个入站处理器
-                                .addLast(new HttpObjectAggregator(5 * 1024 * 1024))
-                                //添加入站处理器，在该处理器中执行定时任务
-                                .addLast(new EmbedHttpServerHandler(executorBiz, accessToken, bizThreadPool));
+                                //根据连接最先收到的几个字节判断是http还是二进制协议，然后再添加对应的处理器
+                                .addLast(new EmbedProtocolDetector(executorBiz, accessToken, bizThreadPool));
                     }
                 }).childOption(ChannelOption.SO_KEEPALIVE, true);
                 //绑定端口号
@@ -106,7 +110,184 @@ public class EmbedServer {
         thread.start();
     }
 
-    @AllArgsConstructor
+    /**
+     * 判断连接使用的协议的处理器，连接最先收到的4个字节是BinaryProtocol.MAGIC的话就是二进制协议，否则就是http
+     * 判断完之后把对应协议的处理器添加到pipeline中，然后把自己移除，已经收到的字节会交给后面的处理器
+     */
+    @RequiredArgsConstructor
+    public static class EmbedProtocolDetector extends ByteToMessageDecoder {
+
+        private final ExecutorBiz executorBiz;
+
+        private final String accessToken;
+
+        private final ThreadPoolExecutor bizThreadPool;
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+            if (in.readableBytes() < 4) {
+                return;
+            }
+            ChannelPipeline pipeline = ctx.pipeline();
+            if (in.getInt(in.readerIndex()) == BinaryProtocol.MAGIC) {
+                if (in.readableBytes() < 8) {
+                    return;
+                }
+                in.skipBytes(8);
+                //也回复前导字节，客户端收到之后就知道这个执行器支持二进制协议
+                ctx.writeAndFlush(ctx.alloc().buffer(8).writeInt(BinaryProtocol.MAGIC).writeInt(BinaryProtocol.PREAMBLE_TAIL));
+                pipeline.addAfter(ctx.name(), "binaryHandler", new EmbedBinaryServerHandler(executorBiz, accessToken, bizThreadPool));
+                pipeline.addAfter(ctx.name(), "frameDecoder", new LengthFieldBasedFrameDecoder(BinaryProtocol.MAX_FRAME_LENGTH, 0, 4, 0, 4));
+            } else {
+                //这个处理器从名字上就能看出来，是聚合消息的，当传递的http消息过大时，会被拆分开，这里添加这个处理器
+                //就是把拆分的消息再次聚合起来，形成一个整体再向后传递
+                pipeline.addAfter(ctx.name(), "httpHandler", new EmbedHttpServerHandler(executorBiz, accessToken, bizThreadPool));
+                pipeline.addAfter(ctx.name(), "httpAggregator", new HttpObjectAggregator(5 * 1024 * 1024));
+                //http的编解码器，该处理器既是出站处理器，也是入站处理器
+                pipeline.addAfter(ctx.name(), "httpCodec", new HttpServerCodec());
+            }
+            pipeline.remove(this);
+        }
+    }
+
+
+    /**
+     * 二进制协议的入站处理器，每条连接都有自己的处理器对象
+     * 心跳检测和忙碌检测只是查询一下内存，直接在IO线程中处理，执行任务、终止任务和查看日志还是交给业务线程池
+     * 响应通过请求id和请求对应，所以业务线程处理完就直接发送，不需要像http那样排队
+     */
+    @RequiredArgsConstructor
+    public static class EmbedBinaryServerHandler extends SimpleChannelInboundHandler<ByteBuf> {
+
+        private static final Logger logger = LoggerFactory.getLogger(EmbedBinaryServerHandler.class);
+
+        private final ExecutorBiz executorBiz;
+
+        private final String accessToken;
+
+        private final ThreadPoolExecutor bizThreadPool;
+
+        /**
+         * 是否已经握手成功了，只会在这条连接的IO线程中访问
+         */
+        private boolean handshaked = false;
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) throws Exception {
+            int requestId = frame.readInt();
+            byte op = frame.readByte();
+            if (!handshaked) {
+                handshake(ctx, requestId, op, frame);
+                return;
+            }
+            try {
+                switch (op) {
+                    case BinaryProtocol.OP_BEAT:
+                        writeResponse(ctx, requestId, op, executorBiz.beat());
+                        return;
+                    case BinaryProtocol.OP_IDLE_BEAT:
+                        writeResponse(ctx, requestId, op, executorBiz.idleBeat(new IdleBeatParam(frame.readInt())));
+                        return;
+                    case BinaryProtocol.OP_RUN:
+                        TriggerParam triggerParam = BinaryProtocol.readTriggerParam(frame);
+                        bizThreadPool.execute(() -> writeResponse(ctx, requestId, op, invoke(() -> executorBiz.run(triggerParam))));
+                        return;
+                    case BinaryProtocol.OP_KILL:
+                        KillParam killParam = new KillParam(frame.readInt());
+                        bizThreadPool.execute(() -> writeResponse(ctx, requestId, op, invoke(() -> executorBiz.kill(killParam))));
+                        return;
+                    case BinaryProtocol.OP_LOG:
+                        LogParam logParam = BinaryProtocol.readLogParam(frame);
+                        bizThreadPool.execute(() -> writeResponse(ctx, requestId, op, invoke(() -> executorBiz.log(logParam))));
+                        return;
+                    case BinaryProtocol.OP_GLUE_COMPILE:
+                        GlueParam glueParam = BinaryProtocol.readGlueParam(frame);
+                        bizThreadPool.execute(() -> writeResponse(ctx, requestId, op, invoke(() -> executorBiz.glueCompile(glueParam))));
+                        return;
+                    default:
+                        writeResponse(ctx, requestId, op, new ReturnT<String>(ReturnT.FAIL_CODE, "invalid request, op(" + op + ") not found."));
+                }
+            } catch (Exception e) {
+                //业务线程池满了也会走到这里
+                logger.error(e.getMessage(), e);
+                writeResponse(ctx, requestId, op, new ReturnT<String>(ReturnT.FAIL_CODE, "request error:" + ThrowableUtil.toString(e)));
+            }
+        }
+
+        /**
+         * 握手，校验协议版本和token，token只在这里校验一次，校验失败就回复失败信息然后关闭连接
+         */
+        private void handshake(ChannelHandlerContext ctx, int requestId, byte op, ByteBuf frame) {
+            ReturnT<String> result;
+            if (op != BinaryProtocol.OP_HANDSHAKE) {
+                result = new ReturnT<>(ReturnT.FAIL_CODE, "invalid request, handshake required.");
+            } else {
+                byte version = frame.readByte();
+                String accessTokenReq = BinaryProtocol.readString(frame);
+                if (version != BinaryProtocol.VERSION) {
+                    result = new ReturnT<>(ReturnT.FAIL_CODE, "invalid request, protocol version(" + version + ") not support.");
+                } else if (accessToken != null && accessToken.trim().length() > 0 && !accessToken.equals(accessTokenReq)) {
+                    result = new ReturnT<>(ReturnT.FAIL_CODE, "The access token is wrong.");
+                } else {
+                    result = ReturnT.SUCCESS;
+                }
+            }
+            ChannelFuture writeFuture = writeResponse(ctx, requestId, BinaryProtocol.OP_HANDSHAKE, result);
+            if (result.getCode() == ReturnT.SUCCESS_CODE) {
+                handshaked = true;
+            } else {
+                writeFuture.addListener(ChannelFutureListener.CLOSE);
+                ctx.flush();
+            }
+        }
+
+        private ReturnT<?> invoke(Callable<ReturnT<?>> call) {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+                return new ReturnT<String>(ReturnT.FAIL_CODE, "request error:" + ThrowableUtil.toString(e));
+            }
+        }
+
+        /**
+         * 发送响应，IO线程中发送的响应在channelReadComplete的时候一起刷出去，业务线程发送的响应直接刷出去
+         */
+        private ChannelFuture writeResponse(ChannelHandlerContext ctx, int requestId, byte op, ReturnT<?> result) {
+            ByteBuf out = ctx.alloc().buffer();
+            int lengthIndex = BinaryProtocol.beginFrame(out, requestId, op);
+            BinaryProtocol.writeReturnT(out, result);
+            BinaryProtocol.endFrame(out, lengthIndex);
+            if (ctx.executor().inEventLoop()) {
+                return ctx.write(out);
+            }
+            return ctx.writeAndFlush(out);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+            ctx.flush();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.error(">>>>>>>>>>> xxl-job provider binary server caught exception", cause);
+            ctx.close();
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent) {
+                ctx.channel().close();
+                logger.debug(">>>>>>>>>>> xxl-job provider binary server close an idle channel.");
+            } else {
+                super.userEventTriggered(ctx, evt);
+            }
+        }
+    }
+
+
+    @RequiredArgsConstructor
     public static class EmbedHttpServerHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
 
         private static final Logger logger = LoggerFactory.getLogger(EmbedHttpServerHandler.class);
@@ -114,15 +295,25 @@ public class EmbedServer {
         /**
          * 很重要的对象，其实就是ExecutorBizImpl，该对象调用定时方法
          */
-        private ExecutorBiz executorBiz;
+        private final ExecutorBiz executorBiz;
         /**
          * token令牌
          */
-        private String accessToken;
+        private final String accessToken;
         /**
          * bizThreadPool会赋值给下面的属性
          */
-        private ThreadPoolExecutor bizThreadPool;
+        private final ThreadPoolExecutor bizThreadPool;
+
+        /**
+         * 同一条连接上的请求是在业务线程池中并发处理的，先处理完的请求不一定是先到的请求，
+         * 但是http/1.1规定响应必须按照请求的顺序返回，否则客户端在一条连接上连续发送多个请求的时候，就对不上响应了
+         * 所以这里给每个请求编一个序号，处理完的响应先放在Map中，轮到它了再发送出去
+         * 每条连接都有自己的处理器对象，这几个属性都只会在这条连接的IO线程中访问
+         */
+        private long nextRequestSequence = 0;
+        private long nextResponseSequence = 0;
+        private final Map<Long, FullHttpResponse> pendingResponses = new HashMap<>();
 
         @Override
         protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest msg) throws Exception {
@@ -136,6 +327,13 @@ public class EmbedServer {
             boolean keepAlive = HttpUtil.isKeepAlive(msg);
             //从请求中获得token令牌
             String accessTokenReq = msg.headers().get(XxlJobRemotingUtil.XXL_JOB_ACCESS_TOKEN);
+            //请求的序号，响应要按照这个序号的顺序发送
+            long sequence = nextRequestSequence++;
+            if ("/beat".equals(uri) || "/idleBeat".equals(uri)) {
+                //心跳检测和忙碌检测只是查询一下内存，直接在IO线程中处理，不用再交给业务线程池
+                writeResponse(ctx, sequence, keepAlive, GsonTool.toJson(process(httpMethod, uri, requestData, accessTokenReq)));
+                return;
+            }
             //上面Netty的单线程执行器为我们解析了消息，下面的工作就该交给用户定义的工作线程来执行吧
             //否则会拖累Netty的单线程执行器处理IO事件的效率
             bizThreadPool.execute(() -> {
@@ -145,7 +343,7 @@ public class EmbedServer {
                 String responseJson = GsonTool.toJson(responseObj);
                 //把消息回复给调度中心，注意，这里的回复消息的动作，是业务线程发起的
                 //但是学完手写netty的各位都知道，真正发送消息还是由单线程执行器来完成的
-                writeResponse(ctx, keepAlive, responseJson);
+                writeResponse(ctx, sequence, keepAlive, responseJson);
             });
         }
 
@@ -199,6 +397,10 @@ public class EmbedServer {
                         //远程访问执行器端日志
                         LogParam logParam = GsonTool.fromJson(requestData, LogParam.class);
                         return executorBiz.log(logParam);
+                    case "/glueCompile":
+                        //调度中心保存了glue代码之后，通知执行器预先编译
+                        GlueParam glueParam = GsonTool.fromJson(requestData, GlueParam.class);
+                        return executorBiz.glueCompile(glueParam);
                     default:
                         return new ReturnT<String>(ReturnT.FAIL_CODE, "invalid request, uri-mapping(" + uri + ") not found.");
                 }
@@ -212,10 +414,11 @@ public class EmbedServer {
          * 响应消息
          *
          * @param ctx
+         * @param sequence
          * @param keepAlive
          * @param responseJson
          */
-        private void writeResponse(ChannelHandlerContext ctx, boolean keepAlive, String responseJson) {
+        private void writeResponse(ChannelHandlerContext ctx, long sequence, boolean keepAlive, String responseJson) {
             //设置响应结果
             FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.copiedBuffer(responseJson, CharsetUtil.UTF_8));
             //设置文本类型
@@ -226,8 +429,33 @@ public class EmbedServer {
                 //连接是存活状态
                 response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
             }
-            //开始发送消息
-            ctx.writeAndFlush(response);
+            //告诉调度中心，这里的响应是按照请求的顺序返回的，调度中心开启了流水线的话就可以连续发送请求
+            response.headers().set(NettyHttpClient.PIPELINING_HEADER, NettyHttpClient.PIPELINING_ORDERED);
+            //开始发送消息，这里要回到IO线程中，按照请求的顺序发送
+            ctx.executor().execute(() -> {
+                if (!ctx.channel().isActive()) {
+                    response.release();
+                    return;
+                }
+                pendingResponses.put(sequence, response);
+                FullHttpResponse nextResponse;
+                while ((nextResponse = pendingResponses.remove(nextResponseSequence)) != null) {
+                    ctx.write(nextResponse);
+                    nextResponseSequence++;
+                }
+                ctx.flush();
+            });
+        }
+
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            //连接关闭了，还没发送出去的响应也没有机会发送了，释放掉
+            for (FullHttpResponse response : pendingResponses.values()) {
+                response.release();
+            }
+            pendingResponses.clear();
+            super.channelInactive(ctx);
         }
 
 
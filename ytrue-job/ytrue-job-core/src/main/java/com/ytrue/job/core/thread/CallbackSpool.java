@@ -0,0 +1,504 @@
+package com.ytrue.job.core.thread;
+
+import com.ytrue.job.core.biz.model.HandleCallbackParam;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 01:10
+ * @description 回调失败的信息在本地的存储，TriggerCallbackThread使用
+ * 原来每一批回调失败的信息都序列化成一个单独的文件，调度中心宕机的时候会积累几十万个小文件，重试线程每次都要把整个目录列出来挨个读取
+ * 现在回调失败的信息只追加到分段文件的末尾，每条记录是[长度][校验和][内容]，一个分段写满SEGMENT_MAX_BYTES之后再创建下一个
+ * 重试的位置记录在游标文件中，重试成功之后游标往后移动，游标之前的分段文件就可以删除了
+ * 写入的内容每隔FORCE_INTERVAL_MS刷一次盘，执行器宕机的时候最多丢失这段时间内的记录，校验和不对的记录会被跳过
+ */
+public class CallbackSpool {
+
+    private static final Logger logger = LoggerFactory.getLogger(CallbackSpool.class);
+
+    /**
+     * 一个分段文件的最大字节数
+     */
+    private static final long SEGMENT_MAX_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * 刷盘的间隔
+     */
+    private static final long FORCE_INTERVAL_MS = 1000;
+
+    /**
+     * 一条记录的最大字节数，handleMsg在执行器这边已经截断过了，超过这个大小的只能是文件损坏了
+     */
+    private static final int RECORD_MAX_BYTES = 1024 * 1024;
+
+    /**
+     * 记录头的字节数，4个字节的长度加上8个字节的校验和
+     */
+    private static final int HEADER_BYTES = 12;
+
+    /**
+     * 记住最近重试成功的日志id的数量，执行器宕机的时候游标可能没有保存，重启之后这些记录不用再回调一次
+     */
+    private static final int DELIVERED_CACHE_SIZE = 10000;
+
+    private static final String SEGMENT_PREFIX = "callback-";
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final String CURSOR_FILE_NAME = "callback.cursor";
+
+    private final File spoolDir;
+
+    /**
+     * 现有的分段文件的序号
+     */
+    private final TreeSet<Long> segments = new TreeSet<>();
+
+    /**
+     * 正在写入的分段
+     */
+    private FileChannel writeChannel;
+    private long writeSeq;
+    private long writeSize;
+    private boolean dirty = false;
+    private long lastForceTime = System.currentTimeMillis();
+
+    /**
+     * 下一条要重试的记录所在的分段和位置
+     */
+    private long cursorSeq;
+    private long cursorOffset;
+
+    /**
+     * 最近重试成功的日志id
+     */
+    private final LinkedHashSet<Long> deliveredLogIds = new LinkedHashSet<>();
+
+
+    /**
+     * 从游标位置读出来的一批记录，end是这一批之后的位置，重试成功之后交给commit方法
+     */
+    public static class Batch {
+
+        private final List<HandleCallbackParam> callbackParamList;
+
+        private final long endSeq;
+
+        private final long endOffset;
+
+        private Batch(List<HandleCallbackParam> callbackParamList, long endSeq, long endOffset) {
+            this.callbackParamList = callbackParamList;
+            this.endSeq = endSeq;
+            this.endOffset = endOffset;
+        }
+
+        public List<HandleCallbackParam> getCallbackParamList() {
+            return callbackParamList;
+        }
+    }
+
+
+    public CallbackSpool(File spoolDir) throws IOException {
+        this.spoolDir = spoolDir;
+        if (spoolDir.isFile()) {
+            spoolDir.delete();
+        }
+        spoolDir.mkdirs();
+        File[] files = spoolDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                long seq = segmentSeq(file.getName());
+                if (seq > 0) {
+                    segments.add(seq);
+                }
+            }
+        }
+        loadCursor();
+        if (segments.isEmpty()) {
+            writeSeq = Math.max(cursorSeq, 1);
+            cursorSeq = writeSeq;
+            cursorOffset = 0;
+            openSegment(writeSeq);
+        } else {
+            //执行器上次宕机的时候最后一个分段的末尾可能只写了一半，截掉之后再继续追加
+            writeSeq = segments.last();
+            File segmentFile = segmentFile(writeSeq);
+            long validSize = validSize(segmentFile);
+            writeChannel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.WRITE);
+            if (validSize < writeChannel.size()) {
+                logger.warn(">>>>>>>>>>> xxl-job, callback spool truncate torn tail, file:{}, size:{}, validSize:{}", segmentFile, writeChannel.size(), validSize);
+                writeChannel.truncate(validSize);
+                writeChannel.force(true);
+            }
+            writeSize = validSize;
+            if (cursorSeq < segments.first() || cursorSeq > writeSeq) {
+                cursorSeq = segments.first();
+                cursorOffset = 0;
+            }
+            if (cursorSeq == writeSeq && cursorOffset > writeSize) {
+                cursorOffset = writeSize;
+            }
+        }
+    }
+
+
+    /**
+     * 把一批回调失败的信息追加到分段文件中，每条记录都是单独编码的，重试的时候可以按条去重
+     *
+     * @param callbackParamList
+     * @throws IOException
+     */
+    public synchronized void append(List<HandleCallbackParam> callbackParamList) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(callbackParamList.size() * 128);
+        DataOutputStream dataOut = new DataOutputStream(out);
+        CRC32 crc = new CRC32();
+        for (HandleCallbackParam callbackParam : callbackParamList) {
+            byte[] record = encode(callbackParam);
+            crc.reset();
+            crc.update(record);
+            dataOut.writeInt(record.length);
+            dataOut.writeLong(crc.getValue());
+            dataOut.write(record);
+        }
+        dataOut.flush();
+        if (writeSize >= SEGMENT_MAX_BYTES) {
+            rollSegment();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(out.toByteArray());
+        while (buffer.hasRemaining()) {
+            writeSize += writeChannel.write(buffer, writeSize);
+        }
+        dirty = true;
+        force(false);
+    }
+
+
+    /**
+     * 刷盘，没到刷盘时间的时候什么也不做
+     *
+     * @param now 为true的时候不管间隔，立刻刷盘
+     */
+    public synchronized void force(boolean now) {
+        if (!dirty || (!now && System.currentTimeMillis() - lastForceTime < FORCE_INTERVAL_MS)) {
+            return;
+        }
+        try {
+            writeChannel.force(false);
+            dirty = false;
+            lastForceTime = System.currentTimeMillis();
+        } catch (IOException e) {
+            logger.error(">>>>>>>>>>> xxl-job, callback spool force error:{}", e);
+        }
+    }
+
+
+    /**
+     * 从游标位置开始读出最多maxSize条记录，同一个日志id只保留第一条，最近重试成功过的日志id直接跳过
+     * 读出来的集合可能是空的，这个时候也要commit，把游标移动到跳过的记录后面
+     *
+     * @param maxSize
+     * @return 没有需要重试的记录的时候返回null
+     */
+    public synchronized Batch read(int maxSize) throws IOException {
+        long seq = cursorSeq;
+        long offset = cursorOffset;
+        if (seq == writeSeq && offset >= writeSize) {
+            return null;
+        }
+        List<HandleCallbackParam> callbackParamList = new ArrayList<>();
+        Set<Long> logIds = new HashSet<>();
+        FileChannel readChannel = null;
+        long readSeq = -1;
+        long segmentSize = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        try {
+            while (callbackParamList.size() < maxSize) {
+                if (readSeq != seq) {
+                    if (readChannel != null) {
+                        readChannel.close();
+                        readChannel = null;
+                    }
+                    if (!segments.contains(seq)) {
+                        Long next = segments.higher(seq);
+                        if (next == null) {
+                            break;
+                        }
+                        seq = next;
+                        offset = 0;
+                    }
+                    readChannel = FileChannel.open(segmentFile(seq).toPath(), StandardOpenOption.READ);
+                    readSeq = seq;
+                    segmentSize = (seq == writeSeq) ? writeSize : readChannel.size();
+                }
+                if (offset >= segmentSize) {
+                    if (seq == writeSeq) {
+                        break;
+                    }
+                    seq = segments.higher(seq);
+                    offset = 0;
+                    continue;
+                }
+                //读取记录头
+                header.clear();
+                int length = -1;
+                long checksum = 0;
+                if (offset + HEADER_BYTES <= segmentSize && readFully(readChannel, header, offset)) {
+                    header.flip();
+                    length = header.getInt();
+                    checksum = header.getLong();
+                }
+                byte[] record = null;
+                if (length >= 0 && length <= RECORD_MAX_BYTES && offset + HEADER_BYTES + length <= segmentSize) {
+                    ByteBuffer recordBuffer = ByteBuffer.allocate(length);
+                    if (readFully(readChannel, recordBuffer, offset + HEADER_BYTES)) {
+                        record = recordBuffer.array();
+                        crc.reset();
+                        crc.update(record);
+                        if (crc.getValue() != checksum) {
+                            record = null;
+                        }
+                    }
+                }
+                if (record == null) {
+                    //这一段后面的记录已经没办法定位了，跳到下一个分段，正在写入的分段要先换一个新的
+                    logger.warn(">>>>>>>>>>> xxl-job, callback spool skip corrupted segment, file:{}, offset:{}", segmentFile(seq), offset);
+                    if (seq == writeSeq) {
+                        rollSegment();
+                    }
+                    seq = segments.higher(seq);
+                    offset = 0;
+                    continue;
+                }
+                offset += HEADER_BYTES + length;
+                HandleCallbackParam callbackParam = decode(record);
+                if (!deliveredLogIds.contains(callbackParam.getLogId()) && logIds.add(callbackParam.getLogId())) {
+                    callbackParamList.add(callbackParam);
+                }
+            }
+        } finally {
+            if (readChannel != null) {
+                readChannel.close();
+            }
+        }
+        return new Batch(callbackParamList, seq, offset);
+    }
+
+
+    /**
+     * 一批记录重试成功了，把游标移动到这一批的后面，删除已经用完的分段文件
+     *
+     * @param batch
+     */
+    public synchronized void commit(Batch batch) {
+        cursorSeq = batch.endSeq;
+        cursorOffset = batch.endOffset;
+        delivered(batch.callbackParamList);
+        try {
+            saveCursor();
+        } catch (IOException e) {
+            logger.error(">>>>>>>>>>> xxl-job, callback spool save cursor error:{}", e);
+        }
+        while (!segments.isEmpty() && segments.first() < cursorSeq) {
+            long seq = segments.pollFirst();
+            segmentFile(seq).delete();
+        }
+    }
+
+
+    /**
+     * 记住已经回调成功的日志id，存储中还没有重试的同一个日志id的记录会被跳过
+     * 调度中心恢复之后回调线程直接回调成功的信息也会记录在这里
+     *
+     * @param callbackParamList
+     */
+    public synchronized void delivered(List<HandleCallbackParam> callbackParamList) {
+        for (HandleCallbackParam callbackParam : callbackParamList) {
+            deliveredLogIds.add(callbackParam.getLogId());
+        }
+        Iterator<Long> iterator = deliveredLogIds.iterator();
+        while (deliveredLogIds.size() > DELIVERED_CACHE_SIZE) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+
+    /**
+     * 是否有还没有重试的记录
+     *
+     * @return
+     */
+    public synchronized boolean isEmpty() {
+        return cursorSeq == writeSeq && cursorOffset >= writeSize;
+    }
+
+
+    public synchronized void close() {
+        force(true);
+        try {
+            writeChannel.close();
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+        }
+    }
+
+
+    private void rollSegment() throws IOException {
+        writeChannel.force(false);
+        writeChannel.close();
+        dirty = false;
+        openSegment(writeSeq + 1);
+    }
+
+
+    private void openSegment(long seq) throws IOException {
+        writeChannel = FileChannel.open(segmentFile(seq).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        writeChannel.truncate(0);
+        writeSeq = seq;
+        writeSize = 0;
+        segments.add(seq);
+    }
+
+
+    /**
+     * 找到分段文件中最后一条完整记录的结尾
+     *
+     * @param segmentFile
+     * @return
+     */
+    private long validSize(File segmentFile) throws IOException {
+        long offset = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile), 64 * 1024))) {
+            long fileSize = segmentFile.length();
+            while (offset + HEADER_BYTES <= fileSize) {
+                int length = in.readInt();
+                long checksum = in.readLong();
+                if (length < 0 || length > RECORD_MAX_BYTES || offset + HEADER_BYTES + length > fileSize) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+                offset += HEADER_BYTES + length;
+            }
+        }
+        return offset;
+    }
+
+
+    private void loadCursor() {
+        File cursorFile = new File(spoolDir, CURSOR_FILE_NAME);
+        if (!cursorFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(cursorFile))) {
+            long seq = in.readLong();
+            long offset = in.readLong();
+            long checksum = in.readLong();
+            if (checksum == cursorChecksum(seq, offset)) {
+                cursorSeq = seq;
+                cursorOffset = offset;
+                return;
+            }
+            logger.warn(">>>>>>>>>>> xxl-job, callback spool cursor corrupted, replay from first segment.");
+        } catch (IOException e) {
+            logger.warn(">>>>>>>>>>> xxl-job, callback spool cursor unreadable, replay from first segment.", e);
+        }
+    }
+
+
+    /**
+     * 游标先写到临时文件，再替换原来的文件，执行器宕机的时候游标文件不会只写了一半
+     */
+    private void saveCursor() throws IOException {
+        File tmpFile = new File(spoolDir, CURSOR_FILE_NAME + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmpFile))) {
+            out.writeLong(cursorSeq);
+            out.writeLong(cursorOffset);
+            out.writeLong(cursorChecksum(cursorSeq, cursorOffset));
+        }
+        Files.move(tmpFile.toPath(), new File(spoolDir, CURSOR_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+
+    private static long cursorChecksum(long seq, long offset) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(16).putLong(seq).putLong(offset).array());
+        return crc.getValue();
+    }
+
+
+    /**
+     * 记录的内容：logId、logDateTim、handleCode、handleMsg的长度和utf-8字节，handleMsg为null的时候长度是-1
+     */
+    private static byte[] encode(HandleCallbackParam callbackParam) throws IOException {
+        byte[] msg = callbackParam.getHandleMsg() == null ? null : callbackParam.getHandleMsg().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(24 + (msg == null ? 0 : msg.length));
+        buffer.putLong(callbackParam.getLogId());
+        buffer.putLong(callbackParam.getLogDateTim());
+        buffer.putInt(callbackParam.getHandleCode());
+        buffer.putInt(msg == null ? -1 : msg.length);
+        if (msg != null) {
+            buffer.put(msg);
+        }
+        return buffer.array();
+    }
+
+
+    private static HandleCallbackParam decode(byte[] record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        long logId = buffer.getLong();
+        long logDateTim = buffer.getLong();
+        int handleCode = buffer.getInt();
+        int msgLength = buffer.getInt();
+        String handleMsg = null;
+        if (msgLength >= 0) {
+            handleMsg = new String(record, buffer.position(), msgLength, StandardCharsets.UTF_8);
+        }
+        return new HandleCallbackParam(logId, logDateTim, handleCode, handleMsg);
+    }
+
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+
+    private File segmentFile(long seq) {
+        return new File(spoolDir, SEGMENT_PREFIX + String.format("%020d", seq) + SEGMENT_SUFFIX);
+    }
+
+
+    private static long segmentSeq(String fileName) {
+        if (!fileName.startsWith(SEGMENT_PREFIX) || !fileName.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
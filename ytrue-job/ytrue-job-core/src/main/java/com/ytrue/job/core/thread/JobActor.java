@@ -0,0 +1,263 @@
+package com.ytrue.job.core.thread;
+
+import com.ytrue.job.core.biz.model.ReturnT;
+import com.ytrue.job.core.biz.model.TriggerParam;
+import com.ytrue.job.core.handler.IJobHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 23:10
+ * @description 使用共享线程池执行定时任务的工作者，作用和JobThread一样，但是不占用线程
+ * 每个定时任务有自己的触发器参数队列，队列中有数据的时候才向线程池提交一个任务，这个任务每次只执行一个触发器参数，
+ * 执行完之后队列中还有数据就重新提交，这样同一个定时任务在任何时候最多只有一个线程在执行，阻塞策略和原来一样有效，
+ * 一个定时任务的触发器参数排队的时候也不会一直占着线程，其他定时任务可以轮流执行
+ * 没有定时任务要执行的时候不占用任何线程，但是它还引用着定时任务方法的对象，glue模式下就是编译出来的类的实例，
+ * 所以空闲一段时间之后也要像JobThread那样从执行器中移除，由JobWorkerPool定期检查
+ */
+public class JobActor implements JobWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobActor.class);
+
+    /**
+     * 定时任务的ID
+     */
+    private final int jobId;
+
+    /**
+     * 封装了定时任务方法的对象
+     */
+    private final IJobHandler handler;
+
+    /**
+     * 执行定时任务的线程池，所有的JobActor共用
+     */
+    private final Executor executor;
+
+    /**
+     * 存放触发器参数的队列
+     */
+    private final ConcurrentLinkedQueue<TriggerParam> triggerQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 队列中的定时任务的日志id，用来判断重复调度
+     */
+    private final Set<Long> triggerLogIdSet = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * 是否已经向线程池提交了任务，同一时间最多只提交一个，保证同一个定时任务是串行执行的
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    /**
+     * 停止之后、销毁方法执行完的时候计数减一
+     */
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+
+    private volatile boolean toStop = false;
+
+    private volatile String stopReason;
+
+    /**
+     * 是否正在执行定时任务
+     */
+    private volatile boolean running = false;
+
+    /**
+     * 正在执行这个定时任务的线程，停止的时候用来中断定时任务
+     */
+    private Thread runner;
+
+    /**
+     * 初始化方法是否已经执行
+     */
+    private volatile boolean inited = false;
+
+    /**
+     * 销毁方法是否已经执行
+     */
+    private volatile boolean destroyed = false;
+
+    /**
+     * 最近一次收到触发器参数或者执行完定时任务的时间，用来判断是否空闲了太久
+     */
+    private volatile long lastActiveTime = System.currentTimeMillis();
+
+
+    public JobActor(int jobId, IJobHandler handler, Executor executor) {
+        this.jobId = jobId;
+        this.handler = handler;
+        this.executor = executor;
+    }
+
+    @Override
+    public IJobHandler getHandler() {
+        return handler;
+    }
+
+
+    @Override
+    public ReturnT<String> pushTriggerQueue(TriggerParam triggerParam) {
+        //和JobThread一样，日志id已经在队列中了，说明是重复调度
+        if (!triggerLogIdSet.add(triggerParam.getLogId())) {
+            logger.info(">>>>>>>>>>> repeate trigger job, logId:{}", triggerParam.getLogId());
+            return new ReturnT<>(ReturnT.FAIL_CODE, "repeate trigger job, logId:" + triggerParam.getLogId());
+        }
+        lastActiveTime = System.currentTimeMillis();
+        triggerQueue.add(triggerParam);
+        schedule();
+        return ReturnT.SUCCESS;
+    }
+
+
+    @Override
+    public void toStop(String stopReason) {
+        this.stopReason = stopReason;
+        this.toStop = true;
+        //空闲的时候也要提交一次任务，由线程池去回调队列中的数据、执行销毁方法
+        schedule();
+    }
+
+
+    @Override
+    public synchronized void interrupt() {
+        if (runner != null) {
+            runner.interrupt();
+        }
+    }
+
+
+    @Override
+    public void join() throws InterruptedException {
+        stopLatch.await();
+    }
+
+
+    @Override
+    public boolean isRunningOrHasQueue() {
+        return running || !triggerQueue.isEmpty();
+    }
+
+
+    /**
+     * 是否已经空闲了超过idleMs，没有提交到线程池的任务，队列中也没有数据
+     *
+     * @param now
+     * @param idleMs
+     * @return
+     */
+    boolean isIdle(long now, long idleMs) {
+        return !scheduled.get() && !isRunningOrHasQueue() && now - lastActiveTime > idleMs;
+    }
+
+
+    /**
+     * 向线程池提交一个执行任务，已经提交过还没执行完的话就不再提交
+     */
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::runOnce);
+        } catch (RejectedExecutionException e) {
+            //线程池已经停止了，队列中的定时任务不会再执行，直接回调失败的结果
+            scheduled.set(false);
+            if (!toStop) {
+                stopReason = "job worker pool stopped.";
+                toStop = true;
+            }
+            finish();
+        }
+    }
+
+
+    /**
+     * 线程池中执行的任务，每次只执行一个触发器参数
+     */
+    private void runOnce() {
+        synchronized (this) {
+            runner = Thread.currentThread();
+        }
+        try {
+            if (!toStop) {
+                if (!inited) {
+                    inited = true;
+                    try {
+                        handler.init();
+                    } catch (Throwable e) {
+                        logger.error(e.getMessage(), e);
+                    }
+                }
+                //先设置正在执行的标记再取数据，避免取出来之后到开始执行之前，阻塞策略认为这个定时任务是空闲的
+                running = true;
+                TriggerParam triggerParam = triggerQueue.poll();
+                if (triggerParam != null) {
+                    triggerLogIdSet.remove(triggerParam.getLogId());
+                    try {
+                        JobRunner.execute(handler, triggerParam);
+                    } catch (Throwable e) {
+                        if (toStop) {
+                            JobRunner.logStopped(stopReason, e);
+                        }
+                    } finally {
+                        JobRunner.callback(triggerParam, toStop ? stopReason : null);
+                    }
+                }
+            }
+            if (toStop) {
+                finish();
+            }
+        } finally {
+            //线程是线程池的，停止的时候发出的中断不能影响后面执行的其他定时任务
+            synchronized (this) {
+                runner = null;
+                Thread.interrupted();
+            }
+            running = false;
+            lastActiveTime = System.currentTimeMillis();
+            scheduled.set(false);
+        }
+        //提交标记清除之前放进队列的数据或者设置的停止标记，可能因为提交标记还在而没有提交任务，所以这里要再检查一次
+        if (!triggerQueue.isEmpty() || (toStop && !destroyed)) {
+            schedule();
+        }
+    }
+
+
+    /**
+     * 停止之后回调队列中没有执行的定时任务，并且执行一次销毁方法
+     */
+    private void finish() {
+        TriggerParam triggerParam;
+        while ((triggerParam = triggerQueue.poll()) != null) {
+            triggerLogIdSet.remove(triggerParam.getLogId());
+            JobRunner.callbackNotExecuted(triggerParam, stopReason);
+        }
+        synchronized (stopLatch) {
+            if (destroyed) {
+                return;
+            }
+            destroyed = true;
+        }
+        if (inited) {
+            try {
+                handler.destroy();
+            } catch (Throwable e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+        stopLatch.countDown();
+        logger.info(">>>>>>>>>>> xxl-job JobActor stoped, jobId:{}", jobId);
+    }
+}
@@ -0,0 +1,200 @@
+package com.ytrue.job.core.thread;
+
+import com.ytrue.job.core.biz.model.HandleCallbackParam;
+import com.ytrue.job.core.biz.model.TriggerParam;
+import com.ytrue.job.core.context.XxlJobContext;
+import com.ytrue.job.core.context.XxlJobHelper;
+import com.ytrue.job.core.handler.IJobHandler;
+import com.ytrue.job.core.log.XxlJobFileAppender;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 23:10
+ * @description 执行一次定时任务并回调结果的过程，原来写在JobThread的run方法中，现在JobThread和JobActor共用
+ */
+class JobRunner {
+
+    /**
+     * 执行一次定时任务，执行的结果记录在定时任务上下文中
+     *
+     * @param handler
+     * @param triggerParam
+     * @throws Throwable
+     */
+    static void execute(IJobHandler handler, TriggerParam triggerParam) throws Throwable {
+        //接下来就是一系列的处理执行器端定时任务执行的日志操作
+        //先根据定时任务的触发时间和定时任务的日志id，创建一个记录定时任务日的文件名
+        // D:\data\applogs\xxl-job\jobhandler\2023-11-11\1.log
+        String logFileName = XxlJobFileAppender.makeLogFileName(new Date(triggerParam.getLogDateTime()), triggerParam.getLogId());
+
+
+        //然后创建一个定时任务上下文对象
+        XxlJobContext xxlJobContext = new XxlJobContext(
+                // 任务id
+                triggerParam.getJobId(),
+                // 任务参数
+                triggerParam.getExecutorParams(),
+                // 日志文件名称
+                logFileName,
+                // 分片索引
+                triggerParam.getBroadcastIndex(),
+                // 分片总数
+                triggerParam.getBroadcastTotal(),
+                // 日志id
+                triggerParam.getLogId(),
+                // 触发这次调度的调度中心的地址
+                triggerParam.getShardAdminAddress());
+
+        //先把创建出来的定时任务上下文对象存储到执行定时任务线程的私有容器中
+        XxlJobContext.setXxlJobContext(xxlJobContext);
+        //这里会向logFileName文件中记录一下日志，记录的就是下面的这句话，定时任务开始执行了
+        XxlJobHelper.log("<br>----------- xxl-job job execute start -----------<br>----------- Param:" + xxlJobContext.getJobParam());
+
+        //如果设置了超时时间，就在时间轮中登记超时检测，定时任务还是在当前线程中执行
+        //原来是每次都创建一个新的线程通过FutureTask来执行定时任务，当前线程阻塞在FutureTask上等待结果
+        //现在到了超时时间还没执行完，时间轮会中断当前线程，同时马上把超时的结果回调给调度中心，不用等定时任务响应中断
+        //定时任务不响应中断的话，还会继续执行下去，这个线程一直被占着，但是它之后的执行结果不会再回调
+        if (triggerParam.getExecutorTimeout() > 0) {
+            JobTimeoutWheel.Watch watch = JobTimeoutWheel.getInstance().watch(triggerParam.getExecutorTimeout(), () -> {
+                xxlJobContext.setResultReported(true);
+                TriggerCallbackThread.pushCallBack(new HandleCallbackParam(
+                        triggerParam.getLogId(),
+                        triggerParam.getLogDateTime(),
+                        XxlJobContext.HANDLE_CODE_TIMEOUT,
+                        "job execute timeout "));
+            });
+            Throwable error = null;
+            try {
+                handler.execute();
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                if (watch.finish()) {
+                    //超时之后中断引起的异常就是超时本身，不再当作执行出错处理
+                    XxlJobHelper.log("<br>----------- xxl-job job execute timeout");
+                    XxlJobHelper.log(error != null ? error : new TimeoutException("job execute timeout, timeout:" + triggerParam.getExecutorTimeout() + "s"));
+                    //超时直接设置任务执行超时
+                    XxlJobHelper.handleTimeout("job execute timeout ");
+                    error = null;
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        } else {
+            //没有设置超时时间，//通过反射执行了定时任务，终于在这里执行了
+            handler.execute();
+        }
+        //定时任务执行了，所以这里要判断一下执行结果是什么，注意，这里的XxlJobContext上下文对象
+        //从创建的时候就默认执行结果为成功。在源码中，在这行代码之前其实还有任务执行超时时间的判断，开启一个子线程去执行定时任务
+        //然后再判断任务执行成功了没，如果没成功XxlJobHelper类就会修改上下文对象的执行结果。等我们引入任务超时的功能后，这里的逻辑就会更丰富了
+        if (XxlJobContext.getXxlJobContext().getHandleCode() <= 0) {
+            // 作业句柄结果丢失。
+            XxlJobHelper.handleFail("job handle result lost.");
+        } else {
+            //走到这里意味着定时任务执行成功了，从定时任务上下文中取出执行的结果信息
+            String tempHandleMsg = XxlJobContext.getXxlJobContext().getHandleMsg();
+            //这里有一个三元运算，会判断执行结果信息是不是null，如果执行成功，毫无异常，这个结果信息就会是null
+            //只有在执行失败的时候，才会有失败信息被XxlJobHelper记录进去
+            tempHandleMsg = (tempHandleMsg != null && tempHandleMsg.length() > 50000)
+                    ? tempHandleMsg.substring(0, 50000).concat("...")
+                    : tempHandleMsg;
+            //这里是执行成功了，所以得到的是null，赋值其实就是什么也没赋成
+            XxlJobContext.getXxlJobContext().setHandleMsg(tempHandleMsg);
+        }
+
+        //走到这里，不管是执行成功还是失败，都要把结果存储到对应的日志文件中
+        //走到这里大家也应该意识到了，执行器这一端执行的定时任务，实际上是每一个定时任务都会对应一个本地的日志文件，每个定时任务的执行结果都会存储在自己的文件中
+        //当然，一个定时任务可能会执行很多次，所以定时任务对应的日志文件就会记录这个定时任务每次执行的信息
+        XxlJobHelper.log("<br>----------- xxl-job job execute end(finish) -----------<br>----------- Result: handleCode="
+                         + XxlJobContext.getXxlJobContext().getHandleCode()
+                         + ", handleMsg = "
+                         + XxlJobContext.getXxlJobContext().getHandleMsg()
+        );
+    }
+
+
+    /**
+     * 工作者被停止的时候定时任务抛出了异常，把停止的原因和异常信息记录到定时任务的日志文件中
+     *
+     * @param stopReason
+     * @param e
+     */
+    static void logStopped(String stopReason, Throwable e) {
+        //如果线程停止了，就记录线程停止的日志到定时任务对应的日志文件中
+        XxlJobHelper.log("<br>----------- JobThread toStop, stopReason:" + stopReason);
+        //下面就是将异常信息记录到日志文件中的操作，因为这些都是在catch中执行的
+        //就意味着肯定有异常了，所以要记录异常信息
+        StringWriter stringWriter = new StringWriter();
+        e.printStackTrace(new PrintWriter(stringWriter));
+        String errorMsg = stringWriter.toString();
+        XxlJobHelper.handleFail(errorMsg);
+        //在这里记录异常信息到日志文件中
+        XxlJobHelper.log("<br>----------- JobThread Exception:" + errorMsg + "<br>----------- xxl-job job execute end(error) -----------");
+    }
+
+
+    /**
+     * 把执行结果回调给调度中心
+     *
+     * @param triggerParam
+     * @param stopReason   工作者已经停止的时候是停止的原因，否则为null
+     */
+    static void callback(TriggerParam triggerParam, String stopReason) {
+        //别忘了，调度中心在远程调用之前创建了XxlJobLog这个对象，这个对象要记录很多日记调用信息的
+        XxlJobContext xxlJobContext = XxlJobContext.getXxlJobContext();
+        if (xxlJobContext != null && xxlJobContext.isResultReported()) {
+            //执行超时了，时间轮在截止时间就已经回调过超时的结果了，这里不再回调
+            XxlJobHelper.log("<br>----------- xxl-job job execute end after timeout, result not reported");
+        } else if (stopReason == null) {
+            //如果没有停止，就创建封装回调信息的HandleCallbackParam对象
+            //把这个对象提交给TriggerCallbackThread内部的callBackQueue队列中
+            TriggerCallbackThread.pushCallBack(new HandleCallbackParam(
+                    // 日志id
+                    triggerParam.getLogId(),
+                    // 触发时间就是jobLog刚才设置的那个时间
+                    triggerParam.getLogDateTime(),
+                    // code
+                    XxlJobContext.getXxlJobContext().getHandleCode(),
+                    // 消息
+                    XxlJobContext.getXxlJobContext().getHandleMsg())
+            );
+        } else {
+            //如果走到这里说明线程被终止了，就要封装处理失败的回信
+            TriggerCallbackThread.pushCallBack(new HandleCallbackParam(
+                    triggerParam.getLogId(),
+                    triggerParam.getLogDateTime(),
+                    //失败
+                    XxlJobContext.HANDLE_CODE_FAIL,
+                    stopReason + " [job running, killed]")
+            );
+        }
+        //这次执行的日志已经写完了，关闭日志文件
+        if (xxlJobContext != null) {
+            XxlJobFileAppender.closeLog(xxlJobContext.getJobLogFileName());
+        }
+    }
+
+
+    /**
+     * 工作者停止的时候队列中还没有执行的定时任务，回调失败的结果给调度中心
+     *
+     * @param triggerParam
+     * @param stopReason
+     */
+    static void callbackNotExecuted(TriggerParam triggerParam, String stopReason) {
+        //这里的意思很简单，因为线程已经终止了，但是调用的定时任务还有没执行完的，要告诉调度中心
+        TriggerCallbackThread.pushCallBack(new HandleCallbackParam(
+                triggerParam.getLogId(),
+                triggerParam.getLogDateTime(),
+                // 失败
+                XxlJobContext.HANDLE_CODE_FAIL,
+                stopReason + " [job not executed, in the job queue, killed.]")
+        );
+    }
+}
@@ -1,23 +1,17 @@
 package com.ytrue.job.core.thread;
 
-import com.ytrue.job.core.biz.model.HandleCallbackParam;
 import com.ytrue.job.core.biz.model.ReturnT;
 import com.ytrue.job.core.biz.model.TriggerParam;
-import com.ytrue.job.core.context.XxlJobContext;
-import com.ytrue.job.core.context.XxlJobHelper;
 import com.ytrue.job.core.executor.XxlJobExecutor;
 import com.ytrue.job.core.handler.IJobHandler;
-import com.ytrue.job.core.log.XxlJobFileAppender;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.PrintWriter;
-import java.io.StringWriter;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.*;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author ytrue
@@ -27,8 +21,9 @@ import java.util.concurrent.*;
  * 就会只执行这个定时任务，但是有可能这个任务比较耗时，3秒还没执行完，那么之后每2秒要执行的这个定时任务可能就会放在JobThread对象中的
  * 队列中等待执行，由此也就引申出了阻塞策略，是选择覆盖还是直接丢弃等等
  * 该类继承了thread，本身就是一个线程
+ * 执行器配置为pool或者virtual模式的时候使用的是JobActor，不再为每个定时任务创建线程
  */
-public class JobThread extends Thread {
+public class JobThread extends Thread implements JobWorker {
     private static final Logger logger = LoggerFactory.getLogger(JobThread.class);
 
     /**
@@ -81,6 +76,7 @@ public class JobThread extends Thread {
         this.setName("xxl-job, JobThread-" + jobId + "-" + System.currentTimeMillis());
     }
 
+    @Override
     public IJobHandler getHandler() {
         return handler;
     }
@@ -92,6 +88,7 @@ public class JobThread extends Thread {
      * @param triggerParam
      * @return
      */
+    @Override
     public ReturnT<String> pushTriggerQueue(TriggerParam triggerParam) {
 
         //先判断set集合中包含定时任务的地址id吗，如果包含，就说明定时任务正在执行
@@ -115,6 +112,7 @@ public class JobThread extends Thread {
      *
      * @param stopReason
      */
+    @Override
     public void toStop(String stopReason) {
         //把线程终止标记设为true
         this.toStop = true;
@@ -126,6 +124,7 @@ public class JobThread extends Thread {
      *
      * @return
      */
+    @Override
     public boolean isRunningOrHasQueue() {
         return running || triggerQueue.size() > 0;
     }
@@ -166,89 +165,8 @@ public class JobThread extends Thread {
                     //因为定时任务要执行了，所以要把它的日志ID先从set集合中删除
                     triggerLogIdSet.remove(triggerParam.getLogId());
 
-                    //接下来就是一系列的处理执行器端定时任务执行的日志操作
-                    //先根据定时任务的触发时间和定时任务的日志id，创建一个记录定时任务日的文件名
-                    // D:\data\applogs\xxl-job\jobhandler\2023-11-11\1.log
-                    String logFileName = XxlJobFileAppender.makeLogFileName(new Date(triggerParam.getLogDateTime()), triggerParam.getLogId());
-
-
-                    //然后创建一个定时任务上下文对象
-                    XxlJobContext xxlJobContext = new XxlJobContext(
-                            // 任务id
-                            triggerParam.getJobId(),
-                            // 任务参数
-                            triggerParam.getExecutorParams(),
-                            // 日志文件名称
-                            logFileName,
-                            // 分片索引
-                            triggerParam.getBroadcastIndex(),
-                            // 分片总数
-                            triggerParam.getBroadcastTotal());
-
-                    //先把创建出来的定时任务上下文对象存储到执行定时任务线程的私有容器中
-                    XxlJobContext.setXxlJobContext(xxlJobContext);
-                    //这里会向logFileName文件中记录一下日志，记录的就是下面的这句话，定时任务开始执行了
-                    XxlJobHelper.log("<br>----------- xxl-job job execute start -----------<br>----------- Param:" + xxlJobContext.getJobParam());
-
-                    //如果设置了超时时间，就要设置一个新的线程来执行定时任务
-                    if (triggerParam.getExecutorTimeout() > 0) {
-                        Thread futureThread = null;
-                        try {
-                            FutureTask<Boolean> futureTask = new FutureTask<>(() -> {
-                                //子线程可以访问父线程的本地变量
-                                XxlJobContext.setXxlJobContext(xxlJobContext);
-                                //在FutureTask中执行定时任务
-                                handler.execute();
-                                return true;
-                            });
-                            //创建线程并且启动线程
-                            futureThread = new Thread(futureTask);
-                            futureThread.start();
-                            //最多等待用户设置的超时时间
-                            // 通过创建一个FutureTask来执行定时任务，然后让一个新的线程来执行这个FutureTask。
-                            // 在超时时间之内没有获得执行结果，就意味着定时任务超时了。
-                            // 这时候程序就会走到catch块中，将定时任务的执行结果设置为失败。这就是定时任务超时的简单逻辑。
-                            Boolean tempResult = futureTask.get(triggerParam.getExecutorTimeout(), TimeUnit.SECONDS);
-                        } catch (TimeoutException e) {
-                            XxlJobHelper.log("<br>----------- xxl-job job execute timeout");
-                            XxlJobHelper.log(e);
-                            //超时直接设置任务执行超时
-                            XxlJobHelper.handleTimeout("job execute timeout ");
-                        } finally {
-                            futureThread.interrupt();
-                        }
-                    } else {
-                        //没有设置超时时间，//通过反射执行了定时任务，终于在这里执行了
-                        handler.execute();
-                    }
-                    //定时任务执行了，所以这里要判断一下执行结果是什么，注意，这里的XxlJobContext上下文对象
-                    //从创建的时候就默认执行结果为成功。在源码中，在这行代码之前其实还有任务执行超时时间的判断，开启一个子线程去执行定时任务
-                    //然后再判断任务执行成功了没，如果没成功XxlJobHelper类就会修改上下文对象的执行结果。等我们引入任务超时的功能后，这里的逻辑就会更丰富了
-                    if (XxlJobContext.getXxlJobContext().getHandleCode() <= 0) {
-                        // 作业句柄结果丢失。
-                        XxlJobHelper.handleFail("job handle result lost.");
-                    } else {
-                        //走到这里意味着定时任务执行成功了，从定时任务上下文中取出执行的结果信息
-                        String tempHandleMsg = XxlJobContext.getXxlJobContext().getHandleMsg();
-                        //这里有一个三元运算，会判断执行结果信息是不是null，如果执行成功，毫无异常，这个结果信息就会是null
-                        //只有在执行失败的时候，才会有失败信息被XxlJobHelper记录进去
-                        tempHandleMsg = (tempHandleMsg != null && tempHandleMsg.length() > 50000)
-                                ? tempHandleMsg.substring(0, 50000).concat("...")
-                                : tempHandleMsg;
-                        //这里是执行成功了，所以得到的是null，赋值其实就是什么也没赋成
-                        XxlJobContext.getXxlJobContext().setHandleMsg(tempHandleMsg);
-                    }
-
-                    //走到这里，不管是执行成功还是失败，都要把结果存储到对应的日志文件中
-                    //走到这里大家也应该意识到了，执行器这一端执行的定时任务，实际上是每一个定时任务都会对应一个本地的日志文件，每个定时任务的执行结果都会存储在自己的文件中
-                    //当然，一个定时任务可能会执行很多次，所以定时任务对应的日志文件就会记录这个定时任务每次执行的信息
-                    XxlJobHelper.log("<br>----------- xxl-job job execute end(finish) -----------<br>----------- Result: handleCode="
-                                     + XxlJobContext.getXxlJobContext().getHandleCode()
-                                     + ", handleMsg = "
-                                     + XxlJobContext.getXxlJobContext().getHandleMsg()
-                    );
-
-
+                    //执行定时任务，执行的过程和JobActor是共用的
+                    JobRunner.execute(handler, triggerParam);
                 } else {
                     //走到这里说明触发器队列中没有数据，也就意味着没有要执行的定时任务
                     //如果线程的空闲时间大于30次，这里指的是循环的次数，每循环一次空闲时间就自增1，
@@ -264,45 +182,13 @@ public class JobThread extends Thread {
                 }
             } catch (Throwable e) {
                 if (toStop) {
-                    //如果线程停止了，就记录线程停止的日志到定时任务对应的日志文件中
-                    XxlJobHelper.log("<br>----------- JobThread toStop, stopReason:" + stopReason);
-                    //下面就是将异常信息记录到日志文件中的操作，因为这些都是在catch中执行的
-                    //就意味着肯定有异常了，所以要记录异常信息
-                    StringWriter stringWriter = new StringWriter();
-                    e.printStackTrace(new PrintWriter(stringWriter));
-                    String errorMsg = stringWriter.toString();
-                    XxlJobHelper.handleFail(errorMsg);
-                    //在这里记录异常信息到日志文件中
-                    XxlJobHelper.log("<br>----------- JobThread Exception:" + errorMsg + "<br>----------- xxl-job job execute end(error) -----------");
+                    JobRunner.logStopped(stopReason, e);
                 }
             } finally {
                 //这里就走到了finally中，也就要开始执行日志回调给调度中心的操作了
-                //别忘了，调度中心在远程调用之前创建了XxlJobLog这个对象，这个对象要记录很多日记调用信息的
                 if (triggerParam != null) {
-                    if (!toStop) {
-                        //这里要再次判断线程是否停止运行
-                        //如果没有停止，就创建封装回调信息的HandleCallbackParam对象
-                        //把这个对象提交给TriggerCallbackThread内部的callBackQueue队列中
-                        TriggerCallbackThread.pushCallBack(new HandleCallbackParam(
-                                // 日志id
-                                triggerParam.getLogId(),
-                                // 触发时间就是jobLog刚才设置的那个时间
-                                triggerParam.getLogDateTime(),
-                                // code
-                                XxlJobContext.getXxlJobContext().getHandleCode(),
-                                // 消息
-                                XxlJobContext.getXxlJobContext().getHandleMsg())
-                        );
-                    } else {
-                        //如果走到这里说明线程被终止了，就要封装处理失败的回信
-                        TriggerCallbackThread.pushCallBack(new HandleCallbackParam(
-                                triggerParam.getLogId(),
-                                triggerParam.getLogDateTime(),
-                                //失败
-                                XxlJobContext.HANDLE_CODE_FAIL,
-                                stopReason + " [job running, killed]")
-                        );
-                    }
+                    //这里要再次判断线程是否停止运行，停止了的话回调的是失败的结果
+                    JobRunner.callback(triggerParam, toStop ? stopReason : null);
                 }
             }
         }
@@ -312,14 +198,7 @@ public class JobThread extends Thread {
             TriggerParam triggerParam = triggerQueue.poll();
             if (triggerParam != null) {
                 //下面就是封装回调信息，把执行结果回调给调度中心
-                //这里的意思很简单，因为线程已经终止了，但是调用的定时任务还有没执行完的，要告诉调度中心
-                TriggerCallbackThread.pushCallBack(new HandleCallbackParam(
-                        triggerParam.getLogId(),
-                        triggerParam.getLogDateTime(),
-                        // 失败
-                        XxlJobContext.HANDLE_CODE_FAIL,
-                        stopReason + " [job not executed, in the job queue, killed.]")
-                );
+                JobRunner.callbackNotExecuted(triggerParam, stopReason);
             }
         }
 
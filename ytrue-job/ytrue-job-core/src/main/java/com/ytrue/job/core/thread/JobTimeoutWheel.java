@@ -0,0 +1,145 @@
+package com.ytrue.job.core.thread;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 23:40
+ * @description 定时任务执行超时的检测组件，所有定时任务共用一个时间轮
+ * 原来设置了超时时间的定时任务每执行一次都要创建一个新线程去执行，执行定时任务的线程就阻塞在FutureTask上等待结果
+ * 现在定时任务直接在原来的线程中执行，执行之前在时间轮中登记一个超时任务，到了超时时间还没执行完就中断执行定时任务的线程，
+ * 同时由时间轮的线程执行登记时传入的超时回调，不用等到定时任务响应中断，超时的结果在截止时间就能报告给调度中心
+ * 时间轮的精度是TICK_MS，超时时间的单位是秒，这个精度已经足够了
+ */
+public class JobTimeoutWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobTimeoutWheel.class);
+
+    private static JobTimeoutWheel instance = new JobTimeoutWheel();
+
+    public static JobTimeoutWheel getInstance() {
+        return instance;
+    }
+
+    /**
+     * 时间轮每一格的时间
+     */
+    private static final long TICK_MS = 100;
+
+    /**
+     * 时间轮的格数，转一圈是51.2秒，超时时间更长的定时任务会在时间轮上多转几圈
+     */
+    private static final int TICKS_PER_WHEEL = 512;
+
+    private HashedWheelTimer timer;
+
+
+    /**
+     * 一次执行的超时检测，执行结束之后一定要调用finish
+     */
+    public static class Watch {
+
+        private final Thread worker;
+
+        /**
+         * 到了超时时间，执行还没结束的时候在时间轮的线程中执行，不能有耗时的操作
+         */
+        private final Runnable onExpire;
+
+        private volatile Timeout timeout;
+
+        /**
+         * 执行是否已经结束，和timedOut一起在同一个锁中修改，保证执行结束之后不会再中断线程
+         */
+        private boolean finished = false;
+
+        private boolean timedOut = false;
+
+        private Watch(Thread worker, Runnable onExpire) {
+            this.worker = worker;
+            this.onExpire = onExpire;
+        }
+
+        /**
+         * 到了超时时间，执行还没结束的话中断执行定时任务的线程，并执行超时回调
+         */
+        private synchronized void expire() {
+            if (!finished) {
+                timedOut = true;
+                worker.interrupt();
+                try {
+                    onExpire.run();
+                } catch (Throwable e) {
+                    logger.error(">>>>>>>>>>> xxl-job, JobTimeoutWheel expire callback error:{}", e);
+                }
+            }
+        }
+
+        /**
+         * 执行结束，在执行定时任务的线程中调用
+         *
+         * @return 是否超时了
+         */
+        public boolean finish() {
+            Timeout watchTimeout = timeout;
+            if (watchTimeout != null) {
+                watchTimeout.cancel();
+            }
+            boolean expired;
+            synchronized (this) {
+                finished = true;
+                expired = timedOut;
+            }
+            if (expired) {
+                //超时发出的中断是给这次执行的，不能留给线程后面的工作
+                Thread.interrupted();
+            }
+            return expired;
+        }
+    }
+
+
+    /**
+     * 为当前线程的一次执行登记超时检测
+     *
+     * @param timeoutSeconds
+     * @param onExpire       到了超时时间，执行还没结束的时候在时间轮的线程中执行
+     * @return
+     */
+    public Watch watch(int timeoutSeconds, Runnable onExpire) {
+        Watch watch = new Watch(Thread.currentThread(), onExpire);
+        watch.timeout = getTimer().newTimeout(t -> watch.expire(), timeoutSeconds, TimeUnit.SECONDS);
+        return watch;
+    }
+
+
+    /**
+     * 停止时间轮，还没到时间的超时检测都不会再执行
+     */
+    public synchronized void toStop() {
+        if (timer != null) {
+            timer.stop();
+            timer = null;
+            logger.info(">>>>>>>>>>> xxl-job, JobTimeoutWheel stop");
+        }
+    }
+
+
+    /**
+     * 第一次使用的时候才创建时间轮，没有设置超时时间的执行器不会多出一个线程
+     *
+     * @return
+     */
+    private synchronized HashedWheelTimer getTimer() {
+        if (timer == null) {
+            timer = new HashedWheelTimer(new DefaultThreadFactory("xxl-job, JobTimeoutWheel", true), TICK_MS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+        }
+        return timer;
+    }
+}
@@ -0,0 +1,55 @@
+package com.ytrue.job.core.thread;
+
+import com.ytrue.job.core.biz.model.ReturnT;
+import com.ytrue.job.core.biz.model.TriggerParam;
+import com.ytrue.job.core.handler.IJobHandler;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 23:10
+ * @description 执行某一个定时任务的工作者，同一个定时任务的触发器参数都交给同一个工作者，按照收到的顺序串行执行
+ * JobThread是一个定时任务独占一个线程的实现，JobActor是多个定时任务共用线程池的实现，阻塞策略对这两种实现的处理是一样的
+ */
+public interface JobWorker {
+
+    /**
+     * 得到封装定时任务方法的对象
+     *
+     * @return
+     */
+    IJobHandler getHandler();
+
+    /**
+     * 把触发器参数放进队列中，等待执行
+     *
+     * @param triggerParam
+     * @return
+     */
+    ReturnT<String> pushTriggerQueue(TriggerParam triggerParam);
+
+    /**
+     * 是否正在执行定时任务，或者队列中还有等待执行的触发器参数
+     *
+     * @return
+     */
+    boolean isRunningOrHasQueue();
+
+    /**
+     * 设置停止的标记，之后队列中的触发器参数不会再执行，会回调失败的结果给调度中心
+     *
+     * @param stopReason
+     */
+    void toStop(String stopReason);
+
+    /**
+     * 中断正在执行的定时任务
+     */
+    void interrupt();
+
+    /**
+     * 等待工作者停止，停止之后定时任务的销毁方法已经执行过了
+     *
+     * @throws InterruptedException
+     */
+    void join() throws InterruptedException;
+}
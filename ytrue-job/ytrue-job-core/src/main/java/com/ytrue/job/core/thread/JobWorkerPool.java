@@ -0,0 +1,191 @@
+package com.ytrue.job.core.thread;
+
+import com.ytrue.job.core.enums.JobWorkerModeEnum;
+import com.ytrue.job.core.executor.XxlJobExecutor;
+import com.ytrue.job.core.handler.IJobHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author ytrue
+ * @date 2026-10-19 23:10
+ * @description 创建定时任务工作者的组件，根据执行器配置的工作模式决定是每个定时任务一个线程，还是共用线程池
+ * 原来一个定时任务对应一个JobThread线程，一个执行器上有几千个定时任务的时候就有几千个线程，而且空闲的线程90秒之后就会销毁，下次调度又要重新创建
+ * POOL模式下所有定时任务共用一个固定大小的线程池，VIRTUAL模式下每次执行都使用一个新的虚拟线程，这两种模式的工作者都是JobActor
+ * JobActor空闲的时候没有线程，不能像JobThread那样自己退出，所以这里有一个线程定期把空闲太久的JobActor从执行器中移除
+ */
+public class JobWorkerPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobWorkerPool.class);
+
+    private static JobWorkerPool instance = new JobWorkerPool();
+
+    public static JobWorkerPool getInstance() {
+        return instance;
+    }
+
+    /**
+     * 没有配置线程池大小时使用的默认值
+     */
+    private static final int DEFAULT_POOL_SIZE = 200;
+
+    /**
+     * JobActor空闲超过这个时间就移除，和JobThread空闲30次、每次等待3秒差不多
+     */
+    private static final long ACTOR_IDLE_EXPIRE_MS = 90_000;
+
+    /**
+     * 检查空闲JobActor的周期
+     */
+    private static final long EVICT_INTERVAL_MS = 30_000;
+
+    /**
+     * 移除空闲JobActor的线程，THREAD模式下为null
+     */
+    private Thread evictThread;
+
+    private volatile boolean toStop = false;
+
+    /**
+     * 执行定时任务的线程池，THREAD模式下为null
+     */
+    private volatile ExecutorService executorService;
+
+
+    /**
+     * 启动组件
+     *
+     * @param mode     工作模式
+     * @param poolSize POOL模式下线程池的大小，小于等于0的时候使用默认值
+     */
+    public void start(JobWorkerModeEnum mode, int poolSize) {
+        if (mode == JobWorkerModeEnum.VIRTUAL) {
+            executorService = newVirtualThreadExecutor();
+            if (executorService != null) {
+                startEvictThread();
+                logger.info(">>>>>>>>>>> xxl-job, JobWorkerPool start, mode:VIRTUAL");
+                return;
+            }
+            logger.warn(">>>>>>>>>>> xxl-job, virtual threads need JDK 21 or later, JobWorkerPool fall back to POOL mode.");
+            mode = JobWorkerModeEnum.POOL;
+        }
+        if (mode == JobWorkerModeEnum.POOL) {
+            int size = poolSize > 0 ? poolSize : DEFAULT_POOL_SIZE;
+            AtomicInteger threadIndex = new AtomicInteger();
+            //队列中最多是每个定时任务一个待执行的任务，所以不需要限制队列的长度
+            ThreadPoolExecutor threadPool = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    r -> new Thread(r, "xxl-job, JobWorkerPool-" + threadIndex.incrementAndGet()));
+            threadPool.allowCoreThreadTimeOut(true);
+            executorService = threadPool;
+            startEvictThread();
+            logger.info(">>>>>>>>>>> xxl-job, JobWorkerPool start, mode:POOL, poolSize:{}", size);
+        }
+    }
+
+
+    /**
+     * 停止组件，这时候定时任务的工作者都已经停止了
+     */
+    public void toStop() {
+        toStop = true;
+        if (evictThread != null) {
+            evictThread.interrupt();
+            try {
+                evictThread.join();
+            } catch (InterruptedException e) {
+                logger.error(e.getMessage(), e);
+            }
+            evictThread = null;
+        }
+        ExecutorService stopExecutorService = executorService;
+        executorService = null;
+        if (stopExecutorService != null) {
+            stopExecutorService.shutdown();
+            try {
+                stopExecutorService.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                logger.error(e.getMessage(), e);
+            }
+        }
+    }
+
+
+    /**
+     * 为定时任务创建一个工作者，THREAD模式下创建并启动一个JobThread，其他模式下创建一个JobActor
+     *
+     * @param jobId
+     * @param handler
+     * @return
+     */
+    public JobWorker newWorker(int jobId, IJobHandler handler) {
+        ExecutorService workerExecutorService = executorService;
+        if (workerExecutorService != null) {
+            return new JobActor(jobId, handler, workerExecutorService);
+        }
+        JobThread jobThread = new JobThread(jobId, handler);
+        jobThread.start();
+        return jobThread;
+    }
+
+
+    private void startEvictThread() {
+        toStop = false;
+        evictThread = new Thread(() -> {
+            while (!toStop) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(EVICT_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    if (!toStop) {
+                        logger.error(e.getMessage(), e);
+                    }
+                }
+                if (toStop) {
+                    break;
+                }
+                try {
+                    evictIdleActors(System.currentTimeMillis());
+                } catch (Throwable e) {
+                    logger.error(">>>>>>>>>>> xxl-job, JobWorkerPool evict thread error:{}", e);
+                }
+            }
+            logger.info(">>>>>>>>>>> xxl-job, JobWorkerPool evict thread stop");
+        });
+        evictThread.setDaemon(true);
+        evictThread.setName("xxl-job, executor JobWorkerPool");
+        evictThread.start();
+    }
+
+
+    /**
+     * 把空闲太久的JobActor从执行器中移除，移除之后会执行定时任务的销毁方法，下次调度的时候再创建新的JobActor
+     *
+     * @param now
+     */
+    void evictIdleActors(long now) {
+        for (Map.Entry<Integer, JobWorker> entry : XxlJobExecutor.getJobThreadRepository().entrySet()) {
+            JobWorker jobWorker = entry.getValue();
+            if (jobWorker instanceof JobActor && ((JobActor) jobWorker).isIdle(now, ACTOR_IDLE_EXPIRE_MS)
+                    && XxlJobExecutor.removeIdleJobThread(entry.getKey(), jobWorker, "excutor idel times over limit.")) {
+                logger.debug(">>>>>>>>>>> xxl-job, JobWorkerPool idle actor removed, jobId:{}", entry.getKey());
+            }
+        }
+    }
+
+
+    /**
+     * 编译的版本是JDK17，所以通过反射创建虚拟线程的线程池
+     *
+     * @return JDK21以下返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.ytrue.job.core.thread;
+
+import com.ytrue.job.core.log.XxlJobFileAppender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 02:40
+ * @description 把脚本进程的输出写进定时任务日志的组件，所有正在执行的脚本共用一个线程
+ * 原来每执行一次脚本都要创建两个线程，分别把标准输出和错误输出用1KB的缓冲区一点一点地复制到日志文件中，输出多的脚本大部分cpu都花在了这些很小的复制上
+ * 进程的管道不能注册到Selector上，所以这里的线程轮询每个进程的管道中已经可以读取的字节数，有数据的就一次读进缓冲区，所有管道都没有数据的时候休息IDLE_PARK_MS
+ * 错误输出在启动进程的时候就合并到了标准输出中，每个进程只需要读取一个管道，两种输出的顺序也和脚本中的一致
+ * 读到的内容按完整的行交给异步写日志的组件，调度中心查看日志的时候在脚本执行的过程中就能看到已经输出的内容
+ * 进程结束的时候，jdk会在另一个线程中把管道中剩下的内容读出来换成内存中的流，这个过程中管道可能暂时读不到数据，甚至会抛出Stream closed
+ * 所以进程结束之后还要继续读，直到读到流的末尾，或者连续EXIT_DRAIN_MS都没有读到数据为止
+ * 不能在没有数据的时候直接阻塞地读到末尾，脚本启动的后台进程会一直持有管道，阻塞的读会卡住所有脚本的输出
+ */
+public class ScriptOutputPump {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScriptOutputPump.class);
+
+    private static ScriptOutputPump instance = new ScriptOutputPump();
+
+    public static ScriptOutputPump getInstance() {
+        return instance;
+    }
+
+    /**
+     * 每个进程使用的缓冲区大小
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 最多缓存多少个用完的缓冲区
+     */
+    private static final int BUFFER_POOL_SIZE = 16;
+
+    /**
+     * 所有管道都没有数据的时候休息多久
+     */
+    private static final long IDLE_PARK_MS = 10;
+
+    /**
+     * 进程结束之后，连续多久没有读到数据就认为输出已经读完了
+     */
+    private static final long EXIT_DRAIN_MS = 200;
+
+    /**
+     * 用完的缓冲区，下次执行脚本的时候直接使用
+     */
+    private final ArrayBlockingQueue<byte[]> bufferPool = new ArrayBlockingQueue<>(BUFFER_POOL_SIZE);
+
+    /**
+     * 正在读取输出的进程，只有读取的线程会移除
+     */
+    private final ConcurrentLinkedQueue<Output> outputs = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean toStop = false;
+
+    private Thread pumpThread;
+
+
+    /**
+     * 一个进程的输出，读取的线程把管道中的内容都读完之后调用finish
+     */
+    public static class Output {
+
+        private final Process process;
+
+        private final InputStream inputStream;
+
+        private final String logFileName;
+
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private byte[] buffer;
+
+        /**
+         * 缓冲区中还没写进日志的字节数，这些字节是一行的前半部分
+         */
+        private int length = 0;
+
+        /**
+         * 是否已经发现进程结束了
+         */
+        private boolean exited = false;
+
+        /**
+         * 最近一次读到数据的时间，发现进程结束的时候也会更新
+         */
+        private long lastReadNanos;
+
+        private Output(Process process, String logFileName, byte[] buffer) {
+            this.process = process;
+            this.inputStream = process.getInputStream();
+            this.logFileName = logFileName;
+            this.buffer = buffer;
+        }
+
+        /**
+         * 等待进程的输出全部写进日志，进程结束之后调用
+         *
+         * @throws InterruptedException
+         */
+        public void await() throws InterruptedException {
+            finished.await();
+        }
+
+        /**
+         * 等待进程的输出全部写进日志，最多等待timeout，进程被销毁之后调用
+         *
+         * @param timeout
+         * @param unit
+         * @return
+         * @throws InterruptedException
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return finished.await(timeout, unit);
+        }
+    }
+
+
+    /**
+     * 开始读取一个进程的输出，进程启动的时候应该已经把错误输出合并到了标准输出中
+     *
+     * @param process
+     * @param logFileName
+     * @return
+     */
+    public Output pump(Process process, String logFileName) {
+        byte[] buffer = bufferPool.poll();
+        Output output = new Output(process, logFileName, buffer != null ? buffer : new byte[BUFFER_SIZE]);
+        outputs.add(output);
+        LockSupport.unpark(getPumpThread());
+        return output;
+    }
+
+
+    /**
+     * 停止读取的线程，还没读完的进程输出直接结束
+     */
+    public synchronized void toStop() {
+        if (pumpThread == null) {
+            return;
+        }
+        toStop = true;
+        LockSupport.unpark(pumpThread);
+        try {
+            pumpThread.join();
+        } catch (InterruptedException e) {
+            logger.error(e.getMessage(), e);
+        }
+        pumpThread = null;
+        for (Output output : outputs) {
+            finish(output);
+        }
+        outputs.clear();
+        toStop = false;
+    }
+
+
+    private synchronized Thread getPumpThread() {
+        if (pumpThread == null) {
+            pumpThread = new Thread(() -> {
+                while (!toStop) {
+                    boolean progress = false;
+                    Iterator<Output> iterator = outputs.iterator();
+                    while (iterator.hasNext()) {
+                        Output output = iterator.next();
+                        try {
+                            int count = read(output);
+                            if (count > 0) {
+                                progress = true;
+                            } else if (count < 0 || drained(output)) {
+                                //读到了流的末尾，或者进程结束之后一段时间都没有新的数据了
+                                iterator.remove();
+                                finish(output);
+                            }
+                        } catch (IOException e) {
+                            //进程还在运行的时候管道被关闭了，说明进程被销毁了
+                            //进程结束之后jdk替换流的过程中也可能抛出异常，这种情况下次再读
+                            if (output.process.isAlive() || drained(output)) {
+                                iterator.remove();
+                                finish(output);
+                            }
+                        } catch (Throwable e) {
+                            logger.error(">>>>>>>>>>> xxl-job, ScriptOutputPump error:{}", e);
+                            iterator.remove();
+                            finish(output);
+                        }
+                    }
+                    if (!progress) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_PARK_MS));
+                    }
+                }
+                logger.info(">>>>>>>>>>> xxl-job, ScriptOutputPump thread stop");
+            });
+            pumpThread.setDaemon(true);
+            pumpThread.setName("xxl-job, executor ScriptOutputPump");
+            pumpThread.start();
+        }
+        return pumpThread;
+    }
+
+
+    /**
+     * 判断进程结束之后输出是否已经读完了，第一次发现进程结束的时候开始计时
+     *
+     * @param output
+     * @return
+     */
+    private boolean drained(Output output) {
+        if (!output.exited) {
+            if (output.process.isAlive()) {
+                return false;
+            }
+            output.exited = true;
+            output.lastReadNanos = System.nanoTime();
+            return false;
+        }
+        return System.nanoTime() - output.lastReadNanos >= TimeUnit.MILLISECONDS.toNanos(EXIT_DRAIN_MS);
+    }
+
+
+    /**
+     * 把管道中已经可以读取的内容读进缓冲区，完整的行写进日志
+     * 只有可以读取的字节数大于0的时候才会读，所以不会阻塞
+     *
+     * @param output
+     * @return 读到的字节数，0说明暂时没有数据，-1说明已经读到了流的末尾
+     */
+    private int read(Output output) throws IOException {
+        int available = output.inputStream.available();
+        if (available <= 0) {
+            return 0;
+        }
+        int count = output.inputStream.read(output.buffer, output.length, Math.min(available, output.buffer.length - output.length));
+        if (count <= 0) {
+            return count < 0 ? -1 : 0;
+        }
+        output.lastReadNanos = System.nanoTime();
+        int from = output.length;
+        output.length += count;
+        int lineEnd = -1;
+        for (int i = output.length - 1; i >= from; i--) {
+            if (output.buffer[i] == '\n') {
+                lineEnd = i + 1;
+                break;
+            }
+        }
+        if (lineEnd < 0) {
+            //一行比缓冲区还长，只能先写进去
+            if (output.length == output.buffer.length) {
+                XxlJobFileAppender.appendRaw(output.logFileName, output.buffer, 0, output.length);
+                output.length = 0;
+            }
+            return count;
+        }
+        XxlJobFileAppender.appendRaw(output.logFileName, output.buffer, 0, lineEnd);
+        output.length -= lineEnd;
+        System.arraycopy(output.buffer, lineEnd, output.buffer, 0, output.length);
+        return count;
+    }
+
+
+    private void finish(Output output) {
+        if (output.buffer != null) {
+            if (output.length > 0) {
+                //最后一行没有换行符
+                XxlJobFileAppender.appendRaw(output.logFileName, output.buffer, 0, output.length);
+            }
+            try {
+                output.inputStream.close();
+            } catch (IOException e) {
+                logger.debug(e.getMessage(), e);
+            }
+            bufferPool.offer(output.buffer);
+            output.buffer = null;
+        }
+        output.finished.countDown();
+    }
+}
@@ -14,6 +14,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -69,6 +70,71 @@ public class TriggerCallbackThread {
      */
     private volatile boolean toStop = false;
 
+    /**
+     * 重试线程检查的间隔
+     */
+    private static final long RETRY_INTERVAL_MS = 1000;
+
+    /**
+     * 重试的时候一批最多回调的条数
+     */
+    private static final int RETRY_BATCH_SIZE = 500;
+
+    /**
+     * 调度中心回调失败之后的退避时间，从1秒开始每次翻倍，最多等待RegistryConfig.BEAT_TIMEOUT秒
+     */
+    private static final long BACKOFF_MIN_MS = 1000;
+    private static final long BACKOFF_MAX_MS = RegistryConfig.BEAT_TIMEOUT * 1000L;
+
+    /**
+     * 升级之前存储回调失败信息的文件名前缀
+     */
+    private static final String LEGACY_FILE_PREFIX = "xxl-job-callback-";
+
+    /**
+     * 回调失败的信息的本地存储
+     * D:\data\applogs\xxl-job\jobhandler\callbacklog\
+     */
+    private CallbackSpool callbackSpool;
+
+    /**
+     * 每个调度中心的退避状态
+     */
+    private List<AdminBackoff> adminList = new ArrayList<>();
+
+
+    /**
+     * 调度中心的退避状态，回调失败之后在nextTryTime之前不再发送请求
+     * 回调线程和重试线程都会修改，所以方法都是同步的
+     */
+    private static class AdminBackoff {
+
+        private final AdminBiz adminBiz;
+
+        private int failCount = 0;
+
+        private long nextTryTime = 0;
+
+        private AdminBackoff(AdminBiz adminBiz) {
+            this.adminBiz = adminBiz;
+        }
+
+        private synchronized boolean isAvailable() {
+            return System.currentTimeMillis() >= nextTryTime;
+        }
+
+        private synchronized void success() {
+            failCount = 0;
+            nextTryTime = 0;
+        }
+
+        private synchronized void fail() {
+            long backoff = Math.min(BACKOFF_MIN_MS << Math.min(failCount, 16), BACKOFF_MAX_MS);
+            failCount++;
+            nextTryTime = System.currentTimeMillis() + backoff;
+        }
+    }
+
 
     public void start() {
         //对访问调度中心的客户端做一下判空操作
@@ -76,6 +142,20 @@ public class TriggerCallbackThread {
             logger.warn(">>>>>>>>>>> xxl-job, executor callback config fail, adminAddresses is null.");
             return;
         }
+        List<AdminBackoff> adminList = new ArrayList<>();
+        for (AdminBiz adminBiz : XxlJobExecutor.getAdminBizList()) {
+            adminList.add(new AdminBackoff(adminBiz));
+        }
+        this.adminList = adminList;
+
+        //打开回调失败信息的本地存储，升级之前留下的回调失败文件也导入进来
+        File callbackLogPath = new File(XxlJobFileAppender.getLogPath(), "callbacklog");
+        try {
+            callbackSpool = new CallbackSpool(callbackLogPath);
+            importLegacyCallbackFile(callbackLogPath);
+        } catch (IOException e) {
+            logger.error(">>>>>>>>>>> xxl-job, callback spool open error:{}", e);
+        }
 
         //启动回调线程
         triggerCallbackThread = new Thread(() -> {
@@ -131,20 +211,19 @@ public class TriggerCallbackThread {
         triggerCallbackThread.start();
 
 
-        //启动重试回调的线程
+        //启动重试回调的线程，调度中心恢复之后，退避时间一到就会开始重试，不用再等30秒
         triggerRetryCallbackThread = new Thread(() -> {
             while (!toStop) {
                 try {
                     //重新回调一次
-                    retryFailCallbackFile();
+                    retryFailCallback();
                 } catch (Exception e) {
                     if (!toStop) {
                         logger.error(e.getMessage(), e);
                     }
                 }
                 try {
-                    //休息30秒再次重试
-                    TimeUnit.SECONDS.sleep(RegistryConfig.BEAT_TIMEOUT);
+                    TimeUnit.MILLISECONDS.sleep(RETRY_INTERVAL_MS);
                 } catch (InterruptedException e) {
                     if (!toStop) {
                         logger.error(e.getMessage(), e);
@@ -154,48 +233,64 @@ public class TriggerCallbackThread {
             logger.info(">>>>>>>>>>> xxl-job, executor retry callback thread destroy.");
         });
         triggerRetryCallbackThread.setDaemon(true);
+        triggerRetryCallbackThread.setName("xxl-job, executor TriggerRetryCallbackThread");
         triggerRetryCallbackThread.start();
     }
 
 
     /**
-     * 重新回调执行结果给调度中心的方法
+     * 重新回调执行结果给调度中心的方法，从存储的游标位置开始一批一批地回调，直到全部回调成功或者调度中心都在退避中
      */
-    private void retryFailCallbackFile() {
-        //得到文件夹路径
-        // D:\data\applogs\xxl-job\jobhandler\callbacklog\
-        File callbackLogPath = new File(failCallbackFilePath);
-        // 判断目录是否存在
-        if (!callbackLogPath.exists()) {
+    private void retryFailCallback() throws IOException {
+        if (callbackSpool == null) {
             return;
         }
-        // 如果是文件就删除
-        if (callbackLogPath.isFile()) {
-            callbackLogPath.delete();
+        //回调线程追加的记录到时间了也要刷盘
+        callbackSpool.force(false);
+        while (!toStop && !callbackSpool.isEmpty() && hasAvailableAdmin()) {
+            CallbackSpool.Batch batch = callbackSpool.read(RETRY_BATCH_SIZE);
+            if (batch == null) {
+                return;
+            }
+            List<HandleCallbackParam> callbackParamList = batch.getCallbackParamList();
+            if (!callbackParamList.isEmpty()) {
+                ReturnT<String> callbackResult = callAdmin(callbackParamList);
+                if (callbackResult.getCode() != ReturnT.SUCCESS_CODE) {
+                    //游标不动，等退避时间到了再重试这一批
+                    return;
+                }
+                callbackLog(callbackParamList, "<br>----------- xxl-job job callback finish (retry).");
+            }
+            callbackSpool.commit(batch);
         }
+    }
 
-        // 如果callbackLogPath不是目录，并且callbackLogPath没有文件就不处理
-        if (!(callbackLogPath.isDirectory() && callbackLogPath.list() != null && callbackLogPath.list().length > 0)) {
+
+    /**
+     * 把升级之前用Java序列化存储的回调失败文件导入到新的存储中，只在启动的时候执行一次
+     *
+     * @param callbackLogPath
+     */
+    private void importLegacyCallbackFile(File callbackLogPath) {
+        File[] legacyFiles = callbackLogPath.listFiles((dir, name) -> name.startsWith(LEGACY_FILE_PREFIX));
+        if (legacyFiles == null) {
             return;
         }
-        //遍历文件夹中的日志文件
-        for (File callbaclLogFile : callbackLogPath.listFiles()) {
-            //读取日志信息
-            byte[] callbackParamList_bytes = FileUtil.readFileContent(callbaclLogFile);
-
-            //如果文件是空的就删除
-            if (callbackParamList_bytes == null || callbackParamList_bytes.length < 1) {
-                callbaclLogFile.delete();
-                continue;
+        for (File legacyFile : legacyFiles) {
+            try {
+                byte[] callbackParamList_bytes = FileUtil.readFileContent(legacyFile);
+                if (callbackParamList_bytes != null && callbackParamList_bytes.length > 0) {
+                    List<HandleCallbackParam> callbackParamList = (List<HandleCallbackParam>) JdkSerializeTool.deserialize(callbackParamList_bytes, List.class);
+                    if (callbackParamList != null && !callbackParamList.isEmpty()) {
+                        callbackSpool.append(callbackParamList);
+                    }
+                }
+                legacyFile.delete();
+            } catch (Exception e) {
+                logger.error(">>>>>>>>>>> xxl-job, import legacy callback file error, file:{}, error:{}", legacyFile, e);
             }
-            //反序列化一下
-            List<HandleCallbackParam> callbackParamList = (List<HandleCallbackParam>) JdkSerializeTool.deserialize(callbackParamList_bytes, List.class);
-            //删除文件
-            callbaclLogFile.delete();
-            //重新回调一次
-            doCallback(callbackParamList);
         }
-
+        callbackSpool.force(true);
     }
 
 
@@ -220,39 +315,80 @@ public class TriggerCallbackThread {
                 logger.error(e.getMessage(), e);
             }
         }
+        if (callbackSpool != null) {
+            callbackSpool.close();
+            callbackSpool = null;
+        }
     }
 
     /**
      * 回调定时任务的执行信息给调度中心的方法
+     * 回调失败的信息追加到本地存储中，由重试线程回调，任务的本地日志中只记录一次失败和最后一次成功，不会每次重试都记录
      *
      * @param callbackParamList
      */
     private void doCallback(List<HandleCallbackParam> callbackParamList) {
-        boolean callbackRet = false;
-        //获得访问调度中心的客户端的集合，并且遍历它们
-        for (AdminBiz adminBiz : XxlJobExecutor.getAdminBizList()) {
+        ReturnT<String> callbackResult = callAdmin(callbackParamList);
+        if (callbackResult.getCode() == ReturnT.SUCCESS_CODE) {
+            //回调成功了，记录一下日志
+            callbackLog(callbackParamList, "<br>----------- xxl-job job callback finish.");
+            if (callbackSpool != null && !callbackSpool.isEmpty()) {
+                //存储中还有没重试的记录，其中同一个日志id的记录就不用再回调了
+                callbackSpool.delivered(callbackParamList);
+            }
+            return;
+        }
+        //这里就是回调失败了的意思，要把回调失败的数据存储到本地，方便重试线程重新回调
+        callbackLog(callbackParamList, "<br>----------- xxl-job job callback fail, will retry later, callbackResult:" + callbackResult.getMsg());
+        if (callbackSpool == null) {
+            logger.error(">>>>>>>>>>> xxl-job, callback spool not available, callback lost, size:{}", callbackParamList.size());
+            return;
+        }
+        try {
+            callbackSpool.append(callbackParamList);
+        } catch (IOException e) {
+            logger.error(">>>>>>>>>>> xxl-job, callback spool append error:{}", e);
+        }
+    }
+
+
+    /**
+     * 按顺序把回调信息发送给调度中心，有一个成功就返回，正在退避中的调度中心直接跳过
+     * 所有调度中心都在退避中的时候不会发送请求，回调信息直接存储到本地，调度中心宕机的时候回调线程不会每一批都等待超时
+     *
+     * @param callbackParamList
+     * @return
+     */
+    private ReturnT<String> callAdmin(List<HandleCallbackParam> callbackParamList) {
+        ReturnT<String> failResult = new ReturnT<>(ReturnT.FAIL_CODE, "all admin in backoff.");
+        for (AdminBackoff admin : adminList) {
+            if (!admin.isAvailable()) {
+                continue;
+            }
             try {
                 //在这里进行回调
-                ReturnT<String> callbackResult = adminBiz.callback(callbackParamList);
+                ReturnT<String> callbackResult = admin.adminBiz.callback(callbackParamList);
                 if (callbackResult != null && ReturnT.SUCCESS_CODE == callbackResult.getCode()) {
-                    //回调成功了，记录一下日志
-                    callbackLog(callbackParamList, "<br>----------- xxl-job job callback finish.");
-                    //回调标志置为true，说明回调成功了
-                    callbackRet = true;
-                    break;
-                } else {
-                    //回调失败了，记录一下日志
-                    callbackLog(callbackParamList, "<br>----------- xxl-job job callback fail, callbackResult:" + callbackResult);
+                    admin.success();
+                    return ReturnT.SUCCESS;
                 }
+                failResult = new ReturnT<>(ReturnT.FAIL_CODE, String.valueOf(callbackResult));
             } catch (Exception e) {
-                //回调出现异常了，记录一下日志
-                callbackLog(callbackParamList, "<br>----------- xxl-job job callback error, errorMsg:" + e.getMessage());
+                failResult = new ReturnT<>(ReturnT.FAIL_CODE, e.getMessage());
             }
+            admin.fail();
         }
-        if (!callbackRet) {
-            //这里就是回调失败了的意思，要把回调失败的数据存储到本地一个专门的文件当中，方便重试线程重新回调
-            appendFailCallbackFile(callbackParamList);
+        return failResult;
+    }
+
+
+    private boolean hasAvailableAdmin() {
+        for (AdminBackoff admin : adminList) {
+            if (admin.isAvailable()) {
+                return true;
+            }
         }
+        return false;
     }
 
 
@@ -274,39 +410,4 @@ public class TriggerCallbackThread {
             XxlJobHelper.log(logContent);
         }
     }
-
-
-    /**
-     * 设置回调失败日志的本地存储路径
-     * <p>
-     * D:\data\applogs\xxl-job\jobhandler\callbacklog\
-     */
-    private static String failCallbackFilePath = XxlJobFileAppender.getLogPath().concat(File.separator).concat("callbacklog").concat(File.separator);
-
-    /**
-     * 设置回调失败日志存储的文件名
-     * D:\data\applogs\xxl-job\jobhandler\callbacklog\xxl-job-callback-{x}.log ，x== System.currentTimeMillis()
-     */
-    private static String failCallbackFileName = failCallbackFilePath.concat("xxl-job-callback-{x}").concat(".log");
-
-    private void appendFailCallbackFile(List<HandleCallbackParam> callbackParamList) {
-        //判空校验
-        if (callbackParamList == null || callbackParamList.size() == 0) {
-            return;
-        }
-        //把回调数据序列化
-        byte[] callbackParamList_bytes = JdkSerializeTool.serialize(callbackParamList);
-        //创建文件名，把x用当前时间戳替换
-        File callbackLogFile = new File(failCallbackFileName.replace("{x}", String.valueOf(System.currentTimeMillis())));
-        if (callbackLogFile.exists()) {
-            for (int i = 0; i < 100; i++) {
-                callbackLogFile = new File(failCallbackFileName.replace("{x}", String.valueOf(System.currentTimeMillis()).concat("-").concat(String.valueOf(i))));
-                if (!callbackLogFile.exists()) {
-                    break;
-                }
-            }
-        }
-        //把HandleCallbackParam存储到本地
-        FileUtil.writeFileContent(callbackLogFile, callbackParamList_bytes);
-    }
 }
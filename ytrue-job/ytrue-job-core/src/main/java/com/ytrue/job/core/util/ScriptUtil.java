@@ -1,26 +1,33 @@
 package com.ytrue.job.core.util;
 
 import com.ytrue.job.core.context.XxlJobHelper;
+import com.ytrue.job.core.thread.ScriptOutputPump;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  *  1、内嵌编译器如"PythonInterpreter"无法引用扩展包，因此推荐使用java调用控制台进程方式"Runtime.getRuntime().exec()"来运行脚本(shell或python)；
  *  2、因为通过java调用控制台进程方式实现，需要保证目标机器PATH路径正确配置对应编译器；
- *  3、暂时脚本执行日志只能在脚本执行结束后一次性获取，无法保证实时性；因此为确保日志实时性，可改为将脚本打印的日志存储在指定的日志文件上；
+ *  3、脚本的输出由ScriptOutputPump在执行过程中按行实时写进任务日志，进程结束之后还会把管道中剩下的内容读完再返回；
  *  4、python 异常输出优先级高于标准输出，体现在Log文件中，因此推荐通过logging方式打日志保持和异常信息一致；否则用prinf日志顺序会错乱
  *
  * Created by xuxueli on 17/2/25.
  */
 public class ScriptUtil {
 
+    /**
+     * 脚本进程被中断之后，最多等待多久把剩下的输出写进日志
+     */
+    private static final long DESTROY_DRAIN_MS = 1000;
+
     /**
      * make script file
+     * 先写进一个临时文件再改名，执行器在写的过程中挂掉的话，下次执行不会用到一个只写了一半的脚本
      *
      * @param scriptFileName
      * @param content
@@ -28,22 +35,19 @@ public class ScriptUtil {
      */
     public static void markScriptFile(String scriptFileName, String content) throws IOException {
         // make file,   filePath/gluesource/666-123456789.py
-        FileOutputStream fileOutputStream = null;
+        Path scriptPath = Paths.get(scriptFileName);
+        Path tmpPath = Paths.get(scriptFileName + "." + Thread.currentThread().getId() + ".tmp");
         try {
-            fileOutputStream = new FileOutputStream(scriptFileName);
-            fileOutputStream.write(content.getBytes("UTF-8"));
-            fileOutputStream.close();
-        } catch (Exception e) {
-            throw e;
-        }finally{
-            if(fileOutputStream != null){
-                fileOutputStream.close();
-            }
+            Files.write(tmpPath, content.getBytes(StandardCharsets.UTF_8));
+            Files.move(tmpPath, scriptPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpPath);
         }
     }
 
     /**
      * 脚本执行，日志文件实时输出
+     * 错误输出合并到标准输出中，交给ScriptOutputPump写进日志，执行脚本的线程只需要等待进程结束
      *
      * @param command
      * @param scriptFile
@@ -54,13 +58,9 @@ public class ScriptUtil {
      */
     public static int execToFile(String command, String scriptFile, String logFile, String... params) throws IOException {
 
-        FileOutputStream fileOutputStream = null;
-        Thread inputThread = null;
-        Thread errThread = null;
+        Process process = null;
+        ScriptOutputPump.Output output = null;
         try {
-            // file
-            fileOutputStream = new FileOutputStream(logFile, true);
-
             // command
             List<String> cmdarray = new ArrayList<>();
             cmdarray.add(command);
@@ -70,98 +70,36 @@ public class ScriptUtil {
                     cmdarray.add(param);
                 }
             }
-            String[] cmdarrayFinal = cmdarray.toArray(new String[cmdarray.size()]);
 
             // process-exec
-            final Process process = Runtime.getRuntime().exec(cmdarrayFinal);
+            process = new ProcessBuilder(cmdarray).redirectErrorStream(true).start();
+            process.getOutputStream().close();
 
-            // log-thread
-            final FileOutputStream finalFileOutputStream = fileOutputStream;
-            inputThread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        copy(process.getInputStream(), finalFileOutputStream, new byte[1024]);
-                    } catch (IOException e) {
-                        XxlJobHelper.log(e);
-                    }
-                }
-            });
-            errThread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        copy(process.getErrorStream(), finalFileOutputStream, new byte[1024]);
-                    } catch (IOException e) {
-                        XxlJobHelper.log(e);
-                    }
-                }
-            });
-            inputThread.start();
-            errThread.start();
+            // log-pump
+            output = ScriptOutputPump.getInstance().pump(process, logFile);
 
             // process-wait
             int exitValue = process.waitFor();      // exit code: 0=success, 1=error
 
-            // log-thread join
-            inputThread.join();
-            errThread.join();
+            // log-pump wait
+            output.await();
 
             return exitValue;
         } catch (Exception e) {
             XxlJobHelper.log(e);
             return -1;
         } finally {
-            if (fileOutputStream != null) {
-                try {
-                    fileOutputStream.close();
-                } catch (IOException e) {
-                    XxlJobHelper.log(e);
-                }
-
-            }
-            if (inputThread != null && inputThread.isAlive()) {
-                inputThread.interrupt();
-            }
-            if (errThread != null && errThread.isAlive()) {
-                errThread.interrupt();
-            }
-        }
-    }
-
-    /**
-     * 数据流Copy（Input自动关闭，Output不处理）
-     *
-     * @param inputStream
-     * @param outputStream
-     * @param buffer
-     * @return
-     * @throws IOException
-     */
-    private static long copy(InputStream inputStream, OutputStream outputStream, byte[] buffer) throws IOException {
-        try {
-            long total = 0;
-            for (;;) {
-                int res = inputStream.read(buffer);
-                if (res == -1) {
-                    break;
-                }
-                if (res > 0) {
-                    total += res;
-                    if (outputStream != null) {
-                        outputStream.write(buffer, 0, res);
+            if (process != null && process.isAlive()) {
+                //定时任务被终止或者超时了，脚本进程也要一起结束
+                process.destroyForcibly();
+                if (output != null) {
+                    try {
+                        output.await(DESTROY_DRAIN_MS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
                     }
                 }
             }
-            outputStream.flush();
-            //out = null;
-            inputStream.close();
-            inputStream = null;
-            return total;
-        } finally {
-            if (inputStream != null) {
-                inputStream.close();
-            }
         }
     }
 
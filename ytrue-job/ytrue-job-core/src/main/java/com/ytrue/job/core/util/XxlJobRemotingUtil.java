@@ -1,22 +1,22 @@
 package com.ytrue.job.core.util;
 
 import com.ytrue.job.core.biz.model.ReturnT;
+import com.ytrue.job.core.remoting.HttpClientResponse;
+import com.ytrue.job.core.remoting.NettyHttpClient;
+import com.ytrue.job.core.remoting.RemotingResultUnknownException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.net.ssl.*;
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * @author ytrue
  * @date 2023-08-28 10:56
  * @description job用于远程调用的工具类
+ * 现在底层使用的是NettyHttpClient，连接会被复用，原来的同步方法只是在异步方法的基础上等待结果返回
  */
 public class XxlJobRemotingUtil {
     private static Logger logger = LoggerFactory.getLogger(XxlJobRemotingUtil.class);
@@ -25,132 +25,71 @@ public class XxlJobRemotingUtil {
 
 
     /**
-     * 信任该http链接
+     * 发送post消息
      *
-     * @param connection
+     * @param url
+     * @param accessToken
+     * @param timeout
+     * @param requestObj
+     * @param returnTargClassOfT
+     * @return
      */
-    private static void trustAllHosts(HttpsURLConnection connection) {
-        try {
-            SSLContext sc = SSLContext.getInstance("TLS");
-            sc.init(null, trustAllCerts, new java.security.SecureRandom());
-            SSLSocketFactory newFactory = sc.getSocketFactory();
-            connection.setSSLSocketFactory(newFactory);
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
-        }
-        connection.setHostnameVerifier(new HostnameVerifier() {
-            @Override
-            public boolean verify(String hostname, SSLSession session) {
-                return true;
-            }
-        });
+    public static ReturnT postBody(String url, String accessToken, int timeout, Object requestObj, Class returnTargClassOfT) {
+        //异步方法返回的future不会异常结束，所以这里直接等待结果就可以了
+        return (ReturnT) postBodyAsync(url, accessToken, timeout, requestObj, returnTargClassOfT).join();
     }
 
 
-    private static final TrustManager[] trustAllCerts = new TrustManager[]{new X509TrustManager() {
-        @Override
-        public X509Certificate[] getAcceptedIssuers() {
-            return new X509Certificate[]{};
-        }
-
-        @Override
-        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-        }
-
-        @Override
-        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-        }
-    }};
-
-
     /**
-     * 发送post消息
+     * 异步发送post消息，请求失败、超时或者响应的内容不合法，future也会正常完成，结果是一个失败的ReturnT，这和同步方法的语义是一致的
+     * 请求已经发送出去，但是在收到响应之前连接就断开了的话，结果的code是ReturnT.UNKNOWN_CODE
      *
      * @param url
      * @param accessToken
-     * @param timeout
+     * @param timeout            超时时间，单位是秒
      * @param requestObj
      * @param returnTargClassOfT
+     * @param <T>
      * @return
      */
-    public static ReturnT postBody(String url, String accessToken, int timeout, Object requestObj, Class returnTargClassOfT) {
-        HttpURLConnection connection = null;
-        BufferedReader bufferedReader = null;
+    public static <T> CompletableFuture<ReturnT<T>> postBodyAsync(String url, String accessToken, int timeout, Object requestObj, Class<T> returnTargClassOfT) {
+        //判断令牌是否为空
+        Map<String, String> headers = null;
+        if (accessToken != null && accessToken.trim().length() > 0) {
+            //设置令牌，以键值对的形式，键就是该类的静态成员变量
+            headers = Collections.singletonMap(XXL_JOB_ACCESS_TOKEN, accessToken);
+        }
+        CompletableFuture<HttpClientResponse> responseFuture;
         try {
-            //创建链接
-            URL realUrl = new URL(url);
-            connection = (HttpURLConnection) realUrl.openConnection();
-            //判断是不是https开头的
-            boolean useHttps = url.startsWith("https");
-            if (useHttps) {
-                HttpsURLConnection https = (HttpsURLConnection) connection;
-                trustAllHosts(https);
-            }
-            connection.setRequestMethod("POST");
-            connection.setDoOutput(true);
-            connection.setDoInput(true);
-            connection.setUseCaches(false);
-            connection.setReadTimeout(timeout * 1000);
-            connection.setConnectTimeout(3 * 1000);
-            connection.setRequestProperty("connection", "Keep-Alive");
-            connection.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
-            connection.setRequestProperty("Accept-Charset", "application/json;charset=UTF-8");
-            //判断令牌是否为空
-            if (accessToken != null && accessToken.trim().length() > 0) {
-                //设置令牌，以键值对的形式，键就是该类的静态成员变量
-                connection.setRequestProperty(XXL_JOB_ACCESS_TOKEN, accessToken);
-            }
-            //进行连接
-            connection.connect();
-            if (requestObj != null) {
-                //序列化请求体，也就是要发送的触发器参数
-                String requestBody = GsonTool.toJson(requestObj);
-                //下面就开始正式发送消息了
-                DataOutputStream dataOutputStream = new DataOutputStream(connection.getOutputStream());
-                dataOutputStream.write(requestBody.getBytes("UTF-8"));
-                //刷新缓冲区
-                dataOutputStream.flush();
-                //释放资源
-                dataOutputStream.close();
+            //序列化请求体，也就是要发送的触发器参数
+            String requestBody = requestObj != null ? GsonTool.toJson(requestObj) : null;
+            responseFuture = NettyHttpClient.getInstance().post(url, headers, requestBody, timeout * 1000L);
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            return CompletableFuture.completedFuture(new ReturnT<>(ReturnT.FAIL_CODE, "xxl-job remoting error(" + e.getMessage() + "), for url : " + url));
+        }
+        return responseFuture.handle((response, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                logger.error(cause.getMessage(), cause);
+                return new ReturnT<>(cause instanceof RemotingResultUnknownException ? ReturnT.UNKNOWN_CODE : ReturnT.FAIL_CODE, "xxl-job remoting error(" + cause.getMessage() + "), for url : " + url);
             }
             //获取响应码
-            int statusCode = connection.getResponseCode();
+            int statusCode = response.getStatusCode();
             if (statusCode != 200) {
                 //设置失败结果
-                return new ReturnT<String>(ReturnT.FAIL_CODE, "xxl-job remoting fail, StatusCode(" + statusCode + ") invalid. for url : " + url);
-            }
-            bufferedReader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
-            StringBuilder result = new StringBuilder();
-            String line;
-            //接收返回信息
-            while ((line = bufferedReader.readLine()) != null) {
-                result.append(line);
+                return new ReturnT<>(ReturnT.FAIL_CODE, "xxl-job remoting fail, StatusCode(" + statusCode + ") invalid. for url : " + url);
             }
-            //转换为字符串
-            String resultJson = result.toString();
+            String resultJson = response.getContent();
             try {
                 //转换为ReturnT对象，返回给用户
-                ReturnT returnT = GsonTool.fromJson(resultJson, ReturnT.class, returnTargClassOfT);
+                ReturnT<T> returnT = GsonTool.fromJson(resultJson, ReturnT.class, returnTargClassOfT);
                 return returnT;
-            } catch (Exception e) {
-                logger.error("xxl-job remoting (url=" + url + ") response content invalid(" + resultJson + ").", e);
-                return new ReturnT<String>(ReturnT.FAIL_CODE, "xxl-job remoting (url=" + url + ") response content invalid(" + resultJson + ").");
-            }
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
-            return new ReturnT<String>(ReturnT.FAIL_CODE, "xxl-job remoting error(" + e.getMessage() + "), for url : " + url);
-        } finally {
-            try {
-                if (bufferedReader != null) {
-                    bufferedReader.close();
-                }
-                if (connection != null) {
-                    connection.disconnect();
-                }
             } catch (Exception e2) {
-                logger.error(e2.getMessage(), e2);
+                logger.error("xxl-job remoting (url=" + url + ") response content invalid(" + resultJson + ").", e2);
+                return new ReturnT<>(ReturnT.FAIL_CODE, "xxl-job remoting (url=" + url + ") response content invalid(" + resultJson + ").");
             }
-        }
+        });
     }
 
 }
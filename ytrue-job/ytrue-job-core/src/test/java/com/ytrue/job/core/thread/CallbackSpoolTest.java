@@ -0,0 +1,161 @@
+package com.ytrue.job.core.thread;
+
+import com.ytrue.job.core.biz.model.HandleCallbackParam;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author ytrue
+ * @date 2026-10-20 04:40
+ * @description 回调失败信息的本地存储的测试，每个测试用一个临时目录
+ */
+public class CallbackSpoolTest {
+
+    private File spoolDir;
+
+    private CallbackSpool spool;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        spoolDir = Files.createTempDirectory("xxl-job-callback-spool").toFile();
+        spool = new CallbackSpool(spoolDir);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        spool.close();
+        File[] files = spoolDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        spoolDir.delete();
+    }
+
+    private static HandleCallbackParam param(long logId) {
+        return new HandleCallbackParam(logId, 1000 + logId, 200, "log " + logId);
+    }
+
+    private static List<Long> logIds(CallbackSpool.Batch batch) {
+        List<Long> logIds = new ArrayList<>();
+        for (HandleCallbackParam callbackParam : batch.getCallbackParamList()) {
+            logIds.add(callbackParam.getLogId());
+        }
+        return logIds;
+    }
+
+    private File onlySegment() {
+        File[] segments = spoolDir.listFiles((dir, name) -> name.endsWith(".spool"));
+        assertEquals(1, segments.length);
+        return segments[0];
+    }
+
+    /**
+     * 重新打开存储，相当于执行器重启
+     */
+    private void reopen() throws IOException {
+        spool.close();
+        spool = new CallbackSpool(spoolDir);
+    }
+
+
+    @Test
+    public void recordsAreReplayedInOrder() throws IOException {
+        assertTrue(spool.isEmpty());
+        assertNull(spool.read(10));
+        spool.append(Arrays.asList(param(1), param(2)));
+        spool.append(Collections.singletonList(new HandleCallbackParam(3, 1003, 500, null)));
+        assertFalse(spool.isEmpty());
+        CallbackSpool.Batch batch = spool.read(2);
+        assertEquals(Arrays.asList(1L, 2L), logIds(batch));
+        HandleCallbackParam first = batch.getCallbackParamList().get(0);
+        assertEquals(1001, first.getLogDateTim());
+        assertEquals(200, first.getHandleCode());
+        assertEquals("log 1", first.getHandleMsg());
+        spool.commit(batch);
+        batch = spool.read(10);
+        assertEquals(Collections.singletonList(3L), logIds(batch));
+        assertNull(batch.getCallbackParamList().get(0).getHandleMsg());
+        spool.commit(batch);
+        assertTrue(spool.isEmpty());
+    }
+
+
+    @Test
+    public void cursorSurvivesRestart() throws IOException {
+        spool.append(Arrays.asList(param(1), param(2), param(3)));
+        spool.commit(spool.read(1));
+        //第二批读出来了但是没有重试成功，重启之后还要再读一次
+        spool.read(1);
+        reopen();
+        assertEquals(Arrays.asList(2L, 3L), logIds(spool.read(10)));
+    }
+
+
+    @Test
+    public void duplicatesAreSkipped() throws IOException {
+        spool.append(Arrays.asList(param(1), param(2), param(1)));
+        //回调线程直接回调成功的也要记住，存储中还没有重试的同一个日志id会被跳过
+        spool.delivered(Collections.singletonList(param(2)));
+        CallbackSpool.Batch batch = spool.read(10);
+        assertEquals(Collections.singletonList(1L), logIds(batch));
+        spool.commit(batch);
+        assertTrue(spool.isEmpty());
+    }
+
+
+    @Test
+    public void tornTailIsTruncatedOnOpen() throws IOException {
+        spool.append(Arrays.asList(param(1), param(2)));
+        spool.close();
+        //执行器宕机的时候最后一条记录只写了一半
+        File segment = onlySegment();
+        long validSize = segment.length();
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(validSize);
+            file.writeInt(100);
+            file.writeLong(0);
+            file.write(new byte[10]);
+        }
+        spool = new CallbackSpool(spoolDir);
+        assertEquals(validSize, segment.length());
+        spool.append(Collections.singletonList(param(3)));
+        assertEquals(Arrays.asList(1L, 2L, 3L), logIds(spool.read(10)));
+    }
+
+
+    @Test
+    public void corruptedRecordSkipsSegment() throws IOException {
+        spool.append(Collections.singletonList(param(1)));
+        long firstSize = onlySegment().length();
+        spool.append(Arrays.asList(param(2), param(3)));
+        //第二条记录的内容坏了，校验和对不上，这个分段后面的记录都没办法定位了
+        try (RandomAccessFile file = new RandomAccessFile(onlySegment(), "rw")) {
+            file.seek(firstSize + 20);
+            file.write(0xff);
+        }
+        CallbackSpool.Batch batch = spool.read(10);
+        assertEquals(Collections.singletonList(1L), logIds(batch));
+        spool.commit(batch);
+        //正在写入的分段坏了之后换了一个新的分段，后面追加的记录不受影响，坏掉的分段也删除了
+        spool.append(Collections.singletonList(param(4)));
+        batch = spool.read(10);
+        assertEquals(Collections.singletonList(4L), logIds(batch));
+        spool.commit(batch);
+        onlySegment();
+        assertTrue(spool.isEmpty());
+    }
+}
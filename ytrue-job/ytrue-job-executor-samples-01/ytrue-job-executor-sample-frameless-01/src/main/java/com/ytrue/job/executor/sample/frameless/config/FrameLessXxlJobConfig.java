@@ -44,6 +44,9 @@ public class FrameLessXxlJobConfig {
         xxlJobExecutor.setPort(Integer.valueOf(xxlJobProp.getProperty("xxl.job.executor.port")));
         xxlJobExecutor.setLogPath(xxlJobProp.getProperty("xxl.job.executor.logpath"));
         xxlJobExecutor.setLogRetentionDays(Integer.valueOf(xxlJobProp.getProperty("xxl.job.executor.logretentiondays")));
+        xxlJobExecutor.setWorkerMode(xxlJobProp.getProperty("xxl.job.executor.workermode", "thread"));
+        xxlJobExecutor.setWorkerPoolSize(Integer.valueOf(xxlJobProp.getProperty("xxl.job.executor.workerpoolsize", "200")));
+        xxlJobExecutor.setLogAppendPolicy(xxlJobProp.getProperty("xxl.job.executor.logappendpolicy", "block"));
 
         // registry job bean
         xxlJobExecutor.setXxlJobBeanList(Arrays.asList(new SampleXxlJob()));
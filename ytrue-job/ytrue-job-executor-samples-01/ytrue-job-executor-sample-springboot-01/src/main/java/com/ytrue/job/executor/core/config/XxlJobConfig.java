@@ -40,6 +40,15 @@ public class XxlJobConfig {
     @Value("${xxl.job.executor.logretentiondays}")
     private int logRetentionDays;
 
+    @Value("${xxl.job.executor.workermode:thread}")
+    private String workerMode;
+
+    @Value("${xxl.job.executor.workerpoolsize:200}")
+    private int workerPoolSize;
+
+    @Value("${xxl.job.executor.logappendpolicy:block}")
+    private String logAppendPolicy;
+
 
     @Bean
     public XxlJobSpringExecutor xxlJobExecutor() {
@@ -53,6 +62,9 @@ public class XxlJobConfig {
         xxlJobSpringExecutor.setAccessToken(accessToken);
         xxlJobSpringExecutor.setLogPath(logPath);
         xxlJobSpringExecutor.setLogRetentionDays(logRetentionDays);
+        xxlJobSpringExecutor.setWorkerMode(workerMode);
+        xxlJobSpringExecutor.setWorkerPoolSize(workerPoolSize);
+        xxlJobSpringExecutor.setLogAppendPolicy(logAppendPolicy);
 
         return xxlJobSpringExecutor;
     }
@@ -56,6 +56,23 @@ public class SampleXxlJob {
         }
 
     }
+
+
+    /**
+     * 3、动态分片任务，路由策略选择"动态分片"
+     * 工作拆分成很多个工作单元，每个执行器处理完一个再领取下一个，执行器挂掉之后它手上的工作单元会重新分配，所以处理的逻辑要能重复执行
+     */
+    @XxlJob("dynamicShardingJobHandler")
+    public void dynamicShardingJobHandler() throws Exception {
+        int unit;
+        int count = 0;
+        while ((unit = XxlJobHelper.nextShardUnit(100)) >= 0) {
+            // 业务逻辑，处理第unit个工作单元
+            XxlJobHelper.log("第 {} 个工作单元开始处理", unit);
+            count++;
+        }
+        XxlJobHelper.log("动态分片处理结束，本执行器处理了 {} 个工作单元", count);
+    }
 //
 //
 //    /**